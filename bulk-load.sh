@@ -4,7 +4,11 @@ BASE_URL="http://localhost:8080"
 #BASE_URL="http://pmssql-env.p2wirtvhmn.eu-west-1.elasticbeanstalk.com"
 #BASE_URL="https://pmssql.cfapps.io"
 
-ROOT_DATA_DIR="../data-10M"
+# The data is loaded by the server from a path relative to "application.bulk.import-directory" (default ../data-10M).
+# An interrupted load is resumed by calling the script again (files are checkpointed in <path>.checkpoint).
+IMPORT_PATH="${1:-.}"
+WORKERS="${2:-4}"
+MODE="${3:-COPY}"
 
 token=$(curl "${BASE_URL}/api/authenticate" -s -H 'Accept: application/json' -H 'Content-Type: application/json' \
   --data '{"username":"admin","password":"admin"}' | jq -r ".id_token")
@@ -12,28 +16,21 @@ if [[ ${token} == "" ]]; then
   exit 1
 fi
 
-typeset -i d=0
-
-while (( d < 10 )); do
-  dir=$(printf "d-%08d" $d)
-  typeset -i f=0
-  while (( f < 1000 )); do
-    file=$(printf "%s/%s/f-%08d.json" "${ROOT_DATA_DIR}" "${dir}" $f)
-    echo "${file}"
-    typeset -i start=$(date +%s)
-    count=$(curl "${BASE_URL}/bulk-api/employee-list" -s -H 'Accept: application/json' -H 'Content-Type: application/json' \
-     -H "Authorization: Bearer ${token}" -X PUT  --data "@${file}")
-    if [[ $? != 0 || $count != 1000 ]]; then
-      echo $count
-      exit 1
-    fi
-    typeset -i end=$(date +%s)
-    let secs=$end-$start
-    echo " processing time was ${secs} seconds"
-    let f+=1
-  done
+jobId=$(curl "${BASE_URL}/bulk-api/jobs/directory?path=${IMPORT_PATH}&workers=${WORKERS}&mode=${MODE}&resume=true" -s \
+  -H 'Accept: application/json' -H "Authorization: Bearer ${token}" -X POST | jq -r ".id")
+if [[ ${jobId} == "" || ${jobId} == "null" ]]; then
+  echo "Job was not accepted!"
+  exit 1
+fi
+echo "Job ${jobId} accepted"
 
-  sleep 5
-  let d+=1
+while true; do
+  sleep 10
+  status=$(curl "${BASE_URL}/bulk-api/jobs/${jobId}" -s -H 'Accept: application/json' -H "Authorization: Bearer ${token}")
+  phase=$(echo "${status}" | jq -r ".phase")
+  echo "${status}" | jq -c "{phase, rowsSaved, rowsPerSecond, etaSeconds}"
+  case ${phase} in
+    COMPLETED) exit 0 ;;
+    FAILED|CANCELLED) exit 1 ;;
+  esac
 done
-
@@ -1,5 +1,6 @@
 package com.giraone.pms.config;
 
+import com.giraone.pms.domain.enumeration.BulkLoaderMode;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
 /**
@@ -11,4 +12,393 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
 @ConfigurationProperties(prefix = "application", ignoreUnknownFields = false)
 public class ApplicationProperties {
 
+    private final Bulk bulk = new Bulk();
+
+    private final Index index = new Index();
+
+    private final Search search = new Search();
+
+    public Bulk getBulk() {
+        return bulk;
+    }
+
+    public Index getIndex() {
+        return index;
+    }
+
+    public Search getSearch() {
+        return search;
+    }
+
+    public static class Bulk {
+
+        /** Number of employees, that are committed in one transaction, when a bulk file is streamed */
+        private int chunkSize = 1000;
+
+        /** Loader mode used, when a bulk request does not define one */
+        private BulkLoaderMode loaderMode = BulkLoaderMode.JPA;
+
+        /** Number of bulk load jobs, that are executed in parallel */
+        private int jobWorkers = 2;
+
+        /** Number of bulk load jobs, that may wait for a worker, before new jobs are rejected */
+        private int jobQueueCapacity = 4;
+
+        /** Maximum size of an upload, that is spooled for a bulk load job, in megabytes */
+        private long jobSpoolMegabytes = 4096L;
+
+        /** Root directory of the bulk files, that can be loaded by the server side loader */
+        private String importDirectory = "import";
+
+        /** Number of parallel workers of the server side loader, when a request does not define it */
+        private int loaderWorkers = 4;
+
+        public int getChunkSize() {
+            return chunkSize;
+        }
+
+        public void setChunkSize(int chunkSize) {
+            this.chunkSize = chunkSize;
+        }
+
+        public BulkLoaderMode getLoaderMode() {
+            return loaderMode;
+        }
+
+        public void setLoaderMode(BulkLoaderMode loaderMode) {
+            this.loaderMode = loaderMode;
+        }
+
+        public int getJobWorkers() {
+            return jobWorkers;
+        }
+
+        public void setJobWorkers(int jobWorkers) {
+            this.jobWorkers = jobWorkers;
+        }
+
+        public int getJobQueueCapacity() {
+            return jobQueueCapacity;
+        }
+
+        public void setJobQueueCapacity(int jobQueueCapacity) {
+            this.jobQueueCapacity = jobQueueCapacity;
+        }
+
+        public long getJobSpoolMegabytes() {
+            return jobSpoolMegabytes;
+        }
+
+        public void setJobSpoolMegabytes(long jobSpoolMegabytes) {
+            this.jobSpoolMegabytes = jobSpoolMegabytes;
+        }
+
+        public String getImportDirectory() {
+            return importDirectory;
+        }
+
+        public void setImportDirectory(String importDirectory) {
+            this.importDirectory = importDirectory;
+        }
+
+        public int getLoaderWorkers() {
+            return loaderWorkers;
+        }
+
+        public void setLoaderWorkers(int loaderWorkers) {
+            this.loaderWorkers = loaderWorkers;
+        }
+    }
+
+    public static class Index {
+
+        /** Maximum number of distinct raw names per name kind, whose computed keys are memoized */
+        private long nameCacheSize = 100_000L;
+
+        /** Number of id range partitions, that are re-indexed in parallel */
+        private int workers = 4;
+
+        /** Width of the id range of one re-index partition */
+        private long partitionSize = 100_000L;
+
+        /** Number of employees re-indexed in one transaction */
+        private int pageSize = 1000;
+
+        /** File with the completed partitions of a re-index, used to resume an interrupted re-index */
+        private String checkpointFile = "reindex.checkpoint";
+
+        public long getNameCacheSize() {
+            return nameCacheSize;
+        }
+
+        public void setNameCacheSize(long nameCacheSize) {
+            this.nameCacheSize = nameCacheSize;
+        }
+
+        public int getWorkers() {
+            return workers;
+        }
+
+        public void setWorkers(int workers) {
+            this.workers = workers;
+        }
+
+        public long getPartitionSize() {
+            return partitionSize;
+        }
+
+        public void setPartitionSize(long partitionSize) {
+            this.partitionSize = partitionSize;
+        }
+
+        public int getPageSize() {
+            return pageSize;
+        }
+
+        public void setPageSize(int pageSize) {
+            this.pageSize = pageSize;
+        }
+
+        public String getCheckpointFile() {
+            return checkpointFile;
+        }
+
+        public void setCheckpointFile(String checkpointFile) {
+            this.checkpointFile = checkpointFile;
+        }
+    }
+
+    public static class Search {
+
+        /** Maximum number of cached total counts of (company, filter) pairs */
+        private long countCacheSize = 10_000L;
+
+        /** Maximum age of a cached count or a per-company employee counter */
+        private long countCacheSeconds = 600L;
+
+        /** Maximum number of companies, whose name statistics for the search planner are cached */
+        private long statisticsCacheSize = 1_000L;
+
+        /** Maximum age of the name statistics of a company */
+        private long statisticsSeconds = 3600L;
+
+        /** Maximum number of search shapes, whose native SQL statement is cached */
+        private long statementCacheSize = 1_000L;
+
+        /** Maximum number of searches, whose ordered employee ids are cached */
+        private long resultCacheSize = 1_000L;
+
+        /** Maximum number of ids of a cached search result - larger results are always queried */
+        private int resultCacheMaxIds = 5_000;
+
+        /** Maximum age of cached employee ids of a search */
+        private long resultCacheSeconds = 300L;
+
+        /** Maximum time to wait for the result of an identical running search, before it is executed again */
+        private long coalesceTimeoutMillis = 5_000L;
+
+        /** Number of threads, which search the companies of a search over several companies in parallel */
+        private int fanOutThreads = 8;
+
+        /** Maximum number of companies of a search over several companies */
+        private int fanOutMaxCompanies = 100;
+
+        /** Maximum number of parsed person filters kept for reuse */
+        private long filterCacheSize = 10_000;
+
+        /** Search the names of the companies in memory (loaded on the first search of a company) */
+        private boolean nameIndexEnabled = true;
+
+        /** Memory budget of the in memory name index of all companies */
+        private long nameIndexMegabytes = 256L;
+
+        /** Search with an embedded Lucene index instead of the employee_name joins (where possible) */
+        private boolean luceneEnabled = false;
+
+        /** Directory of the Lucene index on the local disk */
+        private String luceneDirectory = "lucene-index";
+
+        /** Memory budget of the typeahead name suggestions of all companies */
+        private long suggestMegabytes = 64L;
+
+        /** Maximum number of names a fuzzy name is expanded to - names with more matches are searched by prefix */
+        private int fuzzyMaxTerms = 100;
+
+        /** Memory budget of the name dictionaries of the fuzzy search of all companies */
+        private long fuzzyMegabytes = 64L;
+
+        /** If true, exact name searches without matches are answered by a bloom filter of the names of the company */
+        private boolean bloomFilterEnabled = true;
+
+        /** Memory budget of the name bloom filters of all companies */
+        private long bloomFilterMegabytes = 32L;
+
+        public long getCountCacheSize() {
+            return countCacheSize;
+        }
+
+        public void setCountCacheSize(long countCacheSize) {
+            this.countCacheSize = countCacheSize;
+        }
+
+        public long getCountCacheSeconds() {
+            return countCacheSeconds;
+        }
+
+        public void setCountCacheSeconds(long countCacheSeconds) {
+            this.countCacheSeconds = countCacheSeconds;
+        }
+
+        public long getStatisticsCacheSize() {
+            return statisticsCacheSize;
+        }
+
+        public void setStatisticsCacheSize(long statisticsCacheSize) {
+            this.statisticsCacheSize = statisticsCacheSize;
+        }
+
+        public long getStatisticsSeconds() {
+            return statisticsSeconds;
+        }
+
+        public void setStatisticsSeconds(long statisticsSeconds) {
+            this.statisticsSeconds = statisticsSeconds;
+        }
+
+        public long getStatementCacheSize() {
+            return statementCacheSize;
+        }
+
+        public void setStatementCacheSize(long statementCacheSize) {
+            this.statementCacheSize = statementCacheSize;
+        }
+
+        public long getResultCacheSize() {
+            return resultCacheSize;
+        }
+
+        public void setResultCacheSize(long resultCacheSize) {
+            this.resultCacheSize = resultCacheSize;
+        }
+
+        public int getResultCacheMaxIds() {
+            return resultCacheMaxIds;
+        }
+
+        public void setResultCacheMaxIds(int resultCacheMaxIds) {
+            this.resultCacheMaxIds = resultCacheMaxIds;
+        }
+
+        public long getResultCacheSeconds() {
+            return resultCacheSeconds;
+        }
+
+        public void setResultCacheSeconds(long resultCacheSeconds) {
+            this.resultCacheSeconds = resultCacheSeconds;
+        }
+
+        public long getCoalesceTimeoutMillis() {
+            return coalesceTimeoutMillis;
+        }
+
+        public void setCoalesceTimeoutMillis(long coalesceTimeoutMillis) {
+            this.coalesceTimeoutMillis = coalesceTimeoutMillis;
+        }
+
+        public int getFanOutThreads() {
+            return fanOutThreads;
+        }
+
+        public void setFanOutThreads(int fanOutThreads) {
+            this.fanOutThreads = fanOutThreads;
+        }
+
+        public int getFanOutMaxCompanies() {
+            return fanOutMaxCompanies;
+        }
+
+        public void setFanOutMaxCompanies(int fanOutMaxCompanies) {
+            this.fanOutMaxCompanies = fanOutMaxCompanies;
+        }
+
+        public long getFilterCacheSize() {
+            return filterCacheSize;
+        }
+
+        public void setFilterCacheSize(long filterCacheSize) {
+            this.filterCacheSize = filterCacheSize;
+        }
+
+        public boolean isNameIndexEnabled() {
+            return nameIndexEnabled;
+        }
+
+        public void setNameIndexEnabled(boolean nameIndexEnabled) {
+            this.nameIndexEnabled = nameIndexEnabled;
+        }
+
+        public long getNameIndexMegabytes() {
+            return nameIndexMegabytes;
+        }
+
+        public void setNameIndexMegabytes(long nameIndexMegabytes) {
+            this.nameIndexMegabytes = nameIndexMegabytes;
+        }
+
+        public boolean isLuceneEnabled() {
+            return luceneEnabled;
+        }
+
+        public void setLuceneEnabled(boolean luceneEnabled) {
+            this.luceneEnabled = luceneEnabled;
+        }
+
+        public String getLuceneDirectory() {
+            return luceneDirectory;
+        }
+
+        public void setLuceneDirectory(String luceneDirectory) {
+            this.luceneDirectory = luceneDirectory;
+        }
+
+        public long getSuggestMegabytes() {
+            return suggestMegabytes;
+        }
+
+        public void setSuggestMegabytes(long suggestMegabytes) {
+            this.suggestMegabytes = suggestMegabytes;
+        }
+
+        public int getFuzzyMaxTerms() {
+            return fuzzyMaxTerms;
+        }
+
+        public void setFuzzyMaxTerms(int fuzzyMaxTerms) {
+            this.fuzzyMaxTerms = fuzzyMaxTerms;
+        }
+
+        public long getFuzzyMegabytes() {
+            return fuzzyMegabytes;
+        }
+
+        public void setFuzzyMegabytes(long fuzzyMegabytes) {
+            this.fuzzyMegabytes = fuzzyMegabytes;
+        }
+
+        public boolean isBloomFilterEnabled() {
+            return bloomFilterEnabled;
+        }
+
+        public void setBloomFilterEnabled(boolean bloomFilterEnabled) {
+            this.bloomFilterEnabled = bloomFilterEnabled;
+        }
+
+        public long getBloomFilterMegabytes() {
+            return bloomFilterMegabytes;
+        }
+
+        public void setBloomFilterMegabytes(long bloomFilterMegabytes) {
+            this.bloomFilterMegabytes = bloomFilterMegabytes;
+        }
+    }
 }
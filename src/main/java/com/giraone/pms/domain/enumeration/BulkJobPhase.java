@@ -0,0 +1,22 @@
+package com.giraone.pms.domain.enumeration;
+
+/**
+ * The life cycle of an asynchronous bulk load job.
+ */
+public enum BulkJobPhase {
+
+    /** Upload is spooled, the job waits for a free worker */
+    QUEUED,
+    /** A worker parses the upload and commits the employees in chunks */
+    LOADING,
+    /** All employees of the upload are committed */
+    COMPLETED,
+    /** Stopped by a cancel request - the chunks committed before stay stored */
+    CANCELLED,
+    /** Stopped by an error - the chunks committed before stay stored */
+    FAILED;
+
+    public boolean isFinished() {
+        return this == COMPLETED || this == CANCELLED || this == FAILED;
+    }
+}
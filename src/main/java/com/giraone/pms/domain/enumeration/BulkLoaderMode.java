@@ -0,0 +1,12 @@
+package com.giraone.pms.domain.enumeration;
+
+/**
+ * The way employees and their names are written during a bulk load.
+ */
+public enum BulkLoaderMode {
+
+    /** Row by row using JPA/Hibernate (with JDBC batching of Hibernate) */
+    JPA,
+    /** PostgreSQL COPY protocol with pre-reserved ids - falls back to plain JDBC batches on other databases */
+    COPY
+}
@@ -0,0 +1,12 @@
+package com.giraone.pms.domain.enumeration;
+
+/**
+ * The way the redundant names of all employees are re-indexed.
+ */
+public enum ReIndexMode {
+
+    /** Delete and insert the names page by page in the live table */
+    IN_PLACE,
+    /** Fill a shadow table, index it and swap it with the live table - searches are not affected until the swap */
+    SHADOW
+}
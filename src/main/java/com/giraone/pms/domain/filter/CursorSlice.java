@@ -0,0 +1,50 @@
+package com.giraone.pms.domain.filter;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * One slice of a keyset paginated search - the content and the cursor for the next slice. There is no total count,
+ * because counting would cost as much as an OFFSET.
+ *
+ * @param <T> the type of the content
+ */
+public class CursorSlice<T> {
+
+    private final List<T> content;
+    private final int size;
+    private final SearchCursor nextCursor;
+
+    /**
+     * @param content    the content of the slice
+     * @param size       the requested size of the slice
+     * @param nextCursor the cursor for the next slice or null, if this is the last slice
+     */
+    public CursorSlice(List<T> content, int size, SearchCursor nextCursor) {
+        this.content = Collections.unmodifiableList(content);
+        this.size = size;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<T> getContent() {
+        return content;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+
+    public SearchCursor getNextCursor() {
+        return nextCursor;
+    }
+
+    public <U> CursorSlice<U> map(Function<? super T, ? extends U> converter) {
+        return new CursorSlice<>(content.stream().map(converter).collect(Collectors.toList()), size, nextCursor);
+    }
+}
@@ -1,5 +1,8 @@
 package com.giraone.pms.domain.filter;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
 
 public class EmployeeNameFilter {
@@ -8,6 +11,7 @@ public class EmployeeNameFilter {
     private CompareOperation valueCompareOperation;
     private String key;
     private String value;
+    private List<String> values;
 
     public EmployeeNameFilter(CompareOperation keyCompareOperation, CompareOperation valueCompareOperation,
                               String key, String value) {
@@ -15,6 +19,21 @@ public class EmployeeNameFilter {
         this.valueCompareOperation = valueCompareOperation;
         this.key = key;
         this.value = value;
+        this.values = Collections.singletonList(value);
+    }
+
+    /**
+     * A filter, which matches one of several values exactly (IN).
+     *
+     * @param keyCompareOperation the compare operation of the key
+     * @param key                 the key
+     * @param values              the values
+     */
+    public EmployeeNameFilter(CompareOperation keyCompareOperation, String key, List<String> values) {
+        this.keyCompareOperation = keyCompareOperation;
+        this.valueCompareOperation = CompareOperation.IN;
+        this.key = key;
+        this.values = Collections.unmodifiableList(new ArrayList<>(values));
     }
 
     public CompareOperation getKeyCompareOperation() {
@@ -29,10 +48,20 @@ public class EmployeeNameFilter {
         return key;
     }
 
+    /**
+     * @return the value of an EQUALS or LIKE filter, null for an IN filter
+     */
     public String getValue() {
         return value;
     }
 
+    /**
+     * @return the values of an IN filter or the single value of an EQUALS or LIKE filter
+     */
+    public List<String> getValues() {
+        return values;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -41,12 +70,12 @@ public class EmployeeNameFilter {
         return keyCompareOperation == that.keyCompareOperation &&
             valueCompareOperation == that.valueCompareOperation &&
             Objects.equals(key, that.key) &&
-            Objects.equals(value, that.value);
+            Objects.equals(values, that.values);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(keyCompareOperation, valueCompareOperation, key, value);
+        return Objects.hash(keyCompareOperation, valueCompareOperation, key, values);
     }
 
     @Override
@@ -55,12 +84,12 @@ public class EmployeeNameFilter {
             "keyCompareOperation=" + keyCompareOperation +
             ", valueCompareOperation=" + valueCompareOperation +
             ", key='" + key + '\'' +
-            ", value='" + value + '\'' +
+            (valueCompareOperation == CompareOperation.IN ? ", values=" + values : ", value='" + value + '\'') +
             '}';
     }
 
     public enum CompareOperation {
 
-        EQUALS, LIKE
+        EQUALS, LIKE, IN
     }
 }
@@ -1,5 +1,7 @@
 package com.giraone.pms.domain.filter;
 
+import java.util.Objects;
+
 public class EmployeeNameKeyValue {
 
     private String key;
@@ -18,6 +20,23 @@ public class EmployeeNameKeyValue {
         return value;
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        EmployeeNameKeyValue that = (EmployeeNameKeyValue) o;
+        return Objects.equals(key, that.key) && Objects.equals(value, that.value);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(key, value);
+    }
+
     @Override
     public String toString() {
         return "EmployeeNameKeyValue{" +
@@ -0,0 +1,148 @@
+package com.giraone.pms.domain.filter;
+
+import org.springframework.data.domain.Sort;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Continuation token for a search over several companies. Every company (shard) has its own {@link SearchCursor},
+ * because the shards are merged in memory and each shard must continue exactly after its last employee, that was
+ * returned. Companies, whose employees are exhausted, are not contained in a following cursor.
+ * <p>
+ * For clients the token is opaque (URL safe base64) - like the token of a {@link SearchCursor}.
+ */
+public final class FanOutCursor {
+
+    private static final String VERSION = "F1";
+    private static final String SEPARATOR = "|";
+
+    /** The cursor of the first slice of every shard - defines the sort */
+    private final SearchCursor start;
+    /** The positions of the shards or null for the first slice */
+    private final Map<String, SearchCursor> positions;
+
+    private FanOutCursor(SearchCursor start, Map<String, SearchCursor> positions) {
+        this.start = start;
+        this.positions = positions != null ? Collections.unmodifiableMap(new LinkedHashMap<>(positions)) : null;
+    }
+
+    /**
+     * Cursor for the first slice.
+     *
+     * @param sort the requested sort - see {@link SearchCursor#first(Sort)}
+     * @return a cursor, which starts every shard at its beginning
+     * @throws IllegalArgumentException if the sort property is not supported
+     */
+    public static FanOutCursor first(Sort sort) {
+        return new FanOutCursor(SearchCursor.first(sort), null);
+    }
+
+    /**
+     * Parse a token created by {@link #encode()}.
+     *
+     * @param token the opaque token
+     * @return the cursor
+     * @throws IllegalArgumentException if the token is invalid
+     */
+    public static FanOutCursor decode(String token) {
+
+        final String decoded;
+        try {
+            decoded = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor " + token, e);
+        }
+        final String[] parts = decoded.split("\\|", 4);
+        if (parts.length != 4 || !VERSION.equals(parts[0]) || !("A".equals(parts[2]) || "D".equals(parts[2]))) {
+            throw new IllegalArgumentException("Invalid cursor " + token);
+        }
+        final SearchCursor start = SearchCursor.first(
+            Sort.by("A".equals(parts[2]) ? Sort.Direction.ASC : Sort.Direction.DESC, parts[1]));
+        final Map<String, SearchCursor> positions = new LinkedHashMap<>();
+        if (!parts[3].isEmpty()) {
+            for (String entry : parts[3].split(",")) {
+                final int colon = entry.indexOf(':');
+                if (colon < 0) {
+                    throw new IllegalArgumentException("Invalid cursor " + token);
+                }
+                final String company = new String(Base64.getUrlDecoder().decode(entry.substring(0, colon)), StandardCharsets.UTF_8);
+                final String position = entry.substring(colon + 1);
+                final SearchCursor cursor = position.isEmpty() ? start : SearchCursor.decode(position);
+                if (!cursor.getSortProperty().equals(start.getSortProperty()) || cursor.isAscending() != start.isAscending()) {
+                    throw new IllegalArgumentException("Invalid cursor " + token);
+                }
+                positions.put(company, cursor);
+            }
+        }
+        return new FanOutCursor(start, positions);
+    }
+
+    /**
+     * @param company the external id of a company
+     * @return the position of the shard of the company or null, if the shard is exhausted (or was not part of the search)
+     */
+    public SearchCursor positionOf(String company) {
+        return positions == null ? start : positions.get(company);
+    }
+
+    /**
+     * Cursor for the next slice.
+     *
+     * @param nextPositions the positions of the shards, which are not exhausted
+     * @return the cursor with the same sort
+     */
+    public FanOutCursor next(Map<String, SearchCursor> nextPositions) {
+        return new FanOutCursor(start, nextPositions);
+    }
+
+    /**
+     * @return the opaque, URL safe token
+     */
+    public String encode() {
+
+        final StringBuilder plain = new StringBuilder();
+        plain.append(VERSION).append(SEPARATOR).append(start.getSortProperty())
+            .append(SEPARATOR).append(start.isAscending() ? "A" : "D").append(SEPARATOR);
+        if (positions != null) {
+            boolean firstEntry = true;
+            for (Map.Entry<String, SearchCursor> entry : positions.entrySet()) {
+                if (!firstEntry) {
+                    plain.append(',');
+                }
+                firstEntry = false;
+                plain.append(Base64.getUrlEncoder().withoutPadding().encodeToString(entry.getKey().getBytes(StandardCharsets.UTF_8)))
+                    .append(':')
+                    .append(entry.getValue().isFirst() ? "" : entry.getValue().encode());
+            }
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(plain.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return true, if this cursor points to the first slice
+     */
+    public boolean isFirst() {
+        return positions == null;
+    }
+
+    public String getSortProperty() {
+        return start.getSortProperty();
+    }
+
+    public boolean isAscending() {
+        return start.isAscending();
+    }
+
+    @Override
+    public String toString() {
+        return "FanOutCursor{" +
+            "sortProperty='" + start.getSortProperty() + '\'' +
+            ", ascending=" + start.isAscending() +
+            ", positions=" + positions +
+            '}';
+    }
+}
@@ -0,0 +1,49 @@
+package com.giraone.pms.domain.filter;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * One slice of a search over several companies - the merged content and the cursor for the next slice.
+ *
+ * @param <T> the type of the content
+ */
+public class FanOutSlice<T> {
+
+    private final List<T> content;
+    private final int size;
+    private final FanOutCursor nextCursor;
+
+    /**
+     * @param content    the content of the slice
+     * @param size       the requested size of the slice
+     * @param nextCursor the cursor for the next slice or null, if this is the last slice
+     */
+    public FanOutSlice(List<T> content, int size, FanOutCursor nextCursor) {
+        this.content = Collections.unmodifiableList(content);
+        this.size = size;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<T> getContent() {
+        return content;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+
+    public FanOutCursor getNextCursor() {
+        return nextCursor;
+    }
+
+    public <U> FanOutSlice<U> map(Function<? super T, ? extends U> converter) {
+        return new FanOutSlice<>(content.stream().map(converter).collect(Collectors.toList()), size, nextCursor);
+    }
+}
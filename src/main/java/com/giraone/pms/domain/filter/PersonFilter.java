@@ -5,12 +5,12 @@ import com.giraone.pms.service.NameNormalizeService;
 import com.giraone.pms.service.impl.NameNormalizeServiceImpl;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Autowired;
 
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.Optional;
+import java.util.Objects;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -25,30 +25,71 @@ import java.util.stream.Collectors;
  * 2b2. If A contains at least one character and not B, the query is a query on the surname only
  * 2b3. If B contains at least one character and not A, the query is a query on the givenName only
  * 2b4. If A and B are empty, there is no filter on the surname or givenName
+ * <p>
+ * A filter is immutable after its construction, so parsed filters can be shared between threads and requests
+ * (see {@link com.giraone.pms.service.search.PersonFilterFactory}).
  */
 public class PersonFilter {
 
     private static final Logger log = LoggerFactory.getLogger(PersonFilter.class);
 
-    @Autowired
-    NameNormalizeService nameNormalizeService = new NameNormalizeServiceImpl();
+    /** Shared by all filters, which are not created with a normalizer bean - the normalizer is stateless */
+    private static final NameNormalizeService DEFAULT_NAME_NORMALIZE_SERVICE = new NameNormalizeServiceImpl();
 
     private static final Pattern DATE_PATTERN = Pattern.compile("([0-3]?[0-9])[./]([0-1]?[0-9])[./]((19[0-9]{2})|(20[0-9]{2})|([0-9]{2}))");
     private static final Pattern EXACT_NAME_PATTERN = Pattern.compile("(\"[^\"]*\")");
 
 
+    private final NameNormalizeService nameNormalizeService;
+    private final boolean phonetic;
+    private final boolean fuzzy;
+    /** Only modified during the construction */
     private List<EmployeeNameFilter> names = new ArrayList<>();
-    private boolean phonetic = false;
     private LocalDate dateOfBirth;
     private NameSearchMode nameSearchMode = NameSearchMode.NO_NAME;
 
     public PersonFilter(String input) {
-        this.buildFromInput(input);
+        this(input, false);
     }
 
     public PersonFilter(String input, boolean phonetic) {
+        this(input, phonetic, DEFAULT_NAME_NORMALIZE_SERVICE);
+    }
+
+    public PersonFilter(String input, boolean phonetic, NameNormalizeService nameNormalizeService) {
+        this(input, phonetic, false, nameNormalizeService);
+    }
+
+    /**
+     * @param input                the free form filter of the user - may be null
+     * @param phonetic             true for double metaphone keys instead of the simple phonetic reduction
+     * @param fuzzy                true, if the weak names should also match names with typos - the names are
+     *                             expanded per company (see {@link #withNames(List)})
+     * @param nameNormalizeService the normalizer
+     */
+    public PersonFilter(String input, boolean phonetic, boolean fuzzy, NameNormalizeService nameNormalizeService) {
+        this.nameNormalizeService = nameNormalizeService;
         this.phonetic = phonetic;
+        this.fuzzy = fuzzy;
         this.buildFromInput(input);
+        this.names = Collections.unmodifiableList(this.names);
+    }
+
+    private PersonFilter(PersonFilter other, List<EmployeeNameFilter> names) {
+        this.nameNormalizeService = other.nameNormalizeService;
+        this.phonetic = other.phonetic;
+        this.fuzzy = false;
+        this.names = Collections.unmodifiableList(new ArrayList<>(names));
+        this.dateOfBirth = other.dateOfBirth;
+        this.nameSearchMode = other.nameSearchMode;
+    }
+
+    /**
+     * @param names the replaced names, e.g. fuzzy names expanded to the matching names of a company
+     * @return a filter with the same date of birth and other names, which is not fuzzy anymore
+     */
+    public PersonFilter withNames(List<EmployeeNameFilter> names) {
+        return new PersonFilter(this, names);
     }
 
     public boolean hasNames() {
@@ -63,6 +104,14 @@ public class PersonFilter {
         return dateOfBirth;
     }
 
+    public boolean isPhonetic() {
+        return phonetic;
+    }
+
+    public boolean isFuzzy() {
+        return fuzzy;
+    }
+
     private void buildFromInput(String input) {
 
         if (input == null) {
@@ -103,7 +152,7 @@ public class PersonFilter {
             this.nameSearchMode = NameSearchMode.BOTH_WITH_OR;
             ret.both = input;
         }
-        log.debug(String.format("checkComma: nameSearchMode=%s, %s", this.nameSearchMode, ret));
+        log.debug("checkComma: nameSearchMode={}, {}", this.nameSearchMode, ret);
         return ret;
     }
 
@@ -113,7 +162,7 @@ public class PersonFilter {
 
         // is there sth. like a date in the input?
         if (matcher.find()) {
-            log.debug(String.format("Date found in \"%s\"", input));
+            log.debug("Date found in \"{}\"", input);
             // extract day, month, year
             final String dayString = matcher.group(1).replaceFirst("^0", "");
             if ("".equals(dayString)) { return input; } // day was 0.XX.XXXX
@@ -140,7 +189,7 @@ public class PersonFilter {
                 input = input.substring(0, matcher.start() - 1) + input.substring(matcher.end());
             }
             this.dateOfBirth = LocalDate.of(year, Integer.parseInt(monthString), Integer.parseInt(dayString));
-            log.debug(String.format("Date was %s - rest is \"%s\"", this.dateOfBirth.toString(), input));
+            log.debug("Date was {} - rest is \"{}\"", this.dateOfBirth, input);
         }
 
         return input;
@@ -208,11 +257,11 @@ public class PersonFilter {
 
     private String extractExactNames(String input, EmployeeNameFilter.CompareOperation keyCompareOperation, String filterKey) {
 
-        log.debug(String.format("extractExactNames for %s in \"%s\"", filterKey, input));
+        log.debug("extractExactNames for {} in \"{}\"", filterKey, input);
         final Matcher matcher = EXACT_NAME_PATTERN.matcher(input);
         // is there sth. like an exact name in the input?
         while (matcher.find()) {
-            log.debug(String.format("Exact name found in \"%s\" for %s", input, filterKey));
+            log.debug("Exact name found in \"{}\" for {}", input, filterKey);
             final String exactName = input.substring(matcher.start() + 1, matcher.end() - 1);
             this.names.add(new EmployeeNameFilter(keyCompareOperation, EmployeeNameFilter.CompareOperation.EQUALS, filterKey, exactName));
             // now combine the rest without the match
@@ -233,7 +282,7 @@ public class PersonFilter {
 
     private int extractWeakNames(String input, EmployeeNameFilter.CompareOperation keyCompareOperation, String filterKey) {
 
-        log.debug(String.format("extractWeakNames for %s in \"%s\"", filterKey, input));
+        log.debug("extractWeakNames for {} in \"{}\"", filterKey, input);
         //Optional<Integer> minLength = this.names.stream().map(e -> e.getValue().length()).max(Integer::compareTo);
         final List<EmployeeNameFilter> nameList = this.nameNormalizeService.split(input, 1)
             .stream()
@@ -242,17 +291,34 @@ public class PersonFilter {
             .map(name -> new EmployeeNameFilter(keyCompareOperation, EmployeeNameFilter.CompareOperation.LIKE, filterKey, name))
             .collect(Collectors.toList());
         if (nameList.size() > 0) {
-            log.debug(String.format("Weak name list found for %s with %d elements: %s", filterKey, nameList.size(), nameList.toString()));
+            log.debug("Weak name list found for {} with {} elements: {}", filterKey, nameList.size(), nameList);
         }
         this.names.addAll(nameList);
         return nameList.size();
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        PersonFilter that = (PersonFilter) o;
+        return phonetic == that.phonetic &&
+            fuzzy == that.fuzzy &&
+            Objects.equals(names, that.names) &&
+            Objects.equals(dateOfBirth, that.dateOfBirth);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(names, phonetic, fuzzy, dateOfBirth);
+    }
+
     @Override
     public String toString() {
         return "PersonFilter{" +
             "names=" + names +
             ", phonetic=" + phonetic +
+            ", fuzzy=" + fuzzy +
             ", dateOfBirth=" + dateOfBirth +
             '}';
     }
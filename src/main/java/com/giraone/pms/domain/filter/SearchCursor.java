@@ -0,0 +1,174 @@
+package com.giraone.pms.domain.filter;
+
+import org.springframework.data.domain.Sort;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Continuation token for keyset (seek) pagination of the employee search. The token contains the sort property,
+ * the sort direction and the sort key and id of the last employee of the previous slice. The next slice is queried
+ * with "(sortKey, id) &gt; (lastSortKey, lastId)" instead of an OFFSET, so every slice costs the same, independent
+ * of its depth.
+ * <p>
+ * For clients the token is opaque (URL safe base64). Only properties, which are not nullable, can be used for sorting,
+ * because NULL values cannot be compared in the seek predicate.
+ */
+public final class SearchCursor {
+
+    public static final String SORT_ID = "id";
+    public static final String SORT_SURNAME = "surname";
+
+    private static final Set<String> SORT_PROPERTIES = Collections.unmodifiableSet(
+        new HashSet<>(Arrays.asList(SORT_ID, SORT_SURNAME)));
+
+    private static final String VERSION = "1";
+    private static final String SEPARATOR = "|";
+
+    private final String sortProperty;
+    private final boolean ascending;
+    private final Long lastId;
+    private final String lastSortValue;
+
+    private SearchCursor(String sortProperty, boolean ascending, Long lastId, String lastSortValue) {
+        this.sortProperty = sortProperty;
+        this.ascending = ascending;
+        this.lastId = lastId;
+        this.lastSortValue = lastSortValue;
+    }
+
+    /**
+     * Cursor for the first slice.
+     *
+     * @param sort the requested sort - only the first order is used, if unsorted the slices are sorted by id
+     * @return a cursor without last values
+     * @throws IllegalArgumentException if the sort property is not supported
+     */
+    public static SearchCursor first(Sort sort) {
+
+        if (sort == null || sort.isUnsorted()) {
+            return new SearchCursor(SORT_ID, true, null, null);
+        }
+        final Sort.Order order = sort.iterator().next();
+        if (!isSortable(order.getProperty())) {
+            throw new IllegalArgumentException("Sort property " + order.getProperty() + " is not supported for cursors!");
+        }
+        return new SearchCursor(order.getProperty(), order.isAscending(), null, null);
+    }
+
+    /**
+     * Parse a token created by {@link #encode()}.
+     *
+     * @param token the opaque token
+     * @return the cursor
+     * @throws IllegalArgumentException if the token is invalid
+     */
+    public static SearchCursor decode(String token) {
+
+        final String decoded;
+        try {
+            decoded = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor " + token, e);
+        }
+        // the sort value is the last part, so it may contain the separator
+        final String[] parts = decoded.split("\\|", 5);
+        if (parts.length != 5 || !VERSION.equals(parts[0]) || !isSortable(parts[1])
+            || !("A".equals(parts[2]) || "D".equals(parts[2]))) {
+            throw new IllegalArgumentException("Invalid cursor " + token);
+        }
+        final long lastId;
+        try {
+            lastId = Long.parseLong(parts[3]);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid cursor " + token, e);
+        }
+        return new SearchCursor(parts[1], "A".equals(parts[2]), lastId, parts[4]);
+    }
+
+    /**
+     * @param property an entity property of Employee
+     * @return true, if the property can be used as the sort key of a cursor
+     */
+    public static boolean isSortable(String property) {
+        return SORT_PROPERTIES.contains(property);
+    }
+
+    /**
+     * Cursor for the slice after the given employee.
+     *
+     * @param lastSortValue the value of the sort property of the last employee of the current slice
+     * @param lastId        the id of the last employee of the current slice
+     * @return the cursor with the same sort
+     */
+    public SearchCursor next(String lastSortValue, long lastId) {
+        return new SearchCursor(sortProperty, ascending, lastId, Objects.requireNonNull(lastSortValue));
+    }
+
+    /**
+     * @return the opaque, URL safe token
+     */
+    public String encode() {
+
+        if (isFirst()) {
+            throw new IllegalStateException("The cursor of the first slice has no token!");
+        }
+        final String plain = VERSION + SEPARATOR + sortProperty + SEPARATOR + (ascending ? "A" : "D")
+            + SEPARATOR + lastId + SEPARATOR + lastSortValue;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(plain.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return true, if this cursor points to the first slice (no last values)
+     */
+    public boolean isFirst() {
+        return lastId == null;
+    }
+
+    public String getSortProperty() {
+        return sortProperty;
+    }
+
+    public boolean isAscending() {
+        return ascending;
+    }
+
+    public Long getLastId() {
+        return lastId;
+    }
+
+    public String getLastSortValue() {
+        return lastSortValue;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        SearchCursor that = (SearchCursor) o;
+        return ascending == that.ascending &&
+            Objects.equals(sortProperty, that.sortProperty) &&
+            Objects.equals(lastId, that.lastId) &&
+            Objects.equals(lastSortValue, that.lastSortValue);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(sortProperty, ascending, lastId, lastSortValue);
+    }
+
+    @Override
+    public String toString() {
+        return "SearchCursor{" +
+            "sortProperty='" + sortProperty + '\'' +
+            ", ascending=" + ascending +
+            ", lastId=" + lastId +
+            ", lastSortValue='" + lastSortValue + '\'' +
+            '}';
+    }
+}
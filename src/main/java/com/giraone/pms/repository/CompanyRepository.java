@@ -11,6 +11,8 @@ import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 /**
@@ -39,6 +41,11 @@ public interface CompanyRepository extends JpaRepository<Company, Long> {
 
     Optional<Company> findOneByExternalId(String externalId);
 
+    @Query("select c.id from Company c where c.id > :lastId and c.users is empty order by c.id")
+    List<Long> findIdsWithoutUsers(@Param("lastId") long lastId, Pageable pageable);
+
+    List<Company> findAllByExternalIdIn(Collection<String> externalIds);
+
     Optional<Company> findOneByIdAndUsersLogin(long id, String login);
 
     Optional<Company> findOneByExternalIdAndUsersLogin(String externalId, String login);
@@ -2,20 +2,53 @@ package com.giraone.pms.repository;
 
 import com.giraone.pms.domain.Employee;
 import com.giraone.pms.domain.EmployeeName;
-import com.giraone.pms.domain.User;
-import com.giraone.pms.service.dto.CompanyDTO;
-import com.giraone.pms.service.dto.UserDTO;
+import org.hibernate.Session;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
 import org.springframework.data.jpa.repository.support.SimpleJpaRepository;
 import org.springframework.stereotype.Repository;
-import org.springframework.transaction.annotation.Transactional;
 
 import javax.persistence.EntityManager;
-import java.util.HashSet;
+import java.io.IOException;
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
 import java.util.List;
 
 @Repository
 public class EmployeeBulkRepository extends SimpleJpaRepository<Employee, String> {
 
+    /** The sequence behind the "sequenceGenerator" of the entities */
+    private static final String SEQUENCE_NAME = "hibernate_sequence";
+    /** Must match the default allocationSize of the "sequenceGenerator" and the incrementBy of the sequence */
+    private static final int SEQUENCE_ALLOCATION_SIZE = 50;
+    /** Batch size for the JDBC fallback, when COPY is not available */
+    private static final int JDBC_BATCH_SIZE = 200;
+
+    private static final String EMPLOYEE_COLUMNS =
+        "id, surname, given_name, date_of_birth, gender, postal_code, city, street_address, company_id";
+    private static final String EMPLOYEE_NAME_COLUMNS = "owner_id, company_id, name_key, name_value";
+
+    /** The live table of the names */
+    public static final String EMPLOYEE_NAME_TABLE = "employee_name";
+    /** The shadow table of the names, which is filled by a rebuild and then swapped with the live table */
+    public static final String EMPLOYEE_NAME_SHADOW_TABLE = "employee_name_new";
+    private static final String EMPLOYEE_NAME_OLD_TABLE = "employee_name_old";
+    /** The owners (or companies) with names changed during a rebuild, which are re-synced within the swap */
+    private static final String EMPLOYEE_NAME_CHANGE_TABLE = "employee_name_change";
+
+    /** The index and constraint names of the live table (see liquibase changelog) */
+    private static final String[] EMPLOYEE_NAME_INDEXES = {"emname_name_index", "emname_owner_index"};
+    private static final String EMPLOYEE_NAME_FK = "fk_employee_name_to_owner";
+
+    private static final String EMPLOYEE_COPY = "COPY employee (" + EMPLOYEE_COLUMNS + ") FROM STDIN";
+    private static final String EMPLOYEE_INSERT = "INSERT INTO employee (" + EMPLOYEE_COLUMNS + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
     private EntityManager entityManager;
     private CompanyRepository companyRepository;
 
@@ -38,4 +71,356 @@ public class EmployeeBulkRepository extends SimpleJpaRepository<Employee, String
         });
         return employeeNames.size();
     }
+
+    //-- COPY based loader ---------------------------------------------------------------------------------------------
+
+    /**
+     * Reserve a number of ids from the entity sequence. The ids are taken in blocks with the same semantics as
+     * Hibernate's pooled optimizer (the sequence value is the upper end of a block), so they never collide with
+     * ids generated by Hibernate.
+     *
+     * @param count the number of ids needed
+     * @return array of unused ids
+     */
+    public long[] reserveIds(int count) {
+
+        return entityManager.unwrap(Session.class).doReturningWork(connection -> {
+            final long[] ids = new long[count];
+            int filled = 0;
+            try (PreparedStatement statement = connection.prepareStatement("SELECT nextval('" + SEQUENCE_NAME + "')")) {
+                while (filled < count) {
+                    try (ResultSet resultSet = statement.executeQuery()) {
+                        resultSet.next();
+                        final long hi = resultSet.getLong(1);
+                        for (long id = hi - SEQUENCE_ALLOCATION_SIZE + 1; id <= hi && filled < count; id++) {
+                            ids[filled++] = id;
+                        }
+                    }
+                }
+            }
+            return ids;
+        });
+    }
+
+    /**
+     * Insert employees, which must have already an id (see {@link #reserveIds(int)}), bypassing Hibernate.
+     * On PostgreSQL the COPY protocol is used, otherwise (e.g. H2 in dev) plain JDBC batches.
+     *
+     * @param employees the employees to be inserted
+     * @return the number of inserted rows
+     */
+    public int insertEmployees(List<Employee> employees) {
+
+        // pending inserts of Hibernate (e.g. new companies) must be visible to the plain JDBC statements
+        entityManager.flush();
+        return entityManager.unwrap(Session.class).doReturningWork(connection -> {
+            if (isCopySupported(connection)) {
+                return copyIn(connection, EMPLOYEE_COPY, employees, EmployeeBulkRepository::appendEmployee);
+            } else {
+                return batchInsert(connection, EMPLOYEE_INSERT, employees, EmployeeBulkRepository::bindEmployee);
+            }
+        });
+    }
+
+    /**
+     * Insert employee names bypassing Hibernate.
+     * On PostgreSQL the COPY protocol is used, otherwise (e.g. H2 in dev) plain JDBC batches.
+     *
+     * @param employeeNames the names to be inserted - the owners must be already stored
+     * @return the number of inserted rows
+     */
+    public int insertEmployeeNames(List<EmployeeName> employeeNames) {
+        return insertEmployeeNames(EMPLOYEE_NAME_TABLE, employeeNames);
+    }
+
+    /**
+     * Insert employee names into the live or into the shadow table bypassing Hibernate.
+     *
+     * @param table         {@link #EMPLOYEE_NAME_TABLE} or {@link #EMPLOYEE_NAME_SHADOW_TABLE}
+     * @param employeeNames the names to be inserted - the owners must be already stored
+     * @return the number of inserted rows
+     */
+    public int insertEmployeeNames(String table, List<EmployeeName> employeeNames) {
+
+        entityManager.flush();
+        return entityManager.unwrap(Session.class).doReturningWork(connection -> {
+            if (isCopySupported(connection)) {
+                return copyIn(connection, "COPY " + table + " (" + EMPLOYEE_NAME_COLUMNS + ") FROM STDIN",
+                    employeeNames, EmployeeBulkRepository::appendEmployeeName);
+            } else {
+                return batchInsert(connection, "INSERT INTO " + table + " (" + EMPLOYEE_NAME_COLUMNS + ") VALUES (?, ?, ?, ?)",
+                    employeeNames, EmployeeBulkRepository::bindEmployeeName);
+            }
+        });
+    }
+
+    //-- Shadow table rebuild of the names -----------------------------------------------------------------------------
+
+    /**
+     * Create an empty shadow table for the names - without indexes and constraints, so it can be filled fast.
+     * An existing shadow table (e.g. of an aborted rebuild) is dropped.
+     */
+    public void createEmployeeNameShadowTable() {
+
+        executeStatements(
+            "DROP TABLE IF EXISTS " + EMPLOYEE_NAME_SHADOW_TABLE,
+            "CREATE TABLE " + EMPLOYEE_NAME_SHADOW_TABLE + " (owner_id bigint NOT NULL, company_id bigint NOT NULL,"
+                + " name_key varchar(2) NOT NULL, name_value varchar(255) NOT NULL)");
+    }
+
+    /**
+     * @return true, if there is a shadow table of a previous, unfinished rebuild
+     */
+    public boolean existsEmployeeNameShadowTable() {
+
+        return entityManager.unwrap(Session.class).doReturningWork(connection -> {
+            final String name = connection.getMetaData().storesUpperCaseIdentifiers()
+                ? EMPLOYEE_NAME_SHADOW_TABLE.toUpperCase() : EMPLOYEE_NAME_SHADOW_TABLE;
+            try (ResultSet resultSet = connection.getMetaData().getTables(null, null, name, new String[]{"TABLE"})) {
+                return resultSet.next();
+            }
+        });
+    }
+
+    /**
+     * Create the indexes and the foreign key of a filled shadow table and update its planner statistics.
+     * Bulk index creation after the load is much faster than maintaining the indexes row by row.
+     * <p>
+     * Employees deleted after their partition was copied left their names in the shadow table, which are removed
+     * before the foreign key is validated. On PostgreSQL the foreign key is added as NOT VALID first, so deletes
+     * cascade into the shadow table from then on and no new orphans can appear before the validation.
+     */
+    public void indexEmployeeNameShadowTable() {
+
+        final String fk = "ALTER TABLE " + EMPLOYEE_NAME_SHADOW_TABLE + " ADD CONSTRAINT " + EMPLOYEE_NAME_FK + "_new"
+            + " FOREIGN KEY (owner_id) REFERENCES employee (id) ON DELETE CASCADE";
+        final String deleteOrphans = "DELETE FROM " + EMPLOYEE_NAME_SHADOW_TABLE
+            + " WHERE NOT EXISTS (SELECT 1 FROM employee WHERE employee.id = " + EMPLOYEE_NAME_SHADOW_TABLE + ".owner_id)";
+        entityManager.unwrap(Session.class).doWork(connection -> {
+            executeStatements(connection,
+                "CREATE INDEX " + EMPLOYEE_NAME_INDEXES[0] + "_new ON " + EMPLOYEE_NAME_SHADOW_TABLE + " (company_id, name_key, name_value)",
+                "CREATE INDEX " + EMPLOYEE_NAME_INDEXES[1] + "_new ON " + EMPLOYEE_NAME_SHADOW_TABLE + " (owner_id)");
+            if (isCopySupported(connection)) {
+                executeStatements(connection,
+                    fk + " NOT VALID",
+                    deleteOrphans,
+                    "ALTER TABLE " + EMPLOYEE_NAME_SHADOW_TABLE + " VALIDATE CONSTRAINT " + EMPLOYEE_NAME_FK + "_new",
+                    "ANALYZE " + EMPLOYEE_NAME_SHADOW_TABLE);
+            } else {
+                executeStatements(connection, deleteOrphans, fk, "ANALYZE TABLE " + EMPLOYEE_NAME_SHADOW_TABLE);
+            }
+        });
+    }
+
+    /**
+     * Swap the shadow table with the live table and drop the old live table. Must be called within a transaction.
+     * On PostgreSQL DDL is transactional, so searches see either the old or the new table - never a mixture.
+     * <p>
+     * Before the swap the names of all employees, which were changed during the rebuild, are copied over from the
+     * live table: the employees inserted after the given id and the owners and companies of the change log (see
+     * {@link #logEmployeeNameChange(Long, Long)}). The change log is cleared afterwards.
+     *
+     * @param maxRebuiltOwnerId the highest employee id covered by the rebuild
+     */
+    public void swapEmployeeNameShadowTable(long maxRebuiltOwnerId) {
+
+        final String changed = " WHERE owner_id > " + maxRebuiltOwnerId
+            + " OR owner_id IN (SELECT owner_id FROM " + EMPLOYEE_NAME_CHANGE_TABLE + " WHERE owner_id IS NOT NULL)"
+            + " OR company_id IN (SELECT company_id FROM " + EMPLOYEE_NAME_CHANGE_TABLE + " WHERE owner_id IS NULL AND company_id IS NOT NULL)"
+            + " OR EXISTS (SELECT 1 FROM " + EMPLOYEE_NAME_CHANGE_TABLE + " WHERE owner_id IS NULL AND company_id IS NULL)";
+        entityManager.flush();
+        entityManager.unwrap(Session.class).doWork(connection -> {
+            if (isCopySupported(connection)) {
+                // blocks concurrent writers of names until the commit of the swap, readers are not blocked
+                executeStatements(connection, "LOCK TABLE " + EMPLOYEE_NAME_TABLE + " IN EXCLUSIVE MODE");
+            }
+            executeStatements(connection,
+                "DELETE FROM " + EMPLOYEE_NAME_SHADOW_TABLE + changed,
+                "INSERT INTO " + EMPLOYEE_NAME_SHADOW_TABLE + " (" + EMPLOYEE_NAME_COLUMNS + ") SELECT " + EMPLOYEE_NAME_COLUMNS
+                    + " FROM " + EMPLOYEE_NAME_TABLE + changed,
+                "DELETE FROM " + EMPLOYEE_NAME_CHANGE_TABLE,
+                "ALTER TABLE " + EMPLOYEE_NAME_TABLE + " RENAME TO " + EMPLOYEE_NAME_OLD_TABLE,
+                "ALTER TABLE " + EMPLOYEE_NAME_SHADOW_TABLE + " RENAME TO " + EMPLOYEE_NAME_TABLE,
+                "DROP TABLE " + EMPLOYEE_NAME_OLD_TABLE,
+                "ALTER INDEX " + EMPLOYEE_NAME_INDEXES[0] + "_new RENAME TO " + EMPLOYEE_NAME_INDEXES[0],
+                "ALTER INDEX " + EMPLOYEE_NAME_INDEXES[1] + "_new RENAME TO " + EMPLOYEE_NAME_INDEXES[1],
+                "ALTER TABLE " + EMPLOYEE_NAME_TABLE + " RENAME CONSTRAINT " + EMPLOYEE_NAME_FK + "_new TO " + EMPLOYEE_NAME_FK);
+        });
+    }
+
+    /**
+     * Record a change of names during a rebuild, so it is re-synced within the swap. Must be called within the
+     * transaction of the change.
+     *
+     * @param ownerId   the changed employee or null, if all employees of the company may have changed
+     * @param companyId the company or null together with a null owner, if employees of any company may have changed
+     */
+    public void logEmployeeNameChange(Long ownerId, Long companyId) {
+
+        entityManager.unwrap(Session.class).doWork(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(
+                "INSERT INTO " + EMPLOYEE_NAME_CHANGE_TABLE + " (owner_id, company_id) VALUES (?, ?)")) {
+                setNullableLong(statement, 1, ownerId);
+                setNullableLong(statement, 2, companyId);
+                statement.executeUpdate();
+            }
+        });
+    }
+
+    /**
+     * Clear the change log before a new rebuild.
+     */
+    public void clearEmployeeNameChanges() {
+        executeStatements("DELETE FROM " + EMPLOYEE_NAME_CHANGE_TABLE);
+    }
+
+    //------------------------------------------------------------------------------------------------------------------
+
+    private static boolean isCopySupported(Connection connection) throws SQLException {
+        return connection.isWrapperFor(PGConnection.class);
+    }
+
+    private void executeStatements(String... statements) {
+        entityManager.unwrap(Session.class).doWork(connection -> executeStatements(connection, statements));
+    }
+
+    private static void executeStatements(Connection connection, String... statements) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            for (String sql : statements) {
+                statement.execute(sql);
+            }
+        }
+    }
+
+    private static <T> int copyIn(Connection connection, String copySql, List<T> rows, CopyRowWriter<T> writer) throws SQLException {
+
+        final StringBuilder buffer = new StringBuilder(rows.size() * 128);
+        for (T row : rows) {
+            writer.write(buffer, row);
+        }
+        final CopyManager copyManager = connection.unwrap(PGConnection.class).getCopyAPI();
+        try {
+            return (int) copyManager.copyIn(copySql, new StringReader(buffer.toString()));
+        } catch (IOException e) {
+            throw new SQLException("Cannot stream data for " + copySql, e);
+        }
+    }
+
+    private static <T> int batchInsert(Connection connection, String insertSql, List<T> rows, RowBinder<T> binder) throws SQLException {
+
+        int count = 0;
+        try (PreparedStatement statement = connection.prepareStatement(insertSql)) {
+            for (T row : rows) {
+                binder.bind(statement, row);
+                statement.addBatch();
+                if (++count % JDBC_BATCH_SIZE == 0) {
+                    statement.executeBatch();
+                }
+            }
+            if (count % JDBC_BATCH_SIZE != 0) {
+                statement.executeBatch();
+            }
+        }
+        return count;
+    }
+
+    private static void appendEmployee(StringBuilder buffer, Employee employee) {
+        appendCopyValue(buffer, employee.getId(), false);
+        appendCopyValue(buffer, employee.getSurname(), false);
+        appendCopyValue(buffer, employee.getGivenName(), false);
+        appendCopyValue(buffer, employee.getDateOfBirth(), false);
+        appendCopyValue(buffer, employee.getGender() != null ? employee.getGender().name() : null, false);
+        appendCopyValue(buffer, employee.getPostalCode(), false);
+        appendCopyValue(buffer, employee.getCity(), false);
+        appendCopyValue(buffer, employee.getStreetAddress(), false);
+        appendCopyValue(buffer, employee.getCompany().getId(), true);
+    }
+
+    private static void appendEmployeeName(StringBuilder buffer, EmployeeName employeeName) {
+        appendCopyValue(buffer, employeeName.getId().getOwner().getId(), false);
+        appendCopyValue(buffer, employeeName.getCompany().getId(), false);
+        appendCopyValue(buffer, employeeName.getId().getNameKey(), false);
+        appendCopyValue(buffer, employeeName.getId().getNameValue(), true);
+    }
+
+    /**
+     * Append one value in the text format of COPY (tab separated, \N for null, backslash escapes)
+     */
+    private static void appendCopyValue(StringBuilder buffer, Object value, boolean last) {
+
+        if (value == null) {
+            buffer.append("\\N");
+        } else {
+            final String string = value.toString();
+            for (int i = 0; i < string.length(); i++) {
+                final char c = string.charAt(i);
+                switch (c) {
+                    case '\\':
+                        buffer.append("\\\\");
+                        break;
+                    case '\t':
+                        buffer.append("\\t");
+                        break;
+                    case '\n':
+                        buffer.append("\\n");
+                        break;
+                    case '\r':
+                        buffer.append("\\r");
+                        break;
+                    default:
+                        buffer.append(c);
+                }
+            }
+        }
+        buffer.append(last ? '\n' : '\t');
+    }
+
+    private static void bindEmployee(PreparedStatement statement, Employee employee) throws SQLException {
+        statement.setLong(1, employee.getId());
+        statement.setString(2, employee.getSurname());
+        setNullableString(statement, 3, employee.getGivenName());
+        if (employee.getDateOfBirth() != null) {
+            statement.setDate(4, Date.valueOf(employee.getDateOfBirth()));
+        } else {
+            statement.setNull(4, Types.DATE);
+        }
+        setNullableString(statement, 5, employee.getGender() != null ? employee.getGender().name() : null);
+        setNullableString(statement, 6, employee.getPostalCode());
+        setNullableString(statement, 7, employee.getCity());
+        setNullableString(statement, 8, employee.getStreetAddress());
+        statement.setLong(9, employee.getCompany().getId());
+    }
+
+    private static void bindEmployeeName(PreparedStatement statement, EmployeeName employeeName) throws SQLException {
+        statement.setLong(1, employeeName.getId().getOwner().getId());
+        statement.setLong(2, employeeName.getCompany().getId());
+        statement.setString(3, employeeName.getId().getNameKey());
+        statement.setString(4, employeeName.getId().getNameValue());
+    }
+
+    private static void setNullableLong(PreparedStatement statement, int index, Long value) throws SQLException {
+        if (value != null) {
+            statement.setLong(index, value);
+        } else {
+            statement.setNull(index, Types.BIGINT);
+        }
+    }
+
+    private static void setNullableString(PreparedStatement statement, int index, String value) throws SQLException {
+        if (value != null) {
+            statement.setString(index, value);
+        } else {
+            statement.setNull(index, Types.VARCHAR);
+        }
+    }
+
+    @FunctionalInterface
+    private interface CopyRowWriter<T> {
+        void write(StringBuilder buffer, T row);
+    }
+
+    @FunctionalInterface
+    private interface RowBinder<T> {
+        void bind(PreparedStatement statement, T row) throws SQLException;
+    }
 }
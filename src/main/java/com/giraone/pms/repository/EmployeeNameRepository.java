@@ -2,10 +2,17 @@ package com.giraone.pms.repository;
 
 import com.giraone.pms.domain.EmployeeName;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.QueryHint;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
 
 /**
  * Spring Data repository for the {@link EmployeeName} entity.
@@ -15,5 +22,39 @@ import org.springframework.transaction.annotation.Transactional;
 @Repository
 @Transactional(propagation = Propagation.MANDATORY)
 public interface EmployeeNameRepository extends JpaRepository<EmployeeName, Long> {
+
+    /**
+     * Name frequency statistics of a company for the search planner.
+     *
+     * @param companyId the company
+     * @return rows with name key, value prefix (2 characters), number of rows and number of distinct values
+     */
+    @Query(value = "SELECT name_key, SUBSTRING(name_value, 1, 2), COUNT(*), COUNT(DISTINCT name_value)" +
+        " FROM employee_name WHERE company_id = ?1" +
+        " GROUP BY name_key, SUBSTRING(name_value, 1, 2)", nativeQuery = true)
+    List<Object[]> findNameStatistics(long companyId);
+
+    /**
+     * All names of a company for the in memory name index.
+     *
+     * @param companyId the company
+     * @return rows with owner id, name key and name value
+     */
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query(value = "SELECT owner_id, name_key, name_value FROM employee_name WHERE company_id = ?1", nativeQuery = true)
+    Stream<Object[]> streamNamesByCompanyId(long companyId);
+
+    /**
+     * Number of names per name key and value of a company, e.g. the lowercase surnames and given names for the
+     * typeahead suggestions.
+     *
+     * @param companyId the company
+     * @param keys      the name keys
+     * @return rows with name key, name value and number of rows
+     */
+    @Query(value = "SELECT name_key, name_value, COUNT(*) FROM employee_name" +
+        " WHERE company_id = ?1 AND name_key IN (?2)" +
+        " GROUP BY name_key, name_value", nativeQuery = true)
+    List<Object[]> findNameCounts(long companyId, Collection<String> keys);
 }
 
@@ -2,6 +2,7 @@ package com.giraone.pms.repository;
 
 import com.giraone.pms.domain.Company;
 import com.giraone.pms.domain.Employee;
+import com.giraone.pms.domain.EmployeeName;
 import io.micrometer.core.annotation.Timed;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
@@ -9,13 +10,16 @@ import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.QueryHint;
 import java.time.LocalDate;
 import java.util.List;
+import java.util.stream.Stream;
 
 
 /**
@@ -32,6 +36,21 @@ public interface EmployeeRepository
     @Timed
     Page<Employee> findAllByCompany(Company company, Pageable pageable);
 
+    long countByCompanyId(long companyId);
+
+    /**
+     * @return one row with the number of employees and the number of distinct dates of birth of the company
+     */
+    @Query("SELECT count(e), count(distinct e.dateOfBirth) FROM Employee e WHERE e.company.id = ?1")
+    List<Object[]> findDateOfBirthStatistics(long companyId);
+
+    /**
+     * @return id and date of birth of all employees of the company ordered by id - for the in memory name index
+     */
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query("SELECT e.id, e.dateOfBirth FROM Employee e WHERE e.company.id = ?1 ORDER BY e.id")
+    Stream<Object[]> streamDatesOfBirthByCompanyId(long companyId);
+
     @Timed
     @Query("SELECT distinct e FROM Employee e, EmployeeName en" +
         " WHERE e = en.id.owner" +
@@ -113,6 +132,9 @@ public interface EmployeeRepository
      */
     int reIndex(List<Employee> employeeList, boolean skipDeletion);
 
+    @Query("SELECT en FROM EmployeeName en WHERE en.id.owner.id = ?1")
+    List<EmployeeName> findNamesByOwner(long ownerId);
+
     @Modifying
     @Transactional
     @Query("delete from EmployeeName en where en.id.owner.id = ?1")
@@ -122,4 +144,40 @@ public interface EmployeeRepository
     @Transactional
     @Query("delete from EmployeeName en where en.id.owner.id IN ?1")
     void deleteByOwners(List<Long> owners);
+
+    @Modifying
+    @Transactional
+    @Query("delete from EmployeeName en where en.id.owner.id > ?1 and en.id.owner.id <= ?2")
+    int deleteByOwnerIdRange(long afterId, long toId);
+
+    // --- KEYSET PAGINATION -------------------------------------------------------------------------------------------
+
+    @Query("SELECT min(e.id) FROM Employee e")
+    Long findMinId();
+
+    @Query("SELECT max(e.id) FROM Employee e")
+    Long findMaxId();
+
+    /**
+     * Keyset pagination by id. Only the page size of the pageable is used - the page number must be 0.
+     *
+     * @param afterId  exclusive lower bound of the ids
+     * @param toId     inclusive upper bound of the ids
+     * @param pageable the page size
+     * @return the employees ordered by id
+     */
+    @Query("SELECT e FROM Employee e WHERE e.id > :afterId AND e.id <= :toId ORDER BY e.id")
+    List<Employee> findAllByIdRange(@Param("afterId") long afterId, @Param("toId") long toId, Pageable pageable);
+
+    /**
+     * Keyset pagination of the employees of a company by id. Only the page size of the pageable is used.
+     *
+     * @param companyId the company
+     * @param afterId   exclusive lower bound of the ids
+     * @param pageable  the page size
+     * @return the employees ordered by id
+     */
+    @Query("SELECT e FROM Employee e WHERE e.company.id = :companyId AND e.id > :afterId ORDER BY e.id")
+    List<Employee> findAllByCompanyIdAfterId(@Param("companyId") long companyId, @Param("afterId") long afterId,
+                                             Pageable pageable);
 }
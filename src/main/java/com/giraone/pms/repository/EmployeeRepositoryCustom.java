@@ -1,5 +1,7 @@
 package com.giraone.pms.repository;
 
+import com.giraone.pms.domain.EmployeeName;
+
 import java.util.List;
 
 // The name must end in "Custom" - see https://jira.spring.io/browse/DATACMNS-1348?attachmentViewMode=list
@@ -38,4 +40,13 @@ public interface EmployeeRepositoryCustom<Employee> {
      * @return the number of re-indexed employees
      */
     int reIndex(List<Employee> employeeList, boolean skipDeletion);
+
+    /**
+     * Additional method to build the redundant names (normalized, phonetic) of an employee without storing them.
+     * Used by bulk loaders, that write the names bypassing JPA.
+     *
+     * @param employee the employee, which must have already an id
+     * @return list of EmployeeName entities
+     */
+    List<EmployeeName> buildNames(Employee employee);
 }
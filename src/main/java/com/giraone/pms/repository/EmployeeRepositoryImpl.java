@@ -2,21 +2,27 @@ package com.giraone.pms.repository;
 
 import com.giraone.pms.domain.Employee;
 import com.giraone.pms.domain.EmployeeName;
-import com.giraone.pms.domain.enumeration.EmployeeNameFilterKey;
 import com.giraone.pms.domain.filter.EmployeeNameKeyValue;
-import com.giraone.pms.service.NameNormalizeService;
+import com.giraone.pms.service.NameKeyValueService;
+import com.giraone.pms.service.impl.NameKeyValueServiceImpl;
 import com.giraone.pms.service.impl.NameNormalizeServiceImpl;
+import com.giraone.pms.service.search.EmployeeNamesChangedEvent;
 import com.google.common.collect.Lists;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 // The name must end in "Impl" - see https://jira.spring.io/browse/DATACMNS-1348?attachmentViewMode=list
 @SuppressWarnings("unused")
@@ -33,11 +39,20 @@ public class EmployeeRepositoryImpl implements EmployeeRepositoryCustom<Employee
     @Autowired
     private EmployeeNameRepository employeeNameRepository;
 
-    private NameNormalizeService nameNormalizeService = new NameNormalizeServiceImpl();
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    // The memoizing service bean is used, when available. Otherwise (e.g. in JPA slice tests) a local instance.
+    @Autowired
+    private ObjectProvider<NameKeyValueService> nameKeyValueServiceProvider;
 
+    private volatile NameKeyValueService nameKeyValueService;
 
     /**
-     * Customized save method of {@see JpaRepository} to store also the redundant employee names
+     * Customized save method of {@see JpaRepository} to store also the redundant employee names.
+     * On updates only the difference between the stored and the new names is written: removed names are deleted,
+     * added names are inserted (both batched by Hibernate) and unchanged names are not touched at all. So an update
+     * of e.g. the address does not write any employee name.
      *
      * @param employee the employee entity to be saved
      * @return the stored employee entity
@@ -49,20 +64,23 @@ public class EmployeeRepositoryImpl implements EmployeeRepositoryCustom<Employee
             log.debug("EmployeeRepositoryImpl.save " + employee.getId() + " " + employee.getSurname());
         }
 
+        // the redundant list of names for optimized querying (normalized, phonetic)
         if (employee.getId() == null) {
             em.persist(employee);
+            final Set<EmployeeNameKeyValue> keyValues = this.buildName(employee);
+            final List<EmployeeName> employeeNames = this.buildNames(employee, keyValues);
+            if (log.isDebugEnabled()) {
+                log.debug("EmployeeRepositoryImpl names=" + employeeNames);
+            }
+            // persist instead of saveAll, which performs a merge with a SELECT per name for the assigned ids
+            employeeNames.forEach(em::persist);
+            eventPublisher.publishEvent(EmployeeNamesChangedEvent.created(
+                employee.getCompany().getId(), employee.getId(), keyValues, employee.getDateOfBirth()));
         } else {
             employee = em.merge(employee);
+            this.updateNames(employee);
         }
 
-        // the redundant list of names for optimized querying (normalized, phonetic)
-        final List<EmployeeName> employeeNames = this.buildNames(employee);
-
-        if (log.isDebugEnabled()) {
-            log.debug("EmployeeRepositoryImpl names=" + employeeNames);
-        }
-        employeeNameRepository.saveAll(employeeNames);
-
         return employee;
     }
 
@@ -114,45 +132,91 @@ public class EmployeeRepositoryImpl implements EmployeeRepositoryCustom<Employee
         return employeeList.size();
     }
 
+    /**
+     * Incremental maintenance of the names of an already stored employee.
+     *
+     * @param employee the merged employee entity
+     */
+    private void updateNames(Employee employee) {
+
+        final List<EmployeeName> storedNames = employeeRepository.findNamesByOwner(employee.getId());
+        final Set<EmployeeNameKeyValue> newKeyValues = this.buildName(employee);
+
+        final Long companyId = employee.getCompany() != null ? employee.getCompany().getId() : null;
+        final Optional<Long> previousCompanyId = storedNames.stream()
+            .map(name -> name.getCompany().getId())
+            .filter(id -> !Objects.equals(id, companyId))
+            .findFirst();
+        if (previousCompanyId.isPresent()) {
+            // the company is part of every name row - a move to another company is rare, so all names are rewritten
+            final List<EmployeeNameKeyValue> storedKeyValues = storedNames.stream()
+                .map(name -> new EmployeeNameKeyValue(name.getId().getNameKey(), name.getId().getNameValue()))
+                .collect(Collectors.toList());
+            storedNames.forEach(em::detach);
+            employeeRepository.deleteByOwner(employee.getId());
+            newKeyValues.forEach(name -> em.persist(new EmployeeName(employee, name.getKey(), name.getValue())));
+            eventPublisher.publishEvent(EmployeeNamesChangedEvent.removed(previousCompanyId.get(), employee.getId(), storedKeyValues));
+            eventPublisher.publishEvent(EmployeeNamesChangedEvent.created(
+                companyId, employee.getId(), newKeyValues, employee.getDateOfBirth()));
+            return;
+        }
+
+        final List<EmployeeNameKeyValue> removedKeyValues = new ArrayList<>();
+        for (EmployeeName storedName : storedNames) {
+            final EmployeeNameKeyValue keyValue = new EmployeeNameKeyValue(
+                storedName.getId().getNameKey(), storedName.getId().getNameValue());
+            // what remains in the set after the loop, are the added names
+            if (!newKeyValues.remove(keyValue)) {
+                em.remove(storedName);
+                removedKeyValues.add(keyValue);
+            }
+        }
+        newKeyValues.forEach(name -> em.persist(new EmployeeName(employee, name.getKey(), name.getValue())));
+        // also published without name changes - other attributes may be used by searches (e.g. the date of birth)
+        eventPublisher.publishEvent(EmployeeNamesChangedEvent.updated(
+            companyId, employee.getId(), removedKeyValues, newKeyValues, employee.getDateOfBirth()));
+
+        if (log.isDebugEnabled()) {
+            log.debug("EmployeeRepositoryImpl.updateNames " + employee.getId() + " removed=" + removedKeyValues.size()
+                + " added=" + newKeyValues.size() + " unchanged=" + (storedNames.size() - removedKeyValues.size()));
+        }
+    }
+
     /**
      * Build the list of redundant EmployeeNames for an Employee entity
      *
      * @param employee the employee entity
      * @return list of EmployeeName entities
      */
-    private List<EmployeeName> buildNames(Employee employee) {
+    @Override
+    public List<EmployeeName> buildNames(Employee employee) {
+        return buildNames(employee, this.buildName(employee));
+    }
+
+    private List<EmployeeName> buildNames(Employee employee, Set<EmployeeNameKeyValue> keyValues) {
 
         final List<EmployeeName> names = new ArrayList<>();
-        this.buildName(employee)
-            .forEach(name -> names.add(new EmployeeName(employee, name.getKey(), name.getValue())));
+        keyValues.forEach(name -> names.add(new EmployeeName(employee, name.getKey(), name.getValue())));
         return names;
     }
 
     private Set<EmployeeNameKeyValue> buildName(Employee employee) {
 
-        final Set<EmployeeNameKeyValue> ret = new HashSet<>();
+        // the keys of a name are computed once and then served from the cache of the NameKeyValueService
+        final NameKeyValueService nameKeyValueService = getNameKeyValueService();
+        final Set<EmployeeNameKeyValue> ret = new HashSet<>(nameKeyValueService.buildSurnameKeyValues(employee.getSurname()));
+        ret.addAll(nameKeyValueService.buildGivenNameKeyValues(employee.getGivenName()));
+        return ret;
+    }
 
-        final String originalSurname = employee.getSurname();
-        final String normalizedSurname = nameNormalizeService.normalize(originalSurname);
-        if (normalizedSurname != null) {
-            ret.add(new EmployeeNameKeyValue(EmployeeNameFilterKey.LS.toString(), normalizedSurname));
-            final List<String> surNames = nameNormalizeService.split(normalizedSurname);
-            for (String name : surNames) {
-                ret.add(new EmployeeNameKeyValue(EmployeeNameFilterKey.NS.toString(), nameNormalizeService.reduceSimplePhonetic(name)));
-                ret.add(new EmployeeNameKeyValue(EmployeeNameFilterKey.PS.toString(), nameNormalizeService.phonetic(name)));
-            }
-        }
-        final String originalGivenName = employee.getGivenName();
-        final String normalizedGivenName = nameNormalizeService.normalize(originalGivenName);
-        if (normalizedGivenName != null) {
-            ret.add(new EmployeeNameKeyValue(EmployeeNameFilterKey.LG.toString(), normalizedGivenName));
-            final List<String> givenNames = nameNormalizeService.split(normalizedGivenName);
-            for (String name : givenNames) {
-                ret.add(new EmployeeNameKeyValue(EmployeeNameFilterKey.NG.toString(), nameNormalizeService.reduceSimplePhonetic(name)));
-                ret.add(new EmployeeNameKeyValue(EmployeeNameFilterKey.PG.toString(), nameNormalizeService.phonetic(name)));
-            }
+    private NameKeyValueService getNameKeyValueService() {
+
+        NameKeyValueService ret = nameKeyValueService;
+        if (ret == null) {
+            ret = nameKeyValueServiceProvider.getIfAvailable(() -> new NameKeyValueServiceImpl(
+                new NameNormalizeServiceImpl(), NameKeyValueServiceImpl.DEFAULT_MAXIMUM_SIZE));
+            nameKeyValueService = ret;
         }
         return ret;
     }
-
 }
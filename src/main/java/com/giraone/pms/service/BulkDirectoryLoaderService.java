@@ -0,0 +1,316 @@
+package com.giraone.pms.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.giraone.pms.config.ApplicationProperties;
+import com.giraone.pms.domain.enumeration.BulkLoaderMode;
+import com.giraone.pms.service.dto.EmployeeBulkDTO;
+import com.giraone.pms.service.util.BulkCheckpointStore;
+import com.giraone.pms.service.util.EmployeeBulkJsonReader;
+import com.google.common.io.CountingInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.concurrent.DelegatingSecurityContextExecutorService;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Server side loader for local bulk data, replacing the client loop of bulk-load.sh. The source is either
+ * <ul>
+ * <li>a directory tree with JSON array files (e.g. d-XXXXXXXX/f-XXXXXXXX.json) - one file is one unit or</li>
+ * <li>an NDJSON file (one employee per line) - one chunk of lines is one unit.</li>
+ * </ul>
+ * The units are distributed to N parallel workers. Each unit is stored in its own transaction by
+ * {@link EmployeeBulkService#save(List, BulkLoaderMode)} and checkpointed after the commit, so an interrupted load
+ * can be resumed. The new companies of a unit are created before, serialized over all workers.
+ */
+@Service
+public class BulkDirectoryLoaderService {
+
+    private final Logger log = LoggerFactory.getLogger(BulkDirectoryLoaderService.class);
+
+    /** Suffix of the checkpoint file, which is written next to the source */
+    public static final String CHECKPOINT_SUFFIX = ".checkpoint";
+
+    /**
+     * Receiver of the progress of a load. Called concurrently by the workers.
+     */
+    public interface ProgressListener {
+
+        /**
+         * Called once before the first unit is loaded.
+         *
+         * @param bytesTotal the size of all source files
+         */
+        void onStart(long bytesTotal);
+
+        /**
+         * Called after the commit of each unit.
+         *
+         * @param rows  the number of employees of the unit
+         * @param bytes the number of source bytes of the unit, as far as known
+         */
+        void onUnitCompleted(long rows, long bytes);
+
+        /**
+         * @return true, if the load should stop as soon as possible
+         */
+        boolean isCancelRequested();
+    }
+
+    private final EmployeeBulkService employeeBulkService;
+    private final ApplicationProperties applicationProperties;
+    private final EmployeeBulkJsonReader employeeBulkJsonReader;
+
+    public BulkDirectoryLoaderService(EmployeeBulkService employeeBulkService,
+                                      ApplicationProperties applicationProperties,
+                                      ObjectMapper objectMapper) {
+        this.employeeBulkService = employeeBulkService;
+        this.applicationProperties = applicationProperties;
+        this.employeeBulkJsonReader = new EmployeeBulkJsonReader(objectMapper);
+    }
+
+    /**
+     * Resolve a path relative to the configured import directory. Paths outside of the import directory are
+     * rejected, because the path is given by a REST client.
+     *
+     * @param path the relative path of a directory or NDJSON file
+     * @return the absolute path
+     * @throws IllegalArgumentException if the path is outside of the import directory or does not exist
+     */
+    public Path resolveSource(String path) {
+
+        final Path root = Paths.get(applicationProperties.getBulk().getImportDirectory()).toAbsolutePath().normalize();
+        final Path source = root.resolve(path != null ? path : "").normalize();
+        if (!source.startsWith(root)) {
+            throw new IllegalArgumentException("Path " + path + " is outside of the import directory!");
+        }
+        if (!Files.exists(source)) {
+            throw new IllegalArgumentException("Path " + path + " does not exist in the import directory!");
+        }
+        return source;
+    }
+
+    /**
+     * Load a directory tree or an NDJSON file with parallel workers.
+     *
+     * @param source     a directory with *.json files (JSON arrays) or a NDJSON file
+     * @param workers    number of parallel workers, if less than 1 the configured default is used
+     * @param chunkSize  number of employees per transaction for NDJSON (a JSON file is always one transaction),
+     *                   if less than 1 the configured default is used
+     * @param loaderMode the way the rows are written, if null the configured default is used
+     * @param resume     if true, units completed by a previous load of the same source are skipped
+     * @param listener   receiver of the progress
+     * @return the number of saved employees
+     * @throws IOException           on any I/O or JSON parsing error
+     * @throws CancellationException if the listener requested cancellation
+     */
+    public long load(Path source, int workers, int chunkSize, BulkLoaderMode loaderMode, boolean resume,
+                     ProgressListener listener) throws IOException {
+
+        final ApplicationProperties.Bulk bulk = applicationProperties.getBulk();
+        final int effectiveWorkers = workers > 0 ? workers : bulk.getLoaderWorkers();
+        final int effectiveChunkSize = chunkSize > 0 ? chunkSize : bulk.getChunkSize();
+        final Path checkpointFile = source.resolveSibling(source.getFileName() + CHECKPOINT_SUFFIX);
+
+        final long start = System.currentTimeMillis();
+        final ExecutorService pool = new DelegatingSecurityContextExecutorService(
+            Executors.newFixedThreadPool(effectiveWorkers, namedThreadFactory()));
+        try (BulkCheckpointStore checkpoints = new BulkCheckpointStore(checkpointFile, resume)) {
+            log.info("BulkDirectoryLoaderService.load: {} with {} workers, {} units already completed",
+                source, effectiveWorkers, checkpoints.size());
+            final UnitDispatcher dispatcher = new UnitDispatcher(pool, effectiveWorkers, checkpoints, loaderMode, listener);
+            try {
+                if (Files.isDirectory(source)) {
+                    loadDirectory(source, effectiveChunkSize, dispatcher, listener);
+                } else {
+                    loadNdjson(source, effectiveChunkSize, dispatcher, listener);
+                }
+            } finally {
+                // also on errors the running units must finish, before the checkpoint store is closed
+                dispatcher.awaitIdle();
+            }
+            final long ret = dispatcher.getSaved();
+            log.info("BulkDirectoryLoaderService.load: {} employees of {} saved in {} msec",
+                ret, source, System.currentTimeMillis() - start);
+            return ret;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    //------------------------------------------------------------------------------------------------------------------
+
+    private void loadDirectory(Path directory, int chunkSize, UnitDispatcher dispatcher, ProgressListener listener) throws IOException {
+
+        final List<Path> files;
+        try (Stream<Path> paths = Files.walk(directory)) {
+            files = paths
+                .filter(Files::isRegularFile)
+                .filter(file -> file.getFileName().toString().endsWith(".json"))
+                .sorted()
+                .collect(Collectors.toList());
+        }
+        long bytesTotal = 0L;
+        for (Path file : files) {
+            bytesTotal += Files.size(file);
+        }
+        listener.onStart(bytesTotal);
+
+        for (Path file : files) {
+            final String unit = directory.relativize(file).toString();
+            final long bytes = Files.size(file);
+            dispatcher.dispatch(unit, bytes, () -> {
+                final List<EmployeeBulkDTO> employees = new ArrayList<>();
+                try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+                    // a file is one unit, so all chunks of the file are stored in one transaction
+                    employeeBulkJsonReader.read(in, chunkSize, employees::addAll);
+                }
+                return employees;
+            });
+        }
+    }
+
+    private void loadNdjson(Path file, int chunkSize, UnitDispatcher dispatcher, ProgressListener listener) throws IOException {
+
+        listener.onStart(Files.size(file));
+        final AtomicInteger chunkIndex = new AtomicInteger();
+        final AtomicReference<IOException> dispatchError = new AtomicReference<>();
+        try (CountingInputStream in = new CountingInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            final long[] lastCount = new long[1];
+            employeeBulkJsonReader.readNdjson(in, chunkSize, chunk -> {
+                // the parser reads ahead, so the bytes of a chunk are only an approximation
+                final long bytes = in.getCount() - lastCount[0];
+                lastCount[0] = in.getCount();
+                try {
+                    dispatcher.dispatch(String.format("chunk-%08d", chunkIndex.getAndIncrement()), bytes,
+                        () -> chunk);
+                } catch (IOException e) {
+                    dispatchError.set(e);
+                    throw new CancellationException(e.getMessage());
+                }
+            });
+        } catch (CancellationException e) {
+            if (dispatchError.get() != null) {
+                throw dispatchError.get();
+            }
+            throw e;
+        }
+    }
+
+    private static ThreadFactory namedThreadFactory() {
+        final AtomicInteger threadNumber = new AtomicInteger();
+        return runnable -> new Thread(runnable, "pmssql-BulkLoader-" + threadNumber.incrementAndGet());
+    }
+
+    @FunctionalInterface
+    private interface UnitReader {
+        List<EmployeeBulkDTO> read() throws IOException;
+    }
+
+    /**
+     * Hands the units over to the workers. At most two units per worker are pending, so a large NDJSON file is
+     * never read much faster than it is written. The first error stops the dispatching of further units.
+     */
+    private class UnitDispatcher {
+
+        private final ExecutorService pool;
+        private final Semaphore pending;
+        private final int maxPending;
+        private final BulkCheckpointStore checkpoints;
+        private final BulkLoaderMode loaderMode;
+        private final ProgressListener listener;
+        private final List<Exception> errors = Collections.synchronizedList(new ArrayList<>());
+        private final AtomicLong saved = new AtomicLong();
+
+        UnitDispatcher(ExecutorService pool, int workers, BulkCheckpointStore checkpoints, BulkLoaderMode loaderMode,
+                       ProgressListener listener) {
+            this.pool = pool;
+            this.maxPending = workers * 2;
+            this.pending = new Semaphore(maxPending);
+            this.checkpoints = checkpoints;
+            this.loaderMode = loaderMode;
+            this.listener = listener;
+        }
+
+        void dispatch(String unit, long bytes, UnitReader reader) throws IOException {
+
+            throwIfStopped();
+            if (checkpoints.isCompleted(unit)) {
+                listener.onUnitCompleted(0L, bytes);
+                return;
+            }
+            try {
+                pending.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Interrupted");
+            }
+            pool.execute(() -> {
+                try {
+                    if (errors.isEmpty() && !listener.isCancelRequested()) {
+                        final List<EmployeeBulkDTO> employees = reader.read();
+                        // new companies are created one unit at a time - parallel units would insert them twice
+                        employeeBulkService.createMissingCompanies(employees);
+                        // a proxied call - every unit is committed in its own transaction
+                        final int count = employeeBulkService.save(employees, loaderMode);
+                        checkpoints.markCompleted(unit);
+                        saved.addAndGet(count);
+                        listener.onUnitCompleted(count, bytes);
+                        log.debug("BulkDirectoryLoaderService: unit {} with {} employees committed", unit, count);
+                    }
+                } catch (Exception e) {
+                    log.error("BulkDirectoryLoaderService: unit {} failed!", unit, e);
+                    errors.add(e);
+                } finally {
+                    pending.release();
+                }
+            });
+        }
+
+        void awaitIdle() {
+
+            // all permits are free again, when the last unit is finished
+            pending.acquireUninterruptibly(maxPending);
+            pending.release(maxPending);
+        }
+
+        long getSaved() throws IOException {
+
+            throwIfStopped();
+            return saved.get();
+        }
+
+        private void throwIfStopped() throws IOException {
+
+            if (!errors.isEmpty()) {
+                final Exception first = errors.get(0);
+                if (first instanceof IOException) {
+                    throw (IOException) first;
+                }
+                throw new IllegalStateException("Bulk load failed: " + first.getMessage(), first);
+            }
+            if (listener.isCancelRequested()) {
+                throw new CancellationException("Bulk load cancelled");
+            }
+        }
+    }
+}
@@ -0,0 +1,449 @@
+package com.giraone.pms.service;
+
+import com.giraone.pms.config.ApplicationProperties;
+import com.giraone.pms.domain.enumeration.BulkJobPhase;
+import com.giraone.pms.domain.enumeration.BulkLoaderMode;
+import com.giraone.pms.domain.enumeration.ReIndexMode;
+import com.giraone.pms.service.dto.BulkJobStatusDTO;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+
+/**
+ * Asynchronous bulk load jobs. An upload is spooled to a temporary file by the HTTP thread and then loaded by a
+ * bounded worker pool using {@link EmployeeBulkService#saveStream}. Server side directories or NDJSON files are
+ * loaded by the same pool using the {@link BulkDirectoryLoaderService}, re-index runs using the
+ * {@link EmployeeReIndexService}. When all workers are busy and the queue is full,
+ * new jobs are rejected, so a node is never overloaded by parallel loads.
+ * <p>
+ * Each job holds one of the slots (workers plus queue capacity) from its submit until it is finished. The slot is
+ * reserved before an upload is read, so parallel uploads cannot spool more jobs than the queue takes.
+ */
+@Service
+public class BulkJobService {
+
+    private final Logger log = LoggerFactory.getLogger(BulkJobService.class);
+
+    /** Number of finished jobs, whose status is kept for the status endpoint */
+    private static final int MAX_FINISHED_JOBS = 100;
+
+    private final EmployeeBulkService employeeBulkService;
+    private final BulkDirectoryLoaderService bulkDirectoryLoaderService;
+    private final EmployeeReIndexService employeeReIndexService;
+    private final ThreadPoolExecutor executor;
+    private final Semaphore slots;
+    private final long maxSpoolBytes;
+
+    private final Map<String, BulkJob> jobs = new ConcurrentHashMap<>();
+
+    public BulkJobService(EmployeeBulkService employeeBulkService,
+                          BulkDirectoryLoaderService bulkDirectoryLoaderService,
+                          EmployeeReIndexService employeeReIndexService,
+                          ApplicationProperties applicationProperties) {
+
+        this.employeeBulkService = employeeBulkService;
+        this.bulkDirectoryLoaderService = bulkDirectoryLoaderService;
+        this.employeeReIndexService = employeeReIndexService;
+        final ApplicationProperties.Bulk bulk = applicationProperties.getBulk();
+        final AtomicInteger threadNumber = new AtomicInteger();
+        final int jobSlots = bulk.getJobWorkers() + bulk.getJobQueueCapacity();
+        // the slots limit the jobs - a worker still runs the end of a job after releasing its slot, so the queue
+        // of the executor is larger than the configured capacity
+        this.executor = new ThreadPoolExecutor(bulk.getJobWorkers(), bulk.getJobWorkers(), 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(jobSlots),
+            runnable -> new Thread(runnable, "pmssql-BulkJob-" + threadNumber.incrementAndGet()),
+            new ThreadPoolExecutor.AbortPolicy());
+        this.slots = new Semaphore(jobSlots);
+        this.maxSpoolBytes = bulk.getJobSpoolMegabytes() * 1024L * 1024L;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        jobs.values().forEach(job -> job.cancelRequested = true);
+        executor.shutdown();
+    }
+
+    /**
+     * @return true, if a new job would be rejected, because all workers are busy and the queue is full
+     */
+    public boolean isSaturated() {
+        return slots.availablePermits() == 0;
+    }
+
+    /**
+     * Spool an upload with a JSON array of employees to a temporary file and queue it for loading.
+     *
+     * @param inputStream the upload - it is read completely by the calling thread, unless the job is rejected
+     * @param chunkSize   number of employees per transaction, if less than 1 the configured default is used
+     * @param loaderMode  the way the rows are written, if null the configured default is used
+     * @return the status of the new job
+     * @throws IOException                 on any I/O error when spooling the upload
+     * @throws RejectedExecutionException  if the queue of the workers is full
+     * @throws BulkUploadTooLargeException if the upload exceeds the configured spool size
+     */
+    public BulkJobStatusDTO submit(InputStream inputStream, int chunkSize, BulkLoaderMode loaderMode) throws IOException {
+
+        final BulkJob job = reserveSlot(new BulkJob(Files.createTempFile("bulk-job-", ".json")));
+        try {
+            job.bytesTotal = spool(inputStream, job.spoolFile);
+            return this.queue(job, () -> this.loadSpoolFile(job, chunkSize, loaderMode));
+        } catch (IOException | RuntimeException e) {
+            releaseSlot(job);
+            deleteSpoolFile(job);
+            throw e;
+        }
+    }
+
+    /**
+     * Queue the load of a directory tree with JSON files or of an NDJSON file on the server with parallel workers.
+     * See {@link BulkDirectoryLoaderService}.
+     *
+     * @param path       the path of the directory or NDJSON file relative to the configured import directory
+     * @param workers    number of parallel workers, if less than 1 the configured default is used
+     * @param chunkSize  number of employees per transaction for NDJSON, if less than 1 the configured default is used
+     * @param loaderMode the way the rows are written, if null the configured default is used
+     * @param resume     if true, files or chunks completed by a previous load of the same source are skipped
+     * @return the status of the new job
+     * @throws IllegalArgumentException   if the path is invalid
+     * @throws RejectedExecutionException if the queue of the workers is full
+     */
+    public BulkJobStatusDTO submitDirectory(String path, int workers, int chunkSize, BulkLoaderMode loaderMode,
+                                            boolean resume) {
+
+        final Path source = bulkDirectoryLoaderService.resolveSource(path);
+        final BulkJob job = reserveSlot(new BulkJob(null));
+        return this.queue(job, () -> bulkDirectoryLoaderService.load(source, workers, chunkSize, loaderMode, resume,
+            new BulkDirectoryLoaderService.ProgressListener() {
+                @Override
+                public void onStart(long bytesTotal) {
+                    job.bytesTotal = bytesTotal;
+                }
+
+                @Override
+                public void onUnitCompleted(long rows, long bytes) {
+                    job.rowsSaved.addAndGet(rows);
+                    job.bytesDone.addAndGet(bytes);
+                }
+
+                @Override
+                public boolean isCancelRequested() {
+                    return job.cancelRequested;
+                }
+            }));
+    }
+
+    /**
+     * Queue a re-index of the names of all employees. See {@link EmployeeReIndexService}.
+     *
+     * @param mode       in place or in a shadow table, if null in place is used
+     * @param clearFirst if true, existing names are deleted before the new ones are inserted (in place only)
+     * @param resume     if true, partitions completed by a previous, interrupted re-index are skipped
+     * @param workers    number of partitions processed in parallel, if less than 1 the configured default is used
+     * @return the status of the new job
+     * @throws ReIndexRunningException    if another re-index is queued or running
+     * @throws RejectedExecutionException if the queue of the workers is full
+     */
+    public BulkJobStatusDTO submitReIndex(ReIndexMode mode, boolean clearFirst, boolean resume, int workers) {
+
+        // reserved from the submit, so a second re-index is rejected even while the first one is queued
+        final EmployeeReIndexService.Reservation reservation = employeeReIndexService.reserve();
+        final BulkJob job;
+        try {
+            job = reserveSlot(new BulkJob(null));
+        } catch (RejectedExecutionException e) {
+            reservation.close();
+            throw e;
+        }
+        job.reIndexReservation = reservation;
+        final EmployeeReIndexService.ProgressListener listener = new EmployeeReIndexService.ProgressListener() {
+            @Override
+            public void onStart(long employeesTotal) {
+                job.rowsTotal = employeesTotal;
+            }
+
+            @Override
+            public void onPageCompleted(long employees) {
+                job.rowsSaved.addAndGet(employees);
+            }
+
+            @Override
+            public boolean isCancelRequested() {
+                return job.cancelRequested;
+            }
+        };
+        if (mode == ReIndexMode.SHADOW) {
+            return this.queue(job, () -> employeeReIndexService.rebuild(reservation, resume, workers, listener));
+        }
+        return this.queue(job, () -> employeeReIndexService.reIndex(reservation, clearFirst, resume, workers, listener));
+    }
+
+    /**
+     * @param jobId the id of the job
+     * @return the current status of the job or empty, if the job is unknown
+     */
+    public Optional<BulkJobStatusDTO> getStatus(String jobId) {
+        return Optional.ofNullable(jobs.get(jobId)).map(BulkJob::toStatus);
+    }
+
+    /**
+     * @return the status of all known jobs, newest first
+     */
+    public List<BulkJobStatusDTO> getAllStatus() {
+        return jobs.values().stream()
+            .sorted(Comparator.comparing((BulkJob job) -> job.submitted).reversed())
+            .map(BulkJob::toStatus)
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Cancel a job. A queued job is removed from the queue, a running job stops after its current chunk.
+     * The chunks committed before are not rolled back.
+     *
+     * @param jobId the id of the job
+     * @return the status of the job or empty, if the job is unknown
+     */
+    public Optional<BulkJobStatusDTO> cancel(String jobId) {
+
+        final BulkJob job = jobs.get(jobId);
+        if (job == null) {
+            return Optional.empty();
+        }
+        job.cancelRequested = true;
+        if (job.phase == BulkJobPhase.QUEUED && job.future != null && job.future.cancel(false)) {
+            job.finish(BulkJobPhase.CANCELLED, null);
+            deleteSpoolFile(job);
+            // free the slot in the queue immediately
+            executor.purge();
+            releaseSlot(job);
+        }
+        return Optional.of(job.toStatus());
+    }
+
+    //------------------------------------------------------------------------------------------------------------------
+
+    /**
+     * @return the job, which holds a slot until {@link #releaseSlot(BulkJob)}
+     * @throws RejectedExecutionException if all slots are taken
+     */
+    private BulkJob reserveSlot(BulkJob job) {
+
+        if (!slots.tryAcquire()) {
+            deleteSpoolFile(job);
+            throw new RejectedExecutionException("All bulk job workers are busy and the queue is full!");
+        }
+        job.slotReserved.set(true);
+        return job;
+    }
+
+    private void releaseSlot(BulkJob job) {
+        // a job, which is cancelled while it starts, is released by the cancel and by the worker
+        if (job.slotReserved.compareAndSet(true, false)) {
+            slots.release();
+            if (job.reIndexReservation != null) {
+                job.reIndexReservation.close();
+            }
+        }
+    }
+
+    /**
+     * Copy the upload to the spool file, but not more than the configured maximum.
+     *
+     * @return the size of the spool file
+     */
+    private long spool(InputStream inputStream, Path spoolFile) throws IOException {
+
+        final long size;
+        try (OutputStream out = Files.newOutputStream(spoolFile)) {
+            size = ByteStreams.copy(ByteStreams.limit(inputStream, maxSpoolBytes + 1L), out);
+        }
+        if (size > maxSpoolBytes) {
+            throw new BulkUploadTooLargeException("The upload exceeds the maximum of " + maxSpoolBytes + " bytes!");
+        }
+        return size;
+    }
+
+    /**
+     * Queue a job with a reserved slot. If the job is rejected, the slot is released.
+     */
+    private BulkJobStatusDTO queue(BulkJob job, BulkJobWork work) {
+
+        // the bulk API is restricted to admins, so the worker uses the security context of the submitter
+        job.securityContext.setAuthentication(SecurityContextHolder.getContext().getAuthentication());
+        jobs.put(job.id, job);
+        try {
+            job.future = executor.submit(() -> this.run(job, work));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.id);
+            releaseSlot(job);
+            throw e;
+        }
+        removeOldJobs();
+        log.info("BulkJobService.queue: job {} with {} bytes queued", job.id, job.bytesTotal);
+        return job.toStatus();
+    }
+
+    private void run(BulkJob job, BulkJobWork work) {
+
+        if (job.cancelRequested) {
+            job.finish(BulkJobPhase.CANCELLED, null);
+            deleteSpoolFile(job);
+            releaseSlot(job);
+            return;
+        }
+        SecurityContextHolder.setContext(job.securityContext);
+        job.started = Instant.now();
+        job.phase = BulkJobPhase.LOADING;
+        try {
+            work.execute();
+            job.finish(BulkJobPhase.COMPLETED, null);
+            log.info("BulkJobService.run: job {} completed with {} employees", job.id, job.rowsSaved.get());
+        } catch (CancellationException e) {
+            job.finish(BulkJobPhase.CANCELLED, null);
+            log.info("BulkJobService.run: job {} cancelled after {} employees", job.id, job.rowsSaved.get());
+        } catch (Exception e) {
+            job.finish(BulkJobPhase.FAILED, e.getMessage());
+            log.error("BulkJobService.run: job {} failed after {} employees!", job.id, job.rowsSaved.get(), e);
+        } finally {
+            SecurityContextHolder.clearContext();
+            deleteSpoolFile(job);
+            releaseSlot(job);
+        }
+    }
+
+    private void loadSpoolFile(BulkJob job, int chunkSize, BulkLoaderMode loaderMode) throws IOException {
+
+        try (CountingInputStream in = new CountingInputStream(new BufferedInputStream(Files.newInputStream(job.spoolFile)))) {
+            job.bytesRead = in::getCount;
+            employeeBulkService.saveStream(in, chunkSize, loaderMode, saved -> {
+                job.rowsSaved.set(saved);
+                if (job.cancelRequested) {
+                    throw new CancellationException("Job " + job.id + " cancelled");
+                }
+            });
+        }
+    }
+
+    private void removeOldJobs() {
+
+        final List<BulkJob> finishedJobs = jobs.values().stream()
+            .filter(job -> job.phase.isFinished())
+            .sorted(Comparator.comparing((BulkJob job) -> job.finished))
+            .collect(Collectors.toList());
+        for (int i = 0; i < finishedJobs.size() - MAX_FINISHED_JOBS; i++) {
+            jobs.remove(finishedJobs.get(i).id);
+        }
+    }
+
+    private void deleteSpoolFile(BulkJob job) {
+        if (job.spoolFile == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(job.spoolFile);
+        } catch (IOException e) {
+            log.warn("Cannot delete spool file {} of bulk job {}!", job.spoolFile, job.id, e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface BulkJobWork {
+        void execute() throws Exception;
+    }
+
+    private static class BulkJob {
+
+        private final String id = UUID.randomUUID().toString();
+        /** The spooled upload or null for loads of server side files */
+        private final Path spoolFile;
+        private final SecurityContext securityContext = SecurityContextHolder.createEmptyContext();
+        private final Instant submitted = Instant.now();
+        private final AtomicLong rowsSaved = new AtomicLong();
+        /** The bytes of completed files or chunks, used when there is no stream to count the consumed bytes */
+        private final AtomicLong bytesDone = new AtomicLong();
+        /** True from the submit until the job is finished - the job holds one of the slots */
+        private final AtomicBoolean slotReserved = new AtomicBoolean();
+
+        private volatile Future<?> future;
+        /** The reservation of a re-index job, which is closed together with the slot */
+        private volatile EmployeeReIndexService.Reservation reIndexReservation;
+        private volatile long bytesTotal;
+        private volatile long rowsTotal;
+        private volatile LongSupplier bytesRead = bytesDone::get;
+        private volatile BulkJobPhase phase = BulkJobPhase.QUEUED;
+        private volatile boolean cancelRequested;
+        private volatile Instant started;
+        private volatile Instant finished;
+        private volatile String message;
+
+        BulkJob(Path spoolFile) {
+            this.spoolFile = spoolFile;
+        }
+
+        void finish(BulkJobPhase phase, String message) {
+            this.finished = Instant.now();
+            this.message = message;
+            this.phase = phase;
+        }
+
+        BulkJobStatusDTO toStatus() {
+
+            final BulkJobStatusDTO ret = new BulkJobStatusDTO();
+            ret.setId(id);
+            ret.setPhase(phase);
+            ret.setRowsSaved(rowsSaved.get());
+            ret.setRowsTotal(rowsTotal);
+            ret.setBytesTotal(bytesTotal);
+            ret.setSubmitted(submitted);
+            ret.setStarted(started);
+            ret.setFinished(finished);
+            ret.setMessage(message);
+            final long read = bytesRead.getAsLong();
+            ret.setBytesRead(read);
+            if (started != null) {
+                final long millis = Math.max(1L, (finished != null ? finished : Instant.now()).toEpochMilli() - started.toEpochMilli());
+                ret.setRowsPerSecond(rowsSaved.get() * 1000.0 / millis);
+                if (phase == BulkJobPhase.LOADING) {
+                    final long rows = rowsSaved.get();
+                    if (rowsTotal > 0 && rows > 0) {
+                        ret.setEtaSeconds(Math.max(0L, rowsTotal - rows) * millis / rows / 1000L);
+                    } else if (read > 0) {
+                        // for loads the number of rows is not known upfront, so the consumed bytes are used
+                        ret.setEtaSeconds(Math.max(0L, bytesTotal - read) * millis / read / 1000L);
+                    }
+                }
+            }
+            return ret;
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.giraone.pms.service;
+
+/**
+ * Thrown, when an upload for a bulk job exceeds the configured maximum spool size.
+ */
+public class BulkUploadTooLargeException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public BulkUploadTooLargeException(String message) {
+        super(message);
+    }
+}
@@ -1,12 +1,16 @@
 package com.giraone.pms.service;
 
+import com.giraone.pms.domain.enumeration.BulkLoaderMode;
 import com.giraone.pms.service.dto.EmployeeBulkDTO;
 import com.giraone.pms.service.dto.EmployeeDTO;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.LongConsumer;
 
 /**
  * Service Interface for bulk managing Employee.
@@ -21,5 +25,55 @@ public interface EmployeeBulkService {
      */
     int save(List<EmployeeBulkDTO> employeeDTOList);
 
+    /**
+     * Save a list of employees in one transaction using a given loader mode.
+     *
+     * @param employeeDTOList the entity list to save
+     * @param loaderMode      the way the rows are written, if null the configured default is used
+     * @return the number of saved employees
+     */
+    int save(List<EmployeeBulkDTO> employeeDTOList, BulkLoaderMode loaderMode);
+
+    /**
+     * Create the missing companies of a list of employees in a transaction of its own. Parallel loaders call it
+     * before {@link #save(List, BulkLoaderMode)}, so a new company shared by several units is created only once.
+     *
+     * @param employeeDTOList the employees, whose companies should exist
+     */
+    void createMissingCompanies(List<EmployeeBulkDTO> employeeDTOList);
+
+    /**
+     * Save employees read from a stream with a JSON array. The stream is parsed incrementally and the employees
+     * are committed in chunks, each in its own transaction, so memory usage does not depend on the stream size.
+     *
+     * @param inputStream the stream containing the JSON array of employees
+     * @param chunkSize   number of employees per transaction, if less than 1 the configured default is used
+     * @param loaderMode  the way the rows are written, if null the configured default is used
+     * @return the number of saved employees
+     * @throws IOException on any I/O or JSON parsing error
+     */
+    long saveStream(InputStream inputStream, int chunkSize, BulkLoaderMode loaderMode) throws IOException;
+
+    /**
+     * Save employees read from a stream with a JSON array in chunks and report the progress after each chunk.
+     *
+     * @param inputStream      the stream containing the JSON array of employees
+     * @param chunkSize        number of employees per transaction, if less than 1 the configured default is used
+     * @param loaderMode       the way the rows are written, if null the configured default is used
+     * @param progressListener called with the total number of saved employees after each committed chunk, may be
+     *                         null. It can stop the load by throwing a {@link java.util.concurrent.CancellationException}.
+     * @return the number of saved employees
+     * @throws IOException on any I/O or JSON parsing error
+     */
+    long saveStream(InputStream inputStream, int chunkSize, BulkLoaderMode loaderMode, LongConsumer progressListener)
+        throws IOException;
+
+    /**
+     * Re-index the names of all employees in place.
+     *
+     * @param clearFirst if true, the existing names are deleted before the new ones are inserted
+     * @return the number of re-indexed employees
+     * @throws ReIndexRunningException if another re-index is queued or running
+     */
     int reIndex(boolean clearFirst);
 }
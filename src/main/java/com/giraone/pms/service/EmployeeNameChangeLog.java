@@ -0,0 +1,134 @@
+package com.giraone.pms.service;
+
+import com.giraone.pms.repository.EmployeeBulkRepository;
+import com.giraone.pms.service.search.EmployeeNamesChangedEvent;
+import com.giraone.pms.service.search.EmployeesChangedEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Change log of the names during a shadow table rebuild (see {@link EmployeeReIndexService#rebuild}). While a rebuild
+ * is active, the owner (or the company of a bulk change) of each {@link EmployeesChangedEvent} is written to the
+ * table employee_name_change within the writing transaction, so the swap re-syncs exactly the changes, which the
+ * rebuild may have missed.
+ * <p>
+ * The log stays active after a failed rebuild, so changes until the resume are recorded as well. Transactions, which
+ * changed names before the log was activated, are awaited by {@link #start()}.
+ */
+@Service
+public class EmployeeNameChangeLog {
+
+    private final Logger log = LoggerFactory.getLogger(EmployeeNameChangeLog.class);
+
+    private static final long WAIT_MILLIS = 50L;
+
+    private final EmployeeBulkRepository employeeBulkRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    private volatile boolean active;
+    /** Running transactions with changes, which were not logged */
+    private final AtomicInteger unlogged = new AtomicInteger();
+
+    public EmployeeNameChangeLog(EmployeeBulkRepository employeeBulkRepository,
+                                 PlatformTransactionManager transactionManager) {
+        this.employeeBulkRepository = employeeBulkRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * The shadow table of an interrupted rebuild survives a restart, so the log must be active until its resume.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void init() {
+
+        active = Boolean.TRUE.equals(transactionTemplate.execute(status -> employeeBulkRepository.existsEmployeeNameShadowTable()));
+        if (active) {
+            log.info("EmployeeNameChangeLog: shadow table of an unfinished rebuild found, logging changes");
+        }
+    }
+
+    /**
+     * @return true, if changes are logged
+     */
+    public boolean isActive() {
+        return active;
+    }
+
+    /**
+     * Start logging and wait until all transactions, which have changed names without logging, are completed.
+     * Afterwards every change, which is not yet visible to the rebuild, is logged.
+     *
+     * @throws CancellationException if the thread is interrupted while waiting
+     */
+    public void start() {
+
+        active = true;
+        final long start = System.currentTimeMillis();
+        while (unlogged.get() > 0) {
+            try {
+                Thread.sleep(WAIT_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Interrupted while waiting for running transactions");
+            }
+        }
+        log.info("EmployeeNameChangeLog: started after {} msec", System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Stop logging after the swap.
+     */
+    public void stop() {
+        active = false;
+    }
+
+    /**
+     * Log the change within the writing transaction. Without a transaction the change is already committed and
+     * logged in a transaction of its own.
+     */
+    @EventListener
+    public void onEmployeesChanged(EmployeesChangedEvent event) {
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            if (active) {
+                transactionTemplate.execute(status -> {
+                    logChange(event);
+                    return null;
+                });
+            }
+            return;
+        }
+        // counted before the flag is read, so start() either sees the transaction or the transaction sees the flag
+        unlogged.incrementAndGet();
+        if (active) {
+            unlogged.decrementAndGet();
+            logChange(event);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCompletion(int status) {
+                unlogged.decrementAndGet();
+            }
+        });
+    }
+
+    private void logChange(EmployeesChangedEvent event) {
+
+        if (event instanceof EmployeeNamesChangedEvent) {
+            employeeBulkRepository.logEmployeeNameChange(((EmployeeNamesChangedEvent) event).getEmployeeId(), event.getCompanyId());
+        } else {
+            employeeBulkRepository.logEmployeeNameChange(null, event.getCompanyId());
+        }
+    }
+}
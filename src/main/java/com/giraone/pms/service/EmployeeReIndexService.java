@@ -0,0 +1,420 @@
+package com.giraone.pms.service;
+
+import com.giraone.pms.config.ApplicationProperties;
+import com.giraone.pms.domain.Employee;
+import com.giraone.pms.domain.EmployeeName;
+import com.giraone.pms.repository.EmployeeBulkRepository;
+import com.giraone.pms.repository.EmployeeRepository;
+import com.giraone.pms.service.search.EmployeesChangedEvent;
+import com.giraone.pms.service.util.BulkCheckpointStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Re-index engine for the redundant names (table employee_name) of all employees.
+ * <p>
+ * The id space is split into fixed id range partitions, which are processed by parallel workers. Each partition is
+ * walked with keyset pagination (id &gt; last id ORDER BY id), every page in its own short transaction, so there is
+ * no OFFSET and no growing persistence context. Completed partitions are written to a checkpoint file, so a crashed
+ * re-index can be resumed. The partitions are aligned to multiples of the partition size and therefore stable
+ * between runs.
+ * <p>
+ * The names are either re-indexed in place in the live table or rebuilt in a shadow table, which replaces the live
+ * table at the end. Only one re-index or rebuild runs at a time (see {@link #reserve()}), because they share the
+ * checkpoint files, the shadow table and the {@link EmployeeNameChangeLog}.
+ */
+@Service
+public class EmployeeReIndexService {
+
+    private final Logger log = LoggerFactory.getLogger(EmployeeReIndexService.class);
+
+    /** Suffix of the checkpoint file of a shadow table rebuild */
+    private static final String REBUILD_CHECKPOINT_SUFFIX = ".rebuild";
+
+    /**
+     * Receiver of the progress of a re-index. Called concurrently by the workers.
+     */
+    public interface ProgressListener {
+
+        /**
+         * Called once before the first partition is processed.
+         *
+         * @param employeesTotal the number of employees
+         */
+        void onStart(long employeesTotal);
+
+        /**
+         * Called after the commit of each page.
+         *
+         * @param employees the number of re-indexed employees of the page
+         */
+        void onPageCompleted(long employees);
+
+        /**
+         * @return true, if the re-index should stop as soon as possible
+         */
+        boolean isCancelRequested();
+    }
+
+    private final EmployeeRepository employeeRepository;
+    private final EmployeeBulkRepository employeeBulkRepository;
+    private final ApplicationProperties applicationProperties;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final EmployeeNameChangeLog employeeNameChangeLog;
+
+    /** The reservation of the one re-index or rebuild, which is queued or running, or null */
+    private final AtomicReference<Reservation> reservation = new AtomicReference<>();
+
+    public EmployeeReIndexService(EmployeeRepository employeeRepository,
+                                  EmployeeBulkRepository employeeBulkRepository,
+                                  ApplicationProperties applicationProperties,
+                                  PlatformTransactionManager transactionManager,
+                                  ApplicationEventPublisher eventPublisher,
+                                  EmployeeNameChangeLog employeeNameChangeLog) {
+        this.employeeRepository = employeeRepository;
+        this.employeeBulkRepository = employeeBulkRepository;
+        this.applicationProperties = applicationProperties;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.eventPublisher = eventPublisher;
+        this.employeeNameChangeLog = employeeNameChangeLog;
+    }
+
+    /**
+     * Reserve the re-index for a run, that may start later (e.g. a queued job). The reservation must be closed, when
+     * the run is finished or will not start anymore.
+     *
+     * @return the reservation to be passed to {@link #reIndex(Reservation, boolean, boolean, int, ProgressListener)}
+     * or {@link #rebuild(Reservation, boolean, int, ProgressListener)}
+     * @throws ReIndexRunningException if another re-index or rebuild is reserved
+     */
+    public Reservation reserve() {
+
+        final Reservation ret = new Reservation();
+        if (!reservation.compareAndSet(null, ret)) {
+            throw new ReIndexRunningException("Another re-index of the employee names is queued or running!");
+        }
+        return ret;
+    }
+
+    /**
+     * Re-index all employees in place in the live table with a reservation of its own.
+     *
+     * @throws ReIndexRunningException if another re-index or rebuild is reserved
+     * @see #reIndex(Reservation, boolean, boolean, int, ProgressListener)
+     */
+    public long reIndex(boolean clearFirst, boolean resume, int workers, ProgressListener listener) {
+
+        try (Reservation ownReservation = reserve()) {
+            return reIndex(ownReservation, clearFirst, resume, workers, listener);
+        }
+    }
+
+    /**
+     * Re-index all employees in place in the live table.
+     *
+     * @param reservation the reservation of the caller (see {@link #reserve()})
+     * @param clearFirst  if true, the existing names of each page are deleted before the new ones are inserted.
+     *                    If false, it is assumed, that there is no index yet.
+     * @param resume      if true, partitions completed by a previous, interrupted re-index are skipped
+     * @param workers     number of partitions processed in parallel, if less than 1 the configured default is used
+     * @param listener    receiver of the progress, may be null
+     * @return the number of re-indexed employees
+     * @throws CancellationException if the listener requested cancellation
+     */
+    public long reIndex(Reservation reservation, boolean clearFirst, boolean resume, int workers,
+                        ProgressListener listener) {
+
+        checkReserved(reservation);
+        final long[] idRange = findIdRange();
+        if (idRange == null) {
+            log.info("EmployeeReIndexService.reIndex: no employees");
+            return 0L;
+        }
+        final long ret = processPartitions(idRange, EmployeeBulkRepository.EMPLOYEE_NAME_TABLE, clearFirst, resume,
+            workers, listener, Paths.get(applicationProperties.getIndex().getCheckpointFile()));
+        // the names of any company may have changed
+        eventPublisher.publishEvent(EmployeesChangedEvent.changedAll());
+        return ret;
+    }
+
+    /**
+     * Rebuild the name index in a shadow table with a reservation of its own.
+     *
+     * @throws ReIndexRunningException if another re-index or rebuild is reserved
+     * @see #rebuild(Reservation, boolean, int, ProgressListener)
+     */
+    public long rebuild(boolean resume, int workers, ProgressListener listener) {
+
+        try (Reservation ownReservation = reserve()) {
+            return rebuild(ownReservation, resume, workers, listener);
+        }
+    }
+
+    /**
+     * Rebuild the name index in a shadow table and swap it with the live table at the end. Searches use the
+     * unchanged live table during the whole rebuild. The shadow table is filled without indexes, which are created
+     * in bulk afterwards, followed by ANALYZE. The swap is one transaction (atomic on PostgreSQL).
+     * <p>
+     * Changes of names during the rebuild are recorded by the {@link EmployeeNameChangeLog}. Within the swap the
+     * names of the logged employees (and of the employees created during the rebuild) are copied from the live table
+     * while it is locked for writers, so no update or delete of an already rebuilt employee is lost.
+     *
+     * @param reservation the reservation of the caller (see {@link #reserve()})
+     * @param resume      if true and the shadow table of an interrupted rebuild exists, its completed partitions are
+     *                    skipped
+     * @param workers     number of partitions processed in parallel, if less than 1 the configured default is used
+     * @param listener    receiver of the progress, may be null
+     * @return the number of re-indexed employees
+     * @throws CancellationException if the listener requested cancellation
+     */
+    public long rebuild(Reservation reservation, boolean resume, int workers, ProgressListener listener) {
+
+        checkReserved(reservation);
+        final long[] idRange = findIdRange();
+        if (idRange == null) {
+            log.info("EmployeeReIndexService.rebuild: no employees");
+            return 0L;
+        }
+        final Path checkpointFile = Paths.get(applicationProperties.getIndex().getCheckpointFile() + REBUILD_CHECKPOINT_SUFFIX);
+        final Boolean shadowExists = transactionTemplate.execute(status -> employeeBulkRepository.existsEmployeeNameShadowTable());
+        final boolean effectiveResume = resume && Boolean.TRUE.equals(shadowExists);
+        if (!effectiveResume) {
+            transactionTemplate.execute(status -> {
+                employeeBulkRepository.clearEmployeeNameChanges();
+                employeeBulkRepository.createEmployeeNameShadowTable();
+                return null;
+            });
+        }
+        // before the first partition is read, so every change is either seen by the rebuild or logged
+        employeeNameChangeLog.start();
+
+        final long ret = processPartitions(idRange, EmployeeBulkRepository.EMPLOYEE_NAME_SHADOW_TABLE, false,
+            effectiveResume, workers, listener, checkpointFile);
+
+        final long start = System.currentTimeMillis();
+        transactionTemplate.execute(status -> {
+            employeeBulkRepository.indexEmployeeNameShadowTable();
+            return null;
+        });
+        log.info("EmployeeReIndexService.rebuild: shadow table indexed in {} msec", System.currentTimeMillis() - start);
+        transactionTemplate.execute(status -> {
+            employeeBulkRepository.swapEmployeeNameShadowTable(idRange[1]);
+            return null;
+        });
+        employeeNameChangeLog.stop();
+        log.info("EmployeeReIndexService.rebuild: shadow table swapped with live table");
+        eventPublisher.publishEvent(EmployeesChangedEvent.changedAll());
+        return ret;
+    }
+
+    /**
+     * The right to run the one re-index or rebuild. Closing it more than once has no effect.
+     */
+    public final class Reservation implements AutoCloseable {
+
+        private Reservation() {
+        }
+
+        @Override
+        public void close() {
+            reservation.compareAndSet(this, null);
+        }
+    }
+
+    //------------------------------------------------------------------------------------------------------------------
+
+    private void checkReserved(Reservation reservation) {
+
+        if (reservation == null || this.reservation.get() != reservation) {
+            throw new IllegalStateException("The re-index is not reserved by the caller!");
+        }
+    }
+
+    /**
+     * @return min id, max id and number of employees or null, if there are no employees
+     */
+    private long[] findIdRange() {
+
+        return transactionTemplate.execute(status -> {
+            final Long min = employeeRepository.findMinId();
+            final Long max = employeeRepository.findMaxId();
+            return min != null ? new long[]{min, max, employeeRepository.count()} : null;
+        });
+    }
+
+    /**
+     * Split the id space into partitions. The boundaries are multiples of the partition size, so they are the same
+     * after a restart. The last partition ends at the max id, so employees created meanwhile are not partially
+     * covered.
+     *
+     * @return the partitions as (from id, to id] pairs
+     */
+    static List<long[]> partitions(long minId, long maxId, long partitionSize) {
+
+        final List<long[]> ret = new ArrayList<>();
+        for (long afterId = ((minId - 1) / partitionSize) * partitionSize; afterId < maxId; afterId += partitionSize) {
+            ret.add(new long[]{afterId, Math.min(afterId + partitionSize, maxId)});
+        }
+        return ret;
+    }
+
+    /**
+     * @return the checkpoint unit of a partition - named by its real end, so a shortened last partition is not
+     * skipped by a resume with a higher max id
+     */
+    static String partitionUnit(long fromId, long toId) {
+        return "ids-" + fromId + "-" + toId;
+    }
+
+    private long processPartitions(long[] idRange, String table, boolean clearFirst, boolean resume, int workers,
+                                   ProgressListener listener, Path checkpointFile) {
+
+        final ApplicationProperties.Index index = applicationProperties.getIndex();
+        final int effectiveWorkers = workers > 0 ? workers : index.getWorkers();
+        final long partitionSize = index.getPartitionSize();
+        final ProgressListener progress = listener != null ? listener : NO_PROGRESS;
+        progress.onStart(idRange[2]);
+
+        final long start = System.currentTimeMillis();
+        final AtomicLong indexed = new AtomicLong();
+        final AtomicInteger threadNumber = new AtomicInteger();
+        final ExecutorService pool = Executors.newFixedThreadPool(effectiveWorkers,
+            runnable -> new Thread(runnable, "pmssql-ReIndex-" + threadNumber.incrementAndGet()));
+        try (BulkCheckpointStore checkpoints = new BulkCheckpointStore(checkpointFile, resume)) {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (long[] partition : partitions(idRange[0], idRange[1], partitionSize)) {
+                final long fromId = partition[0];
+                final long toId = partition[1];
+                final String unit = partitionUnit(fromId, toId);
+                if (checkpoints.isCompleted(unit)) {
+                    continue;
+                }
+                futures.add(pool.submit(() -> {
+                    final long count = reIndexPartition(table, fromId, toId, clearFirst, progress);
+                    checkpoints.markCompleted(unit);
+                    indexed.addAndGet(count);
+                    return count;
+                }));
+            }
+            log.info("EmployeeReIndexService: {} partitions of {} with {} workers, {} partitions already completed",
+                futures.size(), table, effectiveWorkers, checkpoints.size());
+            awaitAll(futures);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot write re-index checkpoint " + checkpointFile, e);
+        } finally {
+            pool.shutdownNow();
+        }
+
+        // a completed run must not be skipped by the next resume
+        try {
+            Files.deleteIfExists(checkpointFile);
+        } catch (IOException e) {
+            log.warn("Cannot delete re-index checkpoint {}!", checkpointFile, e);
+        }
+        final long millis = Math.max(1L, System.currentTimeMillis() - start);
+        log.info("EmployeeReIndexService: {} employees in {} msec ({} employees/sec)",
+            indexed.get(), millis, indexed.get() * 1000L / millis);
+        return indexed.get();
+    }
+
+    private long reIndexPartition(String table, long fromId, long toId, boolean clearFirst, ProgressListener progress) {
+
+        final int pageSize = applicationProperties.getIndex().getPageSize();
+        final long start = System.currentTimeMillis();
+        long afterId = fromId;
+        long ret = 0L;
+        while (true) {
+            if (progress.isCancelRequested()) {
+                throw new CancellationException("Re-index cancelled");
+            }
+            final long pageAfterId = afterId;
+            final long[] page = transactionTemplate.execute(status -> this.reIndexPage(table, pageAfterId, toId, pageSize, clearFirst));
+            if (page == null || page[0] == 0L) {
+                break;
+            }
+            ret += page[0];
+            afterId = page[1];
+            progress.onPageCompleted(page[0]);
+            if (page[0] < pageSize) {
+                break;
+            }
+        }
+        log.debug("EmployeeReIndexService: partition ({}, {}] of {} with {} employees in {} msec",
+            fromId, toId, table, ret, System.currentTimeMillis() - start);
+        return ret;
+    }
+
+    /**
+     * @return the number of employees of the page and the last id of the page
+     */
+    private long[] reIndexPage(String table, long afterId, long toId, int pageSize, boolean clearFirst) {
+
+        final List<Employee> employees = employeeRepository.findAllByIdRange(afterId, toId, PageRequest.of(0, pageSize));
+        if (employees.isEmpty()) {
+            return new long[]{0L, afterId};
+        }
+        final long lastId = employees.get(employees.size() - 1).getId();
+        if (clearFirst) {
+            // one range delete instead of IN lists - the owners of the range are exactly the employees of the page
+            employeeRepository.deleteByOwnerIdRange(afterId, lastId);
+        }
+        final List<EmployeeName> names = new ArrayList<>(employees.size() * 6);
+        employees.forEach(employee -> names.addAll(employeeRepository.buildNames(employee)));
+        employeeBulkRepository.insertEmployeeNames(table, names);
+        return new long[]{employees.size(), lastId};
+    }
+
+    private static void awaitAll(List<Future<?>> futures) {
+
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Re-index interrupted");
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(false));
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Re-index failed: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private static final ProgressListener NO_PROGRESS = new ProgressListener() {
+        @Override
+        public void onStart(long employeesTotal) {
+        }
+
+        @Override
+        public void onPageCompleted(long employees) {
+        }
+
+        @Override
+        public boolean isCancelRequested() {
+            return false;
+        }
+    };
+}
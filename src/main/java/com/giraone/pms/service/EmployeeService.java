@@ -1,10 +1,14 @@
 package com.giraone.pms.service;
 
+import com.giraone.pms.domain.filter.CursorSlice;
 import com.giraone.pms.domain.filter.PersonFilter;
+import com.giraone.pms.domain.filter.SearchCursor;
 import com.giraone.pms.service.dto.CompanyDTO;
 import com.giraone.pms.service.dto.EmployeeDTO;
+import com.giraone.pms.service.dto.NameSuggestionsDTO;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 
 import java.util.List;
 import java.util.Optional;
@@ -57,6 +61,63 @@ public interface EmployeeService {
      */
     Optional<Page<EmployeeDTO>> findAllByFilter(String companyExternalId, PersonFilter personFilter, Pageable pageable);
 
+    /**
+     * Query the employees of a company. The exact total counts are cached per company and filter.
+     *
+     * @param companyExternalId restrict the query to employees of this company
+     * @param personFilter restrict the query to employees matching this filter
+     * @param pageable the pagination information
+     * @param estimateCount if true, the total of a listing without filter is an estimate, which needs no count query
+     * @return the list of entities or an empty optional, if the company was invalid
+     */
+    Optional<Page<EmployeeDTO>> findAllByFilter(String companyExternalId, PersonFilter personFilter, Pageable pageable,
+                                                boolean estimateCount);
+
+    /**
+     * Query the employees of a company without a total count. Only one statement is executed - the page is fetched
+     * with one additional row to determine, whether there is a next page.
+     *
+     * @param companyExternalId restrict the query to employees of this company
+     * @param personFilter restrict the query to employees matching this filter
+     * @param pageable the pagination information
+     * @return the slice of entities or an empty optional, if the company was invalid
+     */
+    Optional<Slice<EmployeeDTO>> findSliceByFilter(String companyExternalId, PersonFilter personFilter, Pageable pageable);
+
+    /**
+     * Query the employees of a company with keyset pagination. In contrast to offset pagination the cost of a slice
+     * does not depend on its depth.
+     *
+     * @param companyExternalId restrict the query to employees of this company
+     * @param personFilter restrict the query to employees matching this filter
+     * @param cursor the cursor of the requested slice, see {@link SearchCursor#first(org.springframework.data.domain.Sort)}
+     * @param size the maximum number of employees of the slice
+     * @return the slice of entities or an empty optional, if the company was invalid
+     */
+    Optional<CursorSlice<EmployeeDTO>> findAllByFilter(String companyExternalId, PersonFilter personFilter,
+                                                       SearchCursor cursor, int size);
+
+    /**
+     * Query the employees of all companies with keyset pagination in one statement. This method can be called by
+     * users with ADMIN role only. Fuzzy names are not expanded, because the dictionaries are per company.
+     *
+     * @param personFilter restrict the query to employees matching this filter
+     * @param cursor the cursor of the requested slice, see {@link SearchCursor#first(org.springframework.data.domain.Sort)}
+     * @param size the maximum number of employees of the slice
+     * @return the slice of entities
+     */
+    CursorSlice<EmployeeDTO> findAllByFilter(PersonFilter personFilter, SearchCursor cursor, int size);
+
+    /**
+     * Typeahead suggestions: the most frequent surnames and given names of a company starting with a prefix.
+     *
+     * @param companyExternalId the company
+     * @param prefix the prefix as entered, if null or blank the most frequent names are returned
+     * @param size the maximum number of surnames and given names
+     * @return the suggestions or an empty optional, if the company was invalid
+     */
+    Optional<NameSuggestionsDTO> suggestNames(String companyExternalId, String prefix, int size);
+
     /**
      * Get a list of companies to which a user has access
      * @param userLogin login of the user
@@ -0,0 +1,277 @@
+package com.giraone.pms.service;
+
+import com.giraone.pms.config.Constants;
+import com.giraone.pms.domain.Authority;
+import com.giraone.pms.domain.Company;
+import com.giraone.pms.domain.User;
+import com.giraone.pms.repository.AuthorityRepository;
+import com.giraone.pms.repository.CompanyRepository;
+import com.giraone.pms.repository.UserRepository;
+import com.giraone.pms.security.AuthoritiesConstants;
+import com.giraone.pms.service.dto.InitialUserProvisioningStatusDTO;
+import com.giraone.pms.service.util.RandomUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Deferred provisioning of the initial users of companies created by bulk loads.
+ * <p>
+ * The bulk transaction only enqueues the ids of new companies (after commit). A single worker thread drains the
+ * queue in batches: the BCrypt hashes are computed in parallel on the async executor outside of any transaction,
+ * then users and company_user relations of a batch are inserted in one short transaction.
+ * <p>
+ * The queue exists only in memory. Companies, which were committed but not provisioned before a restart, are found
+ * and enqueued again, when the application is ready.
+ */
+@Service
+public class InitialUserProvisioningService {
+
+    private final Logger log = LoggerFactory.getLogger(InitialUserProvisioningService.class);
+
+    private static final int BATCH_SIZE = 100;
+
+    private final CompanyRepository companyRepository;
+    private final UserRepository userRepository;
+    private final AuthorityRepository authorityRepository;
+    private final PasswordEncoder passwordEncoder;
+    private final CacheManager cacheManager;
+    private final Executor taskExecutor;
+    private final TransactionTemplate transactionTemplate;
+
+    private final ConcurrentLinkedQueue<Long> queue = new ConcurrentLinkedQueue<>();
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "pmssql-InitialUserProvisioning");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final AtomicLong provisioned = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    public InitialUserProvisioningService(CompanyRepository companyRepository, UserRepository userRepository,
+                                          AuthorityRepository authorityRepository, PasswordEncoder passwordEncoder,
+                                          CacheManager cacheManager,
+                                          @Qualifier("taskExecutor") Executor taskExecutor,
+                                          PlatformTransactionManager transactionManager) {
+        this.companyRepository = companyRepository;
+        this.userRepository = userRepository;
+        this.authorityRepository = authorityRepository;
+        this.passwordEncoder = passwordEncoder;
+        this.cacheManager = cacheManager;
+        this.taskExecutor = taskExecutor;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        worker.shutdownNow();
+    }
+
+    /**
+     * Enqueue the companies, whose provisioning was lost by a restart. Runs on the worker, so the startup is not
+     * delayed.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void init() {
+
+        worker.execute(() -> {
+            try {
+                final List<Long> companyIds = findCompaniesWithoutInitialUser();
+                if (!companyIds.isEmpty()) {
+                    log.info("InitialUserProvisioningService: {} companies without initial user found", companyIds.size());
+                    submit(companyIds);
+                }
+            } catch (Exception e) {
+                log.error("Cannot find the companies without initial user!", e);
+            }
+        });
+    }
+
+    /**
+     * Enqueue new companies for the creation of their initial user. If called within a transaction, the companies
+     * are enqueued only after a successful commit.
+     *
+     * @param companyIds the ids of the new companies
+     */
+    public void enqueue(Collection<Long> companyIds) {
+
+        final List<Long> ids = new ArrayList<>(companyIds);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    submit(ids);
+                }
+            });
+        } else {
+            submit(ids);
+        }
+    }
+
+    /**
+     * @return the current progress of the provisioning
+     */
+    public InitialUserProvisioningStatusDTO getStatus() {
+        return new InitialUserProvisioningStatusDTO(queue.size(), provisioned.get(), failed.get());
+    }
+
+    /**
+     * Create the initial users of the given companies synchronously. Companies, which have already their initial
+     * user, are skipped. Joins an existing transaction, otherwise a new one is used for the inserts.
+     *
+     * @param companyIds the ids of the companies
+     * @return the number of created users
+     */
+    public int provision(Collection<Long> companyIds) {
+
+        final long start = System.currentTimeMillis();
+        // BCrypt is the expensive part, so hash in parallel and outside of the transaction
+        final Map<Long, CompletableFuture<String>> hashes = new HashMap<>();
+        companyIds.forEach(companyId -> hashes.put(companyId,
+            CompletableFuture.supplyAsync(() -> passwordEncoder.encode(initialUserLogin(companyId)), taskExecutor)));
+
+        final Map<Long, String> encryptedPasswords = new HashMap<>();
+        hashes.forEach((companyId, hash) -> encryptedPasswords.put(companyId, hash.join()));
+
+        final Integer ret = transactionTemplate.execute(status -> this.insertUsers(encryptedPasswords));
+        log.debug("InitialUserProvisioningService.provision: {} users for {} companies in {} msec",
+            ret, companyIds.size(), System.currentTimeMillis() - start);
+        return ret != null ? ret : 0;
+    }
+
+    //------------------------------------------------------------------------------------------------------------------
+
+    /**
+     * @return the ids of the companies without any user, whose initial user does not exist
+     */
+    List<Long> findCompaniesWithoutInitialUser() {
+
+        final List<Long> ret = new ArrayList<>();
+        long lastId = Long.MIN_VALUE;
+        List<Long> page;
+        do {
+            final long after = lastId;
+            page = transactionTemplate.execute(status -> {
+                final List<Long> companyIds = companyRepository.findIdsWithoutUsers(after, PageRequest.of(0, BATCH_SIZE));
+                final Set<String> existingLogins = userRepository.findAllByLoginIn(
+                    companyIds.stream().map(InitialUserProvisioningService::initialUserLogin).collect(Collectors.toList()))
+                    .stream().map(User::getLogin).collect(Collectors.toSet());
+                companyIds.stream()
+                    .filter(companyId -> !existingLogins.contains(initialUserLogin(companyId)))
+                    .forEach(ret::add);
+                return companyIds;
+            });
+            if (page != null && !page.isEmpty()) {
+                lastId = page.get(page.size() - 1);
+            }
+        } while (page != null && page.size() == BATCH_SIZE);
+        return ret;
+    }
+
+    private void submit(List<Long> companyIds) {
+        queue.addAll(companyIds);
+        worker.execute(this::drain);
+    }
+
+    private void drain() {
+
+        List<Long> batch;
+        while (!(batch = pollBatch()).isEmpty()) {
+            try {
+                provisioned.addAndGet(provision(batch));
+            } catch (Exception e) {
+                failed.addAndGet(batch.size());
+                log.error("Provisioning of initial users for companies {} failed!", batch, e);
+            }
+        }
+    }
+
+    private List<Long> pollBatch() {
+        final List<Long> ret = new ArrayList<>(BATCH_SIZE);
+        Long companyId;
+        while (ret.size() < BATCH_SIZE && (companyId = queue.poll()) != null) {
+            ret.add(companyId);
+        }
+        return ret;
+    }
+
+    private int insertUsers(Map<Long, String> encryptedPasswords) {
+
+        final List<Company> companies = companyRepository.findAllById(encryptedPasswords.keySet());
+        final Set<String> existingLogins = userRepository.findAllByLoginIn(
+            companies.stream().map(company -> initialUserLogin(company.getId())).collect(Collectors.toList()))
+            .stream().map(User::getLogin).collect(Collectors.toSet());
+        final Optional<Authority> userAuthority = authorityRepository.findById(AuthoritiesConstants.USER);
+
+        final List<User> users = new ArrayList<>();
+        final List<Company> companiesOfUsers = new ArrayList<>();
+        for (Company company : companies) {
+            final String login = initialUserLogin(company.getId());
+            if (existingLogins.contains(login)) {
+                continue;
+            }
+            final User user = new User();
+            user.setLogin(login);
+            user.setFirstName("Admin");
+            user.setLastName(company.getExternalId());
+            user.setLangKey(Constants.DEFAULT_LANGUAGE);
+            user.setPassword(encryptedPasswords.get(company.getId()));
+            user.setResetKey(RandomUtil.generateResetKey());
+            user.setResetDate(Instant.now());
+            user.setActivated(true);
+            final Set<Authority> authorities = new HashSet<>();
+            userAuthority.ifPresent(authorities::add);
+            user.setAuthorities(authorities);
+            users.add(user);
+            companiesOfUsers.add(company);
+        }
+
+        userRepository.saveAll(users);
+        // the companies are managed, so the new relations are written in one flush
+        for (int i = 0; i < users.size(); i++) {
+            companiesOfUsers.get(i).addUser(users.get(i));
+        }
+        final Cache usersByLoginCache = cacheManager.getCache(UserRepository.USERS_BY_LOGIN_CACHE);
+        if (usersByLoginCache != null) {
+            users.forEach(user -> usersByLoginCache.evict(user.getLogin()));
+        }
+        return users.size();
+    }
+
+    /**
+     * The login (and the initial password) of the initial user of a company
+     */
+    public static String initialUserLogin(long companyId) {
+        return String.format("user-%08d", companyId);
+    }
+}
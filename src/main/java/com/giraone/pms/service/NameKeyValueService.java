@@ -0,0 +1,28 @@
+package com.giraone.pms.service;
+
+import com.giraone.pms.domain.filter.EmployeeNameKeyValue;
+
+import java.util.Set;
+
+/**
+ * Interface for building the redundant, searchable name keys (lowercase, normalized, phonetic) of a person name.
+ * Implementations may memoize the results, because names are extremely repetitive.
+ */
+public interface NameKeyValueService {
+
+    /**
+     * Build the surname keys (LS, NS, PS) of a raw surname
+     *
+     * @param surname the surname as entered, may be null
+     * @return unmodifiable set of key/value pairs, which is empty, if the surname is null or blank
+     */
+    Set<EmployeeNameKeyValue> buildSurnameKeyValues(String surname);
+
+    /**
+     * Build the given name keys (LG, NG, PG) of a raw given name
+     *
+     * @param givenName the given name as entered, may be null
+     * @return unmodifiable set of key/value pairs, which is empty, if the given name is null or blank
+     */
+    Set<EmployeeNameKeyValue> buildGivenNameKeyValues(String givenName);
+}
@@ -0,0 +1,13 @@
+package com.giraone.pms.service;
+
+/**
+ * Thrown, when a re-index or rebuild of the employee names is started, while another one is queued or running.
+ */
+public class ReIndexRunningException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public ReIndexRunningException(String message) {
+        super(message);
+    }
+}
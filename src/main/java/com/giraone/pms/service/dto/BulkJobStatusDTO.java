@@ -0,0 +1,148 @@
+package com.giraone.pms.service.dto;
+
+import com.giraone.pms.domain.enumeration.BulkJobPhase;
+
+import java.io.Serializable;
+import java.time.Instant;
+
+/**
+ * A DTO for the progress of an asynchronous bulk load job.
+ */
+public class BulkJobStatusDTO implements Serializable {
+
+    private String id;
+
+    private BulkJobPhase phase;
+
+    private long rowsSaved;
+
+    /** Number of rows to be processed, 0 if not known upfront */
+    private long rowsTotal;
+
+    private double rowsPerSecond;
+
+    private long bytesTotal;
+
+    private long bytesRead;
+
+    /** Estimated remaining seconds, null if not yet known or finished */
+    private Long etaSeconds;
+
+    private Instant submitted;
+
+    private Instant started;
+
+    private Instant finished;
+
+    private String message;
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public BulkJobPhase getPhase() {
+        return phase;
+    }
+
+    public void setPhase(BulkJobPhase phase) {
+        this.phase = phase;
+    }
+
+    public long getRowsSaved() {
+        return rowsSaved;
+    }
+
+    public void setRowsSaved(long rowsSaved) {
+        this.rowsSaved = rowsSaved;
+    }
+
+    public long getRowsTotal() {
+        return rowsTotal;
+    }
+
+    public void setRowsTotal(long rowsTotal) {
+        this.rowsTotal = rowsTotal;
+    }
+
+    public double getRowsPerSecond() {
+        return rowsPerSecond;
+    }
+
+    public void setRowsPerSecond(double rowsPerSecond) {
+        this.rowsPerSecond = rowsPerSecond;
+    }
+
+    public long getBytesTotal() {
+        return bytesTotal;
+    }
+
+    public void setBytesTotal(long bytesTotal) {
+        this.bytesTotal = bytesTotal;
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    public void setBytesRead(long bytesRead) {
+        this.bytesRead = bytesRead;
+    }
+
+    public Long getEtaSeconds() {
+        return etaSeconds;
+    }
+
+    public void setEtaSeconds(Long etaSeconds) {
+        this.etaSeconds = etaSeconds;
+    }
+
+    public Instant getSubmitted() {
+        return submitted;
+    }
+
+    public void setSubmitted(Instant submitted) {
+        this.submitted = submitted;
+    }
+
+    public Instant getStarted() {
+        return started;
+    }
+
+    public void setStarted(Instant started) {
+        this.started = started;
+    }
+
+    public Instant getFinished() {
+        return finished;
+    }
+
+    public void setFinished(Instant finished) {
+        this.finished = finished;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+
+    @Override
+    public String toString() {
+        return "BulkJobStatusDTO{" +
+            "id='" + id + "'" +
+            ", phase=" + phase +
+            ", rowsSaved=" + rowsSaved +
+            ", rowsTotal=" + rowsTotal +
+            ", rowsPerSecond=" + rowsPerSecond +
+            ", bytesRead=" + bytesRead +
+            ", bytesTotal=" + bytesTotal +
+            ", etaSeconds=" + etaSeconds +
+            "}";
+    }
+}
@@ -0,0 +1,57 @@
+package com.giraone.pms.service.dto;
+
+import java.io.Serializable;
+
+/**
+ * A DTO for the progress of the deferred provisioning of initial company users.
+ */
+public class InitialUserProvisioningStatusDTO implements Serializable {
+
+    private long queued;
+
+    private long provisioned;
+
+    private long failed;
+
+    public InitialUserProvisioningStatusDTO() {
+    }
+
+    public InitialUserProvisioningStatusDTO(long queued, long provisioned, long failed) {
+        this.queued = queued;
+        this.provisioned = provisioned;
+        this.failed = failed;
+    }
+
+    public long getQueued() {
+        return queued;
+    }
+
+    public void setQueued(long queued) {
+        this.queued = queued;
+    }
+
+    public long getProvisioned() {
+        return provisioned;
+    }
+
+    public void setProvisioned(long provisioned) {
+        this.provisioned = provisioned;
+    }
+
+    public long getFailed() {
+        return failed;
+    }
+
+    public void setFailed(long failed) {
+        this.failed = failed;
+    }
+
+    @Override
+    public String toString() {
+        return "InitialUserProvisioningStatusDTO{" +
+            "queued=" + queued +
+            ", provisioned=" + provisioned +
+            ", failed=" + failed +
+            '}';
+    }
+}
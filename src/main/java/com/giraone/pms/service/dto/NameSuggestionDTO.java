@@ -0,0 +1,67 @@
+package com.giraone.pms.service.dto;
+
+import io.swagger.annotations.ApiModel;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * A DTO for a suggested name with the number of employees having this name.
+ */
+@ApiModel(description = "A suggested name with its count.")
+public class NameSuggestionDTO implements Serializable {
+
+    private String name;
+
+    private long count;
+
+    public NameSuggestionDTO() {
+    }
+
+    public NameSuggestionDTO(String name, long count) {
+        this.name = name;
+        this.count = count;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public void setCount(long count) {
+        this.count = count;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        NameSuggestionDTO that = (NameSuggestionDTO) o;
+        return count == that.count && Objects.equals(name, that.name);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(name, count);
+    }
+
+    @Override
+    public String toString() {
+        return "NameSuggestionDTO{" +
+            "name='" + name + '\'' +
+            ", count=" + count +
+            '}';
+    }
+}
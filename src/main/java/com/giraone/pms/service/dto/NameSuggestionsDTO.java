@@ -0,0 +1,50 @@
+package com.giraone.pms.service.dto;
+
+import io.swagger.annotations.ApiModel;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A DTO for the typeahead suggestions of a name prefix - the most frequent surnames and given names.
+ */
+@ApiModel(description = "The suggested surnames and given names of a prefix.")
+public class NameSuggestionsDTO implements Serializable {
+
+    private List<NameSuggestionDTO> surnames = new ArrayList<>();
+
+    private List<NameSuggestionDTO> givenNames = new ArrayList<>();
+
+    public NameSuggestionsDTO() {
+    }
+
+    public NameSuggestionsDTO(List<NameSuggestionDTO> surnames, List<NameSuggestionDTO> givenNames) {
+        this.surnames = surnames;
+        this.givenNames = givenNames;
+    }
+
+    public List<NameSuggestionDTO> getSurnames() {
+        return surnames;
+    }
+
+    public void setSurnames(List<NameSuggestionDTO> surnames) {
+        this.surnames = surnames;
+    }
+
+    public List<NameSuggestionDTO> getGivenNames() {
+        return givenNames;
+    }
+
+    public void setGivenNames(List<NameSuggestionDTO> givenNames) {
+        this.givenNames = givenNames;
+    }
+
+    @Override
+    public String toString() {
+        return "NameSuggestionsDTO{" +
+            "surnames=" + surnames +
+            ", givenNames=" + givenNames +
+            '}';
+    }
+}
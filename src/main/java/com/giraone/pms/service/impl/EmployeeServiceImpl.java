@@ -1,36 +1,61 @@
 package com.giraone.pms.service.impl;
 
 import com.giraone.pms.domain.*;
-import com.giraone.pms.domain.filter.EmployeeNameFilter;
+import com.giraone.pms.domain.filter.CursorSlice;
 import com.giraone.pms.domain.filter.PersonFilter;
+import com.giraone.pms.domain.filter.SearchCursor;
 import com.giraone.pms.repository.CompanyRepository;
 import com.giraone.pms.repository.EmployeeRepository;
 import com.giraone.pms.service.AuthorizationService;
 import com.giraone.pms.service.EmployeeService;
 import com.giraone.pms.service.dto.CompanyDTO;
 import com.giraone.pms.service.dto.EmployeeDTO;
+import com.giraone.pms.service.dto.NameSuggestionsDTO;
 import com.giraone.pms.service.mapper.CompanyMapper;
 import com.giraone.pms.service.mapper.EmployeeMapper;
+import com.giraone.pms.service.search.EmployeeCountService;
+import com.giraone.pms.service.search.EmployeeNameBloomFilters;
+import com.giraone.pms.service.search.EmployeeNameIndex;
+import com.giraone.pms.service.search.EmployeeNameSuggestions;
+import com.giraone.pms.service.search.EmployeeNamesChangedEvent;
+import com.giraone.pms.service.search.EmployeeResultIdCache;
+import com.giraone.pms.service.search.EmployeeSearchShape;
+import com.giraone.pms.service.search.EmployeeSearchStatements;
+import com.giraone.pms.service.search.FuzzyNameExpander;
+import com.giraone.pms.service.search.LuceneEmployeeIndex;
+import com.giraone.pms.service.search.PersonFilterPlanner;
+import com.giraone.pms.service.search.SearchCancelledException;
+import com.giraone.pms.service.search.SearchPlan;
+import com.giraone.pms.service.search.SearchSlot;
+import com.giraone.pms.service.search.SearchSlots;
 import io.micrometer.core.annotation.Timed;
+import org.hibernate.Session;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
-import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.repository.support.PageableExecutionUtils;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.Cache;
 import javax.persistence.EntityManager;
-import javax.persistence.TypedQuery;
-import javax.persistence.criteria.CriteriaBuilder;
-import javax.persistence.criteria.CriteriaQuery;
-import javax.persistence.criteria.Predicate;
-import javax.persistence.criteria.Root;
+import javax.persistence.Query;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 /**
  * Service Implementation for managing Employee.
@@ -50,16 +75,44 @@ public class EmployeeServiceImpl implements EmployeeService {
     private final CompanyRepository companyRepository;
     private final CompanyMapper companyMapper;
     private final AuthorizationService authorizationService;
+    private final EmployeeCountService employeeCountService;
+    private final PersonFilterPlanner personFilterPlanner;
+    private final EmployeeSearchStatements employeeSearchStatements;
+    private final EmployeeResultIdCache employeeResultIdCache;
+    private final EmployeeNameIndex employeeNameIndex;
+    private final LuceneEmployeeIndex luceneEmployeeIndex;
+    private final EmployeeNameSuggestions employeeNameSuggestions;
+    private final FuzzyNameExpander fuzzyNameExpander;
+    private final EmployeeNameBloomFilters employeeNameBloomFilters;
+    private final SearchSlots searchSlots;
+    private final ApplicationEventPublisher eventPublisher;
 
     public EmployeeServiceImpl(EmployeeRepository employeeRepository, EmployeeMapper employeeMapper,
                                EntityManager em, CompanyRepository companyRepository,
-                               CompanyMapper companyMapper, AuthorizationService authorizationService) {
+                               CompanyMapper companyMapper, AuthorizationService authorizationService,
+                               EmployeeCountService employeeCountService, PersonFilterPlanner personFilterPlanner,
+                               EmployeeSearchStatements employeeSearchStatements, EmployeeResultIdCache employeeResultIdCache,
+                               EmployeeNameIndex employeeNameIndex, LuceneEmployeeIndex luceneEmployeeIndex,
+                               EmployeeNameSuggestions employeeNameSuggestions, FuzzyNameExpander fuzzyNameExpander,
+                               EmployeeNameBloomFilters employeeNameBloomFilters, SearchSlots searchSlots,
+                               ApplicationEventPublisher eventPublisher) {
         this.employeeRepository = employeeRepository;
         this.employeeMapper = employeeMapper;
         this.em = em;
         this.companyRepository = companyRepository;
         this.companyMapper = companyMapper;
         this.authorizationService = authorizationService;
+        this.employeeCountService = employeeCountService;
+        this.personFilterPlanner = personFilterPlanner;
+        this.employeeSearchStatements = employeeSearchStatements;
+        this.employeeResultIdCache = employeeResultIdCache;
+        this.employeeNameIndex = employeeNameIndex;
+        this.luceneEmployeeIndex = luceneEmployeeIndex;
+        this.employeeNameSuggestions = employeeNameSuggestions;
+        this.fuzzyNameExpander = fuzzyNameExpander;
+        this.employeeNameBloomFilters = employeeNameBloomFilters;
+        this.searchSlots = searchSlots;
+        this.eventPublisher = eventPublisher;
     }
 
     /**
@@ -162,6 +215,8 @@ public class EmployeeServiceImpl implements EmployeeService {
                     authorizationService.getCurrentUserId(), id, employee.get().getCompany().getExternalId()));
         }
         employeeRepository.deleteById(id);
+        // the names are deleted by the database (cascade), so they are not known here
+        eventPublisher.publishEvent(EmployeeNamesChangedEvent.removed(employee.get().getCompany().getId(), id, null));
     }
 
     //-- Extensions ----------------------------------------------------------------------------------------------------
@@ -177,9 +232,27 @@ public class EmployeeServiceImpl implements EmployeeService {
     @Timed
     @Transactional(readOnly = true)
     public Optional<Page<EmployeeDTO>> findAllByFilter(String companyExternalId, PersonFilter personFilter, Pageable pageable) {
+        return findAllByFilter(companyExternalId, personFilter, pageable, false);
+    }
 
-        log.debug("Service request to query employees companyExternalId={}, personFilter={}, pageable={}",
-            companyExternalId, personFilter, pageable);
+    /**
+     * Query the employees of a company with an exact or estimated total count.
+     *
+     * @param companyExternalId restrict the query to employees of this company, if null an empty page is returned
+     * @param personFilter      restrict the query to employees matching this filter
+     * @param pageable          the pagination information
+     * @param estimateCount     if true and the filter has no restrictions, the total is the maintained employee
+     *                          counter of the company instead of a count query
+     * @return the list of entities or an empty optional, if the company was invalid
+     */
+    @Override
+    @Timed
+    @Transactional(readOnly = true)
+    public Optional<Page<EmployeeDTO>> findAllByFilter(String companyExternalId, PersonFilter personFilter, Pageable pageable,
+                                                       boolean estimateCount) {
+
+        log.debug("Service request to query employees companyExternalId={}, personFilter={}, pageable={}, estimateCount={}",
+            companyExternalId, personFilter, pageable, estimateCount);
 
         Optional<Company> company;
         if (companyExternalId != null) {
@@ -193,7 +266,8 @@ public class EmployeeServiceImpl implements EmployeeService {
             return Optional.empty();
         }
 
-        final Page<Employee> page = getEmployees(personFilter, pageable, company.get().getId());
+        final Page<Employee> page = cancellable(() -> getEmployees(
+            fuzzyNameExpander.expand(company.get().getId(), personFilter), pageable, company.get().getId(), estimateCount));
 
         return Optional.of(page.map(e -> {
             e.setCompany(company.get());
@@ -202,6 +276,129 @@ public class EmployeeServiceImpl implements EmployeeService {
     }
 
 
+    /**
+     * Query the employees of a company without a total count.
+     *
+     * @param companyExternalId restrict the query to employees of this company, if null an empty optional is returned
+     * @param personFilter      restrict the query to employees matching this filter
+     * @param pageable          the pagination information
+     * @return the slice of entities or an empty optional, if the company was invalid
+     */
+    @Override
+    @Timed
+    @Transactional(readOnly = true)
+    public Optional<Slice<EmployeeDTO>> findSliceByFilter(String companyExternalId, PersonFilter personFilter, Pageable pageable) {
+
+        log.debug("Service request to query employees without count companyExternalId={}, personFilter={}, pageable={}",
+            companyExternalId, personFilter, pageable);
+
+        if (companyExternalId == null) {
+            log.warn("findSliceByFilter: Company companyExternalId was null!");
+            return Optional.empty();
+        }
+        final Optional<Company> company = companyRepository.findOneByExternalId(companyExternalId);
+        if (!company.isPresent()) {
+            log.warn("findSliceByFilter: Company companyExternalId={} NOT FOUND!", companyExternalId);
+            return Optional.empty();
+        }
+
+        final Slice<Employee> slice = cancellable(() -> getEmployeesWithoutCount(
+            fuzzyNameExpander.expand(company.get().getId(), personFilter), pageable, company.get().getId()));
+
+        return Optional.of(slice.map(e -> {
+            e.setCompany(company.get());
+            return employeeMapper.toDto(e);
+        }));
+    }
+
+    /**
+     * Query the employees of a company with keyset pagination.
+     *
+     * @param companyExternalId restrict the query to employees of this company, if null an empty optional is returned
+     * @param personFilter      restrict the query to employees matching this filter
+     * @param cursor            the cursor of the requested slice
+     * @param size              the maximum number of employees of the slice
+     * @return the slice of entities or an empty optional, if the company was invalid
+     */
+    @Override
+    @Timed
+    @Transactional(readOnly = true)
+    public Optional<CursorSlice<EmployeeDTO>> findAllByFilter(String companyExternalId, PersonFilter personFilter,
+                                                              SearchCursor cursor, int size) {
+
+        log.debug("Service request to query employees companyExternalId={}, personFilter={}, cursor={}, size={}",
+            companyExternalId, personFilter, cursor, size);
+
+        if (companyExternalId == null) {
+            log.warn("findAllByFilter: Company companyExternalId was null!");
+            return Optional.empty();
+        }
+        final Optional<Company> company = companyRepository.findOneByExternalId(companyExternalId);
+        if (!company.isPresent()) {
+            log.warn("findAllByFilter: Company companyExternalId={} NOT FOUND!", companyExternalId);
+            return Optional.empty();
+        }
+
+        final CursorSlice<Employee> slice = cancellable(() -> getEmployees(
+            fuzzyNameExpander.expand(company.get().getId(), personFilter), cursor, size, company.get().getId()));
+
+        return Optional.of(slice.map(e -> {
+            e.setCompany(company.get());
+            return employeeMapper.toDto(e);
+        }));
+    }
+
+    /**
+     * Query the employees of all companies with keyset pagination. This method can be called by users with ADMIN role
+     * only.
+     *
+     * @param personFilter restrict the query to employees matching this filter
+     * @param cursor       the cursor of the requested slice
+     * @param size         the maximum number of employees of the slice
+     * @return the slice of entities
+     */
+    @Override
+    @Timed
+    @Transactional(readOnly = true)
+    public CursorSlice<EmployeeDTO> findAllByFilter(PersonFilter personFilter, SearchCursor cursor, int size) {
+
+        log.debug("Service request to query employees of all companies personFilter={}, cursor={}, size={}",
+            personFilter, cursor, size);
+
+        if (!authorizationService.isAdmin()) {
+            throw new AccessDeniedException("Query over all companies needs ADMIN role!");
+        }
+        final CursorSlice<Employee> slice = cancellable(() -> {
+            final SearchPlan plan = personFilterPlanner.planAllCompanies(personFilter);
+            final EmployeeSearchShape shape = EmployeeSearchShape.seekAllCompanies(plan, cursor);
+            return getEmployees(employeeSearchStatements.createQuery(em, shape, plan, 0L, cursor), cursor, size);
+        });
+        return slice.map(employeeMapper::toDto);
+    }
+
+    /**
+     * Typeahead suggestions of the names of a company - served from memory after the first request of the company.
+     *
+     * @param companyExternalId the company, if null an empty optional is returned
+     * @param prefix            the prefix as entered
+     * @param size              the maximum number of surnames and given names
+     * @return the suggestions or an empty optional, if the company was invalid
+     */
+    @Override
+    @Timed
+    @Transactional(readOnly = true)
+    public Optional<NameSuggestionsDTO> suggestNames(String companyExternalId, String prefix, int size) {
+
+        log.debug("Service request to suggest names companyExternalId={}, prefix={}, size={}", companyExternalId, prefix, size);
+
+        if (companyExternalId == null) {
+            log.warn("suggestNames: Company companyExternalId was null!");
+            return Optional.empty();
+        }
+        return companyRepository.findOneByExternalId(companyExternalId)
+            .map(company -> employeeNameSuggestions.suggest(company.getId(), prefix, size));
+    }
+
     /**
      * Get a list of companies to which a user has access
      *
@@ -227,95 +424,215 @@ public class EmployeeServiceImpl implements EmployeeService {
     }
     */
 
-    private Page<Employee> getEmployees(PersonFilter personFilter, Pageable pageable, long companyId) {
+    /**
+     * Run a search in the search slot of the current user and search session, so a newer search of the same session
+     * cancels its running statement. The slot is closed before the transaction ends.
+     *
+     * @throws SearchCancelledException if the search was superseded
+     */
+    private <T> T cancellable(Supplier<T> search) {
+
+        final Optional<String> userLogin = authorizationService.getCurrentUserLogin();
+        if (!userLogin.isPresent()) {
+            return search.get();
+        }
+        final SearchSlot slot = searchSlots.open(SearchSlots.owner(userLogin.get()), em.unwrap(Session.class));
+        try {
+            final T ret = search.get();
+            // the response of a superseded search is not needed, even if it was not cancelled in time
+            slot.checkCancelled();
+            return ret;
+        } catch (SearchCancelledException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            if (slot.isCancelled()) {
+                throw new SearchCancelledException("Search of " + slot.getOwner() + " was cancelled!", e);
+            }
+            throw e;
+        } finally {
+            slot.close();
+        }
+    }
+
+    /**
+     * Offset pagination with a total count. The count is only needed, if it cannot be derived from the page itself
+     * (a first page, which is not full, or the last page). It is taken from the count cache, which is invalidated by
+     * every write of the company. Restricted searches are served from the Lucene index (if enabled) or from the
+     * ids of a cached result. Exact names, which are not names of the company, need no statement at all.
+     */
+    private Page<Employee> getEmployees(PersonFilter personFilter, Pageable pageable, long companyId, boolean estimateCount) {
 
         log.debug("getEmployees companyId={}, personFilter={}", companyId, personFilter);
 
-        final CriteriaBuilder cb = em.getCriteriaBuilder();
+        if (employeeNameBloomFilters.hasNoMatches(companyId, personFilter)) {
+            return new PageImpl<>(Collections.emptyList(), pageable, 0L);
+        }
 
-        final CriteriaQuery<Employee> fetchQuery = cb.createQuery(Employee.class);
-        final Root<Employee> employeeFetchTable = fetchQuery.from(Employee.class);
-        //employeeFetchTable.fetch(Employee_.company); // fetch also the company information without need for additional queries
+        if (!isUnrestricted(personFilter)) {
+            final LuceneEmployeeIndex.Hits hits = luceneEmployeeIndex.search(companyId, personFilter, pageable, true);
+            if (hits != null) {
+                return new PageImpl<>(fetchByIds(hits.getIds(), 0, hits.getIds().length), pageable, hits.getTotal());
+            }
+            final long[] ids = getResultIds(personFilter, pageable, companyId);
+            if (ids != null) {
+                return new PageImpl<>(fetchByIds(ids, pageable), pageable, ids.length);
+            }
+        }
 
-        final CriteriaQuery<Long> countQuery = cb.createQuery(Long.class);
-        final Root<Employee> employeeCountTable = countQuery.from(Employee.class);
+        final List<Employee> pageList = fetchEmployees(personFilter, pageable, pageable.getPageSize(), companyId);
+        if (estimateCount && isUnrestricted(personFilter)) {
+            return PageableExecutionUtils.getPage(pageList, pageable,
+                () -> employeeCountService.getEstimatedCount(companyId, () -> employeeRepository.countByCompanyId(companyId)));
+        }
+        return PageableExecutionUtils.getPage(pageList, pageable,
+            () -> employeeCountService.getCount(companyId, personFilter, () -> countEmployees(personFilter, companyId)));
+    }
 
-        final List<Predicate> fetchPredicates = new ArrayList<>();
-        final List<Predicate> countPredicates = new ArrayList<>();
+    private static boolean isUnrestricted(PersonFilter personFilter) {
+        return personFilter == null || (!personFilter.hasNames() && personFilter.getDateOfBirth() == null);
+    }
 
-        if (personFilter != null) {
-            if (personFilter.getDateOfBirth() != null) {
-                fetchPredicates.add(cb.equal(employeeFetchTable.get(Employee_.dateOfBirth), personFilter.getDateOfBirth()));
-                countPredicates.add(cb.equal(employeeCountTable.get(Employee_.dateOfBirth), personFilter.getDateOfBirth()));
+    /**
+     * Offset pagination without a total count. One more row than requested is fetched to know, whether there is a
+     * next page, so there is only one statement.
+     */
+    private Slice<Employee> getEmployeesWithoutCount(PersonFilter personFilter, Pageable pageable, long companyId) {
+
+        log.debug("getEmployeesWithoutCount companyId={}, personFilter={}", companyId, personFilter);
+
+        if (employeeNameBloomFilters.hasNoMatches(companyId, personFilter)) {
+            return new SliceImpl<>(Collections.emptyList(), pageable, false);
+        }
+
+        if (!isUnrestricted(personFilter)) {
+            final LuceneEmployeeIndex.Hits hits = luceneEmployeeIndex.search(companyId, personFilter, pageable, false);
+            if (hits != null) {
+                return new SliceImpl<>(fetchByIds(hits.getIds(), 0, hits.getIds().length), pageable, hits.hasNext());
             }
+            final long[] ids = getResultIds(personFilter, pageable, companyId);
+            if (ids != null) {
+                return new SliceImpl<>(fetchByIds(ids, pageable), pageable, pageable.getOffset() + pageable.getPageSize() < ids.length);
+            }
+        }
+
+        final List<Employee> pageList = fetchEmployees(personFilter, pageable, pageable.getPageSize() + 1, companyId);
+        final boolean hasNext = pageList.size() > pageable.getPageSize();
+        return new SliceImpl<>(hasNext ? pageList.subList(0, pageable.getPageSize()) : pageList, pageable, hasNext);
+    }
 
-            if (personFilter.hasNames()) {
-                personFilter.getNames().forEach(nameFilter -> {
-                    final Root<EmployeeName> employeeNameTableFetch = fetchQuery.from(EmployeeName.class);
-                    final Root<EmployeeName> employeeNameTableCount = countQuery.from(EmployeeName.class);
-                    fetchPredicates.add(cb.equal(employeeNameTableFetch.get(EmployeeName_.company).get(Company_.id), companyId));
-                    countPredicates.add(cb.equal(employeeNameTableCount.get(EmployeeName_.company).get(Company_.id), companyId));
-                    fetchPredicates.add(
-                        cb.and(
-                            cb.equal(employeeNameTableFetch.get(EmployeeName_.id).get(EmployeeNameCompoundKey_.owner), employeeFetchTable.get(Employee_.id)),
-                            nameFilter.getKeyCompareOperation() == EmployeeNameFilter.CompareOperation.LIKE
-                                ? cb.like(employeeNameTableFetch.get(EmployeeName_.id).get(EmployeeNameCompoundKey_.nameKey), nameFilter.getKey()+ "%")
-                                : cb.equal(employeeNameTableFetch.get(EmployeeName_.id).get(EmployeeNameCompoundKey_.nameKey), nameFilter.getKey()),
-                            nameFilter.getValueCompareOperation() == EmployeeNameFilter.CompareOperation.LIKE
-                                ? cb.like(employeeNameTableFetch.get(EmployeeName_.id).get(EmployeeNameCompoundKey_.nameValue), nameFilter.getValue() + "%")
-                                : cb.equal(employeeNameTableFetch.get(EmployeeName_.id).get(EmployeeNameCompoundKey_.nameValue), nameFilter.getValue())
-                        )
-                    );
-                    countPredicates.add(
-                        cb.and(
-                            cb.equal(employeeNameTableCount.get(EmployeeName_.id).get(EmployeeNameCompoundKey_.owner), employeeCountTable.get(Employee_.id)),
-                            nameFilter.getKeyCompareOperation() == EmployeeNameFilter.CompareOperation.LIKE
-                                ? cb.like(employeeNameTableCount.get(EmployeeName_.id).get(EmployeeNameCompoundKey_.nameKey), nameFilter.getKey() + "%")
-                                : cb.equal(employeeNameTableCount.get(EmployeeName_.id).get(EmployeeNameCompoundKey_.nameKey), nameFilter.getKey()),
-                            nameFilter.getValueCompareOperation() == EmployeeNameFilter.CompareOperation.LIKE
-                                ? cb.like(employeeNameTableCount.get(EmployeeName_.id).get(EmployeeNameCompoundKey_.nameValue), nameFilter.getValue() + "%")
-                                : cb.like(employeeNameTableCount.get(EmployeeName_.id).get(EmployeeNameCompoundKey_.nameValue), nameFilter.getValue())
-                        )
-                    );
-                });
+    /**
+     * The ordered ids of a restricted search from the in memory name index or the result cache. On a miss the ids
+     * are queried without fetching the employees.
+     *
+     * @return the ids or null, if the result is too large to be cached
+     */
+    private long[] getResultIds(PersonFilter personFilter, Pageable pageable, long companyId) {
+
+        final long[] indexedIds = employeeNameIndex.findIds(companyId, personFilter, pageable.getSort());
+        if (indexedIds != null) {
+            return indexedIds;
+        }
+        return employeeResultIdCache.getIds(companyId, personFilter, pageable.getSort(), () -> {
+            final SearchPlan plan = personFilterPlanner.plan(companyId, personFilter);
+            final EmployeeSearchShape shape = EmployeeSearchShape.ids(plan, pageable.getSort());
+            final Query query = employeeSearchStatements.createQuery(em, shape, plan, companyId, null);
+            // one more, to detect results, which are too large
+            query.setMaxResults(employeeResultIdCache.getMaxIds() + 1);
+            return ((List<?>) query.getResultList()).stream().mapToLong(id -> ((Number) id).longValue()).toArray();
+        });
+    }
+
+    /**
+     * Fetch the employees of one page of a cached result by their primary key.
+     */
+    private List<Employee> fetchByIds(long[] ids, Pageable pageable) {
+
+        final int from = (int) Math.min(pageable.getOffset(), ids.length);
+        return fetchByIds(ids, from, Math.min(from + pageable.getPageSize(), ids.length));
+    }
+
+    /**
+     * Fetch the employees of a range of ids by their primary key. Employees, which are in the second level cache, are
+     * loaded without a statement - the others with one IN query.
+     */
+    private List<Employee> fetchByIds(long[] ids, int from, int to) {
+
+        final Cache secondLevelCache = em.getEntityManagerFactory().getCache();
+        final Map<Long, Employee> employees = new HashMap<>();
+        final List<Long> missingIds = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            if (secondLevelCache.contains(Employee.class, ids[i])) {
+                final Employee employee = em.find(Employee.class, ids[i]);
+                if (employee != null) {
+                    employees.put(employee.getId(), employee);
+                }
             } else {
-                final Root<EmployeeName> employeeNameTableFetch = fetchQuery.from(EmployeeName.class);
-                final Root<EmployeeName> employeeNameTableCount = countQuery.from(EmployeeName.class);
-                fetchPredicates.add(cb.equal(employeeNameTableFetch.get(EmployeeName_.company).get(Company_.id), companyId));
-                countPredicates.add(cb.equal(employeeNameTableCount.get(EmployeeName_.company).get(Company_.id), companyId));
-                fetchPredicates.add(cb.equal(employeeNameTableFetch.get(EmployeeName_.id).get(EmployeeNameCompoundKey_.owner), employeeFetchTable.get(Employee_.id)));
-                countPredicates.add(cb.equal(employeeNameTableCount.get(EmployeeName_.id).get(EmployeeNameCompoundKey_.owner), employeeCountTable.get(Employee_.id)));
+                missingIds.add(ids[i]);
             }
         }
+        if (!missingIds.isEmpty()) {
+            employeeRepository.findAllById(missingIds).forEach(employee -> employees.put(employee.getId(), employee));
+        }
+        // keep the order of the result - employees deleted in the meantime are skipped
+        return Arrays.stream(ids, from, to).mapToObj(employees::get).filter(Objects::nonNull).collect(Collectors.toList());
+    }
+
+    private List<Employee> fetchEmployees(PersonFilter personFilter, Pageable pageable, int maxResults, long companyId) {
+
+        final SearchPlan plan = personFilterPlanner.plan(companyId, personFilter);
+        final EmployeeSearchShape shape = EmployeeSearchShape.fetch(plan, pageable.getSort());
+        final Query query = employeeSearchStatements.createQuery(em, shape, plan, companyId, null);
+        query.setFirstResult((int) pageable.getOffset());
+        query.setMaxResults(maxResults);
+        return getResultList(query);
+    }
+
+    private long countEmployees(PersonFilter personFilter, long companyId) {
+
+        final SearchPlan plan = personFilterPlanner.plan(companyId, personFilter);
+        final Query query = employeeSearchStatements.createQuery(em, EmployeeSearchShape.count(plan), plan, companyId, null);
+        return ((Number) query.getSingleResult()).longValue();
+    }
+
+    /**
+     * Keyset pagination: the slice starts after the (sort key, id) of the cursor, so there is no OFFSET and no count.
+     * One more row than requested is fetched to know, whether there is a next slice.
+     */
+    private CursorSlice<Employee> getEmployees(PersonFilter personFilter, SearchCursor cursor, int size, long companyId) {
+
+        log.debug("getEmployees companyId={}, personFilter={}, cursor={}", companyId, personFilter, cursor);
+
+        if (employeeNameBloomFilters.hasNoMatches(companyId, personFilter)) {
+            return new CursorSlice<>(Collections.emptyList(), size, null);
+        }
 
-        // SELECT COUNT
-        countQuery.select(cb.countDistinct(employeeCountTable));
-        countQuery.where(countPredicates.toArray(new Predicate[]{}));
-        final TypedQuery<Long> typedCountQuery = em.createQuery(countQuery);
-        final long count = typedCountQuery.getSingleResult();
-
-        // SELECT employee
-        fetchQuery.select(employeeFetchTable);
-        fetchQuery.where(fetchPredicates.toArray(new Predicate[]{}));
-        fetchQuery.distinct(true);
-        defineOrder(employeeFetchTable, fetchQuery, cb, pageable);
-        final TypedQuery<Employee> typedQuery = em.createQuery(fetchQuery);
-        typedQuery.setFirstResult((int) pageable.getOffset());
-        typedQuery.setMaxResults(pageable.getPageSize());
-        final List<Employee> pageList = typedQuery.getResultList();
-
-        return new PageImpl<>(pageList, pageable, count);
+        final SearchPlan plan = personFilterPlanner.plan(companyId, personFilter);
+        final EmployeeSearchShape shape = EmployeeSearchShape.seek(plan, cursor);
+        return getEmployees(employeeSearchStatements.createQuery(em, shape, plan, companyId, cursor), cursor, size);
     }
 
-    private void defineOrder(Root<Employee> table, CriteriaQuery cq, CriteriaBuilder cb, Pageable pageable) {
+    /**
+     * The slice of a keyset query and the cursor of the next slice.
+     */
+    private CursorSlice<Employee> getEmployees(Query query, SearchCursor cursor, int size) {
+
+        query.setMaxResults(size + 1);
+        final List<Employee> sliceList = getResultList(query);
 
-        if (pageable.getSort().isUnsorted()) return;
-        Sort.Order order = pageable.getSort().iterator().next();
-        log.debug("defineOrder pageable={} => order={}", pageable, order);
-        if (order.isAscending()) {
-            cq.orderBy(cb.asc(table.get(order.getProperty())));
-        } else {
-            cq.orderBy(cb.desc(table.get(order.getProperty())));
+        if (sliceList.size() <= size) {
+            return new CursorSlice<>(sliceList, size, null);
         }
+        final List<Employee> content = sliceList.subList(0, size);
+        final Employee last = content.get(size - 1);
+        final boolean sortById = SearchCursor.SORT_ID.equals(cursor.getSortProperty());
+        // the only other sortable property is the surname
+        final String lastSortValue = sortById ? last.getId().toString() : last.getSurname();
+        return new CursorSlice<>(content, size, cursor.next(lastSortValue, last.getId()));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Employee> getResultList(Query query) {
+        // the native queries of FETCH and SEEK shapes are mapped to Employee
+        return (List<Employee>) query.getResultList();
     }
 }
@@ -1,35 +1,44 @@
 package com.giraone.pms.service.impl;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.giraone.pms.config.ApplicationProperties;
 import com.giraone.pms.domain.Company;
 import com.giraone.pms.domain.Employee;
-import com.giraone.pms.domain.User;
+import com.giraone.pms.domain.EmployeeName;
+import com.giraone.pms.domain.enumeration.BulkLoaderMode;
+import com.giraone.pms.repository.CompanyRepository;
+import com.giraone.pms.repository.EmployeeBulkRepository;
 import com.giraone.pms.repository.EmployeeRepository;
-import com.giraone.pms.security.AuthoritiesConstants;
 import com.giraone.pms.service.*;
 import com.giraone.pms.service.dto.CompanyDTO;
 import com.giraone.pms.service.dto.EmployeeBulkDTO;
-import com.giraone.pms.service.dto.EmployeeDTO;
-import com.giraone.pms.service.dto.UserDTO;
 import com.giraone.pms.service.mapper.CompanyMapper;
 import com.giraone.pms.service.mapper.EmployeeBulkMapper;
 import com.giraone.pms.service.mapper.EmployeeMapper;
 import com.giraone.pms.service.mapper.UserMapper;
+import com.giraone.pms.service.search.EmployeesChangedEvent;
+import com.giraone.pms.service.util.EmployeeBulkJsonReader;
 import io.micrometer.core.annotation.Timed;
 import org.apache.commons.codec.language.DoubleMetaphone;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Pageable;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import java.util.HashSet;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 @Service
 // Hint: @Transactional is done on the repository level!
@@ -41,40 +50,60 @@ public class EmployeesBulkServiceImpl implements EmployeeBulkService {
     private static final boolean CREATE_INITIAL_USER_FOR_COMPANY = true;
     private static final boolean WITH_METAPHONE = false;
 
-    private static final Set<String> INITIAL_USER_AUTHORITIES = new HashSet<>();
-
-    static {
-        INITIAL_USER_AUTHORITIES.add(AuthoritiesConstants.USER);
-    }
-
     private final DoubleMetaphone doubleMetaphone = new DoubleMetaphone();
 
     private final EmployeeRepository employeeRepository;
+    private final EmployeeBulkRepository employeeBulkRepository;
     private final EmployeeBulkMapper employeeBulkMapper;
     private final EmployeeMapper employeeMapper;
     private final EmployeeService employeeService;
     private final CompanyService companyService;
+    private final CompanyRepository companyRepository;
     private final CompanyMapper companyMapper;
     private final UserService userService;
     private final UserMapper userMapper;
+    private final InitialUserProvisioningService initialUserProvisioningService;
+    private final EmployeeReIndexService employeeReIndexService;
+    private final ApplicationProperties applicationProperties;
+    private final EmployeeBulkJsonReader employeeBulkJsonReader;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    /** Serializes the creation of companies, so concurrent units do not insert the same new company */
+    private final Object companyCreationLock = new Object();
 
     public EmployeesBulkServiceImpl(EmployeeRepository employeeRepository,
+                                    EmployeeBulkRepository employeeBulkRepository,
                                     EmployeeBulkMapper employeeBulkMapper,
                                     EmployeeMapper employeeMapper,
                                     EmployeeService employeeService,
                                     CompanyService companyService,
+                                    CompanyRepository companyRepository,
                                     CompanyMapper companyMapper,
                                     UserService userService,
-                                    UserMapper userMapper
+                                    UserMapper userMapper,
+                                    InitialUserProvisioningService initialUserProvisioningService,
+                                    EmployeeReIndexService employeeReIndexService,
+                                    ApplicationProperties applicationProperties,
+                                    ObjectMapper objectMapper,
+                                    PlatformTransactionManager transactionManager,
+                                    ApplicationEventPublisher eventPublisher
     ) {
         this.employeeRepository = employeeRepository;
+        this.employeeBulkRepository = employeeBulkRepository;
         this.employeeBulkMapper = employeeBulkMapper;
         this.employeeMapper = employeeMapper;
         this.employeeService = employeeService;
         this.companyService = companyService;
+        this.companyRepository = companyRepository;
         this.companyMapper = companyMapper;
         this.userService = userService;
         this.userMapper = userMapper;
+        this.initialUserProvisioningService = initialUserProvisioningService;
+        this.employeeReIndexService = employeeReIndexService;
+        this.applicationProperties = applicationProperties;
+        this.employeeBulkJsonReader = new EmployeeBulkJsonReader(objectMapper);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.eventPublisher = eventPublisher;
     }
 
     /**
@@ -86,75 +115,181 @@ public class EmployeesBulkServiceImpl implements EmployeeBulkService {
     @Timed
     @Transactional
     public int save(List<EmployeeBulkDTO> employeeDTOList) {
+        return this.save(employeeDTOList, null);
+    }
+
+    /**
+     * Save a list of employees in one transaction using a given loader mode and create companies dynamically.
+     *
+     * @param employeeDTOList the entity list to save
+     * @param loaderMode      the way the rows are written, if null the configured default is used
+     * @return the number of saved employees
+     */
+    @Timed
+    @Transactional
+    public int save(List<EmployeeBulkDTO> employeeDTOList, BulkLoaderMode loaderMode) {
 
         final List<Employee> employees = this.employeeBulkMapper.toEntity(employeeDTOList);
-        employees.forEach(employee -> {
-            // Store the company, if it doesn't yet exist
-            final String externalId = employee.getCompany().getExternalId();
-            Optional<CompanyDTO> optionalCompany = this.companyService.findOneByExternalId(externalId);
-            if (optionalCompany.isPresent()) {
-                final Company company = this.companyMapper.toEntity(optionalCompany.get());
-                employee.setCompany(company);
-            } else {
-                // company does not yet exist, so insert company.
-                // TODO: currently we use address of first employee as company address
-                CompanyDTO companyDTO = new CompanyDTO();
-                companyDTO.setExternalId(externalId);
-                companyDTO.setName(employee.getSurname() + " GmbH");
-                companyDTO.setPostalCode(employee.getPostalCode());
-                companyDTO.setCity(employee.getCity());
-                companyDTO.setStreetAddress(employee.getStreetAddress());
-                companyDTO = this.companyService.save(companyDTO);
-                employee.setCompany(this.companyMapper.toEntity(companyDTO));
-                // ... and create an initial user for this company
-                if (CREATE_INITIAL_USER_FOR_COMPANY) {
-                    UserDTO userDTO = new UserDTO();
-                    final String userId = String.format("user-%08d", companyDTO.getId());
-                    userDTO.setFirstName("Admin");
-                    userDTO.setLastName(externalId);
-                    userDTO.setLogin(userId);
-                    userDTO.setAuthorities(INITIAL_USER_AUTHORITIES);
-                    User user = this.userService.createUserWithPresetPassword(userDTO, userId);
-                    userDTO = this.userMapper.userToUserDTO(user);
-                    // ... and add this initial users to the companies user list
-                    final HashSet<UserDTO> users = new HashSet<>();
-                    users.add(userDTO);
-                    companyDTO.setUsers(users);
-                    this.companyService.save(companyDTO);
-                }
-            }
-        });
+        // The companies of the whole batch are resolved (and created, if needed) once
+        final Map<String, Company> companies = this.resolveCompanies(employees);
+        employees.forEach(employee -> employee.setCompany(companies.get(employee.getCompany().getExternalId())));
+        if (effectiveLoaderMode(loaderMode) == BulkLoaderMode.COPY) {
+            return this.saveWithCopy(employees);
+        }
         return this.employeeRepository.saveAllCustom(employees).size();
     }
 
+    /**
+     * Create the missing companies of a list of employees. The creation is committed before the lock is released,
+     * so the next caller finds the companies and the following {@link #save(List, BulkLoaderMode)} only reads them.
+     *
+     * @param employeeDTOList the employees, whose companies should exist
+     */
     @Timed
-    // NO @Transactional !!!
-    public int reIndex(boolean clearFirst) {
-        final int pageSize = 1000;
-        Pageable pageable = PageRequest.of(0, pageSize);
-        Page<EmployeeDTO> pages;
-        int ret = 0;
-        do {
-            final long start = System.currentTimeMillis();
-            pages = this.employeeService.findAllByFilter(null, null, pageable).get();
-
-            ret += reIndex(pages.getNumber(), pages.getContent().stream(), clearFirst);
-            pageable = pageable.next();
-            final long end = System.currentTimeMillis();
-            log.info("Page {} of {} in {} msec", pages.getNumber(), pages.getTotalPages(), end - start);
-        } while (pages.hasNext());
-        return ret;
+    // NO @Transactional - the new companies must be committed within the lock
+    public void createMissingCompanies(List<EmployeeBulkDTO> employeeDTOList) {
+
+        // one employee per company is enough to create the company
+        final Map<String, EmployeeBulkDTO> firstEmployeeOfCompany = new LinkedHashMap<>();
+        employeeDTOList.forEach(employee -> firstEmployeeOfCompany.putIfAbsent(employee.getCompanyId(), employee));
+        final List<Employee> employees = this.employeeBulkMapper.toEntity(new ArrayList<>(firstEmployeeOfCompany.values()));
+        synchronized (companyCreationLock) {
+            transactionTemplate.execute(status -> this.resolveCompanies(employees));
+        }
+    }
+
+    /**
+     * Save employees read from a stream with a JSON array in chunks. Each chunk is committed in its own
+     * transaction, so neither the heap nor the persistence context grows with the size of the stream.
+     *
+     * @param inputStream the stream containing the JSON array of employees
+     * @param chunkSize   number of employees per transaction, if less than 1 the configured default is used
+     * @param loaderMode  the way the rows are written, if null the configured default is used
+     * @return the number of saved employees
+     * @throws IOException on any I/O or JSON parsing error
+     */
+    @Timed
+    // NO @Transactional - every chunk uses its own transaction
+    public long saveStream(InputStream inputStream, int chunkSize, BulkLoaderMode loaderMode) throws IOException {
+        return this.saveStream(inputStream, chunkSize, loaderMode, null);
     }
 
+    /**
+     * Save employees read from a stream with a JSON array in chunks and report the progress after each chunk.
+     *
+     * @param inputStream      the stream containing the JSON array of employees
+     * @param chunkSize        number of employees per transaction, if less than 1 the configured default is used
+     * @param loaderMode       the way the rows are written, if null the configured default is used
+     * @param progressListener called with the total number of saved employees after each committed chunk, may be null
+     * @return the number of saved employees
+     * @throws IOException on any I/O or JSON parsing error
+     */
     @Timed
-    @Transactional
-    // public because otherwise @Transactional is not working
-    public int reIndex(int pageIndex, Stream<EmployeeDTO> employeeStream, boolean clearFirst) {
-        log.info("EmployeesBulkServiceImpl.reIndex {}", pageIndex);
-        List<Employee> employeeList = employeeStream.map(
-            employeeDTO -> employeeMapper.toEntity(employeeDTO)).collect(Collectors.toList());
-        int ret = this.employeeRepository.reIndex(employeeList, !clearFirst);
-        log.info("EmployeesBulkServiceImpl.reIndex: insert for {} names", ret);
+    // NO @Transactional - every chunk uses its own transaction
+    public long saveStream(InputStream inputStream, int chunkSize, BulkLoaderMode loaderMode,
+                           LongConsumer progressListener) throws IOException {
+
+        final int effectiveChunkSize = chunkSize > 0 ? chunkSize : applicationProperties.getBulk().getChunkSize();
+        final AtomicLong saved = new AtomicLong();
+        final long start = System.currentTimeMillis();
+        final long read = employeeBulkJsonReader.read(inputStream, effectiveChunkSize, chunk -> {
+            // a self invocation of save() would bypass the transactional proxy, so the template is used
+            final Integer count = transactionTemplate.execute(status -> this.save(chunk, loaderMode));
+            saved.addAndGet(count != null ? count : 0);
+            log.debug("EmployeesBulkServiceImpl.saveStream: chunk of {} committed, {} in total", chunk.size(), saved.get());
+            if (progressListener != null) {
+                progressListener.accept(saved.get());
+            }
+        });
+        log.info("EmployeesBulkServiceImpl.saveStream: {} of {} employees saved in {} msec",
+            saved.get(), read, System.currentTimeMillis() - start);
+        return saved.get();
+    }
+
+    /**
+     * Store employees and their names with the COPY protocol (JDBC batches on databases other than PostgreSQL).
+     * The ids are reserved from the sequence upfront, so the names can be built without a round trip per employee.
+     * Must be called within a transaction.
+     *
+     * @param employees the employees with resolved companies
+     * @return the number of saved employees
+     */
+    private int saveWithCopy(List<Employee> employees) {
+
+        final long[] ids = this.employeeBulkRepository.reserveIds(employees.size());
+        final List<EmployeeName> employeeNames = new ArrayList<>(employees.size() * 6);
+        for (int i = 0; i < employees.size(); i++) {
+            final Employee employee = employees.get(i);
+            employee.setId(ids[i]);
+            employeeNames.addAll(this.employeeRepository.buildNames(employee));
+        }
+        final int ret = this.employeeBulkRepository.insertEmployees(employees);
+        this.employeeBulkRepository.insertEmployeeNames(employeeNames);
+        // the rows bypass the repository, so the changes are published here - one event per company
+        employees.stream()
+            .collect(Collectors.groupingBy(employee -> employee.getCompany().getId(), Collectors.counting()))
+            .forEach((companyId, count) -> this.eventPublisher.publishEvent(new EmployeesChangedEvent(companyId, count)));
+        return ret;
+    }
+
+    /**
+     * Resolve the distinct companies of a batch with one IN query. Missing companies are created in one step,
+     * their initial users are provisioned asynchronously after the commit. There is no authorization check per
+     * company, because the bulk API can be used only by admins.
+     *
+     * @param employees the employees, whose company contains only the external id
+     * @return map of company external id to company entity
+     */
+    private Map<String, Company> resolveCompanies(List<Employee> employees) {
+
+        // the first employee of a company defines the address of a new company
+        final Map<String, Employee> firstEmployeeOfCompany = new LinkedHashMap<>();
+        employees.forEach(employee -> firstEmployeeOfCompany.putIfAbsent(employee.getCompany().getExternalId(), employee));
+
+        final Map<String, Company> ret = new HashMap<>();
+        this.companyRepository.findAllByExternalIdIn(firstEmployeeOfCompany.keySet())
+            .forEach(company -> ret.put(company.getExternalId(), company));
+
+        final List<Company> newCompanies = new ArrayList<>();
+        firstEmployeeOfCompany.forEach((externalId, employee) -> {
+            if (!ret.containsKey(externalId)) {
+                // TODO: currently we use address of first employee as company address
+                final Company company = new Company();
+                company.setExternalId(externalId);
+                company.setName(employee.getSurname() + " GmbH");
+                company.setPostalCode(employee.getPostalCode());
+                company.setCity(employee.getCity());
+                company.setStreetAddress(employee.getStreetAddress());
+                newCompanies.add(company);
+            }
+        });
+        if (newCompanies.isEmpty()) {
+            return ret;
+        }
+
+        this.companyRepository.saveAll(newCompanies).forEach(company -> ret.put(company.getExternalId(), company));
+        log.debug("EmployeesBulkServiceImpl.resolveCompanies: {} existing, {} created", ret.size() - newCompanies.size(), newCompanies.size());
+        if (CREATE_INITIAL_USER_FOR_COMPANY) {
+            // BCrypt hashing per user is too expensive for the bulk transaction, so it is done after the commit
+            this.initialUserProvisioningService.enqueue(
+                newCompanies.stream().map(Company::getId).collect(Collectors.toList()));
+        }
         return ret;
     }
+
+    private BulkLoaderMode effectiveLoaderMode(BulkLoaderMode loaderMode) {
+        return loaderMode != null ? loaderMode : applicationProperties.getBulk().getLoaderMode();
+    }
+
+    /**
+     * Re-index all employees with the keyset based, parallel re-index engine.
+     *
+     * @param clearFirst if true, existing names are deleted before the new ones are inserted
+     * @return the number of re-indexed employees
+     */
+    @Timed
+    // NO @Transactional - every page uses its own transaction
+    public int reIndex(boolean clearFirst) {
+        return (int) this.employeeReIndexService.reIndex(clearFirst, false, 0, null);
+    }
 }
@@ -0,0 +1,111 @@
+package com.giraone.pms.service.impl;
+
+import com.giraone.pms.config.ApplicationProperties;
+import com.giraone.pms.domain.enumeration.EmployeeNameFilterKey;
+import com.giraone.pms.domain.filter.EmployeeNameKeyValue;
+import com.giraone.pms.service.NameKeyValueService;
+import com.giraone.pms.service.NameNormalizeService;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Memoizing builder of name keys. Normalization, splitting and especially the double metaphone are computed only
+ * once per distinct raw name. The cache is bounded and its hit rate is exposed as "cache.*" metrics with the tag
+ * cache=employeeNameKeyValues.
+ */
+@Service
+public class NameKeyValueServiceImpl implements NameKeyValueService, MeterBinder {
+
+    /** The size used, when the service is not created by Spring */
+    public static final long DEFAULT_MAXIMUM_SIZE = 100_000L;
+
+    private static final String CACHE_NAME = "employeeNameKeyValues";
+
+    private final NameNormalizeService nameNormalizeService;
+
+    private final LoadingCache<String, Set<EmployeeNameKeyValue>> surnameCache;
+    private final LoadingCache<String, Set<EmployeeNameKeyValue>> givenNameCache;
+
+    @Autowired
+    public NameKeyValueServiceImpl(NameNormalizeService nameNormalizeService, ApplicationProperties applicationProperties) {
+        this(nameNormalizeService, applicationProperties.getIndex().getNameCacheSize());
+    }
+
+    public NameKeyValueServiceImpl(NameNormalizeService nameNormalizeService, long maximumSize) {
+        this.nameNormalizeService = nameNormalizeService;
+        this.surnameCache = buildCache(maximumSize,
+            EmployeeNameFilterKey.LS, EmployeeNameFilterKey.NS, EmployeeNameFilterKey.PS);
+        this.givenNameCache = buildCache(maximumSize,
+            EmployeeNameFilterKey.LG, EmployeeNameFilterKey.NG, EmployeeNameFilterKey.PG);
+    }
+
+    @Override
+    public Set<EmployeeNameKeyValue> buildSurnameKeyValues(String surname) {
+        return surname != null ? surnameCache.getUnchecked(surname) : Collections.emptySet();
+    }
+
+    @Override
+    public Set<EmployeeNameKeyValue> buildGivenNameKeyValues(String givenName) {
+        return givenName != null ? givenNameCache.getUnchecked(givenName) : Collections.emptySet();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        GuavaCacheMetrics.monitor(registry, surnameCache, CACHE_NAME, "name", "surname");
+        GuavaCacheMetrics.monitor(registry, givenNameCache, CACHE_NAME, "name", "givenName");
+    }
+
+    /**
+     * @return the statistics of the surname and the given name cache summed up
+     */
+    public CacheStats stats() {
+        return surnameCache.stats().plus(givenNameCache.stats());
+    }
+
+    //------------------------------------------------------------------------------------------------------------------
+
+    private LoadingCache<String, Set<EmployeeNameKeyValue>> buildCache(long maximumSize, EmployeeNameFilterKey lowercaseKey,
+                                                                      EmployeeNameFilterKey normalizedKey,
+                                                                      EmployeeNameFilterKey phoneticKey) {
+        return CacheBuilder.newBuilder()
+            .maximumSize(maximumSize)
+            .recordStats()
+            .build(new CacheLoader<String, Set<EmployeeNameKeyValue>>() {
+                @Override
+                public Set<EmployeeNameKeyValue> load(String name) {
+                    return computeKeyValues(name, lowercaseKey, normalizedKey, phoneticKey);
+                }
+            });
+    }
+
+    private Set<EmployeeNameKeyValue> computeKeyValues(String name, EmployeeNameFilterKey lowercaseKey,
+                                                       EmployeeNameFilterKey normalizedKey,
+                                                       EmployeeNameFilterKey phoneticKey) {
+
+        final String normalizedName = nameNormalizeService.normalize(name);
+        if (normalizedName == null) {
+            return Collections.emptySet();
+        }
+        final Set<EmployeeNameKeyValue> ret = new HashSet<>();
+        ret.add(new EmployeeNameKeyValue(lowercaseKey.toString(), normalizedName));
+        final List<String> names = nameNormalizeService.split(normalizedName);
+        for (String part : names) {
+            ret.add(new EmployeeNameKeyValue(normalizedKey.toString(), nameNormalizeService.reduceSimplePhonetic(part)));
+            ret.add(new EmployeeNameKeyValue(phoneticKey.toString(), nameNormalizeService.phonetic(part)));
+        }
+        // the sets are shared between all callers
+        return Collections.unmodifiableSet(ret);
+    }
+}
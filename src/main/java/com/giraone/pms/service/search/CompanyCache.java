@@ -0,0 +1,175 @@
+package com.giraone.pms.service.search;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.function.ToLongFunction;
+
+/**
+ * Cache of one value per company, which is loaded from the database on its first use and evicted (least recently
+ * used) when the memory budget is exceeded. The values are maintained with the committed
+ * {@link EmployeeNamesChangedEvent}s; other changes drop the value of the company, a re-index drops all values.
+ * A value, which grows by the changes, is weighed again, so the budget holds for the grown values as well.
+ * <p>
+ * Changes, which are committed or still running during the load, may be missing in the loaded value. Such a value is
+ * not kept - an exact cache does not return it at all, so its caller uses the database.
+ *
+ * @param <V> the cached value of a company
+ */
+class CompanyCache<V> {
+
+    private final Logger log = LoggerFactory.getLogger(CompanyCache.class);
+
+    /**
+     * Loads the value of a company. Called within the transaction of the caller.
+     */
+    @FunctionalInterface
+    interface Loader<V> {
+
+        /**
+         * @return the value or null, if the company should not be cached
+         */
+        V load(long companyId);
+    }
+
+    /**
+     * Applies a committed change of the names of one employee to the value of its company.
+     */
+    @FunctionalInterface
+    interface Updater<V> {
+
+        /**
+         * @return false, if the change cannot be applied and the value must be dropped
+         */
+        boolean update(V value, EmployeeNamesChangedEvent event);
+    }
+
+    private final String name;
+    private final boolean exact;
+    private final EmployeeCountService employeeCountService;
+    private final PendingEmployeeChanges pendingEmployeeChanges;
+    private final Loader<V> loader;
+    private final Updater<V> updater;
+    private final ToLongFunction<V> estimatedBytes;
+    private final Cache<Long, Entry<V>> values;
+
+    /**
+     * @param name                   the name of the cache in the metrics and logs
+     * @param megabytes              the memory budget
+     * @param estimatedBytes         the estimated memory of a value
+     * @param exact                  if true, a value, which may miss changes, is not returned by {@link #get(long)}
+     * @param employeeCountService   the source of the write versions of the companies
+     * @param pendingEmployeeChanges the running transactions with changes
+     * @param loader                 loads the value of a company
+     * @param updater                maintains a value with the committed changes
+     */
+    CompanyCache(String name, long megabytes, ToLongFunction<V> estimatedBytes, boolean exact,
+                 EmployeeCountService employeeCountService, PendingEmployeeChanges pendingEmployeeChanges,
+                 Loader<V> loader, Updater<V> updater) {
+
+        this.name = name;
+        this.exact = exact;
+        this.employeeCountService = employeeCountService;
+        this.pendingEmployeeChanges = pendingEmployeeChanges;
+        this.loader = loader;
+        this.updater = updater;
+        this.estimatedBytes = estimatedBytes;
+        // the weight is measured in kilobytes
+        this.values = CacheBuilder.newBuilder()
+            .maximumWeight(megabytes * 1024L)
+            .weigher((Long companyId, Entry<V> entry) -> entry.weight)
+            .recordStats()
+            .build();
+    }
+
+    /**
+     * Get or load the value of a company.
+     *
+     * @param companyId the company
+     * @return the value or null, if it is not cached (see {@link Loader}) or it may miss changes and the cache is exact
+     */
+    V get(long companyId) {
+
+        final Entry<V> cached = values.getIfPresent(companyId);
+        if (cached != null) {
+            return cached.value;
+        }
+        final boolean pendingBefore = pendingEmployeeChanges.hasPendingChanges(companyId);
+        final long version = employeeCountService.getWriteVersion(companyId);
+        final long start = System.currentTimeMillis();
+        final V ret = loader.load(companyId);
+        if (ret == null) {
+            return null;
+        }
+        if (pendingBefore) {
+            log.debug("{}: company {} is changed by a running transaction, not kept", name, companyId);
+            return exact ? null : ret;
+        }
+        final Entry<V> existing = values.asMap().putIfAbsent(companyId, new Entry<>(ret, weigh(ret)));
+        if (existing != null) {
+            return existing.value;
+        }
+        // a change between the load and the put is not applied to the value, so it is checked after the put
+        if (version != employeeCountService.getWriteVersion(companyId) || pendingEmployeeChanges.hasPendingChanges(companyId)) {
+            values.invalidate(companyId);
+            log.debug("{}: company {} was changed during the load, not kept", name, companyId);
+            return exact ? null : ret;
+        }
+        log.info("{}: loaded company {} in {} msec", name, companyId, System.currentTimeMillis() - start);
+        return ret;
+    }
+
+    /**
+     * Maintain or drop the values with a committed change.
+     */
+    void onEmployeesChangedCommitted(EmployeesChangedEvent event) {
+
+        if (event.isAllCompanies()) {
+            values.invalidateAll();
+            return;
+        }
+        final Entry<V> entry = values.getIfPresent(event.getCompanyId());
+        if (entry == null) {
+            return;
+        }
+        if (!(event instanceof EmployeeNamesChangedEvent) || !updater.update(entry.value, (EmployeeNamesChangedEvent) event)) {
+            log.debug("{}: dropping company {} after {}", name, event.getCompanyId(), event);
+            values.invalidate(event.getCompanyId());
+            return;
+        }
+        final int weight = weigh(entry.value);
+        if (weight > entry.weight) {
+            // the weigher runs only on a put, so the grown value is put again - this may evict other values
+            values.asMap().replace(event.getCompanyId(), entry, new Entry<>(entry.value, weight));
+        }
+    }
+
+    void bindTo(MeterRegistry registry) {
+        GuavaCacheMetrics.monitor(registry, values, name);
+    }
+
+    /**
+     * @return the weight of a value in kilobytes
+     */
+    private int weigh(V value) {
+        return (int) Math.min(Integer.MAX_VALUE, estimatedBytes.applyAsLong(value) / 1024L + 1L);
+    }
+
+    /**
+     * A value with the weight, it was put with.
+     */
+    private static final class Entry<V> {
+
+        private final V value;
+        private final int weight;
+
+        Entry(V value, int weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+}
@@ -0,0 +1,409 @@
+package com.giraone.pms.service.search;
+
+import com.giraone.pms.domain.filter.EmployeeNameFilter;
+import com.giraone.pms.domain.filter.EmployeeNameKeyValue;
+import com.giraone.pms.domain.filter.PersonFilter;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * The in memory copy of the employee_name rows and the dates of birth of one company. Per name key (LS, NS, PS, LG,
+ * NG, PG) the name values are sorted and mapped to the ascending ids of their employees (posting lists). A prefix
+ * LIKE is a range of the sorted values, the AND of several names is the intersection of their posting lists.
+ * <p>
+ * The posting lists are never modified in place - a change replaces the array - so the result of a search may be a
+ * posting list itself. Searches and changes are synchronized by a read write lock.
+ */
+final class CompanyNameIndex {
+
+    /** Rough memory of a distinct value (tree entry, string, array header) and of an id - for the memory budget */
+    private static final long BYTES_PER_VALUE = 96L;
+    private static final long BYTES_PER_ID = 8L;
+    /** Id and date of birth of an employee */
+    private static final long BYTES_PER_EMPLOYEE = 12L;
+
+    private static final int NO_DATE_OF_BIRTH = Integer.MIN_VALUE;
+    private static final long[] NO_IDS = new long[0];
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    /** Name key - sorted name value - ascending ids */
+    private final Map<String, TreeMap<String, long[]>> postings;
+    /** The ascending ids of all employees and the epoch days of their date of birth */
+    private long[] employeeIds;
+    private int[] birthDays;
+    private int employees;
+    /** Maintained by the changes, so the memory budget of the cache can be checked after a change */
+    private volatile long estimatedBytes;
+
+    private CompanyNameIndex(Map<String, TreeMap<String, long[]>> postings, long[] employeeIds, int[] birthDays,
+                             long estimatedBytes) {
+        this.postings = postings;
+        this.employeeIds = employeeIds;
+        this.birthDays = birthDays;
+        this.employees = employeeIds.length;
+        this.estimatedBytes = estimatedBytes;
+    }
+
+    /**
+     * @return the estimated memory of the index
+     */
+    long getEstimatedBytes() {
+        return estimatedBytes;
+    }
+
+    /**
+     * Search the ids of the employees matching all names and the date of birth of a filter.
+     *
+     * @param personFilter the filter
+     * @return the ascending ids - the array must not be modified
+     */
+    long[] findIds(PersonFilter personFilter) {
+
+        lock.readLock().lock();
+        try {
+            final List<long[]> matches = new ArrayList<>(personFilter.getNames().size());
+            for (EmployeeNameFilter nameFilter : personFilter.getNames()) {
+                final long[] ids = match(nameFilter);
+                if (ids.length == 0) {
+                    return NO_IDS;
+                }
+                matches.add(ids);
+            }
+            // the smallest list first, so the intermediate results are as small as possible
+            matches.sort(Comparator.comparingInt(ids -> ids.length));
+            long[] ret = matches.isEmpty() ? null : matches.get(0);
+            for (int i = 1; i < matches.size() && ret.length > 0; i++) {
+                ret = intersect(ret, matches.get(i));
+            }
+            if (personFilter.getDateOfBirth() != null) {
+                final int birthDay = (int) personFilter.getDateOfBirth().toEpochDay();
+                ret = ret == null ? bornOn(birthDay) : bornOn(ret, birthDay);
+            }
+            return ret != null ? ret : Arrays.copyOf(employeeIds, employees);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Apply the change of one employee.
+     */
+    void apply(EmployeeNamesChangedEvent event) {
+
+        final long id = event.getEmployeeId();
+        lock.writeLock().lock();
+        try {
+            if (event.getRemovedNames() == null) {
+                postings.forEach((key, values) -> new ArrayList<>(values.keySet())
+                    .forEach(value -> removeName(new EmployeeNameKeyValue(key, value), id)));
+            } else {
+                event.getRemovedNames().forEach(name -> removeName(name, id));
+            }
+            event.getAddedNames().forEach(name -> addName(name, id));
+            if (event.isRemoved()) {
+                removeEmployee(id);
+            } else {
+                putEmployee(id, event.getDateOfBirth());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    //------------------------------------------------------------------------------------------------------------------
+
+    /**
+     * Same semantic as the SQL predicate "name_key LIKE/= :key AND name_value LIKE/=/IN :value" of the search statement.
+     */
+    private long[] match(EmployeeNameFilter nameFilter) {
+
+        final String key = nameFilter.getKey();
+        final String value = String.valueOf(nameFilter.getValue());
+        final List<long[]> ret = new ArrayList<>();
+        for (Map.Entry<String, TreeMap<String, long[]>> keyEntry : postings.entrySet()) {
+            final boolean keyMatches = nameFilter.getKeyCompareOperation() == EmployeeNameFilter.CompareOperation.LIKE
+                ? keyEntry.getKey().startsWith(key) : keyEntry.getKey().equals(key);
+            if (!keyMatches) {
+                continue;
+            }
+            final TreeMap<String, long[]> values = keyEntry.getValue();
+            if (nameFilter.getValueCompareOperation() == EmployeeNameFilter.CompareOperation.LIKE) {
+                for (Map.Entry<String, long[]> valueEntry : values.tailMap(value, true).entrySet()) {
+                    if (!valueEntry.getKey().startsWith(value)) {
+                        break;
+                    }
+                    ret.add(valueEntry.getValue());
+                }
+            } else {
+                for (String exactValue : nameFilter.getValues()) {
+                    final long[] ids = values.get(exactValue);
+                    if (ids != null) {
+                        ret.add(ids);
+                    }
+                }
+            }
+        }
+        return union(ret);
+    }
+
+    private long[] bornOn(int birthDay) {
+
+        final long[] ret = new long[employees];
+        int size = 0;
+        for (int i = 0; i < employees; i++) {
+            if (birthDays[i] == birthDay) {
+                ret[size++] = employeeIds[i];
+            }
+        }
+        return Arrays.copyOf(ret, size);
+    }
+
+    private long[] bornOn(long[] ids, int birthDay) {
+
+        final long[] ret = new long[ids.length];
+        int size = 0;
+        for (long id : ids) {
+            final int position = Arrays.binarySearch(employeeIds, 0, employees, id);
+            if (position >= 0 && birthDays[position] == birthDay) {
+                ret[size++] = id;
+            }
+        }
+        return Arrays.copyOf(ret, size);
+    }
+
+    private void addName(EmployeeNameKeyValue name, long id) {
+
+        if (name.getKey() == null || name.getValue() == null) {
+            return;
+        }
+        final TreeMap<String, long[]> values = postings.computeIfAbsent(name.getKey(), key -> new TreeMap<>());
+        final long[] ids = values.get(name.getValue());
+        if (ids == null) {
+            values.put(name.getValue(), new long[]{id});
+            estimatedBytes += valueBytes(name.getValue()) + BYTES_PER_ID;
+            return;
+        }
+        final long[] ret = insert(ids, id);
+        if (ret != ids) {
+            values.put(name.getValue(), ret);
+            estimatedBytes += BYTES_PER_ID;
+        }
+    }
+
+    private void removeName(EmployeeNameKeyValue name, long id) {
+
+        final TreeMap<String, long[]> values = postings.get(name.getKey());
+        if (values == null || name.getValue() == null) {
+            return;
+        }
+        final long[] ids = values.get(name.getValue());
+        if (ids == null) {
+            return;
+        }
+        final long[] ret = remove(ids, id);
+        if (ret == ids) {
+            return;
+        }
+        estimatedBytes -= BYTES_PER_ID;
+        if (ret.length == 0) {
+            values.remove(name.getValue());
+            estimatedBytes -= valueBytes(name.getValue());
+        } else {
+            values.put(name.getValue(), ret);
+        }
+    }
+
+    private void putEmployee(long id, LocalDate dateOfBirth) {
+
+        final int birthDay = dateOfBirth != null ? (int) dateOfBirth.toEpochDay() : NO_DATE_OF_BIRTH;
+        final int position = Arrays.binarySearch(employeeIds, 0, employees, id);
+        if (position >= 0) {
+            birthDays[position] = birthDay;
+            return;
+        }
+        final int insertAt = -position - 1;
+        if (employees == employeeIds.length) {
+            final int capacity = Math.max(16, employees + (employees >> 1));
+            employeeIds = Arrays.copyOf(employeeIds, capacity);
+            birthDays = Arrays.copyOf(birthDays, capacity);
+        }
+        // new employees have the highest id, so there is usually nothing to move
+        System.arraycopy(employeeIds, insertAt, employeeIds, insertAt + 1, employees - insertAt);
+        System.arraycopy(birthDays, insertAt, birthDays, insertAt + 1, employees - insertAt);
+        employeeIds[insertAt] = id;
+        birthDays[insertAt] = birthDay;
+        employees++;
+        estimatedBytes += BYTES_PER_EMPLOYEE;
+    }
+
+    private void removeEmployee(long id) {
+
+        final int position = Arrays.binarySearch(employeeIds, 0, employees, id);
+        if (position >= 0) {
+            System.arraycopy(employeeIds, position + 1, employeeIds, position, employees - position - 1);
+            System.arraycopy(birthDays, position + 1, birthDays, position, employees - position - 1);
+            employees--;
+            estimatedBytes -= BYTES_PER_EMPLOYEE;
+        }
+    }
+
+    private static long valueBytes(String value) {
+        return BYTES_PER_VALUE + 2L * value.length();
+    }
+
+    static long[] intersect(long[] ids1, long[] ids2) {
+
+        final long[] ret = new long[Math.min(ids1.length, ids2.length)];
+        int size = 0;
+        int i1 = 0;
+        int i2 = 0;
+        while (i1 < ids1.length && i2 < ids2.length) {
+            if (ids1[i1] < ids2[i2]) {
+                i1++;
+            } else if (ids1[i1] > ids2[i2]) {
+                i2++;
+            } else {
+                ret[size++] = ids1[i1];
+                i1++;
+                i2++;
+            }
+        }
+        return Arrays.copyOf(ret, size);
+    }
+
+    static long[] union(List<long[]> idLists) {
+
+        if (idLists.isEmpty()) {
+            return NO_IDS;
+        }
+        if (idLists.size() == 1) {
+            return idLists.get(0);
+        }
+        final long[] all = new long[idLists.stream().mapToInt(ids -> ids.length).sum()];
+        int position = 0;
+        for (long[] ids : idLists) {
+            System.arraycopy(ids, 0, all, position, ids.length);
+            position += ids.length;
+        }
+        return sortedUnique(all, all.length);
+    }
+
+    private static long[] sortedUnique(long[] ids, int length) {
+
+        Arrays.sort(ids, 0, length);
+        int size = 0;
+        for (int i = 0; i < length; i++) {
+            if (size == 0 || ids[size - 1] != ids[i]) {
+                ids[size++] = ids[i];
+            }
+        }
+        return Arrays.copyOf(ids, size);
+    }
+
+    private static long[] insert(long[] ids, long id) {
+
+        final int position = Arrays.binarySearch(ids, id);
+        if (position >= 0) {
+            return ids;
+        }
+        final int insertAt = -position - 1;
+        final long[] ret = new long[ids.length + 1];
+        System.arraycopy(ids, 0, ret, 0, insertAt);
+        ret[insertAt] = id;
+        System.arraycopy(ids, insertAt, ret, insertAt + 1, ids.length - insertAt);
+        return ret;
+    }
+
+    private static long[] remove(long[] ids, long id) {
+
+        final int position = Arrays.binarySearch(ids, id);
+        if (position < 0) {
+            return ids;
+        }
+        final long[] ret = new long[ids.length - 1];
+        System.arraycopy(ids, 0, ret, 0, position);
+        System.arraycopy(ids, position + 1, ret, position, ids.length - position - 1);
+        return ret;
+    }
+
+    //------------------------------------------------------------------------------------------------------------------
+
+    /**
+     * Collects the rows of a company - the names in any order, the employees ordered by their id.
+     */
+    static final class Builder {
+
+        private final Map<String, Map<String, LongList>> names = new HashMap<>();
+        private final LongList employeeIds = new LongList();
+        private int[] birthDays = new int[16];
+
+        Builder addName(long id, String key, String value) {
+
+            if (key != null && value != null) {
+                names.computeIfAbsent(key, k -> new HashMap<>()).computeIfAbsent(value, v -> new LongList()).add(id);
+            }
+            return this;
+        }
+
+        /**
+         * @throws IllegalArgumentException if the employees are not added in ascending order of their id
+         */
+        Builder addEmployee(long id, LocalDate dateOfBirth) {
+
+            final int position = employeeIds.size;
+            if (position > 0 && employeeIds.values[position - 1] >= id) {
+                throw new IllegalArgumentException("Employees must be added ordered by id - " + id + " is out of order!");
+            }
+            employeeIds.add(id);
+            if (position == birthDays.length) {
+                birthDays = Arrays.copyOf(birthDays, position * 2);
+            }
+            birthDays[position] = dateOfBirth != null ? (int) dateOfBirth.toEpochDay() : NO_DATE_OF_BIRTH;
+            return this;
+        }
+
+        CompanyNameIndex build() {
+
+            long bytes = 0L;
+            final Map<String, TreeMap<String, long[]>> postings = new HashMap<>();
+            for (Map.Entry<String, Map<String, LongList>> keyEntry : names.entrySet()) {
+                final TreeMap<String, long[]> values = new TreeMap<>();
+                for (Map.Entry<String, LongList> valueEntry : keyEntry.getValue().entrySet()) {
+                    final long[] ids = valueEntry.getValue().toSortedUniqueArray();
+                    values.put(valueEntry.getKey(), ids);
+                    bytes += valueBytes(valueEntry.getKey()) + BYTES_PER_ID * ids.length;
+                }
+                postings.put(keyEntry.getKey(), values);
+            }
+            final int size = employeeIds.size;
+            bytes += BYTES_PER_EMPLOYEE * size;
+            return new CompanyNameIndex(postings, Arrays.copyOf(employeeIds.values, size), Arrays.copyOf(birthDays, size), bytes);
+        }
+    }
+
+    private static final class LongList {
+
+        private long[] values = new long[2];
+        private int size;
+
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        long[] toSortedUniqueArray() {
+            return sortedUnique(values, size);
+        }
+    }
+}
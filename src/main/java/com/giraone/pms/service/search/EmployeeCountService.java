@@ -0,0 +1,210 @@
+package com.giraone.pms.service.search;
+
+import com.giraone.pms.config.ApplicationProperties;
+import com.giraone.pms.domain.filter.PersonFilter;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Cache for the total counts of the employee search, so paging through the result of the same filter does not count
+ * again on every page.
+ * <p>
+ * Every company has a write version, which is incremented by an {@link EmployeesChangedEvent}. A cached count is only
+ * valid for the write version, that was current before it was counted. The version is incremented immediately (so the
+ * writing transaction itself never sees a stale count) and again after the commit (so counts of other transactions,
+ * which were computed before the commit, are dropped).
+ * <p>
+ * For listings without a filter there is additionally an estimated count: a per-company counter, which is counted
+ * once and then maintained with the deltas of the events.
+ */
+@Service
+public class EmployeeCountService implements MeterBinder {
+
+    private final Logger log = LoggerFactory.getLogger(EmployeeCountService.class);
+
+    private static final String CACHE_NAME = "employeeCounts";
+
+    /** Incremented by changes of unknown companies - part of the write version of every company */
+    private final AtomicLong globalWriteVersion = new AtomicLong();
+    private final ConcurrentMap<Long, AtomicLong> writeVersions = new ConcurrentHashMap<>();
+
+    private final Cache<CountKey, VersionedCount> counts;
+    private final Cache<Long, AtomicLong> employeeCounters;
+
+    public EmployeeCountService(ApplicationProperties applicationProperties) {
+
+        final ApplicationProperties.Search search = applicationProperties.getSearch();
+        this.counts = CacheBuilder.newBuilder()
+            .maximumSize(search.getCountCacheSize())
+            .expireAfterWrite(search.getCountCacheSeconds(), TimeUnit.SECONDS)
+            .recordStats()
+            .build();
+        // the counters are counted again from time to time, so a drift (e.g. by direct SQL) does not last forever
+        this.employeeCounters = CacheBuilder.newBuilder()
+            .expireAfterWrite(search.getCountCacheSeconds(), TimeUnit.SECONDS)
+            .build();
+    }
+
+    /**
+     * Get the exact count of a filter from the cache or count it.
+     *
+     * @param companyId    the company of the search
+     * @param personFilter the filter of the search
+     * @param counter      the count query, executed on a cache miss
+     * @return the count
+     */
+    public long getCount(long companyId, PersonFilter personFilter, LongSupplier counter) {
+
+        final CountKey key = new CountKey(companyId, personFilter);
+        // the version must be read before counting - a write during the count makes the entry stale
+        final long version = getWriteVersion(companyId);
+        final VersionedCount cached = counts.getIfPresent(key);
+        if (cached != null && cached.version == version) {
+            return cached.count;
+        }
+        final long count = counter.getAsLong();
+        counts.put(key, new VersionedCount(version, count));
+        return count;
+    }
+
+    /**
+     * Get the estimated number of employees of a company. The counter is maintained by the deltas of the events
+     * and may differ slightly from the exact count, when a count and a commit overlap.
+     *
+     * @param companyId the company
+     * @param counter   the count query, executed when there is no counter yet
+     * @return the estimated count
+     */
+    public long getEstimatedCount(long companyId, LongSupplier counter) {
+
+        final AtomicLong employeeCounter = employeeCounters.getIfPresent(companyId);
+        if (employeeCounter != null) {
+            return employeeCounter.get();
+        }
+        final long version = getWriteVersion(companyId);
+        final long count = counter.getAsLong();
+        // a change during the count may or may not be included, so the counter is not kept in this case
+        if (version == getWriteVersion(companyId)) {
+            employeeCounters.asMap().putIfAbsent(companyId, new AtomicLong(count));
+        }
+        return count;
+    }
+
+    /**
+     * @param companyId the company
+     * @return a number, which is incremented by every change of the employees of the company
+     */
+    public long getWriteVersion(long companyId) {
+
+        final AtomicLong version = writeVersions.get(companyId);
+        return globalWriteVersion.get() + (version != null ? version.get() : 0L);
+    }
+
+    /**
+     * Invalidate the counts within the writing transaction.
+     */
+    @EventListener
+    public void onEmployeesChanged(EmployeesChangedEvent event) {
+        incrementWriteVersion(event);
+    }
+
+    /**
+     * Invalidate the counts again and maintain the counters after the commit. Without a transaction the event is
+     * handled immediately.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onEmployeesChangedCommitted(EmployeesChangedEvent event) {
+
+        log.debug("EmployeeCountService.onEmployeesChangedCommitted {}", event);
+        incrementWriteVersion(event);
+        if (event.isAllCompanies()) {
+            employeeCounters.invalidateAll();
+        } else if (event.getDelta() == null) {
+            employeeCounters.invalidate(event.getCompanyId());
+        } else if (event.getDelta() != 0L) {
+            final AtomicLong employeeCounter = employeeCounters.getIfPresent(event.getCompanyId());
+            if (employeeCounter != null) {
+                employeeCounter.addAndGet(event.getDelta());
+            }
+        }
+    }
+
+    /**
+     * Invalidate the counts again after a rollback - counts of the writing transaction itself may have been cached
+     * with the version of the first increment.
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_ROLLBACK)
+    public void onEmployeesChangedRolledBack(EmployeesChangedEvent event) {
+
+        log.debug("EmployeeCountService.onEmployeesChangedRolledBack {}", event);
+        incrementWriteVersion(event);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        GuavaCacheMetrics.monitor(registry, counts, CACHE_NAME);
+    }
+
+    //------------------------------------------------------------------------------------------------------------------
+
+    private void incrementWriteVersion(EmployeesChangedEvent event) {
+
+        if (event.isAllCompanies()) {
+            globalWriteVersion.incrementAndGet();
+        } else {
+            writeVersions.computeIfAbsent(event.getCompanyId(), companyId -> new AtomicLong()).incrementAndGet();
+        }
+    }
+
+    private static final class CountKey {
+
+        private final long companyId;
+        private final PersonFilter personFilter;
+
+        CountKey(long companyId, PersonFilter personFilter) {
+            this.companyId = companyId;
+            this.personFilter = personFilter;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            CountKey that = (CountKey) o;
+            return companyId == that.companyId &&
+                Objects.equals(personFilter, that.personFilter);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(companyId, personFilter);
+        }
+    }
+
+    private static final class VersionedCount {
+
+        private final long version;
+        private final long count;
+
+        VersionedCount(long version, long count) {
+            this.version = version;
+            this.count = count;
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.giraone.pms.service.search;
+
+import com.giraone.pms.config.ApplicationProperties;
+import com.giraone.pms.domain.filter.CursorSlice;
+import com.giraone.pms.domain.filter.FanOutCursor;
+import com.giraone.pms.domain.filter.FanOutSlice;
+import com.giraone.pms.domain.filter.PersonFilter;
+import com.giraone.pms.domain.filter.SearchCursor;
+import com.giraone.pms.service.EmployeeService;
+import com.giraone.pms.service.dto.EmployeeDTO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Search over the employees of several companies. Every company is a shard, which is searched with keyset pagination
+ * in parallel on a bounded executor. The slices of the shards are merged by the requested order and the top N are
+ * returned. Every shard continues exactly after its last returned employee (see {@link FanOutCursor}), so nothing is
+ * skipped or returned twice, even when the in memory order and the collation of the database differ slightly.
+ * <p>
+ * The caller is responsible for the access check of the companies.
+ */
+@Service
+public class EmployeeFanOutSearch {
+
+    private final Logger log = LoggerFactory.getLogger(EmployeeFanOutSearch.class);
+
+    private final EmployeeService employeeService;
+    private final int maxCompanies;
+    private final ExecutorService executor;
+
+    public EmployeeFanOutSearch(EmployeeService employeeService, ApplicationProperties applicationProperties) {
+        this.employeeService = employeeService;
+        this.maxCompanies = applicationProperties.getSearch().getFanOutMaxCompanies();
+        final AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(applicationProperties.getSearch().getFanOutThreads(), runnable -> {
+            final Thread thread = new Thread(runnable, "pmssql-FanOut-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * @return the maximum number of companies of one search
+     */
+    public int getMaxCompanies() {
+        return maxCompanies;
+    }
+
+    /**
+     * Search the employees of several companies.
+     *
+     * @param companyExternalIds the companies - at most {@link #getMaxCompanies()}
+     * @param personFilter       restrict the search to employees matching this filter
+     * @param cursor             the cursor of the requested slice
+     * @param size               the maximum number of employees of the slice
+     * @return the merged slice
+     * @throws IllegalArgumentException if there are too many companies
+     */
+    public FanOutSlice<EmployeeDTO> findAllByFilter(List<String> companyExternalIds, PersonFilter personFilter,
+                                                    FanOutCursor cursor, int size) {
+
+        if (companyExternalIds.size() > maxCompanies) {
+            throw new IllegalArgumentException("Search over more than " + maxCompanies + " companies is not supported!");
+        }
+        final long start = System.currentTimeMillis();
+
+        // every shard in parallel - each with its own transaction
+        final Map<String, CompletableFuture<Optional<CursorSlice<EmployeeDTO>>>> futures = new LinkedHashMap<>();
+        for (String company : companyExternalIds) {
+            final SearchCursor position = cursor.positionOf(company);
+            if (position != null) {
+                futures.put(company, CompletableFuture.supplyAsync(
+                    () -> employeeService.findAllByFilter(company, personFilter, position, size), executor));
+            }
+        }
+        final List<Shard> shards = new ArrayList<>();
+        futures.forEach((company, future) -> {
+            final Optional<CursorSlice<EmployeeDTO>> slice = join(future);
+            if (slice.isPresent()) {
+                shards.add(new Shard(company, cursor.positionOf(company), slice.get()));
+            } else {
+                log.warn("EmployeeFanOutSearch: company {} NOT FOUND!", company);
+            }
+        });
+
+        final List<EmployeeDTO> content = merge(shards, cursor, size);
+
+        final Map<String, SearchCursor> nextPositions = new LinkedHashMap<>();
+        for (Shard shard : shards) {
+            final SearchCursor nextPosition = shard.nextPosition();
+            if (nextPosition != null) {
+                nextPositions.put(shard.company, nextPosition);
+            }
+        }
+        log.debug("EmployeeFanOutSearch: {} companies, {} employees, {} companies with more in {} msec",
+            shards.size(), content.size(), nextPositions.size(), System.currentTimeMillis() - start);
+        return new FanOutSlice<>(content, size, nextPositions.isEmpty() ? null : cursor.next(nextPositions));
+    }
+
+    //------------------------------------------------------------------------------------------------------------------
+
+    /**
+     * k-way merge of the shards, which are each sorted by the database.
+     */
+    private static List<EmployeeDTO> merge(List<Shard> shards, FanOutCursor cursor, int size) {
+
+        final Comparator<EmployeeDTO> order = comparator(cursor);
+        final PriorityQueue<Shard> heads = new PriorityQueue<>(Math.max(1, shards.size()),
+            (shard1, shard2) -> order.compare(shard1.head(), shard2.head()));
+        shards.stream().filter(Shard::hasHead).forEach(heads::add);
+
+        final List<EmployeeDTO> ret = new ArrayList<>(size);
+        while (ret.size() < size && !heads.isEmpty()) {
+            final Shard shard = heads.poll();
+            ret.add(shard.head());
+            shard.consumed++;
+            if (shard.hasHead()) {
+                heads.add(shard);
+            }
+        }
+        return ret;
+    }
+
+    private static Comparator<EmployeeDTO> comparator(FanOutCursor cursor) {
+
+        Comparator<EmployeeDTO> ret = SearchCursor.SORT_ID.equals(cursor.getSortProperty())
+            ? Comparator.comparing(EmployeeDTO::getId)
+            : Comparator.comparing(EmployeeDTO::getSurname).thenComparing(EmployeeDTO::getId);
+        return cursor.isAscending() ? ret : ret.reversed();
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private static final class Shard {
+
+        private final String company;
+        private final SearchCursor position;
+        private final CursorSlice<EmployeeDTO> slice;
+        private int consumed;
+
+        Shard(String company, SearchCursor position, CursorSlice<EmployeeDTO> slice) {
+            this.company = company;
+            this.position = position;
+            this.slice = slice;
+        }
+
+        boolean hasHead() {
+            return consumed < slice.getContent().size();
+        }
+
+        EmployeeDTO head() {
+            return slice.getContent().get(consumed);
+        }
+
+        /**
+         * @return the position after the consumed employees or null, if the shard is exhausted
+         */
+        SearchCursor nextPosition() {
+
+            if (consumed == 0) {
+                return slice.getContent().isEmpty() && !slice.hasNext() ? null : position;
+            }
+            if (consumed == slice.getContent().size() && !slice.hasNext()) {
+                return null;
+            }
+            final EmployeeDTO last = slice.getContent().get(consumed - 1);
+            final String lastSortValue = SearchCursor.SORT_ID.equals(position.getSortProperty())
+                ? last.getId().toString() : last.getSurname();
+            return position.next(lastSortValue, last.getId());
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.giraone.pms.service.search;
+
+import com.giraone.pms.config.ApplicationProperties;
+import com.giraone.pms.domain.filter.PersonFilter;
+import com.giraone.pms.repository.EmployeeNameRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.List;
+
+/**
+ * Short-circuit of exact name searches without matches: the lowercase names of a company are kept in a
+ * {@link NameBloomFilter}, so a quoted name, which is not a name of the company, is answered without the search and
+ * count statements. The filter of a company is loaded from employee_name on its first exact name search and kept in
+ * an exact {@link CompanyCache}: a filter, which may miss names committed during the load, is not used at all.
+ * <p>
+ * Added names are put into the filter after the commit. While a transaction with changes of a company is running
+ * (see {@link PendingEmployeeChanges}), its searches use the database, so a transaction always sees its own changes.
+ */
+@Service
+public class EmployeeNameBloomFilters implements MeterBinder {
+
+    private final Logger log = LoggerFactory.getLogger(EmployeeNameBloomFilters.class);
+
+    private static final String CACHE_NAME = "employeeNameBloomFilters";
+
+    /** Headroom for names added after the load, before the filter is rebuilt */
+    private static final long GROWTH_FACTOR = 2L;
+    private static final long MIN_EXPECTED_NAMES = 1_000L;
+
+    private final EmployeeNameRepository employeeNameRepository;
+    private final PendingEmployeeChanges pendingEmployeeChanges;
+    private final boolean enabled;
+    private final CompanyCache<NameBloomFilter> filters;
+
+    public EmployeeNameBloomFilters(EmployeeNameRepository employeeNameRepository,
+                                    EmployeeCountService employeeCountService,
+                                    PendingEmployeeChanges pendingEmployeeChanges,
+                                    ApplicationProperties applicationProperties) {
+
+        final ApplicationProperties.Search search = applicationProperties.getSearch();
+        this.employeeNameRepository = employeeNameRepository;
+        this.pendingEmployeeChanges = pendingEmployeeChanges;
+        this.enabled = search.isBloomFilterEnabled();
+        this.filters = new CompanyCache<>(CACHE_NAME, search.getBloomFilterMegabytes(),
+            NameBloomFilter::getEstimatedBytes, true, employeeCountService, pendingEmployeeChanges,
+            this::load, EmployeeNameBloomFilters::update);
+    }
+
+    /**
+     * Check, whether a search has no matches for sure. Must be called within a transaction, because the names of the
+     * company may be loaded.
+     *
+     * @param companyId    the company
+     * @param personFilter the filter - may be null
+     * @return true, if an exact name of the filter is not a name of the company, false if the search is needed
+     */
+    public boolean hasNoMatches(long companyId, PersonFilter personFilter) {
+
+        if (!enabled || personFilter == null || personFilter.getNames().stream().noneMatch(NameBloomFilter::isExactNameFilter)
+            || pendingEmployeeChanges.hasPendingChanges(companyId)) {
+            return false;
+        }
+        final NameBloomFilter filter = filters.get(companyId);
+        final boolean ret = filter != null && !filter.mightMatch(personFilter);
+        if (ret) {
+            log.debug("EmployeeNameBloomFilters: no matches of {} in company {}", personFilter, companyId);
+        }
+        return ret;
+    }
+
+    /**
+     * Maintain or drop the filters after the commit. Without a transaction the event is handled immediately.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onEmployeesChangedCommitted(EmployeesChangedEvent event) {
+        filters.onEmployeesChangedCommitted(event);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        filters.bindTo(registry);
+    }
+
+    //------------------------------------------------------------------------------------------------------------------
+
+    private NameBloomFilter load(long companyId) {
+
+        final List<Object[]> rows = employeeNameRepository.findNameCounts(companyId, NameBloomFilter.KEYS);
+        final NameBloomFilter ret = new NameBloomFilter(Math.max(MIN_EXPECTED_NAMES, rows.size() * GROWTH_FACTOR));
+        for (Object[] row : rows) {
+            ret.put((String) row[0], (String) row[1]);
+        }
+        return ret;
+    }
+
+    /**
+     * Removed names are kept - they only cause false positives. An overfilled filter is dropped and rebuilt.
+     */
+    private static boolean update(NameBloomFilter filter, EmployeeNamesChangedEvent event) {
+
+        event.getAddedNames().forEach(name -> filter.put(name.getKey(), name.getValue()));
+        return !filter.isOverfilled();
+    }
+}
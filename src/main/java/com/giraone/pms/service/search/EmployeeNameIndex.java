@@ -0,0 +1,153 @@
+package com.giraone.pms.service.search;
+
+import com.giraone.pms.config.ApplicationProperties;
+import com.giraone.pms.domain.filter.PersonFilter;
+import com.giraone.pms.domain.filter.SearchCursor;
+import com.giraone.pms.repository.EmployeeNameRepository;
+import com.giraone.pms.repository.EmployeeRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.stream.Stream;
+
+/**
+ * In memory name index of the searched companies (see {@link CompanyNameIndex}). The index of a company is loaded
+ * from employee_name on its first search and kept in an exact {@link CompanyCache}. It answers restricted searches
+ * ordered by id, so the database is only used to fetch the employees of the page.
+ * <p>
+ * While a transaction with changes of a company is running (see {@link PendingEmployeeChanges}), its searches use the
+ * database, so a transaction always sees its own changes.
+ */
+@Service
+public class EmployeeNameIndex implements MeterBinder {
+
+    private final Logger log = LoggerFactory.getLogger(EmployeeNameIndex.class);
+
+    private static final String CACHE_NAME = "employeeNameIndex";
+
+    /** Estimated memory of an employee with its names - companies, that would take more than a quarter, are skipped */
+    private static final long ESTIMATED_BYTES_PER_EMPLOYEE = 300L;
+
+    private final EmployeeRepository employeeRepository;
+    private final EmployeeNameRepository employeeNameRepository;
+    private final NameStatisticsService nameStatisticsService;
+    private final PendingEmployeeChanges pendingEmployeeChanges;
+    private final boolean enabled;
+    private final long maxBytes;
+    private final CompanyCache<CompanyNameIndex> indexes;
+
+    public EmployeeNameIndex(EmployeeRepository employeeRepository, EmployeeNameRepository employeeNameRepository,
+                             NameStatisticsService nameStatisticsService, EmployeeCountService employeeCountService,
+                             PendingEmployeeChanges pendingEmployeeChanges, ApplicationProperties applicationProperties) {
+
+        final ApplicationProperties.Search search = applicationProperties.getSearch();
+        this.employeeRepository = employeeRepository;
+        this.employeeNameRepository = employeeNameRepository;
+        this.nameStatisticsService = nameStatisticsService;
+        this.pendingEmployeeChanges = pendingEmployeeChanges;
+        this.enabled = search.isNameIndexEnabled();
+        this.maxBytes = search.getNameIndexMegabytes() * 1024L * 1024L;
+        this.indexes = new CompanyCache<>(CACHE_NAME, search.getNameIndexMegabytes(),
+            CompanyNameIndex::getEstimatedBytes, true, employeeCountService, pendingEmployeeChanges,
+            this::load, EmployeeNameIndex::update);
+    }
+
+    /**
+     * Search the ids of the employees of a company in memory. Must be called within a transaction, because the index
+     * of the company may be loaded.
+     *
+     * @param companyId    the company
+     * @param personFilter the filter
+     * @param sort         the requested sort - only the first order is relevant
+     * @return the ordered ids - the array must not be modified - or null, if the search cannot be answered by the
+     * index (not sorted by id, changes in progress or the company is too large)
+     */
+    public long[] findIds(long companyId, PersonFilter personFilter, Sort sort) {
+
+        if (!enabled || pendingEmployeeChanges.hasPendingChanges(companyId)) {
+            return null;
+        }
+        final boolean ascending;
+        if (sort == null || sort.isUnsorted()) {
+            ascending = true;
+        } else {
+            final Sort.Order order = sort.iterator().next();
+            if (!SearchCursor.SORT_ID.equals(order.getProperty())) {
+                return null;
+            }
+            ascending = order.isAscending();
+        }
+
+        final CompanyNameIndex index = indexes.get(companyId);
+        if (index == null) {
+            return null;
+        }
+        final long[] ids = index.findIds(personFilter);
+        return ascending ? ids : reversed(ids);
+    }
+
+    /**
+     * Maintain or drop the index after the commit. Without a transaction the event is handled immediately.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onEmployeesChangedCommitted(EmployeesChangedEvent event) {
+        indexes.onEmployeesChangedCommitted(event);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        indexes.bindTo(registry);
+    }
+
+    //------------------------------------------------------------------------------------------------------------------
+
+    /**
+     * @return the index or null, if the company is too large
+     */
+    private CompanyNameIndex load(long companyId) {
+
+        final long employees = nameStatisticsService.getStatistics(companyId).getEmployees();
+        if (employees * ESTIMATED_BYTES_PER_EMPLOYEE > maxBytes / 4L) {
+            log.debug("EmployeeNameIndex: company {} with {} employees is too large", companyId, employees);
+            return null;
+        }
+        final CompanyNameIndex.Builder builder = new CompanyNameIndex.Builder();
+        try (Stream<Object[]> rows = employeeRepository.streamDatesOfBirthByCompanyId(companyId)) {
+            rows.forEach(row -> builder.addEmployee(((Number) row[0]).longValue(), toLocalDate(row[1])));
+        }
+        try (Stream<Object[]> rows = employeeNameRepository.streamNamesByCompanyId(companyId)) {
+            rows.forEach(row -> builder.addName(((Number) row[0]).longValue(), (String) row[1], (String) row[2]));
+        }
+        return builder.build();
+    }
+
+    private static boolean update(CompanyNameIndex index, EmployeeNamesChangedEvent event) {
+
+        index.apply(event);
+        return true;
+    }
+
+    private static LocalDate toLocalDate(Object value) {
+
+        if (value == null || value instanceof LocalDate) {
+            return (LocalDate) value;
+        }
+        return ((Date) value).toLocalDate();
+    }
+
+    private static long[] reversed(long[] ids) {
+
+        final long[] ret = new long[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            ret[i] = ids[ids.length - 1 - i];
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,131 @@
+package com.giraone.pms.service.search;
+
+import com.giraone.pms.config.ApplicationProperties;
+import com.giraone.pms.domain.enumeration.EmployeeNameFilterKey;
+import com.giraone.pms.domain.filter.EmployeeNameKeyValue;
+import com.giraone.pms.repository.EmployeeNameRepository;
+import com.giraone.pms.service.NameNormalizeService;
+import com.giraone.pms.service.dto.NameSuggestionDTO;
+import com.giraone.pms.service.dto.NameSuggestionsDTO;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Typeahead suggestions of surnames and given names: the most frequent lowercase names (keys LS and LG of
+ * employee_name) of a company starting with a prefix. The names of a company are loaded into two
+ * {@link NameSuggestionTrie}s on the first request and kept in a {@link CompanyCache}. Changes with unknown names
+ * (deleted employees) drop the tries of the company.
+ */
+@Service
+public class EmployeeNameSuggestions implements MeterBinder {
+
+    private static final String CACHE_NAME = "employeeNameSuggestions";
+
+    private static final String SURNAME_KEY = EmployeeNameFilterKey.LS.toString();
+    private static final String GIVEN_NAME_KEY = EmployeeNameFilterKey.LG.toString();
+
+    private final EmployeeNameRepository employeeNameRepository;
+    private final NameNormalizeService nameNormalizeService;
+    private final CompanyCache<CompanyTries> tries;
+
+    public EmployeeNameSuggestions(EmployeeNameRepository employeeNameRepository,
+                                   NameNormalizeService nameNormalizeService,
+                                   EmployeeCountService employeeCountService,
+                                   PendingEmployeeChanges pendingEmployeeChanges,
+                                   ApplicationProperties applicationProperties) {
+
+        this.employeeNameRepository = employeeNameRepository;
+        this.nameNormalizeService = nameNormalizeService;
+        this.tries = new CompanyCache<>(CACHE_NAME, applicationProperties.getSearch().getSuggestMegabytes(),
+            CompanyTries::getEstimatedBytes, false, employeeCountService, pendingEmployeeChanges,
+            this::load, EmployeeNameSuggestions::update);
+    }
+
+    /**
+     * Suggest names of a company. Must be called within a transaction, because the names of the company may be loaded.
+     *
+     * @param companyId the company
+     * @param prefix    the prefix as entered - it is normalized like the names, null or blank suggests the most
+     *                  frequent names
+     * @param size      the maximum number of surnames and given names
+     * @return the surnames and given names starting with the prefix - the most frequent first
+     */
+    public NameSuggestionsDTO suggest(long companyId, String prefix, int size) {
+
+        final String normalized = nameNormalizeService.normalize(prefix);
+        final String normalizedPrefix = normalized != null ? normalized : "";
+        final CompanyTries companyTries = tries.get(companyId);
+        return new NameSuggestionsDTO(
+            toDto(companyTries.surnames.suggest(normalizedPrefix, size)),
+            toDto(companyTries.givenNames.suggest(normalizedPrefix, size)));
+    }
+
+    /**
+     * Maintain or drop the tries after the commit. Without a transaction the event is handled immediately.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onEmployeesChangedCommitted(EmployeesChangedEvent event) {
+        tries.onEmployeesChangedCommitted(event);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        tries.bindTo(registry);
+    }
+
+    //------------------------------------------------------------------------------------------------------------------
+
+    private CompanyTries load(long companyId) {
+
+        final CompanyTries ret = new CompanyTries();
+        for (Object[] row : employeeNameRepository.findNameCounts(companyId, Arrays.asList(SURNAME_KEY, GIVEN_NAME_KEY))) {
+            ret.add(new EmployeeNameKeyValue((String) row[0], (String) row[1]), ((Number) row[2]).longValue());
+        }
+        return ret;
+    }
+
+    private static boolean update(CompanyTries companyTries, EmployeeNamesChangedEvent event) {
+
+        if (event.getRemovedNames() == null) {
+            return false;
+        }
+        event.getRemovedNames().forEach(name -> companyTries.add(name, -1L));
+        event.getAddedNames().forEach(name -> companyTries.add(name, 1L));
+        return true;
+    }
+
+    private static List<NameSuggestionDTO> toDto(List<NameSuggestionTrie.Suggestion> suggestions) {
+
+        return suggestions.stream()
+            .map(suggestion -> new NameSuggestionDTO(suggestion.getName(), suggestion.getCount()))
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * The tries of the surnames and given names of one company.
+     */
+    private static final class CompanyTries {
+
+        private final NameSuggestionTrie surnames = new NameSuggestionTrie();
+        private final NameSuggestionTrie givenNames = new NameSuggestionTrie();
+
+        private void add(EmployeeNameKeyValue name, long count) {
+
+            if (SURNAME_KEY.equals(name.getKey())) {
+                surnames.add(name.getValue(), count);
+            } else if (GIVEN_NAME_KEY.equals(name.getKey())) {
+                givenNames.add(name.getValue(), count);
+            }
+        }
+
+        private long getEstimatedBytes() {
+            return surnames.getEstimatedBytes() + givenNames.getEstimatedBytes();
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.giraone.pms.service.search;
+
+import com.giraone.pms.domain.filter.EmployeeNameKeyValue;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An {@link EmployeesChangedEvent} of exactly one employee, which also carries the changed names and the date of
+ * birth, so in memory indexes (see {@link EmployeeNameIndex}) can be maintained incrementally instead of being
+ * invalidated.
+ */
+public class EmployeeNamesChangedEvent extends EmployeesChangedEvent {
+
+    private final long employeeId;
+    private final boolean removed;
+    private final List<EmployeeNameKeyValue> removedNames;
+    private final List<EmployeeNameKeyValue> addedNames;
+    private final LocalDate dateOfBirth;
+
+    private EmployeeNamesChangedEvent(Long companyId, Long delta, long employeeId, boolean removed,
+                                      Collection<EmployeeNameKeyValue> removedNames,
+                                      Collection<EmployeeNameKeyValue> addedNames, LocalDate dateOfBirth) {
+        super(companyId, delta);
+        this.employeeId = employeeId;
+        this.removed = removed;
+        this.removedNames = removedNames != null ? Collections.unmodifiableList(new ArrayList<>(removedNames)) : null;
+        this.addedNames = Collections.unmodifiableList(new ArrayList<>(addedNames));
+        this.dateOfBirth = dateOfBirth;
+    }
+
+    /**
+     * @param companyId   the company of the new employee
+     * @param employeeId  the id of the new employee
+     * @param names       the names of the employee
+     * @param dateOfBirth the date of birth of the employee or null
+     * @return the event of a new employee of the company
+     */
+    public static EmployeeNamesChangedEvent created(Long companyId, long employeeId,
+                                                    Collection<EmployeeNameKeyValue> names, LocalDate dateOfBirth) {
+        return new EmployeeNamesChangedEvent(companyId, 1L, employeeId, false, Collections.emptyList(), names, dateOfBirth);
+    }
+
+    /**
+     * @param companyId    the company of the employee
+     * @param employeeId   the id of the employee
+     * @param removedNames the names, which were removed
+     * @param addedNames   the names, which were added
+     * @param dateOfBirth  the (possibly changed) date of birth of the employee or null
+     * @return the event of a changed employee of the company
+     */
+    public static EmployeeNamesChangedEvent updated(Long companyId, long employeeId,
+                                                    Collection<EmployeeNameKeyValue> removedNames,
+                                                    Collection<EmployeeNameKeyValue> addedNames, LocalDate dateOfBirth) {
+        return new EmployeeNamesChangedEvent(companyId, 0L, employeeId, false, removedNames, addedNames, dateOfBirth);
+    }
+
+    /**
+     * @param companyId  the company, from which the employee was removed (deleted or moved to another company)
+     * @param employeeId the id of the employee
+     * @param names      the names of the employee or null, if they are not known
+     * @return the event of an employee, which is no longer part of the company
+     */
+    public static EmployeeNamesChangedEvent removed(Long companyId, long employeeId, Collection<EmployeeNameKeyValue> names) {
+        return new EmployeeNamesChangedEvent(companyId, -1L, employeeId, true, names, Collections.emptyList(), null);
+    }
+
+    public long getEmployeeId() {
+        return employeeId;
+    }
+
+    /**
+     * @return true, if the employee is no longer part of the company
+     */
+    public boolean isRemoved() {
+        return removed;
+    }
+
+    /**
+     * @return the removed names or null, if all names of the employee were removed, but they are not known
+     */
+    public List<EmployeeNameKeyValue> getRemovedNames() {
+        return removedNames;
+    }
+
+    public List<EmployeeNameKeyValue> getAddedNames() {
+        return addedNames;
+    }
+
+    public LocalDate getDateOfBirth() {
+        return dateOfBirth;
+    }
+
+    @Override
+    public String toString() {
+        return "EmployeeNamesChangedEvent{" +
+            "companyId=" + getCompanyId() +
+            ", employeeId=" + employeeId +
+            ", removed=" + removed +
+            ", removedNames=" + removedNames +
+            ", addedNames=" + addedNames +
+            ", dateOfBirth=" + dateOfBirth +
+            '}';
+    }
+}
@@ -0,0 +1,130 @@
+package com.giraone.pms.service.search;
+
+import com.giraone.pms.config.ApplicationProperties;
+import com.giraone.pms.domain.filter.PersonFilter;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Service;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Cache for the ordered employee ids of a search, so paging through the result of the same filter or repeating a
+ * search (e.g. type-ahead with backspace) does not query the name index again. The pages are sliced from the ids and
+ * the employees are fetched by their primary key.
+ * <p>
+ * An entry is only valid for the write version of the company (see {@link EmployeeCountService#getWriteVersion}),
+ * that was current before the ids were queried. Results with more ids than the configured maximum are not kept -
+ * only the fact, that they are too large, so the ids are not queried again for the same version.
+ */
+@Service
+public class EmployeeResultIdCache implements MeterBinder {
+
+    private final Logger log = LoggerFactory.getLogger(EmployeeResultIdCache.class);
+
+    private static final String CACHE_NAME = "employeeResultIds";
+
+    private final EmployeeCountService employeeCountService;
+    private final int maxIds;
+    private final Cache<ResultKey, VersionedIds> results;
+
+    public EmployeeResultIdCache(EmployeeCountService employeeCountService, ApplicationProperties applicationProperties) {
+
+        final ApplicationProperties.Search search = applicationProperties.getSearch();
+        this.employeeCountService = employeeCountService;
+        this.maxIds = search.getResultCacheMaxIds();
+        this.results = CacheBuilder.newBuilder()
+            .maximumSize(search.getResultCacheSize())
+            .expireAfterWrite(search.getResultCacheSeconds(), TimeUnit.SECONDS)
+            .recordStats()
+            .build();
+    }
+
+    /**
+     * @return the maximum number of ids of a cached result - the id query should fetch one more to detect larger results
+     */
+    public int getMaxIds() {
+        return maxIds;
+    }
+
+    /**
+     * Get the ordered ids of a search from the cache or query them.
+     *
+     * @param companyId    the company of the search
+     * @param personFilter the filter of the search
+     * @param sort         the sort of the search - only the first order is relevant
+     * @param idQuery      the id query, executed on a cache miss - returns at most {@link #getMaxIds()} + 1 ids
+     * @return the ids or null, if the result has more than {@link #getMaxIds()} ids
+     */
+    public long[] getIds(long companyId, PersonFilter personFilter, Sort sort, Supplier<long[]> idQuery) {
+
+        final ResultKey key = new ResultKey(companyId, personFilter, sort);
+        // the version must be read before the query - a write during the query makes the entry stale
+        final long version = employeeCountService.getWriteVersion(companyId);
+        final VersionedIds cached = results.getIfPresent(key);
+        if (cached != null && cached.version == version) {
+            return cached.ids;
+        }
+        long[] ids = idQuery.get();
+        if (ids.length > maxIds) {
+            log.debug("EmployeeResultIdCache: more than {} ids for companyId={}, personFilter={}", maxIds, companyId, personFilter);
+            ids = null;
+        }
+        results.put(key, new VersionedIds(version, ids));
+        return ids;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        GuavaCacheMetrics.monitor(registry, results, CACHE_NAME);
+    }
+
+    //------------------------------------------------------------------------------------------------------------------
+
+    private static final class ResultKey {
+
+        private final long companyId;
+        private final PersonFilter personFilter;
+        private final Sort.Order order;
+
+        ResultKey(long companyId, PersonFilter personFilter, Sort sort) {
+            this.companyId = companyId;
+            this.personFilter = personFilter;
+            this.order = sort == null || sort.isUnsorted() ? null : sort.iterator().next();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            ResultKey that = (ResultKey) o;
+            return companyId == that.companyId &&
+                Objects.equals(personFilter, that.personFilter) &&
+                Objects.equals(order, that.order);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(companyId, personFilter, order);
+        }
+    }
+
+    private static final class VersionedIds {
+
+        private final long version;
+        private final long[] ids;
+
+        VersionedIds(long version, long[] ids) {
+            this.version = version;
+            this.ids = ids;
+        }
+    }
+}
@@ -0,0 +1,327 @@
+package com.giraone.pms.service.search;
+
+import com.giraone.pms.domain.filter.EmployeeNameFilter;
+import com.giraone.pms.domain.filter.SearchCursor;
+import org.springframework.data.domain.Sort;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * The shape of an employee search: everything, that determines the SQL text, but none of the values. Searches of the
+ * same shape share one parameterized native SQL statement, so the statement is generated only once and the JDBC
+ * driver and the database can reuse its prepared form. The values are bound with {@link #parameters}.
+ * <p>
+ * The statement follows the {@link SearchPlan}: the driving predicate first (date of birth or the owner ids of the
+ * most selective name), the further names as EXISTS subqueries on employee_name.
+ * <p>
+ * A keyset search over all companies (for administrators) has no company parameter: the EXISTS subqueries are
+ * correlated by the company of the employee and the driving name subquery ranges over the companies, so the leading
+ * company_id column of the name index is still used.
+ */
+public final class EmployeeSearchShape {
+
+    /** Mapping of the sortable entity properties of Employee to their columns */
+    private static final Map<String, String> SORT_COLUMNS;
+
+    static {
+        final Map<String, String> columns = new HashMap<>();
+        columns.put("id", "id");
+        columns.put("surname", "surname");
+        columns.put("givenName", "given_name");
+        columns.put("dateOfBirth", "date_of_birth");
+        columns.put("gender", "gender");
+        columns.put("postalCode", "postal_code");
+        columns.put("city", "city");
+        columns.put("streetAddress", "street_address");
+        SORT_COLUMNS = Collections.unmodifiableMap(columns);
+    }
+
+    public enum Kind {
+        /** Select the employees ordered by the sort column - paging is added by the query */
+        FETCH,
+        /** Count the employees */
+        COUNT,
+        /** Select the employees after the last (sort key, id) of a cursor ordered by (sort key, id) */
+        SEEK,
+        /** Select the ids of the employees ordered by (sort column, id) */
+        IDS
+    }
+
+    private final Kind kind;
+    /**
+     * Per name predicate of the plan: the compare operations of key and value, e.g. "LE" for LIKE key, EQUALS value
+     * or "EI" for EQUALS key, IN values
+     */
+    private final List<String> names;
+    private final boolean hasDateOfBirth;
+    private final boolean dateDriven;
+    private final String sortColumn;
+    private final boolean ascending;
+    private final boolean firstSlice;
+    private final boolean allCompanies;
+
+    private EmployeeSearchShape(Kind kind, SearchPlan plan, String sortColumn, boolean ascending, boolean firstSlice) {
+        this(kind, plan, sortColumn, ascending, firstSlice, false);
+    }
+
+    private EmployeeSearchShape(Kind kind, SearchPlan plan, String sortColumn, boolean ascending, boolean firstSlice,
+                                boolean allCompanies) {
+        this.kind = kind;
+        this.names = new ArrayList<>(plan.getNames().size());
+        for (EmployeeNameFilter nameFilter : plan.getNames()) {
+            this.names.add(operation(nameFilter.getKeyCompareOperation()) + operation(nameFilter.getValueCompareOperation()));
+        }
+        this.hasDateOfBirth = plan.getDateOfBirth() != null;
+        this.dateDriven = plan.isDateDriven();
+        this.sortColumn = sortColumn;
+        this.ascending = ascending;
+        this.firstSlice = firstSlice;
+        this.allCompanies = allCompanies;
+    }
+
+    /**
+     * Shape of an offset paginated search.
+     *
+     * @param plan the plan of the filter
+     * @param sort the requested sort - only the first order is used
+     * @return the shape
+     * @throws IllegalArgumentException if the sort property is not a column of employee
+     */
+    public static EmployeeSearchShape fetch(SearchPlan plan, Sort sort) {
+
+        if (sort == null || sort.isUnsorted()) {
+            return new EmployeeSearchShape(Kind.FETCH, plan, null, true, true);
+        }
+        final Sort.Order order = sort.iterator().next();
+        return new EmployeeSearchShape(Kind.FETCH, plan, column(order.getProperty()), order.isAscending(), true);
+    }
+
+    /**
+     * Shape of the ordered ids of a search.
+     *
+     * @param plan the plan of the filter
+     * @param sort the requested sort - only the first order is used
+     * @return the shape
+     * @throws IllegalArgumentException if the sort property is not a column of employee
+     */
+    public static EmployeeSearchShape ids(SearchPlan plan, Sort sort) {
+
+        if (sort == null || sort.isUnsorted()) {
+            return new EmployeeSearchShape(Kind.IDS, plan, null, true, true);
+        }
+        final Sort.Order order = sort.iterator().next();
+        return new EmployeeSearchShape(Kind.IDS, plan, column(order.getProperty()), order.isAscending(), true);
+    }
+
+    /**
+     * Shape of the count of a search.
+     *
+     * @param plan the plan of the filter
+     * @return the shape
+     */
+    public static EmployeeSearchShape count(SearchPlan plan) {
+        return new EmployeeSearchShape(Kind.COUNT, plan, null, true, true);
+    }
+
+    /**
+     * Shape of a keyset paginated search.
+     *
+     * @param plan   the plan of the filter
+     * @param cursor the cursor of the requested slice
+     * @return the shape
+     */
+    public static EmployeeSearchShape seek(SearchPlan plan, SearchCursor cursor) {
+        return new EmployeeSearchShape(Kind.SEEK, plan, column(cursor.getSortProperty()), cursor.isAscending(), cursor.isFirst());
+    }
+
+    /**
+     * Shape of a keyset paginated search over the employees of all companies.
+     *
+     * @param plan   the plan of the filter
+     * @param cursor the cursor of the requested slice
+     * @return the shape
+     */
+    public static EmployeeSearchShape seekAllCompanies(SearchPlan plan, SearchCursor cursor) {
+        return new EmployeeSearchShape(Kind.SEEK, plan, column(cursor.getSortProperty()), cursor.isAscending(), cursor.isFirst(),
+            true);
+    }
+
+    private static String column(String property) {
+
+        final String ret = SORT_COLUMNS.get(property);
+        if (ret == null) {
+            throw new IllegalArgumentException("Sort property " + property + " is not supported!");
+        }
+        return ret;
+    }
+
+    private static String operation(EmployeeNameFilter.CompareOperation compareOperation) {
+        switch (compareOperation) {
+            case LIKE:
+                return "L";
+            case IN:
+                return "I";
+            default:
+                return "E";
+        }
+    }
+
+    /**
+     * @return the native SQL statement of the shape with named parameters
+     */
+    public String toSql() {
+
+        final StringBuilder sql = new StringBuilder(256);
+        if (kind == Kind.COUNT) {
+            sql.append("SELECT COUNT(*) FROM employee e");
+        } else if (kind == Kind.IDS) {
+            sql.append("SELECT e.id FROM employee e");
+        } else {
+            sql.append("SELECT e.* FROM employee e");
+        }
+        final List<String> predicates = new ArrayList<>();
+        if (hasDateOfBirth && dateDriven) {
+            predicates.add("e.date_of_birth = :dateOfBirth");
+        }
+        for (int i = 0; i < names.size(); i++) {
+            final String operations = names.get(i);
+            final String alias = "en" + i;
+            final StringBuilder predicate = new StringBuilder(128);
+            final String company;
+            if (i == 0 && !dateDriven) {
+                // the owner ids of the most selective name are the candidates
+                predicate.append("e.id IN (SELECT ").append(alias).append(".owner_id FROM employee_name ").append(alias)
+                    .append(" WHERE ");
+                company = allCompanies ? " IN (SELECT c.id FROM company c)" : " = :companyId";
+            } else {
+                predicate.append("EXISTS (SELECT 1 FROM employee_name ").append(alias)
+                    .append(" WHERE ").append(alias).append(".owner_id = e.id AND ");
+                company = allCompanies ? " = e.company_id" : " = :companyId";
+            }
+            predicate.append(alias).append(".company_id").append(company)
+                .append(" AND ").append(alias).append(".name_key ").append(operations.charAt(0) == 'L' ? "LIKE" : "=")
+                .append(" :key").append(i)
+                .append(" AND ").append(alias).append(".name_value ");
+            if (operations.charAt(1) == 'I') {
+                // the collection parameter is expanded by Hibernate
+                predicate.append("IN (:value").append(i).append(")");
+            } else {
+                predicate.append(operations.charAt(1) == 'L' ? "LIKE" : "=").append(" :value").append(i);
+            }
+            predicates.add(predicate.append(")").toString());
+        }
+        if (hasDateOfBirth && !dateDriven) {
+            predicates.add("e.date_of_birth = :dateOfBirth");
+        }
+        if (!allCompanies) {
+            predicates.add("e.company_id = :companyId");
+        }
+
+        final String direction = ascending ? " ASC" : " DESC";
+        final boolean sortById = "id".equals(sortColumn);
+        if (kind == Kind.SEEK && !firstSlice) {
+            final String comparison = ascending ? " > " : " < ";
+            if (sortById) {
+                predicates.add("e.id" + comparison + ":lastId");
+            } else {
+                // (sortKey, id) > (lastSortKey, lastId) - expanded, because H2 has no row value comparison
+                predicates.add("(e." + sortColumn + comparison + ":lastSortValue"
+                    + " OR (e." + sortColumn + " = :lastSortValue"
+                    + " AND e.id" + comparison + ":lastId))");
+            }
+        }
+        if (!predicates.isEmpty()) {
+            sql.append(" WHERE ").append(String.join(" AND ", predicates));
+        }
+
+        if (kind == Kind.FETCH && sortColumn != null) {
+            sql.append(" ORDER BY e.").append(sortColumn).append(direction);
+        } else if (kind == Kind.IDS || kind == Kind.SEEK) {
+            // the id is the tie breaker, so the order is total and the slices are stable
+            sql.append(" ORDER BY ");
+            if (sortColumn != null && !sortById) {
+                sql.append("e.").append(sortColumn).append(direction).append(", ");
+            }
+            sql.append("e.id").append(direction);
+        }
+        return sql.toString();
+    }
+
+    /**
+     * The values of the named parameters of {@link #toSql()}.
+     *
+     * @param plan      the plan, from which the shape was created
+     * @param companyId the company - not bound for a search over all companies
+     * @param cursor    the cursor of a SEEK shape or null
+     * @return parameter name to value
+     */
+    public Map<String, Object> parameters(SearchPlan plan, long companyId, SearchCursor cursor) {
+
+        final Map<String, Object> ret = new HashMap<>();
+        if (!allCompanies) {
+            ret.put("companyId", companyId);
+        }
+        if (hasDateOfBirth) {
+            ret.put("dateOfBirth", plan.getDateOfBirth());
+        }
+        for (int i = 0; i < names.size(); i++) {
+            final EmployeeNameFilter nameFilter = plan.getNames().get(i);
+            ret.put("key" + i, names.get(i).charAt(0) == 'L' ? nameFilter.getKey() + "%" : nameFilter.getKey());
+            if (names.get(i).charAt(1) == 'I') {
+                ret.put("value" + i, nameFilter.getValues());
+            } else {
+                ret.put("value" + i, names.get(i).charAt(1) == 'L' ? nameFilter.getValue() + "%" : nameFilter.getValue());
+            }
+        }
+        if (kind == Kind.SEEK && !firstSlice) {
+            ret.put("lastId", cursor.getLastId());
+            if (!"id".equals(sortColumn)) {
+                ret.put("lastSortValue", cursor.getLastSortValue());
+            }
+        }
+        return ret;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        EmployeeSearchShape that = (EmployeeSearchShape) o;
+        return hasDateOfBirth == that.hasDateOfBirth &&
+            dateDriven == that.dateDriven &&
+            ascending == that.ascending &&
+            firstSlice == that.firstSlice &&
+            allCompanies == that.allCompanies &&
+            kind == that.kind &&
+            Objects.equals(names, that.names) &&
+            Objects.equals(sortColumn, that.sortColumn);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(kind, names, hasDateOfBirth, dateDriven, sortColumn, ascending, firstSlice, allCompanies);
+    }
+
+    @Override
+    public String toString() {
+        return "EmployeeSearchShape{" +
+            "kind=" + kind +
+            ", names=" + names +
+            ", hasDateOfBirth=" + hasDateOfBirth +
+            ", dateDriven=" + dateDriven +
+            ", sortColumn='" + sortColumn + '\'' +
+            ", ascending=" + ascending +
+            ", firstSlice=" + firstSlice +
+            ", allCompanies=" + allCompanies +
+            '}';
+    }
+}
@@ -0,0 +1,85 @@
+package com.giraone.pms.service.search;
+
+import com.giraone.pms.config.ApplicationProperties;
+import com.giraone.pms.domain.Employee;
+import com.giraone.pms.domain.filter.SearchCursor;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Cache of the native SQL statements of the employee search - one per {@link EmployeeSearchShape}. There is only a
+ * small number of shapes, so the statements are generated once and afterwards the SQL text of a search is always the
+ * same string. Hibernate finds the parsed native query in its query plan cache (no Criteria or HQL translation) and
+ * the JDBC driver can reuse the server side prepared statement of the connection (see "prepareThreshold" of the
+ * datasource).
+ */
+@Service
+public class EmployeeSearchStatements implements MeterBinder {
+
+    private final Logger log = LoggerFactory.getLogger(EmployeeSearchStatements.class);
+
+    private static final String CACHE_NAME = "employeeSearchStatements";
+
+    private final Cache<EmployeeSearchShape, String> statements;
+
+    public EmployeeSearchStatements(ApplicationProperties applicationProperties) {
+        this.statements = CacheBuilder.newBuilder()
+            .maximumSize(applicationProperties.getSearch().getStatementCacheSize())
+            .recordStats()
+            .build();
+    }
+
+    /**
+     * @param shape the shape of a search
+     * @return the cached or generated SQL statement of the shape
+     */
+    public String getSql(EmployeeSearchShape shape) {
+
+        try {
+            return statements.get(shape, () -> {
+                final String sql = shape.toSql();
+                log.debug("EmployeeSearchStatements: new statement for {}: {}", shape, sql);
+                return sql;
+            });
+        } catch (ExecutionException e) {
+            // toSql has no checked exceptions
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Create the native query of a search with all parameters bound. Paging (first result, max results) is left to
+     * the caller.
+     *
+     * @param em        the entity manager of the current transaction
+     * @param shape     the shape of the search
+     * @param plan      the plan, from which the shape was created
+     * @param companyId the company - not bound for a search over all companies
+     * @param cursor    the cursor of a SEEK shape or null
+     * @return the query - the result are Employee entities, the ids for an IDS shape or a single number for a COUNT shape
+     */
+    public Query createQuery(EntityManager em, EmployeeSearchShape shape, SearchPlan plan, long companyId, SearchCursor cursor) {
+
+        final String sql = getSql(shape);
+        final Query query = shape.getKind() == EmployeeSearchShape.Kind.COUNT || shape.getKind() == EmployeeSearchShape.Kind.IDS
+            ? em.createNativeQuery(sql)
+            : em.createNativeQuery(sql, Employee.class);
+        shape.parameters(plan, companyId, cursor).forEach(query::setParameter);
+        return query;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        GuavaCacheMetrics.monitor(registry, statements, CACHE_NAME);
+    }
+}
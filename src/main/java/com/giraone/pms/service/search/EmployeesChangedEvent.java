@@ -0,0 +1,47 @@
+package com.giraone.pms.service.search;
+
+/**
+ * Published, when employees (or their names) of a company are created, changed or deleted. Consumers, which cache
+ * search results or counts per company, use it to invalidate them.
+ */
+public class EmployeesChangedEvent {
+
+    private final Long companyId;
+    private final Long delta;
+
+    /**
+     * @param companyId the id of the company or null, if employees of any company may have changed
+     * @param delta     the change of the number of employees of the company or null, if it is not known
+     */
+    public EmployeesChangedEvent(Long companyId, Long delta) {
+        this.companyId = companyId;
+        this.delta = delta;
+    }
+
+    /**
+     * Employees of any company may have changed, e.g. by a re-index.
+     */
+    public static EmployeesChangedEvent changedAll() {
+        return new EmployeesChangedEvent(null, null);
+    }
+
+    public Long getCompanyId() {
+        return companyId;
+    }
+
+    public Long getDelta() {
+        return delta;
+    }
+
+    public boolean isAllCompanies() {
+        return companyId == null;
+    }
+
+    @Override
+    public String toString() {
+        return "EmployeesChangedEvent{" +
+            "companyId=" + companyId +
+            ", delta=" + delta +
+            '}';
+    }
+}
@@ -0,0 +1,140 @@
+package com.giraone.pms.service.search;
+
+import com.giraone.pms.domain.filter.EmployeeNameFilter;
+import org.apache.lucene.util.automaton.CharacterRunAutomaton;
+import org.apache.lucene.util.automaton.LevenshteinAutomata;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Dictionary of the distinct normalized names (keys NS and NG of employee_name) of one company for the fuzzy search.
+ * A weak name is expanded to the names starting with it and the names within a small edit distance of it, which are
+ * matched with a Levenshtein automaton (transpositions count as one edit). Only names with a length difference within
+ * the edit distance are run through the automaton.
+ */
+class FuzzyNameDictionary {
+
+    private final Map<String, NavigableMap<String, Long>> names = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private int size;
+    private long characters;
+
+    /**
+     * Add occurrences of a name.
+     *
+     * @param key   the name key
+     * @param value the normalized name
+     * @param count the number of occurrences, may be negative to remove occurrences
+     */
+    void add(String key, String value, long count) {
+
+        lock.writeLock().lock();
+        try {
+            final NavigableMap<String, Long> values = names.computeIfAbsent(key, k -> new TreeMap<>());
+            final long before = values.getOrDefault(value, 0L);
+            final long after = Math.max(0L, before + count);
+            if (after > 0L) {
+                values.put(value, after);
+            } else {
+                values.remove(value);
+            }
+            if (before == 0L && after > 0L) {
+                size++;
+                characters += value.length();
+            } else if (before > 0L && after == 0L) {
+                size--;
+                characters -= value.length();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Expand a weak name filter to the matching names.
+     *
+     * @param nameFilter the filter - the value is matched as prefix and with typos, the key as the filter defines
+     * @param maxTerms   the maximum number of names
+     * @return the sorted matching names, or null, if there are more than maxTerms
+     */
+    List<String> expand(EmployeeNameFilter nameFilter, int maxTerms) {
+
+        final String value = nameFilter.getValue();
+        final int maxEdits = maxEdits(value.length());
+        final CharacterRunAutomaton automaton = maxEdits > 0
+            ? new CharacterRunAutomaton(new LevenshteinAutomata(value, true).toAutomaton(maxEdits))
+            : null;
+        final Set<String> ret = new TreeSet<>();
+        lock.readLock().lock();
+        try {
+            for (Map.Entry<String, NavigableMap<String, Long>> entry : names.entrySet()) {
+                if (!matchesKey(nameFilter, entry.getKey())) {
+                    continue;
+                }
+                for (String name : entry.getValue().tailMap(value, true).keySet()) {
+                    if (!name.startsWith(value)) {
+                        break;
+                    }
+                    if (ret.add(name) && ret.size() > maxTerms) {
+                        return null;
+                    }
+                }
+                if (automaton == null) {
+                    continue;
+                }
+                for (String name : entry.getValue().keySet()) {
+                    if (Math.abs(name.length() - value.length()) <= maxEdits && automaton.run(name)
+                        && ret.add(name) && ret.size() > maxTerms) {
+                        return null;
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return new ArrayList<>(ret);
+    }
+
+    /**
+     * @return the number of distinct names
+     */
+    int getNames() {
+        return size;
+    }
+
+    /**
+     * @return the estimated memory in bytes
+     */
+    long getEstimatedBytes() {
+        // tree map entry, string, boxed count and the characters
+        return size * 112L + characters * 2L;
+    }
+
+    /**
+     * Short names would match too many other names with typos: below 3 characters only by prefix, up to 5 characters
+     * with one edit, longer names with two edits.
+     */
+    static int maxEdits(int length) {
+
+        if (length < 3) {
+            return 0;
+        }
+        return length < 6 ? 1 : 2;
+    }
+
+    private static boolean matchesKey(EmployeeNameFilter nameFilter, String key) {
+
+        return nameFilter.getKeyCompareOperation() == EmployeeNameFilter.CompareOperation.LIKE
+            ? key.startsWith(nameFilter.getKey())
+            : key.equals(nameFilter.getKey());
+    }
+}
@@ -0,0 +1,134 @@
+package com.giraone.pms.service.search;
+
+import com.giraone.pms.config.ApplicationProperties;
+import com.giraone.pms.domain.enumeration.EmployeeNameFilterKey;
+import com.giraone.pms.domain.filter.EmployeeNameFilter;
+import com.giraone.pms.domain.filter.EmployeeNameKeyValue;
+import com.giraone.pms.domain.filter.PersonFilter;
+import com.giraone.pms.repository.EmployeeNameRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Fuzzy name search: the weak names of a fuzzy {@link PersonFilter} are expanded to the names of the company, which
+ * start with them or differ by a typo (see {@link FuzzyNameDictionary}), and searched with an equality IN list instead
+ * of a LIKE. A name with no or too many matches is searched by prefix as before. Phonetic filters are not expanded.
+ * <p>
+ * The dictionary of a company is loaded from employee_name on its first fuzzy search and kept in a
+ * {@link CompanyCache}. Changes with unknown names (deleted employees) drop the dictionary of the company.
+ */
+@Service
+public class FuzzyNameExpander implements MeterBinder {
+
+    private final Logger log = LoggerFactory.getLogger(FuzzyNameExpander.class);
+
+    private static final String CACHE_NAME = "fuzzyNameDictionaries";
+
+    private static final List<String> KEYS = Arrays.asList(
+        EmployeeNameFilterKey.NS.toString(), EmployeeNameFilterKey.NG.toString());
+
+    private final EmployeeNameRepository employeeNameRepository;
+    private final int maxTerms;
+    private final CompanyCache<FuzzyNameDictionary> dictionaries;
+
+    public FuzzyNameExpander(EmployeeNameRepository employeeNameRepository,
+                             EmployeeCountService employeeCountService,
+                             PendingEmployeeChanges pendingEmployeeChanges,
+                             ApplicationProperties applicationProperties) {
+
+        this.employeeNameRepository = employeeNameRepository;
+        this.maxTerms = applicationProperties.getSearch().getFuzzyMaxTerms();
+        this.dictionaries = new CompanyCache<>(CACHE_NAME, applicationProperties.getSearch().getFuzzyMegabytes(),
+            FuzzyNameDictionary::getEstimatedBytes, false, employeeCountService, pendingEmployeeChanges,
+            this::load, FuzzyNameExpander::update);
+    }
+
+    /**
+     * Expand the weak names of a fuzzy filter. Must be called within a transaction, because the names of the company
+     * may be loaded.
+     *
+     * @param companyId    the company
+     * @param personFilter the filter - may be null
+     * @return the filter with the expanded names or the given filter, if it is not fuzzy
+     */
+    public PersonFilter expand(long companyId, PersonFilter personFilter) {
+
+        if (personFilter == null || !personFilter.isFuzzy() || personFilter.isPhonetic() || !personFilter.hasNames()) {
+            return personFilter;
+        }
+        final FuzzyNameDictionary dictionary = dictionaries.get(companyId);
+        final List<EmployeeNameFilter> names = new ArrayList<>(personFilter.getNames().size());
+        for (EmployeeNameFilter nameFilter : personFilter.getNames()) {
+            names.add(isWeakName(nameFilter) ? expand(dictionary, nameFilter) : nameFilter);
+        }
+        return personFilter.withNames(names);
+    }
+
+    /**
+     * Maintain or drop the dictionaries after the commit. Without a transaction the event is handled immediately.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onEmployeesChangedCommitted(EmployeesChangedEvent event) {
+        dictionaries.onEmployeesChangedCommitted(event);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        dictionaries.bindTo(registry);
+    }
+
+    //------------------------------------------------------------------------------------------------------------------
+
+    private EmployeeNameFilter expand(FuzzyNameDictionary dictionary, EmployeeNameFilter nameFilter) {
+
+        final List<String> values = dictionary.expand(nameFilter, maxTerms);
+        if (values == null || values.isEmpty()) {
+            log.debug("FuzzyNameExpander: {} not expanded, {} names", nameFilter, values == null ? "too many" : "no");
+            return nameFilter;
+        }
+        return new EmployeeNameFilter(nameFilter.getKeyCompareOperation(), nameFilter.getKey(), values);
+    }
+
+    /**
+     * The weak names of a non phonetic filter are LIKE filters on the keys NS, NG or N (both).
+     */
+    private static boolean isWeakName(EmployeeNameFilter nameFilter) {
+
+        return nameFilter.getValueCompareOperation() == EmployeeNameFilter.CompareOperation.LIKE
+            && nameFilter.getKey().startsWith("N");
+    }
+
+    private static void add(FuzzyNameDictionary dictionary, EmployeeNameKeyValue name, long count) {
+
+        if (KEYS.contains(name.getKey())) {
+            dictionary.add(name.getKey(), name.getValue(), count);
+        }
+    }
+
+    private FuzzyNameDictionary load(long companyId) {
+
+        final FuzzyNameDictionary ret = new FuzzyNameDictionary();
+        for (Object[] row : employeeNameRepository.findNameCounts(companyId, KEYS)) {
+            ret.add((String) row[0], (String) row[1], ((Number) row[2]).longValue());
+        }
+        return ret;
+    }
+
+    private static boolean update(FuzzyNameDictionary dictionary, EmployeeNamesChangedEvent event) {
+
+        if (event.getRemovedNames() == null) {
+            return false;
+        }
+        event.getRemovedNames().forEach(name -> add(dictionary, name, -1L));
+        event.getAddedNames().forEach(name -> add(dictionary, name, 1L));
+        return true;
+    }
+}
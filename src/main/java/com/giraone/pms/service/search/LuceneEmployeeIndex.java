@@ -0,0 +1,387 @@
+package com.giraone.pms.service.search;
+
+import com.giraone.pms.config.ApplicationProperties;
+import com.giraone.pms.domain.Employee;
+import com.giraone.pms.domain.filter.EmployeeNameKeyValue;
+import com.giraone.pms.domain.filter.PersonFilter;
+import com.giraone.pms.repository.EmployeeRepository;
+import com.giraone.pms.service.NameKeyValueService;
+import com.google.common.collect.Lists;
+import org.apache.lucene.store.MMapDirectory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Optional search backend: an embedded Lucene index (see {@link LuceneNameIndex}) on the local disk, which answers
+ * restricted searches ordered by id without the employee_name joins. The database is only used to fetch
+ * the employees of the page.
+ * <p>
+ * The index is maintained asynchronously after the commit by a single thread. The changes of one transaction are
+ * applied as one task with one refresh: changed employees are re-read from the database page by page, bulk loads
+ * rebuild the documents of their company and a re-index rebuilds the whole index. Until a change is applied, the
+ * searches of the company use the database - as well as during a rebuild and while a transaction with changes of the
+ * company is running (see {@link PendingEmployeeChanges}).
+ */
+@Service
+public class LuceneEmployeeIndex {
+
+    private final Logger log = LoggerFactory.getLogger(LuceneEmployeeIndex.class);
+
+    /** Deeper pages are not worth collecting the top hits of all preceding pages */
+    private static final int MAX_HITS = 10_000;
+
+    private final EmployeeRepository employeeRepository;
+    private final NameKeyValueService nameKeyValueService;
+    private final PendingEmployeeChanges pendingEmployeeChanges;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final String directory;
+    private final int pageSize;
+
+    /** Changes, which are committed, but not yet applied to the index */
+    private final ConcurrentMap<Long, AtomicInteger> queuedChanges = new ConcurrentHashMap<>();
+    private final AtomicInteger queuedChangesOfAll = new AtomicInteger();
+    /** Resource key of the {@link ChangeBatch} of the running transaction */
+    private final Object batchKey = new Object();
+
+    private ExecutorService maintenance;
+    private LuceneNameIndex index;
+    /** false until the index contains all employees */
+    private volatile boolean ready;
+
+    public LuceneEmployeeIndex(EmployeeRepository employeeRepository, NameKeyValueService nameKeyValueService,
+                               PendingEmployeeChanges pendingEmployeeChanges,
+                               PlatformTransactionManager transactionManager, ApplicationProperties applicationProperties) {
+
+        this.employeeRepository = employeeRepository;
+        this.nameKeyValueService = nameKeyValueService;
+        this.pendingEmployeeChanges = pendingEmployeeChanges;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        this.enabled = applicationProperties.getSearch().isLuceneEnabled();
+        this.directory = applicationProperties.getSearch().getLuceneDirectory();
+        this.pageSize = applicationProperties.getIndex().getPageSize();
+    }
+
+    @PostConstruct
+    public void open() throws IOException {
+
+        if (!enabled) {
+            return;
+        }
+        index = new LuceneNameIndex(new MMapDirectory(Paths.get(directory)));
+        maintenance = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "pmssql-Lucene-1"));
+        log.info("LuceneEmployeeIndex: opened {}, clean={}", directory, index.isClean());
+    }
+
+    @PreDestroy
+    public void close() throws IOException, InterruptedException {
+
+        if (!enabled) {
+            return;
+        }
+        maintenance.shutdown();
+        if (!maintenance.awaitTermination(30L, TimeUnit.SECONDS)) {
+            maintenance.shutdownNow();
+        }
+        // an index with unapplied changes is not closed clean, so it is rebuilt on the next start
+        if (ready && queuedChangesOfAll.get() == 0 && queuedChanges.values().stream().allMatch(c -> c.get() == 0)) {
+            index.close();
+            log.info("LuceneEmployeeIndex: closed {}", directory);
+        }
+    }
+
+    /**
+     * An index, which was not closed clean, is rebuilt, after the database is available.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+
+        if (!enabled) {
+            return;
+        }
+        if (index.isClean()) {
+            ready = true;
+        } else {
+            enqueue(Collections.singleton(queuedChangesOfAll), this::rebuildAll);
+        }
+    }
+
+    /**
+     * Search one page of the employees of a company.
+     *
+     * @param companyId    the company
+     * @param personFilter the filter
+     * @param pageable     the requested page - only the first order of the sort is relevant
+     * @param count        if true, the total number of matches is counted
+     * @return the hits or null, if the search cannot be answered by the index (disabled, changes in progress, sort not
+     * supported or page too deep)
+     */
+    public Hits search(long companyId, PersonFilter personFilter, Pageable pageable, boolean count) {
+
+        if (!enabled || !ready || hasQueuedChanges(companyId) || pendingEmployeeChanges.hasPendingChanges(companyId)
+            || pageable.getOffset() + pageable.getPageSize() > MAX_HITS) {
+            return null;
+        }
+        try {
+            return index.search(companyId, personFilter, pageable.getSort(),
+                (int) pageable.getOffset(), pageable.getPageSize(), count);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Lucene search of company " + companyId + " failed", e);
+        }
+    }
+
+    /**
+     * Collect the changes of a transaction, so they are queued as one task after the commit. A JPA bulk load, which
+     * publishes one event per employee, is applied with one re-read per page and one refresh. Without a transaction
+     * the event is queued immediately.
+     */
+    @EventListener
+    public void onEmployeesChanged(EmployeesChangedEvent event) {
+
+        if (!enabled) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            enqueue(Collections.singletonList(event));
+            return;
+        }
+        ChangeBatch batch = (ChangeBatch) TransactionSynchronizationManager.getResource(batchKey);
+        if (batch == null) {
+            batch = new ChangeBatch();
+            TransactionSynchronizationManager.bindResource(batchKey, batch);
+            TransactionSynchronizationManager.registerSynchronization(batch);
+        }
+        batch.events.add(event);
+    }
+
+    //------------------------------------------------------------------------------------------------------------------
+
+    private boolean hasQueuedChanges(long companyId) {
+
+        final AtomicInteger queued = queuedChanges.get(companyId);
+        return queuedChangesOfAll.get() != 0 || (queued != null && queued.get() != 0);
+    }
+
+    private AtomicInteger queuedChanges(long companyId) {
+        return queuedChanges.computeIfAbsent(companyId, id -> new AtomicInteger());
+    }
+
+    /**
+     * Queue the changes of one transaction as one task.
+     */
+    private void enqueue(List<EmployeesChangedEvent> events) {
+
+        if (events.stream().anyMatch(EmployeesChangedEvent::isAllCompanies)) {
+            enqueue(Collections.singleton(queuedChangesOfAll), this::rebuildAll);
+            return;
+        }
+        final Set<Long> rebuiltCompanies = new LinkedHashSet<>();
+        final Set<Long> changedEmployees = new LinkedHashSet<>();
+        final Set<AtomicInteger> counters = new HashSet<>();
+        for (EmployeesChangedEvent event : events) {
+            if (event instanceof EmployeeNamesChangedEvent) {
+                changedEmployees.add(((EmployeeNamesChangedEvent) event).getEmployeeId());
+            } else {
+                rebuiltCompanies.add(event.getCompanyId());
+            }
+            counters.add(queuedChanges(event.getCompanyId()));
+        }
+        enqueue(counters, () -> {
+            for (Long companyId : rebuiltCompanies) {
+                rebuildCompany(companyId);
+            }
+            apply(changedEmployees);
+        });
+    }
+
+    private void enqueue(Collection<AtomicInteger> counters, IndexTask task) {
+
+        counters.forEach(AtomicInteger::incrementAndGet);
+        maintenance.execute(() -> {
+            try {
+                task.run();
+                index.refresh();
+            } catch (IOException | RuntimeException e) {
+                // the index misses the change - it is not used until it is rebuilt
+                ready = false;
+                log.error("LuceneEmployeeIndex: maintenance failed, the index is disabled until the next rebuild!", e);
+            } finally {
+                counters.forEach(AtomicInteger::decrementAndGet);
+            }
+        });
+    }
+
+    /**
+     * Changed employees are re-read, so the documents contain all names, not only the changed ones. Employees, which
+     * are not found, were deleted. A moved employee replaces its document of the old company.
+     */
+    private void apply(Collection<Long> employeeIds) throws IOException {
+
+        for (List<Long> ids : Lists.partition(new ArrayList<>(employeeIds), pageSize)) {
+            final List<Employee> employees = transactionTemplate.execute(status -> employeeRepository.findAllById(ids));
+            final Set<Long> deleted = new HashSet<>(ids);
+            for (Employee employee : employees) {
+                put(employee);
+                deleted.remove(employee.getId());
+            }
+            for (Long id : deleted) {
+                index.delete(id);
+            }
+        }
+    }
+
+    private void rebuildCompany(long companyId) throws IOException {
+
+        final long start = System.currentTimeMillis();
+        index.deleteCompany(companyId);
+        long afterId = 0L;
+        long count = 0L;
+        List<Employee> employees;
+        do {
+            final long pageAfterId = afterId;
+            employees = transactionTemplate.execute(status -> employeeRepository.findAllByCompanyIdAfterId(
+                companyId, pageAfterId, PageRequest.of(0, pageSize)));
+            for (Employee employee : employees) {
+                put(employee);
+                afterId = employee.getId();
+            }
+            count += employees.size();
+        } while (employees.size() == pageSize);
+        log.info("LuceneEmployeeIndex: rebuilt company {} with {} employees in {} msec",
+            companyId, count, System.currentTimeMillis() - start);
+    }
+
+    private void rebuildAll() throws IOException {
+
+        ready = false;
+        final long start = System.currentTimeMillis();
+        index.deleteAll();
+        final Long maxId = transactionTemplate.execute(status -> employeeRepository.findMaxId());
+        long afterId = 0L;
+        long count = 0L;
+        List<Employee> employees = new ArrayList<>();
+        while (maxId != null && afterId < maxId) {
+            final long pageAfterId = afterId;
+            employees = transactionTemplate.execute(status -> employeeRepository.findAllByIdRange(
+                pageAfterId, maxId, PageRequest.of(0, pageSize)));
+            if (employees.isEmpty()) {
+                break;
+            }
+            for (Employee employee : employees) {
+                put(employee);
+            }
+            afterId = employees.get(employees.size() - 1).getId();
+            count += employees.size();
+        }
+        // employees created during the rebuild are queued changes, which are applied afterwards
+        index.commit(false);
+        ready = true;
+        log.info("LuceneEmployeeIndex: rebuilt index with {} employees in {} msec",
+            count, System.currentTimeMillis() - start);
+    }
+
+    private void put(Employee employee) throws IOException {
+
+        final List<EmployeeNameKeyValue> names = new ArrayList<>(6);
+        names.addAll(nameKeyValueService.buildSurnameKeyValues(employee.getSurname()));
+        names.addAll(nameKeyValueService.buildGivenNameKeyValues(employee.getGivenName()));
+        index.put(employee.getId(), employee.getCompany().getId(), employee.getDateOfBirth(), names);
+    }
+
+    @FunctionalInterface
+    private interface IndexTask {
+        void run() throws IOException;
+    }
+
+    /**
+     * The changes of the running transaction. Unbound while the transaction is suspended, so the changes of an inner
+     * transaction are queued after its own commit.
+     */
+    private final class ChangeBatch extends TransactionSynchronizationAdapter {
+
+        private final List<EmployeesChangedEvent> events = new ArrayList<>();
+
+        @Override
+        public void suspend() {
+            TransactionSynchronizationManager.unbindResource(batchKey);
+        }
+
+        @Override
+        public void resume() {
+            TransactionSynchronizationManager.bindResource(batchKey, this);
+        }
+
+        @Override
+        public void afterCommit() {
+            enqueue(events);
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(batchKey);
+        }
+    }
+
+    /**
+     * The ids of one page of a search.
+     */
+    public static final class Hits {
+
+        private final long[] ids;
+        private final boolean hasNext;
+        private final long total;
+
+        Hits(long[] ids, boolean hasNext, long total) {
+            this.ids = ids;
+            this.hasNext = hasNext;
+            this.total = total;
+        }
+
+        /**
+         * @return the ids of the page in the requested order
+         */
+        public long[] getIds() {
+            return ids;
+        }
+
+        public boolean hasNext() {
+            return hasNext;
+        }
+
+        /**
+         * @return the total number of matches or -1, if it was not counted
+         */
+        public long getTotal() {
+            return total;
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package com.giraone.pms.service.search;
+
+import com.giraone.pms.domain.filter.EmployeeNameFilter;
+import com.giraone.pms.domain.filter.EmployeeNameKeyValue;
+import com.giraone.pms.domain.filter.PersonFilter;
+import com.giraone.pms.domain.filter.SearchCursor;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.IntPoint;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.PrefixQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopFieldCollector;
+import org.apache.lucene.store.Directory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Lucene index of the employees of all companies with one document per employee. The names are indexed as untokenized
+ * terms in one field per name key (LS, NS, PS, LG, NG, PG), so a name filter is a term or prefix query with the same
+ * semantic as the employee_name join of the search statement. The index is sorted by id, so searches ordered by id
+ * terminate early after the requested page.
+ * <p>
+ * The commit data contains a clean flag, which is only set by the commit of a regular close. An index, that was not
+ * closed regularly, misses changes and must be rebuilt.
+ */
+class LuceneNameIndex implements Closeable {
+
+    static final String FIELD_ID = "id";
+    static final String FIELD_ID_SORT = "id_sort";
+    static final String FIELD_COMPANY = "company";
+    static final String FIELD_DATE_OF_BIRTH = "date_of_birth";
+    static final String FIELD_NAME_PREFIX = "name_";
+
+    /** All name keys - a filter with a LIKE key matches the keys starting with the filter key */
+    static final List<String> NAME_KEYS = Collections.unmodifiableList(Arrays.asList("LS", "NS", "PS", "LG", "NG", "PG"));
+
+    private static final String COMMIT_DATA_CLEAN = "clean";
+
+    private final IndexWriter writer;
+    private final SearcherManager searcherManager;
+    private final boolean clean;
+
+    /**
+     * Open or create the index.
+     *
+     * @param directory the directory of the index, which is closed with the index
+     */
+    LuceneNameIndex(Directory directory) throws IOException {
+
+        final IndexWriterConfig config = new IndexWriterConfig()
+            .setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND)
+            .setIndexSort(new Sort(new SortField(FIELD_ID_SORT, SortField.Type.LONG)));
+        this.writer = new IndexWriter(directory, config);
+        boolean cleanCommit = false;
+        final Iterable<Map.Entry<String, String>> commitData = writer.getLiveCommitData();
+        if (commitData != null) {
+            for (Map.Entry<String, String> entry : commitData) {
+                cleanCommit |= COMMIT_DATA_CLEAN.equals(entry.getKey()) && Boolean.parseBoolean(entry.getValue());
+            }
+        }
+        this.clean = cleanCommit;
+        // until the next regular close, the index on disk is not clean
+        commit(false);
+        this.searcherManager = new SearcherManager(writer, null);
+    }
+
+    /**
+     * @return true, if the index was closed regularly before it was opened, so it contains all changes
+     */
+    boolean isClean() {
+        return clean;
+    }
+
+    /**
+     * Add or replace the document of an employee.
+     *
+     * @param id          the id of the employee
+     * @param companyId   the company of the employee
+     * @param dateOfBirth the date of birth or null
+     * @param names       the names of the employee - see NameKeyValueService
+     */
+    void put(long id, long companyId, LocalDate dateOfBirth, Collection<EmployeeNameKeyValue> names)
+        throws IOException {
+
+        final Document document = new Document();
+        document.add(new StringField(FIELD_ID, Long.toString(id), Field.Store.YES));
+        document.add(new NumericDocValuesField(FIELD_ID_SORT, id));
+        document.add(new StringField(FIELD_COMPANY, Long.toString(companyId), Field.Store.NO));
+        if (dateOfBirth != null) {
+            document.add(new IntPoint(FIELD_DATE_OF_BIRTH, (int) dateOfBirth.toEpochDay()));
+        }
+        for (EmployeeNameKeyValue name : names) {
+            document.add(new StringField(FIELD_NAME_PREFIX + name.getKey(), name.getValue(), Field.Store.NO));
+        }
+        writer.updateDocument(new Term(FIELD_ID, Long.toString(id)), document);
+    }
+
+    void delete(long id) throws IOException {
+        writer.deleteDocuments(new Term(FIELD_ID, Long.toString(id)));
+    }
+
+    void deleteCompany(long companyId) throws IOException {
+        writer.deleteDocuments(new Term(FIELD_COMPANY, Long.toString(companyId)));
+    }
+
+    void deleteAll() throws IOException {
+        writer.deleteAll();
+    }
+
+    /**
+     * Make the changes visible to the searches (near real time - without a commit).
+     */
+    void refresh() throws IOException {
+        searcherManager.maybeRefreshBlocking();
+    }
+
+    /**
+     * Persist the changes. Only needed to keep the index after a regular close, but a rebuild should survive a crash.
+     *
+     * @param clean true, if the index is closed afterwards
+     */
+    void commit(boolean clean) throws IOException {
+
+        writer.setLiveCommitData(Collections.singletonMap(COMMIT_DATA_CLEAN, Boolean.toString(clean)).entrySet());
+        writer.commit();
+    }
+
+    /**
+     * Search one page of the employees of a company.
+     *
+     * @param companyId    the company
+     * @param personFilter the filter
+     * @param sort         the requested sort - only ordering by id is supported
+     * @param offset       the offset of the page
+     * @param size         the size of the page
+     * @param count        if true, the total number of matches is counted
+     * @return the hits or null, if the sort is not supported
+     */
+    LuceneEmployeeIndex.Hits search(long companyId, PersonFilter personFilter, org.springframework.data.domain.Sort sort, int offset, int size,
+                boolean count) throws IOException {
+
+        final Sort luceneSort = toSort(sort);
+        if (luceneSort == null) {
+            return null;
+        }
+        final Query query = toQuery(companyId, personFilter);
+        final IndexSearcher searcher = searcherManager.acquire();
+        try {
+            // one more, to know whether there is a next page - without total hits, the collector terminates early
+            final TopFieldCollector collector = TopFieldCollector.create(luceneSort, offset + size + 1,
+                false, false, false, false);
+            searcher.search(query, collector);
+            final TopDocs topDocs = collector.topDocs();
+            final ScoreDoc[] scoreDocs = topDocs.scoreDocs;
+            final int to = Math.min(offset + size, scoreDocs.length);
+            final long[] ids = new long[Math.max(0, to - offset)];
+            for (int i = offset; i < to; i++) {
+                ids[i - offset] = Long.parseLong(searcher.doc(scoreDocs[i].doc).get(FIELD_ID));
+            }
+            final long total = count ? searcher.count(query) : -1L;
+            return new LuceneEmployeeIndex.Hits(ids, scoreDocs.length > offset + size, total);
+        } finally {
+            searcherManager.release(searcher);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+
+        searcherManager.close();
+        commit(true);
+        writer.close();
+        writer.getDirectory().close();
+    }
+
+    //------------------------------------------------------------------------------------------------------------------
+
+    /**
+     * Same semantic as the search statement: all names and the date of birth of the filter must match.
+     */
+    static Query toQuery(long companyId, PersonFilter personFilter) {
+
+        final BooleanQuery.Builder builder = new BooleanQuery.Builder()
+            .add(new TermQuery(new Term(FIELD_COMPANY, Long.toString(companyId))), BooleanClause.Occur.FILTER);
+        for (EmployeeNameFilter nameFilter : personFilter.getNames()) {
+            builder.add(toQuery(nameFilter), BooleanClause.Occur.FILTER);
+        }
+        if (personFilter.getDateOfBirth() != null) {
+            builder.add(IntPoint.newExactQuery(FIELD_DATE_OF_BIRTH, (int) personFilter.getDateOfBirth().toEpochDay()),
+                BooleanClause.Occur.FILTER);
+        }
+        return builder.build();
+    }
+
+    /**
+     * "name_key LIKE/= :key AND name_value LIKE/=/IN :value" - a LIKE key and IN values are disjunctions of the
+     * matching key fields and values.
+     */
+    private static Query toQuery(EmployeeNameFilter nameFilter) {
+
+        final String key = nameFilter.getKey();
+        final List<String> keys = nameFilter.getKeyCompareOperation() == EmployeeNameFilter.CompareOperation.LIKE
+            ? NAME_KEYS.stream().filter(k -> k.startsWith(key)).collect(Collectors.toList())
+            : Collections.singletonList(key);
+        final BooleanQuery.Builder builder = new BooleanQuery.Builder();
+        for (String k : keys) {
+            for (String value : nameFilter.getValues()) {
+                final Term term = new Term(FIELD_NAME_PREFIX + k, String.valueOf(value));
+                builder.add(nameFilter.getValueCompareOperation() == EmployeeNameFilter.CompareOperation.LIKE
+                    ? new PrefixQuery(term) : new TermQuery(term), BooleanClause.Occur.SHOULD);
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Only the order by id is the same as the order of the search statement. The surname is ordered by the collation
+     * of the database, which differs from the binary order of Lucene, so pages would skip or repeat employees, when a
+     * company switches between Lucene and the database.
+     *
+     * @return the Lucene sort or null, if the sort is not supported
+     */
+    static Sort toSort(org.springframework.data.domain.Sort sort) {
+
+        if (sort == null || sort.isUnsorted()) {
+            return new Sort(new SortField(FIELD_ID_SORT, SortField.Type.LONG));
+        }
+        final org.springframework.data.domain.Sort.Order order = sort.iterator().next();
+        if (SearchCursor.SORT_ID.equals(order.getProperty())) {
+            return new Sort(new SortField(FIELD_ID_SORT, SortField.Type.LONG, order.isDescending()));
+        }
+        return null;
+    }
+}
@@ -0,0 +1,153 @@
+package com.giraone.pms.service.search;
+
+import com.giraone.pms.domain.enumeration.EmployeeNameFilterKey;
+import com.giraone.pms.domain.filter.EmployeeNameFilter;
+import com.giraone.pms.domain.filter.PersonFilter;
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Bloom filter over the lowercase names (keys LS and LG of employee_name) of one company. It proves, that an exact
+ * name search has no matches: a name, which is not contained, is not a name of the company. Removed names stay in
+ * the filter - they only cause false positives, which are searched in the database as before.
+ */
+class NameBloomFilter {
+
+    /** The keys of the exact names - the quoted names of the filter */
+    static final List<String> KEYS = Arrays.asList(EmployeeNameFilterKey.LS.toString(), EmployeeNameFilterKey.LG.toString());
+
+    private static final double FALSE_POSITIVE_PROBABILITY = 0.01;
+
+    private final BloomFilter<CharSequence> names;
+    private final long expectedInsertions;
+    /** Guava's bloom filter is not safe for concurrent puts */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private long insertions;
+
+    /**
+     * @param expectedInsertions the number of names, for which the false positive probability is 1%
+     */
+    NameBloomFilter(long expectedInsertions) {
+
+        this.expectedInsertions = Math.max(1L, expectedInsertions);
+        this.names = BloomFilter.create(Funnels.stringFunnel(StandardCharsets.UTF_8), this.expectedInsertions,
+            FALSE_POSITIVE_PROBABILITY);
+    }
+
+    /**
+     * Add a name. Names of other keys than LS and LG are ignored.
+     */
+    void put(String key, String value) {
+
+        if (!KEYS.contains(key)) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            if (names.put(toEntry(key, value))) {
+                insertions++;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param personFilter the filter
+     * @return false, if an exact name of the filter is not a name of the company, so the filter has no matches
+     */
+    boolean mightMatch(PersonFilter personFilter) {
+
+        lock.readLock().lock();
+        try {
+            for (EmployeeNameFilter nameFilter : personFilter.getNames()) {
+                if (!mightMatch(nameFilter)) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return true, if more names were added than expected, so the false positive probability is higher than 1%
+     */
+    boolean isOverfilled() {
+
+        lock.readLock().lock();
+        try {
+            return insertions > expectedInsertions;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the memory in bytes
+     */
+    long getEstimatedBytes() {
+        // optimal number of bits of the bloom filter
+        return (long) (-expectedInsertions * Math.log(FALSE_POSITIVE_PROBABILITY) / (Math.log(2) * Math.log(2))) / 8L;
+    }
+
+    /**
+     * @return true, if the filter can be decided by the bloom filter
+     */
+    static boolean isExactNameFilter(EmployeeNameFilter nameFilter) {
+
+        return nameFilter.getValueCompareOperation() != EmployeeNameFilter.CompareOperation.LIKE
+            && keys(nameFilter) != null;
+    }
+
+    //------------------------------------------------------------------------------------------------------------------
+
+    private boolean mightMatch(EmployeeNameFilter nameFilter) {
+
+        if (!isExactNameFilter(nameFilter)) {
+            return true;
+        }
+        for (String key : keys(nameFilter)) {
+            for (String value : nameFilter.getValues()) {
+                if (names.mightContain(toEntry(key, value))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the keys matched by the name filter ("L" with LIKE are both keys) or null, if it matches other keys
+     */
+    private static List<String> keys(EmployeeNameFilter nameFilter) {
+
+        if (nameFilter.getKeyCompareOperation() != EmployeeNameFilter.CompareOperation.LIKE) {
+            return KEYS.contains(nameFilter.getKey()) ? Collections.singletonList(nameFilter.getKey()) : null;
+        }
+        final List<String> ret = new ArrayList<>(KEYS.size());
+        for (EmployeeNameFilterKey key : EmployeeNameFilterKey.values()) {
+            if (!key.toString().startsWith(nameFilter.getKey())) {
+                continue;
+            }
+            if (!KEYS.contains(key.toString())) {
+                return null;
+            }
+            ret.add(key.toString());
+        }
+        return ret;
+    }
+
+    private static String toEntry(String key, String value) {
+        return key + ':' + value;
+    }
+}
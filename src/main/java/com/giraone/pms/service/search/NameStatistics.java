@@ -0,0 +1,106 @@
+package com.giraone.pms.service.search;
+
+import com.giraone.pms.domain.filter.EmployeeNameFilter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Name frequency statistics of one company: the number of employee_name rows and distinct values per name key and
+ * per two character prefix of the value, plus the number of employees and distinct dates of birth. Used to estimate
+ * the number of rows, that a predicate of a {@link com.giraone.pms.domain.filter.PersonFilter} matches.
+ */
+public class NameStatistics {
+
+    /** Length of the value prefixes, for which the rows are counted */
+    public static final int PREFIX_LENGTH = 2;
+
+    /** Assumed reduction of the matching rows per additional prefix character beyond the counted prefix */
+    private static final double SELECTIVITY_PER_CHARACTER = 0.25;
+
+    private final long employees;
+    private final long distinctDatesOfBirth;
+    private final List<Bucket> buckets;
+
+    public NameStatistics(long employees, long distinctDatesOfBirth, List<Bucket> buckets) {
+        this.employees = employees;
+        this.distinctDatesOfBirth = distinctDatesOfBirth;
+        this.buckets = Collections.unmodifiableList(new ArrayList<>(buckets));
+    }
+
+    public long getEmployees() {
+        return employees;
+    }
+
+    /**
+     * @return the estimated number of employees with a given date of birth
+     */
+    public double estimateRowsByDateOfBirth() {
+        return distinctDatesOfBirth > 0 ? (double) employees / distinctDatesOfBirth : employees;
+    }
+
+    /**
+     * @param nameFilter a name predicate
+     * @return the estimated number of employee_name rows matching the predicate
+     */
+    public double estimateRows(EmployeeNameFilter nameFilter) {
+
+        if (nameFilter.getValueCompareOperation() == EmployeeNameFilter.CompareOperation.IN) {
+            // the sum of the exact values
+            double ret = 0.0;
+            for (String value : nameFilter.getValues()) {
+                ret += estimateRows(new EmployeeNameFilter(nameFilter.getKeyCompareOperation(),
+                    EmployeeNameFilter.CompareOperation.EQUALS, nameFilter.getKey(), value));
+            }
+            return ret;
+        }
+        final String value = nameFilter.getValue() != null ? nameFilter.getValue() : "";
+        final boolean valueLike = nameFilter.getValueCompareOperation() == EmployeeNameFilter.CompareOperation.LIKE;
+        double ret = 0.0;
+        for (Bucket bucket : buckets) {
+            if (!matchesKey(bucket, nameFilter)) {
+                continue;
+            }
+            if (value.length() < PREFIX_LENGTH) {
+                // the prefix covers whole buckets
+                if (bucket.prefix.startsWith(value) && (valueLike || bucket.prefix.equals(value))) {
+                    ret += valueLike ? bucket.rows : (double) bucket.rows / Math.max(1L, bucket.distinctValues);
+                }
+            } else if (bucket.prefix.equals(value.substring(0, PREFIX_LENGTH))) {
+                final double perValue = (double) bucket.rows / Math.max(1L, bucket.distinctValues);
+                if (valueLike) {
+                    final double reduced = bucket.rows * Math.pow(SELECTIVITY_PER_CHARACTER, value.length() - PREFIX_LENGTH);
+                    ret += Math.max(perValue, reduced);
+                } else {
+                    ret += perValue;
+                }
+            }
+        }
+        return ret;
+    }
+
+    private static boolean matchesKey(Bucket bucket, EmployeeNameFilter nameFilter) {
+        return nameFilter.getKeyCompareOperation() == EmployeeNameFilter.CompareOperation.LIKE
+            ? bucket.key.startsWith(nameFilter.getKey())
+            : bucket.key.equals(nameFilter.getKey());
+    }
+
+    /**
+     * Rows and distinct values of one name key and value prefix.
+     */
+    public static final class Bucket {
+
+        private final String key;
+        private final String prefix;
+        private final long rows;
+        private final long distinctValues;
+
+        public Bucket(String key, String prefix, long rows, long distinctValues) {
+            this.key = key;
+            this.prefix = prefix != null ? prefix : "";
+            this.rows = rows;
+            this.distinctValues = distinctValues;
+        }
+    }
+}
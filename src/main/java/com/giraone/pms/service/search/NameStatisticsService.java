@@ -0,0 +1,74 @@
+package com.giraone.pms.service.search;
+
+import com.giraone.pms.config.ApplicationProperties;
+import com.giraone.pms.repository.EmployeeNameRepository;
+import com.giraone.pms.repository.EmployeeRepository;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Provides the {@link NameStatistics} of the companies. The statistics are computed with two aggregate queries per
+ * company and kept for a configurable time - they are only estimates, so they are not invalidated by every write.
+ */
+@Service
+public class NameStatisticsService {
+
+    private final Logger log = LoggerFactory.getLogger(NameStatisticsService.class);
+
+    private final EmployeeRepository employeeRepository;
+    private final EmployeeNameRepository employeeNameRepository;
+    private final Cache<Long, NameStatistics> statistics;
+
+    public NameStatisticsService(EmployeeRepository employeeRepository, EmployeeNameRepository employeeNameRepository,
+                                 ApplicationProperties applicationProperties) {
+        this.employeeRepository = employeeRepository;
+        this.employeeNameRepository = employeeNameRepository;
+        this.statistics = CacheBuilder.newBuilder()
+            .maximumSize(applicationProperties.getSearch().getStatisticsCacheSize())
+            .expireAfterWrite(applicationProperties.getSearch().getStatisticsSeconds(), TimeUnit.SECONDS)
+            .build();
+    }
+
+    /**
+     * Get the statistics of a company. Must be called within a transaction.
+     *
+     * @param companyId the company
+     * @return the cached or computed statistics
+     */
+    public NameStatistics getStatistics(long companyId) {
+
+        try {
+            return statistics.get(companyId, () -> load(companyId));
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Cannot compute name statistics of company " + companyId, e.getCause());
+        }
+    }
+
+    private NameStatistics load(long companyId) {
+
+        final long start = System.currentTimeMillis();
+        final List<NameStatistics.Bucket> buckets = new ArrayList<>();
+        for (Object[] row : employeeNameRepository.findNameStatistics(companyId)) {
+            buckets.add(new NameStatistics.Bucket((String) row[0], (String) row[1],
+                ((Number) row[2]).longValue(), ((Number) row[3]).longValue()));
+        }
+        final Object[] employeeRow = employeeRepository.findDateOfBirthStatistics(companyId).get(0);
+        final NameStatistics ret = new NameStatistics(
+            ((Number) employeeRow[0]).longValue(), ((Number) employeeRow[1]).longValue(), buckets);
+        log.debug("NameStatisticsService.load companyId={}: {} buckets, {} employees in {} msec",
+            companyId, buckets.size(), ret.getEmployees(), System.currentTimeMillis() - start);
+        return ret;
+    }
+}
@@ -0,0 +1,247 @@
+package com.giraone.pms.service.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Frequency trie of the (lowercase) names of one company for typeahead suggestions. Each node knows the highest count
+ * of its subtree, so the top-k names of a prefix are found best first without visiting the whole subtree. The trie is
+ * maintained incrementally - nodes, whose subtree has no names anymore, are removed.
+ */
+class NameSuggestionTrie {
+
+    private static final char[] NO_LABELS = new char[0];
+    private static final Node[] NO_CHILDREN = new Node[0];
+
+    /** Higher count first, then alphabetically - a name before the longer names starting with it */
+    private static final Comparator<Candidate> BEST_FIRST = Comparator
+        .comparingLong((Candidate candidate) -> -candidate.score)
+        .thenComparing(candidate -> candidate.name)
+        .thenComparing(candidate -> !candidate.complete);
+
+    private final Node root = new Node();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private int names;
+    private int nodes = 1;
+
+    /**
+     * Add occurrences of a name.
+     *
+     * @param name  the name
+     * @param count the number of occurrences, may be negative to remove occurrences
+     */
+    void add(String name, long count) {
+
+        lock.writeLock().lock();
+        try {
+            final Node[] path = new Node[name.length() + 1];
+            path[0] = root;
+            for (int i = 0; i < name.length(); i++) {
+                path[i + 1] = count > 0L ? path[i].getOrAddChild(name.charAt(i), this) : path[i].getChild(name.charAt(i));
+                if (path[i + 1] == null) {
+                    // an unknown name cannot be removed
+                    return;
+                }
+            }
+            final Node node = path[name.length()];
+            final long before = node.count;
+            node.count = Math.max(0L, node.count + count);
+            if (before == 0L && node.count > 0L) {
+                names++;
+            } else if (before > 0L && node.count == 0L) {
+                names--;
+            }
+            // the maximum of the subtree bottom up, empty subtrees are removed
+            for (int i = name.length(); i >= 0; i--) {
+                path[i].updateMaxCount();
+                if (i > 0 && path[i].maxCount == 0L) {
+                    nodes -= path[i].size();
+                    path[i - 1].removeChild(name.charAt(i - 1));
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * The most frequent names starting with a prefix.
+     *
+     * @param prefix the prefix
+     * @param size   the maximum number of names
+     * @return the names with their counts - the highest count first
+     */
+    List<Suggestion> suggest(String prefix, int size) {
+
+        lock.readLock().lock();
+        try {
+            Node node = root;
+            for (int i = 0; i < prefix.length() && node != null; i++) {
+                node = node.getChild(prefix.charAt(i));
+            }
+            final List<Suggestion> ret = new ArrayList<>(size);
+            if (node == null || node.maxCount == 0L) {
+                return ret;
+            }
+            final PriorityQueue<Candidate> queue = new PriorityQueue<>(BEST_FIRST);
+            queue.add(new Candidate(prefix, node, node.maxCount, false));
+            while (!queue.isEmpty() && ret.size() < size) {
+                final Candidate candidate = queue.poll();
+                if (candidate.complete) {
+                    ret.add(new Suggestion(candidate.name, candidate.score));
+                    continue;
+                }
+                final Node current = candidate.node;
+                if (current.count > 0L) {
+                    queue.add(new Candidate(candidate.name, current, current.count, true));
+                }
+                for (int i = 0; i < current.labels.length; i++) {
+                    queue.add(new Candidate(candidate.name + current.labels[i], current.children[i],
+                        current.children[i].maxCount, false));
+                }
+            }
+            return ret;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of distinct names
+     */
+    int getNames() {
+        return names;
+    }
+
+    /**
+     * @return the estimated memory in bytes
+     */
+    long getEstimatedBytes() {
+        // object header, two longs, two array references and one child slot in the parent
+        return nodes * 64L;
+    }
+
+    //------------------------------------------------------------------------------------------------------------------
+
+    /**
+     * A node with the children ordered by their label.
+     */
+    private static final class Node {
+
+        private char[] labels = NO_LABELS;
+        private Node[] children = NO_CHILDREN;
+        /** occurrences of the name ending at this node */
+        private long count;
+        /** highest count of this node and its subtree */
+        private long maxCount;
+
+        private Node getChild(char label) {
+
+            final int i = Arrays.binarySearch(labels, label);
+            return i >= 0 ? children[i] : null;
+        }
+
+        private Node getOrAddChild(char label, NameSuggestionTrie trie) {
+
+            final int i = Arrays.binarySearch(labels, label);
+            if (i >= 0) {
+                return children[i];
+            }
+            final int insert = -i - 1;
+            final char[] newLabels = new char[labels.length + 1];
+            final Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(labels, 0, newLabels, 0, insert);
+            System.arraycopy(children, 0, newChildren, 0, insert);
+            System.arraycopy(labels, insert, newLabels, insert + 1, labels.length - insert);
+            System.arraycopy(children, insert, newChildren, insert + 1, children.length - insert);
+            newLabels[insert] = label;
+            newChildren[insert] = new Node();
+            labels = newLabels;
+            children = newChildren;
+            trie.nodes++;
+            return newChildren[insert];
+        }
+
+        private void removeChild(char label) {
+
+            final int i = Arrays.binarySearch(labels, label);
+            if (i < 0) {
+                return;
+            }
+            final char[] newLabels = new char[labels.length - 1];
+            final Node[] newChildren = new Node[children.length - 1];
+            System.arraycopy(labels, 0, newLabels, 0, i);
+            System.arraycopy(children, 0, newChildren, 0, i);
+            System.arraycopy(labels, i + 1, newLabels, i, labels.length - i - 1);
+            System.arraycopy(children, i + 1, newChildren, i, children.length - i - 1);
+            labels = newLabels.length > 0 ? newLabels : NO_LABELS;
+            children = newChildren.length > 0 ? newChildren : NO_CHILDREN;
+        }
+
+        private void updateMaxCount() {
+
+            long max = count;
+            for (Node child : children) {
+                max = Math.max(max, child.maxCount);
+            }
+            maxCount = max;
+        }
+
+        /**
+         * @return the number of nodes of the subtree
+         */
+        private int size() {
+
+            int ret = 1;
+            for (Node child : children) {
+                ret += child.size();
+            }
+            return ret;
+        }
+    }
+
+    /**
+     * A complete name with its count or a subtree with its highest count.
+     */
+    private static final class Candidate {
+
+        private final String name;
+        private final Node node;
+        private final long score;
+        private final boolean complete;
+
+        private Candidate(String name, Node node, long score, boolean complete) {
+            this.name = name;
+            this.node = node;
+            this.score = score;
+            this.complete = complete;
+        }
+    }
+
+    /**
+     * A suggested name with the number of its occurrences.
+     */
+    static final class Suggestion {
+
+        private final String name;
+        private final long count;
+
+        Suggestion(String name, long count) {
+            this.name = name;
+            this.count = count;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        long getCount() {
+            return count;
+        }
+    }
+}
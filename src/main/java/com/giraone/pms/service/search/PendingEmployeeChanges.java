@@ -0,0 +1,55 @@
+package com.giraone.pms.service.search;
+
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Counts the {@link EmployeesChangedEvent}s of running transactions per company. Indexes, which are maintained after
+ * the commit (see {@link EmployeeNameIndex}, {@link LuceneEmployeeIndex}), do not answer the searches of a company
+ * with pending changes, so a transaction always sees its own changes.
+ */
+@Service
+public class PendingEmployeeChanges {
+
+    private final ConcurrentMap<Long, AtomicInteger> pendingChanges = new ConcurrentHashMap<>();
+    private final AtomicInteger pendingChangesOfAll = new AtomicInteger();
+
+    /**
+     * @param companyId the company
+     * @return true, if a running transaction changed employees of the company
+     */
+    public boolean hasPendingChanges(long companyId) {
+
+        final AtomicInteger pending = pendingChanges.get(companyId);
+        // the completion may be handled before the change itself without a transaction, so != instead of >
+        return pendingChangesOfAll.get() != 0 || (pending != null && pending.get() != 0);
+    }
+
+    /**
+     * Count the change within the writing transaction.
+     */
+    @EventListener
+    public void onEmployeesChanged(EmployeesChangedEvent event) {
+        pendingChanges(event).incrementAndGet();
+    }
+
+    /**
+     * The change is either committed (and handled by the indexes after the commit) or rolled back.
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMPLETION, fallbackExecution = true)
+    public void onEmployeesChangedCompleted(EmployeesChangedEvent event) {
+        pendingChanges(event).decrementAndGet();
+    }
+
+    private AtomicInteger pendingChanges(EmployeesChangedEvent event) {
+
+        return event.isAllCompanies() ? pendingChangesOfAll
+            : pendingChanges.computeIfAbsent(event.getCompanyId(), companyId -> new AtomicInteger());
+    }
+}
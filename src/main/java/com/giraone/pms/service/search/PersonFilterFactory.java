@@ -0,0 +1,115 @@
+package com.giraone.pms.service.search;
+
+import com.giraone.pms.config.ApplicationProperties;
+import com.giraone.pms.domain.filter.PersonFilter;
+import com.giraone.pms.service.NameNormalizeService;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import org.springframework.stereotype.Service;
+
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Factory for parsed person filters. Parsing a filter (date and quote patterns, splitting, normalization and phonetic
+ * reduction) is done once per distinct input - the immutable filters are kept in a bounded LRU cache and shared by
+ * all requests. All filters use the normalizer bean.
+ */
+@Service
+public class PersonFilterFactory implements MeterBinder {
+
+    private static final String CACHE_NAME = "personFilters";
+
+    private final NameNormalizeService nameNormalizeService;
+    private final PersonFilter emptyFilter;
+    private final Cache<FilterKey, PersonFilter> filters;
+
+    public PersonFilterFactory(NameNormalizeService nameNormalizeService, ApplicationProperties applicationProperties) {
+
+        this.nameNormalizeService = nameNormalizeService;
+        this.emptyFilter = new PersonFilter(null, false, nameNormalizeService);
+        this.filters = CacheBuilder.newBuilder()
+            .maximumSize(applicationProperties.getSearch().getFilterCacheSize())
+            .recordStats()
+            .build();
+    }
+
+    /**
+     * @param input the free form filter of the user - may be null
+     * @return the parsed filter with simple phonetic reduction
+     */
+    public PersonFilter get(String input) {
+        return get(input, false);
+    }
+
+    /**
+     * @param input    the free form filter of the user - may be null
+     * @param phonetic true for double metaphone keys instead of the simple phonetic reduction
+     * @return the parsed filter
+     */
+    public PersonFilter get(String input, boolean phonetic) {
+        return get(input, phonetic, false);
+    }
+
+    /**
+     * @param input    the free form filter of the user - may be null
+     * @param phonetic true for double metaphone keys instead of the simple phonetic reduction
+     * @param fuzzy    true, if the weak names should also match names with typos (see {@link FuzzyNameExpander})
+     * @return the parsed filter
+     */
+    public PersonFilter get(String input, boolean phonetic, boolean fuzzy) {
+
+        if (input == null) {
+            return emptyFilter;
+        }
+        try {
+            return filters.get(new FilterKey(input, phonetic, fuzzy),
+                () -> new PersonFilter(input, phonetic, fuzzy, nameNormalizeService));
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            // e.g. an invalid date - the same exception as without the cache
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Cannot parse filter " + input, e.getCause());
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        GuavaCacheMetrics.monitor(registry, filters, CACHE_NAME);
+    }
+
+    //------------------------------------------------------------------------------------------------------------------
+
+    private static final class FilterKey {
+
+        private final String input;
+        private final boolean phonetic;
+        private final boolean fuzzy;
+
+        FilterKey(String input, boolean phonetic, boolean fuzzy) {
+            this.input = input;
+            this.phonetic = phonetic;
+            this.fuzzy = fuzzy;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            FilterKey that = (FilterKey) o;
+            return phonetic == that.phonetic &&
+                fuzzy == that.fuzzy &&
+                Objects.equals(input, that.input);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(input, phonetic, fuzzy);
+        }
+    }
+}
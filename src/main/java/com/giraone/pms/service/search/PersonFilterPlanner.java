@@ -0,0 +1,90 @@
+package com.giraone.pms.service.search;
+
+import com.giraone.pms.domain.filter.EmployeeNameFilter;
+import com.giraone.pms.domain.filter.PersonFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Selectivity aware planner for a {@link PersonFilter}. The rows of every predicate are estimated with the
+ * {@link NameStatistics} of the company, the name predicates are ordered most selective first and the driving
+ * predicate (date of birth or the most selective name) is chosen.
+ */
+@Service
+public class PersonFilterPlanner {
+
+    private final Logger log = LoggerFactory.getLogger(PersonFilterPlanner.class);
+
+    /** Every estimate is 0 */
+    private static final NameStatistics NO_STATISTICS = new NameStatistics(0L, 0L, Collections.emptyList());
+
+    private final NameStatisticsService nameStatisticsService;
+
+    public PersonFilterPlanner(NameStatisticsService nameStatisticsService) {
+        this.nameStatisticsService = nameStatisticsService;
+    }
+
+    /**
+     * Create the plan for a filter on the employees of a company. Must be called within a transaction, because the
+     * statistics may be loaded.
+     *
+     * @param companyId    the company
+     * @param personFilter the filter, may be null
+     * @return the plan
+     */
+    public SearchPlan plan(long companyId, PersonFilter personFilter) {
+
+        if (personFilter == null || (!personFilter.hasNames() && personFilter.getDateOfBirth() == null)) {
+            return SearchPlan.UNRESTRICTED;
+        }
+        final SearchPlan ret = plan(personFilter, nameStatisticsService.getStatistics(companyId));
+        log.debug("PersonFilterPlanner.plan companyId={} {}", companyId, ret);
+        return ret;
+    }
+
+    /**
+     * Create the plan for a filter on the employees of all companies. There are no statistics over all companies, so
+     * the names keep the order of the filter and the date of birth drives the query, if it is given.
+     *
+     * @param personFilter the filter, may be null
+     * @return the plan
+     */
+    public SearchPlan planAllCompanies(PersonFilter personFilter) {
+
+        if (personFilter == null || (!personFilter.hasNames() && personFilter.getDateOfBirth() == null)) {
+            return SearchPlan.UNRESTRICTED;
+        }
+        final SearchPlan ret = plan(personFilter, NO_STATISTICS);
+        log.debug("PersonFilterPlanner.planAllCompanies {}", ret);
+        return ret;
+    }
+
+    /**
+     * Create the plan for a filter with given statistics.
+     *
+     * @param personFilter the filter
+     * @param statistics   the statistics of the company
+     * @return the plan
+     */
+    public static SearchPlan plan(PersonFilter personFilter, NameStatistics statistics) {
+
+        final List<EmployeeNameFilter> names = new ArrayList<>(personFilter.getNames());
+        // a stable sort - predicates with equal estimates keep the order of the input
+        names.sort(Comparator.comparingDouble(statistics::estimateRows));
+        final double nameRows = names.isEmpty() ? Double.MAX_VALUE : statistics.estimateRows(names.get(0));
+
+        if (personFilter.getDateOfBirth() != null) {
+            final double dateRows = statistics.estimateRowsByDateOfBirth();
+            if (dateRows <= nameRows) {
+                return new SearchPlan(names, personFilter.getDateOfBirth(), true, dateRows);
+            }
+        }
+        return new SearchPlan(names, personFilter.getDateOfBirth(), false, nameRows);
+    }
+}
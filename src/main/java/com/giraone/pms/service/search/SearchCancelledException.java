@@ -0,0 +1,17 @@
+package com.giraone.pms.service.search;
+
+/**
+ * Thrown by a search, which was cancelled, because a newer search of the same user was started.
+ */
+public class SearchCancelledException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public SearchCancelledException(String message) {
+        super(message);
+    }
+
+    public SearchCancelledException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,129 @@
+package com.giraone.pms.service.search;
+
+import com.giraone.pms.config.ApplicationProperties;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Single flight execution of identical searches. When a search with the same key is already running, the caller
+ * waits for its result instead of running the search again - many users typing the same popular prefix at the same
+ * moment cause only one database execution.
+ * <p>
+ * The search must be called outside of a transaction (the waiting callers should not hold a database connection)
+ * and its result must not be modified by the callers, because it is shared. A caller, which waits longer than the
+ * configured timeout or whose running search was cancelled (see {@link SearchSlots}), runs the search on its own.
+ */
+@Service
+public class SearchCoalescer implements MeterBinder {
+
+    private final Logger log = LoggerFactory.getLogger(SearchCoalescer.class);
+
+    private final ConcurrentMap<Object, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private final long timeoutMillis;
+
+    private final AtomicLong executed = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+
+    public SearchCoalescer(ApplicationProperties applicationProperties) {
+        this.timeoutMillis = applicationProperties.getSearch().getCoalesceTimeoutMillis();
+    }
+
+    /**
+     * @param parts the parameters of a search, which must implement equals and hashCode
+     * @return a key for {@link #execute}
+     */
+    public static List<Object> key(Object... parts) {
+        return Arrays.asList(parts);
+    }
+
+    /**
+     * Execute a search or wait for the result of an identical search, which is already running.
+     *
+     * @param key    the key of the search - see {@link #key}
+     * @param search the search
+     * @param <T>    the type of the result
+     * @return the result of the search
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(Object key, Supplier<T> search) {
+
+        final CompletableFuture<Object> future = new CompletableFuture<>();
+        final CompletableFuture<Object> running = inFlight.putIfAbsent(key, future);
+        if (running == null) {
+            return executeAndComplete(key, future, search);
+        }
+
+        coalesced.incrementAndGet();
+        log.debug("SearchCoalescer: waiting for running search {}", key);
+        try {
+            return (T) running.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            timedOut.incrementAndGet();
+            log.warn("SearchCoalescer: running search {} took more than {} msec - executing it again", key, timeoutMillis);
+            executed.incrementAndGet();
+            return search.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SearchCancelledException) {
+                // the running search was superseded by its caller - this caller still needs the result
+                log.debug("SearchCoalescer: running search {} was cancelled - executing it again", key);
+                executed.incrementAndGet();
+                return search.get();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Search " + key + " failed!", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for search " + key, e);
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+
+        FunctionCounter.builder("search.executed", executed, AtomicLong::get)
+            .description("Searches executed by the caller")
+            .register(registry);
+        FunctionCounter.builder("search.coalesced", coalesced, AtomicLong::get)
+            .description("Searches, that waited for the result of an identical running search")
+            .register(registry);
+        FunctionCounter.builder("search.coalesced.timeout", timedOut, AtomicLong::get)
+            .description("Coalesced searches, that were executed again after the timeout")
+            .register(registry);
+    }
+
+    //------------------------------------------------------------------------------------------------------------------
+
+    private <T> T executeAndComplete(Object key, CompletableFuture<Object> future, Supplier<T> search) {
+
+        executed.incrementAndGet();
+        try {
+            final T ret = search.get();
+            future.complete(ret);
+            return ret;
+        } catch (RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            // later calls must execute again - the result is not cached
+            inFlight.remove(key, future);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.giraone.pms.service.search;
+
+import com.giraone.pms.domain.filter.EmployeeNameFilter;
+
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The execution plan of a {@link com.giraone.pms.domain.filter.PersonFilter} created by the {@link PersonFilterPlanner}.
+ * The name predicates are ordered most selective first. The query is driven either by the date of birth (with the
+ * names as EXISTS checks) or by the owner ids of the most selective name predicate (with the other names as EXISTS
+ * checks).
+ */
+public class SearchPlan {
+
+    public static final SearchPlan UNRESTRICTED = new SearchPlan(Collections.emptyList(), null, false, -1.0);
+
+    private final List<EmployeeNameFilter> names;
+    private final LocalDate dateOfBirth;
+    private final boolean dateDriven;
+    private final double estimatedRows;
+
+    public SearchPlan(List<EmployeeNameFilter> names, LocalDate dateOfBirth, boolean dateDriven, double estimatedRows) {
+        this.names = Collections.unmodifiableList(names);
+        this.dateOfBirth = dateOfBirth;
+        this.dateDriven = dateDriven;
+        this.estimatedRows = estimatedRows;
+    }
+
+    /**
+     * @return the name predicates, most selective first
+     */
+    public List<EmployeeNameFilter> getNames() {
+        return names;
+    }
+
+    public LocalDate getDateOfBirth() {
+        return dateOfBirth;
+    }
+
+    /**
+     * @return true, if the date of birth is more selective than every name predicate
+     */
+    public boolean isDateDriven() {
+        return dateDriven;
+    }
+
+    /**
+     * @return the estimated number of rows of the driving predicate or -1, if not known
+     */
+    public double getEstimatedRows() {
+        return estimatedRows;
+    }
+
+    @Override
+    public String toString() {
+        return "SearchPlan{" +
+            "names=" + names +
+            ", dateOfBirth=" + dateOfBirth +
+            ", dateDriven=" + dateDriven +
+            ", estimatedRows=" + estimatedRows +
+            '}';
+    }
+}
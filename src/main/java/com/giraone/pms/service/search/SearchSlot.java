@@ -0,0 +1,68 @@
+package com.giraone.pms.service.search;
+
+import org.hibernate.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The running search of one user - see {@link SearchSlots}. The slot must be closed, before the transaction of the
+ * search ends, so the connection is never cancelled after it was returned to the pool.
+ */
+public final class SearchSlot implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(SearchSlot.class);
+
+    private final SearchSlots searchSlots;
+    private final String owner;
+    private Session session;
+    private volatile boolean cancelled;
+
+    SearchSlot(SearchSlots searchSlots, String owner, Session session) {
+        this.searchSlots = searchSlots;
+        this.owner = owner;
+        this.session = session;
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    /**
+     * @return true, if the search was superseded by a newer search of the same owner
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @throws SearchCancelledException if the search was superseded
+     */
+    public void checkCancelled() {
+        if (cancelled) {
+            throw new SearchCancelledException("Search of " + owner + " was superseded by a newer search!");
+        }
+    }
+
+    /**
+     * Cancel the search. The running statement is cancelled by the JDBC driver (Statement.cancel), the search fails
+     * with an exception. May be called from any thread.
+     */
+    synchronized void cancel() {
+
+        cancelled = true;
+        if (session != null) {
+            try {
+                session.cancelQuery();
+            } catch (RuntimeException e) {
+                // the statement may just have finished
+                log.debug("SearchSlot.cancel of {} failed: {}", owner, e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        session = null;
+        searchSlots.release(this);
+    }
+}
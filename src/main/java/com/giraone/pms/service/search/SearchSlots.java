@@ -0,0 +1,94 @@
+package com.giraone.pms.service.search;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.hibernate.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One search slot per search session of a user. A type-ahead client sends a new search with every key stroke and
+ * discards the responses of the older ones (see "X-Timer"). When a new search is started, the older search of the
+ * same session is cancelled, so it does not occupy a connection and the database until it is finished.
+ * <p>
+ * A client, which runs searches in parallel (several browser tabs, a list and a slice search), keeps them apart with
+ * the {@link #SEARCH_SESSION_HEADER}. Without the header all searches of a user share one slot.
+ */
+@Service
+public class SearchSlots implements MeterBinder {
+
+    private final Logger log = LoggerFactory.getLogger(SearchSlots.class);
+
+    /** Request header with the id of the search session, e.g. one per browser tab */
+    public static final String SEARCH_SESSION_HEADER = "X-Search-Session";
+
+    private static final int MAX_SEARCH_SESSION_LENGTH = 64;
+
+    private final ConcurrentMap<String, SearchSlot> slots = new ConcurrentHashMap<>();
+    private final AtomicLong cancelled = new AtomicLong();
+
+    /**
+     * Open the slot of a new search and cancel the running search of the same owner.
+     *
+     * @param owner   the owner of the search, e.g. the user login
+     * @param session the session of the transaction of the search
+     * @return the slot, which must be closed within the transaction
+     */
+    public SearchSlot open(String owner, Session session) {
+
+        final SearchSlot ret = new SearchSlot(this, owner, session);
+        final SearchSlot superseded = slots.put(owner, ret);
+        if (superseded != null) {
+            log.debug("SearchSlots: cancel superseded search of {}", owner);
+            cancelled.incrementAndGet();
+            superseded.cancel();
+        }
+        return ret;
+    }
+
+    /**
+     * @param userLogin the login of the current user
+     * @return the owner of the searches of the user within the current request - the user and the search session
+     * of the client, if the request has one
+     */
+    public static String owner(String userLogin) {
+
+        final RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (!(attributes instanceof ServletRequestAttributes)) {
+            return userLogin;
+        }
+        return owner(userLogin, ((ServletRequestAttributes) attributes).getRequest());
+    }
+
+    static String owner(String userLogin, HttpServletRequest request) {
+
+        final String searchSession = request.getHeader(SEARCH_SESSION_HEADER);
+        if (searchSession == null || searchSession.isEmpty()) {
+            return userLogin;
+        }
+        // the slots are kept in memory, so the client cannot choose arbitrary long keys
+        return userLogin + '/' + searchSession.substring(0, Math.min(searchSession.length(), MAX_SEARCH_SESSION_LENGTH));
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+
+        FunctionCounter.builder("search.cancelled", cancelled, AtomicLong::get)
+            .description("Searches, that were cancelled by a newer search of the same search session")
+            .register(registry);
+    }
+
+    void release(SearchSlot slot) {
+        slots.remove(slot.getOwner(), slot);
+    }
+}
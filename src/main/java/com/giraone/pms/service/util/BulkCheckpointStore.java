@@ -0,0 +1,88 @@
+package com.giraone.pms.service.util;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Append-only file with the names of completed units (files or chunks) of a bulk load, so an interrupted load can
+ * be resumed. Each unit is written and flushed after the commit of its transaction - a crash between commit and
+ * checkpoint leads to one unit being loaded again.
+ * <p>
+ * Thread-safe: the workers of a load share one store.
+ */
+public class BulkCheckpointStore implements Closeable {
+
+    private final Path file;
+    private final Set<String> completedUnits;
+    private final BufferedWriter writer;
+
+    /**
+     * Open a checkpoint file.
+     *
+     * @param file   the checkpoint file - created, if it does not exist
+     * @param resume if true, the completed units of the file are loaded, otherwise the file is truncated
+     * @throws IOException if the file cannot be read or written
+     */
+    public BulkCheckpointStore(Path file, boolean resume) throws IOException {
+
+        this.file = file;
+        final Set<String> units = new HashSet<>();
+        if (resume && Files.exists(file)) {
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                if (!line.trim().isEmpty()) {
+                    units.add(line.trim());
+                }
+            }
+        }
+        this.completedUnits = Collections.synchronizedSet(units);
+        this.writer = resume
+            ? Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND)
+            : Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * @return the number of units, that are completed
+     */
+    public int size() {
+        return completedUnits.size();
+    }
+
+    /**
+     * @param unit the name of a file or chunk
+     * @return true, if the unit was completed by this or by a previous load
+     */
+    public boolean isCompleted(String unit) {
+        return completedUnits.contains(unit);
+    }
+
+    /**
+     * Mark a unit as completed and flush it to the checkpoint file.
+     *
+     * @param unit the name of a file or chunk, must not contain line breaks
+     * @throws IOException if the checkpoint cannot be written
+     */
+    public synchronized void markCompleted(String unit) throws IOException {
+        if (completedUnits.add(unit)) {
+            writer.write(unit);
+            writer.newLine();
+            writer.flush();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+}
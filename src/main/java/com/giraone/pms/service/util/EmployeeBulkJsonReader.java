@@ -0,0 +1,100 @@
+package com.giraone.pms.service.util;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.giraone.pms.service.dto.EmployeeBulkDTO;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Streaming reader for bulk files, which contain a JSON array of {@link EmployeeBulkDTO} or newline delimited
+ * JSON (NDJSON, one employee object per line). The input is never materialized as a whole - only one chunk of
+ * employees is kept in memory.
+ */
+public class EmployeeBulkJsonReader {
+
+    private final ObjectMapper objectMapper;
+
+    public EmployeeBulkJsonReader(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Read a JSON array of employees from a stream and pass them chunk by chunk to a consumer.
+     *
+     * @param inputStream   the stream containing the JSON array - it is closed after reading
+     * @param chunkSize     the maximum number of employees passed to the consumer in one call
+     * @param chunkConsumer the consumer of the chunks, e.g. a transactional save
+     * @return the number of employees read
+     * @throws IOException on any I/O or JSON parsing error
+     */
+    public long read(InputStream inputStream, int chunkSize, Consumer<List<EmployeeBulkDTO>> chunkConsumer) throws IOException {
+
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be at least 1!");
+        }
+        long count = 0;
+        try (JsonParser parser = objectMapper.getFactory().createParser(inputStream)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new JsonParseException(parser, "Bulk input must be a JSON array of employees!");
+            }
+            List<EmployeeBulkDTO> chunk = new ArrayList<>(chunkSize);
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                chunk.add(objectMapper.readValue(parser, EmployeeBulkDTO.class));
+                count++;
+                if (chunk.size() >= chunkSize) {
+                    chunkConsumer.accept(chunk);
+                    chunk = new ArrayList<>(chunkSize);
+                }
+            }
+            if (parser.getCurrentToken() != JsonToken.END_ARRAY) {
+                throw new JsonParseException(parser, "Bulk input array contains a value, that is not an employee object!");
+            }
+            if (!chunk.isEmpty()) {
+                chunkConsumer.accept(chunk);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Read newline delimited JSON (one employee object per line) from a stream and pass the employees chunk by
+     * chunk to a consumer. Empty lines are ignored.
+     *
+     * @param inputStream   the stream containing the NDJSON - it is closed after reading
+     * @param chunkSize     the maximum number of employees passed to the consumer in one call
+     * @param chunkConsumer the consumer of the chunks
+     * @return the number of employees read
+     * @throws IOException on any I/O or JSON parsing error
+     */
+    public long readNdjson(InputStream inputStream, int chunkSize, Consumer<List<EmployeeBulkDTO>> chunkConsumer) throws IOException {
+
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be at least 1!");
+        }
+        long count = 0;
+        // a sequence of root level values is exactly what NDJSON is, so no line splitting is needed
+        try (MappingIterator<EmployeeBulkDTO> iterator = objectMapper.readerFor(EmployeeBulkDTO.class).readValues(inputStream)) {
+            List<EmployeeBulkDTO> chunk = new ArrayList<>(chunkSize);
+            while (iterator.hasNextValue()) {
+                chunk.add(iterator.nextValue());
+                count++;
+                if (chunk.size() >= chunkSize) {
+                    chunkConsumer.accept(chunk);
+                    chunk = new ArrayList<>(chunkSize);
+                }
+            }
+            if (!chunk.isEmpty()) {
+                chunkConsumer.accept(chunk);
+            }
+        }
+        return count;
+    }
+}
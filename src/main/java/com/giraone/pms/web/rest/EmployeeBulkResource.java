@@ -1,19 +1,33 @@
 package com.giraone.pms.web.rest;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.giraone.pms.domain.Employee;
+import com.giraone.pms.domain.enumeration.BulkLoaderMode;
+import com.giraone.pms.domain.enumeration.ReIndexMode;
 import com.giraone.pms.security.AuthoritiesConstants;
+import com.giraone.pms.service.BulkJobService;
+import com.giraone.pms.service.BulkUploadTooLargeException;
 import com.giraone.pms.service.EmployeeBulkService;
+import com.giraone.pms.service.InitialUserProvisioningService;
+import com.giraone.pms.service.dto.BulkJobStatusDTO;
 import com.giraone.pms.service.dto.EmployeeBulkDTO;
+import com.giraone.pms.service.dto.InitialUserProvisioningStatusDTO;
+import com.giraone.pms.web.rest.errors.BadRequestAlertException;
 import io.micrometer.core.annotation.Timed;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import io.github.jhipster.web.util.ResponseUtil;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
 import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * REST controller for managing employee bulk imports
@@ -26,27 +40,38 @@ public class EmployeeBulkResource {
 
     private static final String ENTITY_NAME = "employee";
 
-    private static final ObjectMapper objectMapper = new ObjectMapper();
-    private static TypeReference<List<Employee>> typeRef = new TypeReference<List<Employee>>(){};
-
     private final EmployeeBulkService employeeBulkService;
+    private final InitialUserProvisioningService initialUserProvisioningService;
+    private final BulkJobService bulkJobService;
 
-    public EmployeeBulkResource(EmployeeBulkService employeeBulkImportRepository) {
+    public EmployeeBulkResource(EmployeeBulkService employeeBulkImportRepository,
+                                InitialUserProvisioningService initialUserProvisioningService,
+                                BulkJobService bulkJobService) {
         this.employeeBulkService = employeeBulkImportRepository;
+        this.initialUserProvisioningService = initialUserProvisioningService;
+        this.bulkJobService = bulkJobService;
     }
 
 
     @PreAuthorize("hasRole(\"" + AuthoritiesConstants.ADMIN + "\")")
     @PutMapping("/employee-list")
     @Timed
-    public ResponseEntity<Integer> insert(@RequestBody List<EmployeeBulkDTO> employees)  {
+    public ResponseEntity<Integer> insert(@RequestBody List<EmployeeBulkDTO> employees,
+                                          @RequestParam(required = false) BulkLoaderMode mode)  {
 
-        log.info("EmployeeBulkResource.insert employees.size={}", employees.size());
-        int count = employeeBulkService.save(employees);
+        log.info("EmployeeBulkResource.insert employees.size={}, mode={}", employees.size(), mode);
+        int count = employeeBulkService.save(employees, mode);
         return ResponseEntity.ok()
             .body(count);
     }
 
+    /**
+     * GET  /re-index : Re-index the names of all employees in place synchronously.
+     *
+     * @param clear if true, the existing names are deleted before the new ones are inserted
+     * @return the ResponseEntity with status 200 (OK) and the number of re-indexed employees in body,
+     * or with status 409 (Conflict) if another re-index is queued or running
+     */
     @PreAuthorize("hasRole(\"" + AuthoritiesConstants.ADMIN + "\")")
     @GetMapping("/re-index")
     @Timed
@@ -58,35 +83,194 @@ public class EmployeeBulkResource {
             .body(count);
     }
 
-    /*
-    @RequestMapping(value = "/employee-bulk", method = RequestMethod.PUT,
-        consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+    /**
+     * PUT  /employee-stream : Import a JSON array of employees of any size.
+     * The request body is parsed incrementally and committed in chunks, so the heap usage stays flat.
+     *
+     * @param request   the HTTP request, whose body is the JSON array of employees
+     * @param chunkSize number of employees committed per transaction, if omitted the configured default is used
+     * @param mode      the loader mode (JPA or COPY), if omitted the configured default is used
+     * @return the ResponseEntity with status 200 (OK) and the number of saved employees in body,
+     * or with status 400 (Bad Request) if the body cannot be read or parsed
+     */
+    @PreAuthorize("hasRole(\"" + AuthoritiesConstants.ADMIN + "\")")
+    @PutMapping(value = "/employee-stream", consumes = MediaType.APPLICATION_JSON_VALUE)
     @Timed
-    public ResponseEntity<?> import(HttpServletRequest request, HttpServletResponse response) throws URISyntaxException
-    {
-
-        long contentLength = request.getContentLengthLong();
-        InputStream in;
-        try
-        {
-            in = request.getInputStream();
+    public ResponseEntity<Long> insertStream(HttpServletRequest request,
+                                             @RequestParam(required = false, defaultValue = "0") int chunkSize,
+                                             @RequestParam(required = false) BulkLoaderMode mode) {
+
+        log.info("EmployeeBulkResource.insertStream contentLength={}, chunkSize={}, mode={}",
+            request.getContentLengthLong(), chunkSize, mode);
+        try (InputStream in = request.getInputStream()) {
+            long count = employeeBulkService.saveStream(in, chunkSize, mode);
+            return ResponseEntity.ok()
+                .body(count);
+        } catch (IOException e) {
+            log.error("Cannot read bulk input stream!", e);
+            throw new BadRequestAlertException("Cannot read bulk input stream! " + e.getMessage(), ENTITY_NAME, "io");
         }
-        catch (IOException e)
-        {
-            log.error("Cannot read input stream!", e);
-            throw new BadRequestAlertException("Cannot read input stream! " + e.getMessage(), ENTITY_NAME, "IO");
-            return ResponseEntity.badRequest().body(new ErrorVM("Internal server error. " + e.getMessage()));
+    }
+
+    /**
+     * GET  /initial-users/status : Progress of the asynchronous creation of initial users for new companies.
+     *
+     * @return the ResponseEntity with status 200 (OK) and the queued, provisioned and failed counts in body
+     */
+    @PreAuthorize("hasRole(\"" + AuthoritiesConstants.ADMIN + "\")")
+    @GetMapping("/initial-users/status")
+    @Timed
+    public ResponseEntity<InitialUserProvisioningStatusDTO> getInitialUserStatus() {
+
+        return ResponseEntity.ok()
+            .body(initialUserProvisioningService.getStatus());
+    }
+
+    /**
+     * POST  /jobs : Upload a JSON array of employees and load it asynchronously.
+     *
+     * @param request   the HTTP request, whose body is the JSON array of employees
+     * @param chunkSize number of employees committed per transaction, if omitted the configured default is used
+     * @param mode      the loader mode (JPA or COPY), if omitted the configured default is used
+     * @return the ResponseEntity with status 202 (Accepted), the job status in body and the status URL as location,
+     * with status 413 (Payload Too Large) if the upload exceeds the configured spool size
+     * or with status 429 (Too Many Requests) if all workers are busy and the job queue is full
+     */
+    @PreAuthorize("hasRole(\"" + AuthoritiesConstants.ADMIN + "\")")
+    @PostMapping(value = "/jobs", consumes = MediaType.APPLICATION_JSON_VALUE)
+    @Timed
+    public ResponseEntity<BulkJobStatusDTO> submitJob(HttpServletRequest request,
+                                                      @RequestParam(required = false, defaultValue = "0") int chunkSize,
+                                                      @RequestParam(required = false) BulkLoaderMode mode) {
+
+        log.info("EmployeeBulkResource.submitJob contentLength={}, chunkSize={}, mode={}",
+            request.getContentLengthLong(), chunkSize, mode);
+        try (InputStream in = request.getInputStream()) {
+            BulkJobStatusDTO result = bulkJobService.submit(in, chunkSize, mode);
+            return ResponseEntity.accepted()
+                .location(URI.create("/bulk-api/jobs/" + result.getId()))
+                .body(result);
+        } catch (RejectedExecutionException e) {
+            log.warn("Bulk job rejected: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, "30")
+                .build();
+        } catch (BulkUploadTooLargeException e) {
+            log.warn("Bulk job rejected: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).build();
+        } catch (IOException e) {
+            log.error("Cannot spool bulk input stream!", e);
+            throw new BadRequestAlertException("Cannot read bulk input stream! " + e.getMessage(), ENTITY_NAME, "io");
         }
+    }
+
+    /**
+     * POST  /jobs/directory : Load a directory tree with JSON files or an NDJSON file on the server asynchronously.
+     *
+     * @param path      the directory or NDJSON file relative to the configured import directory
+     * @param workers   number of parallel workers, if omitted the configured default is used
+     * @param chunkSize number of employees committed per transaction for NDJSON, if omitted the configured default is used
+     * @param mode      the loader mode (JPA or COPY), if omitted the configured default is used
+     * @param resume    if true, files or chunks completed by a previous, interrupted load are skipped
+     * @return the ResponseEntity with status 202 (Accepted), the job status in body and the status URL as location,
+     * with status 400 (Bad Request) if the path is invalid
+     * or with status 429 (Too Many Requests) if all workers are busy and the job queue is full
+     */
+    @PreAuthorize("hasRole(\"" + AuthoritiesConstants.ADMIN + "\")")
+    @PostMapping("/jobs/directory")
+    @Timed
+    public ResponseEntity<BulkJobStatusDTO> submitDirectoryJob(@RequestParam(required = false, defaultValue = ".") String path,
+                                                               @RequestParam(required = false, defaultValue = "0") int workers,
+                                                               @RequestParam(required = false, defaultValue = "0") int chunkSize,
+                                                               @RequestParam(required = false) BulkLoaderMode mode,
+                                                               @RequestParam(required = false, defaultValue = "true") boolean resume) {
+
+        log.info("EmployeeBulkResource.submitDirectoryJob path={}, workers={}, mode={}, resume={}", path, workers, mode, resume);
         try {
-            objectMapper.readValue(in, typeRef);
+            BulkJobStatusDTO result = bulkJobService.submitDirectory(path, workers, chunkSize, mode, resume);
+            return ResponseEntity.accepted()
+                .location(URI.create("/bulk-api/jobs/" + result.getId()))
+                .body(result);
+        } catch (RejectedExecutionException e) {
+            log.warn("Bulk job rejected: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, "30")
+                .build();
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestAlertException(e.getMessage(), ENTITY_NAME, "path");
         }
-        catch (Exception e) {
+    }
 
+    /**
+     * POST  /jobs/re-index : Re-index the names of all employees asynchronously.
+     *
+     * @param mode    IN_PLACE (default) or SHADOW - a rebuild in a shadow table, that replaces the live table at the end
+     * @param clear   if true, the existing names are deleted before the new ones are inserted (IN_PLACE only)
+     * @param resume  if true, partitions completed by a previous, interrupted re-index are skipped
+     * @param workers number of id range partitions processed in parallel, if omitted the configured default is used
+     * @return the ResponseEntity with status 202 (Accepted), the job status in body and the status URL as location,
+     * with status 409 (Conflict) if another re-index is queued or running
+     * or with status 429 (Too Many Requests) if all workers are busy and the job queue is full
+     */
+    @PreAuthorize("hasRole(\"" + AuthoritiesConstants.ADMIN + "\")")
+    @PostMapping("/jobs/re-index")
+    @Timed
+    public ResponseEntity<BulkJobStatusDTO> submitReIndexJob(@RequestParam(required = false) ReIndexMode mode,
+                                                             @RequestParam(required = false, defaultValue = "false") boolean clear,
+                                                             @RequestParam(required = false, defaultValue = "false") boolean resume,
+                                                             @RequestParam(required = false, defaultValue = "0") int workers) {
+
+        log.info("EmployeeBulkResource.submitReIndexJob mode={}, clear={}, resume={}, workers={}", mode, clear, resume, workers);
+        try {
+            BulkJobStatusDTO result = bulkJobService.submitReIndex(mode, clear, resume, workers);
+            return ResponseEntity.accepted()
+                .location(URI.create("/bulk-api/jobs/" + result.getId()))
+                .body(result);
+        } catch (RejectedExecutionException e) {
+            log.warn("Bulk job rejected: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, "30")
+                .build();
         }
-        finally {
-            IOUtils.closeQuietly();
-        }
-        return employeeBulkImportRepository.import(contentLength, in);
     }
-    */
+
+    /**
+     * GET  /jobs : The status of all known bulk load jobs.
+     *
+     * @return the ResponseEntity with status 200 (OK) and the list of job status in body
+     */
+    @PreAuthorize("hasRole(\"" + AuthoritiesConstants.ADMIN + "\")")
+    @GetMapping("/jobs")
+    @Timed
+    public List<BulkJobStatusDTO> getAllJobs() {
+        return bulkJobService.getAllStatus();
+    }
+
+    /**
+     * GET  /jobs/:id : The status of a bulk load job with phase, rows/sec and ETA.
+     *
+     * @param id the id of the job
+     * @return the ResponseEntity with status 200 (OK) and the job status in body, or with status 404 (Not Found)
+     */
+    @PreAuthorize("hasRole(\"" + AuthoritiesConstants.ADMIN + "\")")
+    @GetMapping("/jobs/{id}")
+    @Timed
+    public ResponseEntity<BulkJobStatusDTO> getJob(@PathVariable String id) {
+        return ResponseUtil.wrapOrNotFound(bulkJobService.getStatus(id));
+    }
+
+    /**
+     * DELETE  /jobs/:id : Cancel a bulk load job. A running job stops after the current chunk.
+     *
+     * @param id the id of the job
+     * @return the ResponseEntity with status 200 (OK) and the job status in body, or with status 404 (Not Found)
+     */
+    @PreAuthorize("hasRole(\"" + AuthoritiesConstants.ADMIN + "\")")
+    @DeleteMapping("/jobs/{id}")
+    @Timed
+    public ResponseEntity<BulkJobStatusDTO> cancelJob(@PathVariable String id) {
+
+        log.info("EmployeeBulkResource.cancelJob id={}", id);
+        return ResponseUtil.wrapOrNotFound(bulkJobService.cancel(id));
+    }
 }
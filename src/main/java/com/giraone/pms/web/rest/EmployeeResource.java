@@ -1,12 +1,20 @@
 package com.giraone.pms.web.rest;
 
+import com.giraone.pms.domain.filter.CursorSlice;
+import com.giraone.pms.domain.filter.FanOutCursor;
+import com.giraone.pms.domain.filter.FanOutSlice;
 import com.giraone.pms.domain.filter.PersonFilter;
+import com.giraone.pms.domain.filter.SearchCursor;
 import com.giraone.pms.service.AuthorizationService;
 import com.giraone.pms.service.CompanyService;
 import com.giraone.pms.service.EmployeeService;
 import com.giraone.pms.service.dto.CompanyBasicInfoDTO;
 import com.giraone.pms.service.dto.CompanyDTO;
 import com.giraone.pms.service.dto.EmployeeDTO;
+import com.giraone.pms.service.dto.NameSuggestionsDTO;
+import com.giraone.pms.service.search.EmployeeFanOutSearch;
+import com.giraone.pms.service.search.PersonFilterFactory;
+import com.giraone.pms.service.search.SearchCoalescer;
 import com.giraone.pms.web.rest.errors.BadRequestAlertException;
 import com.giraone.pms.web.rest.util.HeaderUtil;
 import com.giraone.pms.web.rest.util.PaginationUtil;
@@ -16,6 +24,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -28,6 +37,7 @@ import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
 /**
  * REST controller for managing Employee.
@@ -40,15 +50,25 @@ public class EmployeeResource {
 
     private static final String ENTITY_NAME = "employee";
 
+    /** Maximum number of suggested surnames and given names */
+    private static final int MAX_SUGGESTIONS = 50;
+
     private final EmployeeService employeeService;
     private final CompanyService companyService;
     private final AuthorizationService authorizationService;
+    private final SearchCoalescer searchCoalescer;
+    private final EmployeeFanOutSearch employeeFanOutSearch;
+    private final PersonFilterFactory personFilterFactory;
 
     public EmployeeResource(EmployeeService employeeService, CompanyService companyService,
-                            AuthorizationService authorizationService) {
+                            AuthorizationService authorizationService, SearchCoalescer searchCoalescer,
+                            EmployeeFanOutSearch employeeFanOutSearch, PersonFilterFactory personFilterFactory) {
         this.employeeService = employeeService;
         this.companyService = companyService;
         this.authorizationService = authorizationService;
+        this.searchCoalescer = searchCoalescer;
+        this.employeeFanOutSearch = employeeFanOutSearch;
+        this.personFilterFactory = personFilterFactory;
     }
 
     /**
@@ -95,8 +115,19 @@ public class EmployeeResource {
     /**
      * GET  /employees : get all the employees.
      *
-     * @param companyExternalId restrict the query to employees of this company
+     * @param companyExternalId restrict the query to employees of this company - if not given, all companies of the
+     *                          user are searched with keyset pagination (for admins with a filter or cursor all
+     *                          employees in one statement)
      * @param filter            restrict the output to employees matching this free form filter
+     * @param cursor            if given, keyset pagination is used instead of the page number: an empty cursor
+     *                          requests the first slice, otherwise the value of "X-Next-Cursor" of the previous slice.
+     *                          A search without companyExternalId over several companies has no page numbers, so a
+     *                          page greater than 0 without cursor is rejected with status 400 (Bad Request).
+     * @param count             if false, no total count is queried and the headers contain "X-Has-Next" instead of
+     *                          "X-Total-Count" (only for queries with companyExternalId)
+     * @param estimateCount     if true, the "X-Total-Count" of a listing without filter is estimated by a maintained
+     *                          counter of the company
+     * @param fuzzy             if true, the names of the filter also match names with typos
      * @param pageable          the pagination information
      * @return the ResponseEntity with status 200 (OK) and the list of employees in body
      * or status 404 (NOT FOUND), if the companyExternalId is invalid.
@@ -112,6 +143,10 @@ public class EmployeeResource {
     public ResponseEntity<List<EmployeeDTO>> getAllEmployees(
         @RequestParam(required = false) String companyExternalId,
         @RequestParam(required = false) String filter,
+        @RequestParam(required = false) String cursor,
+        @RequestParam(defaultValue = "true") boolean count,
+        @RequestParam(defaultValue = "false") boolean estimateCount,
+        @RequestParam(defaultValue = "false") boolean fuzzy,
         Pageable pageable) {
 
         boolean isAdmin = authorizationService.isAdmin();
@@ -130,6 +165,9 @@ public class EmployeeResource {
                 List<CompanyDTO> companies = employeeService.getAllCompaniesOfEmployee(userLogin.get());
                 if (companies.isEmpty()) {
                     return ResponseEntity.ok().body(new ArrayList<>());
+                } else if (companies.size() > 1) {
+                    return getEmployeesOfCompanies(companies.stream().map(CompanyDTO::getExternalId).collect(Collectors.toList()),
+                        filter, fuzzy, cursor, pageable, timer);
                 } else {
                     companyExternalId = companies.get(0).getExternalId();
                 }
@@ -140,14 +178,27 @@ public class EmployeeResource {
                     userLogin.get(), companyExternalId);
                 return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
             }
+        } else if (companyExternalId == null && (cursor != null || (filter != null && !filter.trim().isEmpty()))) {
+            return getEmployeesOfAllCompanies(filter, fuzzy, cursor, pageable, timer);
+        }
+
+        if (cursor != null) {
+            return getEmployeesByCursor(companyExternalId, filter, fuzzy, cursor, pageable, timer);
+        }
+        if (!count && companyExternalId != null) {
+            return getEmployeesWithoutCount(companyExternalId, filter, fuzzy, pageable, timer);
         }
 
         Page<EmployeeDTO> page;
         if (isAdmin && companyExternalId == null) {
             page = employeeService.findAll(pageable);
         } else {
-            final PersonFilter personFilter = new PersonFilter(filter);
-            Optional<Page<EmployeeDTO>> result = employeeService.findAllByFilter(companyExternalId, personFilter, pageable);
+            final PersonFilter personFilter = personFilterFactory.get(filter, false, fuzzy);
+            // identical concurrent searches (access was checked above) share one execution
+            final String company = companyExternalId;
+            Optional<Page<EmployeeDTO>> result = searchCoalescer.execute(
+                SearchCoalescer.key("page", company, personFilter, pageable, estimateCount),
+                () -> employeeService.findAllByFilter(company, personFilter, pageable, estimateCount));
             if (!result.isPresent()) {
                 log.debug("- companyExternalId {} is invalid!", companyExternalId);
                 return ResponseEntity.notFound().build();
@@ -163,6 +214,144 @@ public class EmployeeResource {
         return ResponseEntity.ok().headers(headers).body(page.getContent());
     }
 
+    private ResponseEntity<List<EmployeeDTO>> getEmployeesWithoutCount(
+        String companyExternalId, String filter, boolean fuzzy, Pageable pageable, long timer) {
+
+        final PersonFilter personFilter = personFilterFactory.get(filter, false, fuzzy);
+        Optional<Slice<EmployeeDTO>> result = searchCoalescer.execute(
+            SearchCoalescer.key("slice", companyExternalId, personFilter, pageable),
+            () -> employeeService.findSliceByFilter(companyExternalId, personFilter, pageable));
+        if (!result.isPresent()) {
+            log.debug("- companyExternalId {} is invalid!", companyExternalId);
+            return ResponseEntity.notFound().build();
+        }
+        final Slice<EmployeeDTO> slice = result.get();
+
+        log.debug("- size={}, hasNext={}", slice.getContent().size(), slice.hasNext());
+        HttpHeaders headers = PaginationUtil.generateSliceHttpHeaders(slice, "/api/employees");
+        headers.add("X-Timer", Long.toString(timer));
+        return ResponseEntity.ok().headers(headers).body(slice.getContent());
+    }
+
+    /**
+     * Keyset pagination over several companies - the access to the companies must be checked by the caller.
+     */
+    private ResponseEntity<List<EmployeeDTO>> getEmployeesOfCompanies(
+        List<String> companyExternalIds, String filter, boolean fuzzy, String cursor, Pageable pageable, long timer) {
+
+        checkNoPageWithoutCursor(cursor, pageable);
+        if (companyExternalIds.size() > employeeFanOutSearch.getMaxCompanies()) {
+            throw new BadRequestAlertException("A search over more than " + employeeFanOutSearch.getMaxCompanies()
+                + " companies needs a companyExternalId", ENTITY_NAME, "toomanycompanies");
+        }
+        final FanOutCursor fanOutCursor;
+        try {
+            fanOutCursor = cursor == null || cursor.isEmpty() ? FanOutCursor.first(pageable.getSort()) : FanOutCursor.decode(cursor);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestAlertException(e.getMessage(), ENTITY_NAME, "invalidcursor");
+        }
+        final PersonFilter personFilter = personFilterFactory.get(filter, false, fuzzy);
+        final FanOutSlice<EmployeeDTO> slice = employeeFanOutSearch.findAllByFilter(
+            companyExternalIds, personFilter, fanOutCursor, pageable.getPageSize());
+
+        log.debug("- companies={}, size={}, hasNext={}", companyExternalIds.size(), slice.getContent().size(), slice.hasNext());
+        HttpHeaders headers = PaginationUtil.generateCursorPaginationHttpHeaders(slice, "/api/employees");
+        headers.add("X-Timer", Long.toString(timer));
+        return ResponseEntity.ok().headers(headers).body(slice.getContent());
+    }
+
+    /**
+     * Keyset pagination over the employees of all companies - for admins. There is no fan out, so the number of
+     * companies is not limited.
+     */
+    private ResponseEntity<List<EmployeeDTO>> getEmployeesOfAllCompanies(
+        String filter, boolean fuzzy, String cursor, Pageable pageable, long timer) {
+
+        checkNoPageWithoutCursor(cursor, pageable);
+        final SearchCursor searchCursor;
+        try {
+            searchCursor = cursor == null || cursor.isEmpty() ? SearchCursor.first(pageable.getSort()) : SearchCursor.decode(cursor);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestAlertException(e.getMessage(), ENTITY_NAME, "invalidcursor");
+        }
+        final PersonFilter personFilter = personFilterFactory.get(filter, false, fuzzy);
+        final CursorSlice<EmployeeDTO> slice = employeeService.findAllByFilter(personFilter, searchCursor, pageable.getPageSize());
+
+        log.debug("- all companies, size={}, hasNext={}", slice.getContent().size(), slice.hasNext());
+        HttpHeaders headers = PaginationUtil.generateCursorPaginationHttpHeaders(slice, "/api/employees");
+        headers.add("X-Timer", Long.toString(timer));
+        return ResponseEntity.ok().headers(headers).body(slice.getContent());
+    }
+
+    /**
+     * A search over several companies continues with the cursor of the previous slice - a page number would be
+     * silently ignored.
+     */
+    private static void checkNoPageWithoutCursor(String cursor, Pageable pageable) {
+
+        if (cursor == null && pageable.getPageNumber() > 0) {
+            throw new BadRequestAlertException("A search over several companies needs the cursor of the previous slice"
+                + " instead of a page", ENTITY_NAME, "pagewithoutcursor");
+        }
+    }
+
+    private ResponseEntity<List<EmployeeDTO>> getEmployeesByCursor(
+        String companyExternalId, String filter, boolean fuzzy, String cursor, Pageable pageable, long timer) {
+
+        if (companyExternalId == null) {
+            throw new BadRequestAlertException("A cursor needs a companyExternalId", ENTITY_NAME, "cursorwithoutcompany");
+        }
+        final SearchCursor searchCursor;
+        try {
+            // the sort of a following slice is taken from the cursor
+            searchCursor = cursor.isEmpty() ? SearchCursor.first(pageable.getSort()) : SearchCursor.decode(cursor);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestAlertException(e.getMessage(), ENTITY_NAME, "invalidcursor");
+        }
+        final PersonFilter personFilter = personFilterFactory.get(filter, false, fuzzy);
+        Optional<CursorSlice<EmployeeDTO>> result = searchCoalescer.execute(
+            SearchCoalescer.key("cursor", companyExternalId, personFilter, searchCursor, pageable.getPageSize()),
+            () -> employeeService.findAllByFilter(companyExternalId, personFilter, searchCursor, pageable.getPageSize()));
+        if (!result.isPresent()) {
+            log.debug("- companyExternalId {} is invalid!", companyExternalId);
+            return ResponseEntity.notFound().build();
+        }
+        final CursorSlice<EmployeeDTO> slice = result.get();
+
+        log.debug("- size={}, hasNext={}", slice.getContent().size(), slice.hasNext());
+        HttpHeaders headers = PaginationUtil.generateCursorPaginationHttpHeaders(slice, "/api/employees");
+        headers.add("X-Timer", Long.toString(timer));
+        return ResponseEntity.ok().headers(headers).body(slice.getContent());
+    }
+
+    /**
+     * GET  /employees/suggest : typeahead suggestions for the name filter of a company.
+     *
+     * @param companyExternalId the company
+     * @param prefix            the prefix as entered - normalized like the names (lowercase, umlauts)
+     * @param size              the maximum number of surnames and given names (at most 50)
+     * @return the ResponseEntity with status 200 (OK) and the most frequent surnames and given names starting with
+     * the prefix with their counts, or status 404 (NOT FOUND), if the companyExternalId is invalid.
+     */
+    @GetMapping("/employees/suggest")
+    @Timed
+    public ResponseEntity<NameSuggestionsDTO> suggestNames(
+        @RequestParam String companyExternalId,
+        @RequestParam(required = false) String prefix,
+        @RequestParam(defaultValue = "10") int size) {
+
+        boolean isAdmin = authorizationService.isAdmin();
+        log.debug("REST request to suggest names isAdmin={}, companyExternalId={}, prefix={}", isAdmin, companyExternalId, prefix);
+
+        if (!isAdmin && !this.authorizationService.check(companyExternalId)) {
+            log.warn("Attempt by user {} to get name suggestions of company {} without access rights!",
+                authorizationService.getCurrentUserLogin().orElse(null), companyExternalId);
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        final int effectiveSize = Math.max(1, Math.min(size, MAX_SUGGESTIONS));
+        return ResponseUtil.wrapOrNotFound(employeeService.suggestNames(companyExternalId, prefix, effectiveSize));
+    }
+
     /**
      * GET  /employees/:id : get the "id" employee.
      *
@@ -1,5 +1,7 @@
 package com.giraone.pms.web.rest.errors;
 
+import com.giraone.pms.service.ReIndexRunningException;
+import com.giraone.pms.service.search.SearchCancelledException;
 import com.giraone.pms.web.rest.util.HeaderUtil;
 
 import org.springframework.dao.ConcurrencyFailureException;
@@ -109,4 +111,22 @@ public class ExceptionTranslator implements ProblemHandling {
             .build();
         return create(ex, problem, request);
     }
+
+    @ExceptionHandler
+    public ResponseEntity<Problem> handleSearchCancelled(SearchCancelledException ex, NativeWebRequest request) {
+        Problem problem = Problem.builder()
+            .withStatus(Status.CONFLICT)
+            .with(MESSAGE_KEY, ErrorConstants.ERR_SEARCH_CANCELLED)
+            .build();
+        return create(ex, problem, request);
+    }
+
+    @ExceptionHandler
+    public ResponseEntity<Problem> handleReIndexRunning(ReIndexRunningException ex, NativeWebRequest request) {
+        Problem problem = Problem.builder()
+            .withStatus(Status.CONFLICT)
+            .with(MESSAGE_KEY, ErrorConstants.ERR_RE_INDEX_RUNNING)
+            .build();
+        return create(ex, problem, request);
+    }
 }
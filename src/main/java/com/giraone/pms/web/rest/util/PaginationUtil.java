@@ -1,6 +1,9 @@
 package com.giraone.pms.web.rest.util;
 
+import com.giraone.pms.domain.filter.CursorSlice;
+import com.giraone.pms.domain.filter.FanOutSlice;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Slice;
 import org.springframework.http.HttpHeaders;
 import org.springframework.web.util.UriComponentsBuilder;
 
@@ -39,6 +42,55 @@ public final class PaginationUtil {
         return headers;
     }
 
+    /**
+     * Headers for a page without a total count. Instead of "X-Total-Count" and a "last" link, there is the header
+     * "X-Has-Next" and a "next" link only, if there is a next page.
+     */
+    public static <T> HttpHeaders generateSliceHttpHeaders(Slice<T> slice, String baseUrl) {
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.add("X-Has-Next", Boolean.toString(slice.hasNext()));
+        String link = "";
+        if (slice.hasNext()) {
+            link = "<" + generateUri(baseUrl, slice.getNumber() + 1, slice.getSize()) + ">; rel=\"next\",";
+        }
+        // prev link
+        if (slice.hasPrevious()) {
+            link += "<" + generateUri(baseUrl, slice.getNumber() - 1, slice.getSize()) + ">; rel=\"prev\",";
+        }
+        link += "<" + generateUri(baseUrl, 0, slice.getSize()) + ">; rel=\"first\"";
+        headers.add(HttpHeaders.LINK, link);
+        return headers;
+    }
+
+    /**
+     * Headers for keyset pagination. There is no total count and only a "next" link, which carries the opaque cursor.
+     * The cursor is also given in the header "X-Next-Cursor", which is missing on the last slice.
+     */
+    public static <T> HttpHeaders generateCursorPaginationHttpHeaders(CursorSlice<T> slice, String baseUrl) {
+        return generateCursorPaginationHttpHeaders(slice.hasNext() ? slice.getNextCursor().encode() : null, slice.getSize(), baseUrl);
+    }
+
+    /**
+     * Headers for keyset pagination over several companies - the same headers as for the keyset pagination of
+     * one company.
+     */
+    public static <T> HttpHeaders generateCursorPaginationHttpHeaders(FanOutSlice<T> slice, String baseUrl) {
+        return generateCursorPaginationHttpHeaders(slice.hasNext() ? slice.getNextCursor().encode() : null, slice.getSize(), baseUrl);
+    }
+
+    private static HttpHeaders generateCursorPaginationHttpHeaders(String nextCursor, int size, String baseUrl) {
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.add("X-Has-Next", Boolean.toString(nextCursor != null));
+        if (nextCursor != null) {
+            headers.add("X-Next-Cursor", nextCursor);
+            headers.add(HttpHeaders.LINK, "<" + UriComponentsBuilder.fromUriString(baseUrl)
+                .queryParam("cursor", nextCursor).queryParam("size", size).toUriString() + ">; rel=\"next\"");
+        }
+        return headers;
+    }
+
     private static String generateUri(String baseUrl, int page, int size) {
         return UriComponentsBuilder.fromUriString(baseUrl).queryParam("page", page).queryParam("size", size).toUriString();
     }
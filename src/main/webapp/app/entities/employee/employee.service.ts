@@ -17,6 +17,10 @@ type EntityArrayResponseType = HttpResponse<IEmployee[]>;
 export class EmployeeService {
     public resourceUrl = SERVER_API_URL + 'api/employees';
     public resourceUrl2 = SERVER_API_URL + 'api/companies-of-employee';
+    // one search session per browser tab, so the searches of several tabs do not cancel each other on the server
+    private readonly searchSession = Math.random()
+        .toString(36)
+        .substring(2, 12);
 
     constructor(protected http: HttpClient) {}
 
@@ -43,7 +47,11 @@ export class EmployeeService {
     query(req?: any): Observable<EntityArrayResponseType> {
         const options = createRequestOption(req);
         return this.http
-            .get<IEmployee[]>(this.resourceUrl, { params: options, observe: 'response' })
+            .get<IEmployee[]>(this.resourceUrl, {
+                params: options,
+                headers: { 'X-Search-Session': this.searchSession },
+                observe: 'response'
+            })
             .pipe(map((res: EntityArrayResponseType) => this.convertDateArrayFromServer(res)));
     }
 
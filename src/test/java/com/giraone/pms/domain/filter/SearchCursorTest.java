@@ -0,0 +1,50 @@
+package com.giraone.pms.domain.filter;
+
+import org.junit.Test;
+import org.springframework.data.domain.Sort;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class SearchCursorTest {
+
+    @Test
+    public void first_unsorted_sortsById() {
+
+        SearchCursor cursor = SearchCursor.first(Sort.unsorted());
+        assertThat(cursor.isFirst()).isTrue();
+        assertThat(cursor.getSortProperty()).isEqualTo(SearchCursor.SORT_ID);
+        assertThat(cursor.isAscending()).isTrue();
+    }
+
+    @Test
+    public void first_unsupportedProperty_throws() {
+
+        assertThatThrownBy(() -> SearchCursor.first(Sort.by("city")))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void encodeDecode_roundTrip() {
+
+        SearchCursor cursor = SearchCursor.first(Sort.by(Sort.Direction.DESC, SearchCursor.SORT_SURNAME))
+            .next("Müller|Lüdenscheid", 4711L);
+
+        SearchCursor decoded = SearchCursor.decode(cursor.encode());
+
+        assertThat(decoded.isFirst()).isFalse();
+        assertThat(decoded.getSortProperty()).isEqualTo(SearchCursor.SORT_SURNAME);
+        assertThat(decoded.isAscending()).isFalse();
+        assertThat(decoded.getLastId()).isEqualTo(4711L);
+        assertThat(decoded.getLastSortValue()).isEqualTo("Müller|Lüdenscheid");
+    }
+
+    @Test
+    public void decode_invalidToken_throws() {
+
+        assertThatThrownBy(() -> SearchCursor.decode("no-cursor"))
+            .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> SearchCursor.decode("%%%"))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+}
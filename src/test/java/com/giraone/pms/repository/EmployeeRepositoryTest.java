@@ -23,6 +23,7 @@ import org.springframework.test.context.junit4.SpringRunner;
 import java.time.LocalDate;
 import java.time.Month;
 import java.util.List;
+import java.util.stream.Collectors;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -127,6 +128,49 @@ public class EmployeeRepositoryTest {
         });
     }
 
+    @Test
+    public void updateEmployeeSurname_replacesOnlyChangedNames() {
+
+        // arrange
+        Employee employee = employeeRepository.save(getEmployeeSample(TEST_SURNAME));
+        testEntityManager.flush();
+        testEntityManager.clear();
+
+        // act
+        employee.setSurname("Meier");
+        employeeRepository.save(employee);
+        testEntityManager.flush();
+
+        // assert
+        List<EmployeeName> result = employeeNameRepository.findAll();
+        assertThat(result.size()).isEqualTo(6);
+        assertThat(result).extracting(employeeName -> employeeName.getId().getNameValue())
+            .contains("meier", "thomas")
+            .doesNotContain("schmitt", "smit", "XMT");
+    }
+
+    @Test
+    public void updateEmployeeAddress_keepsNames() {
+
+        // arrange
+        Employee employee = employeeRepository.save(getEmployeeSample(TEST_SURNAME));
+        testEntityManager.flush();
+        testEntityManager.clear();
+        List<EmployeeName> before = employeeNameRepository.findAll();
+
+        // act
+        employee.setCity("Berlin");
+        employee.setStreetAddress("Unter den Linden 1");
+        employeeRepository.save(employee);
+        testEntityManager.flush();
+        testEntityManager.clear();
+
+        // assert
+        List<EmployeeName> after = employeeNameRepository.findAll();
+        assertThat(after.size()).isEqualTo(6);
+        assertThat(nameValues(after)).isEqualTo(nameValues(before));
+    }
+
     @Test
     public void deleteEmployee_deletesNamesAlso() {
 
@@ -333,6 +377,13 @@ public class EmployeeRepositoryTest {
 
     //------------------------------------------------------------------------------------------------------------------
 
+    private List<String> nameValues(List<EmployeeName> employeeNames) {
+        return employeeNames.stream()
+            .map(employeeName -> employeeName.getId().getNameKey() + ":" + employeeName.getId().getNameValue())
+            .sorted()
+            .collect(Collectors.toList());
+    }
+
     private Employee getEmployeeSample() {
         return getEmployeeSample(TEST_SURNAME);
     }
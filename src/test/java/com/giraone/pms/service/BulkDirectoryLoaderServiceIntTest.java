@@ -0,0 +1,114 @@
+package com.giraone.pms.service;
+
+import com.giraone.pms.PmssqlApp;
+import com.giraone.pms.domain.Company;
+import com.giraone.pms.repository.CompanyRepository;
+import com.giraone.pms.repository.EmployeeRepository;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the {@link BulkDirectoryLoaderService}. Not transactional, because every unit is committed by a
+ * worker thread.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = PmssqlApp.class)
+@ActiveProfiles("test")
+@WithMockUser(username = "admin", roles = {"ADMIN"})
+public class BulkDirectoryLoaderServiceIntTest {
+
+    private static final String SHARED_COMPANY_EXTERNAL_ID = "loader-shared-0001";
+    private static final int FILES = 8;
+    private static final int EMPLOYEES_PER_FILE = 3;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Autowired
+    private BulkDirectoryLoaderService bulkDirectoryLoaderService;
+
+    @Autowired
+    private CompanyRepository companyRepository;
+
+    @Autowired
+    private EmployeeRepository employeeRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @After
+    public void cleanUp() {
+
+        new TransactionTemplate(transactionManager).execute(status -> {
+            companyRepository.findOneByExternalId(SHARED_COMPANY_EXTERNAL_ID).ifPresent(company -> {
+                employeeRepository.deleteAll(employeeRepository.findAllByCompany(company, PageRequest.of(0, FILES * EMPLOYEES_PER_FILE)));
+                companyRepository.delete(company);
+            });
+            return null;
+        });
+    }
+
+    @Test
+    public void load_parallelUnitsWithTheSameNewCompany() throws IOException {
+
+        // arrange - every file contains the same company, which does not exist yet
+        final Path directory = temporaryFolder.newFolder("d-00000000").toPath();
+        for (int i = 0; i < FILES; i++) {
+            final StringBuilder json = new StringBuilder("[");
+            for (int j = 0; j < EMPLOYEES_PER_FILE; j++) {
+                json.append(j > 0 ? "," : "")
+                    .append("{\"surname\":\"S").append(i).append('-').append(j)
+                    .append("\",\"givenName\":\"G\",\"companyId\":\"").append(SHARED_COMPANY_EXTERNAL_ID).append("\"}");
+            }
+            Files.write(directory.resolve(String.format("f-%08d.json", i)),
+                Collections.singletonList(json.append(']').toString()), StandardCharsets.UTF_8);
+        }
+
+        // act
+        final long saved = bulkDirectoryLoaderService.load(directory, 2, 0, null, false, NO_PROGRESS);
+
+        // assert
+        assertThat(saved).isEqualTo(FILES * EMPLOYEES_PER_FILE);
+        new TransactionTemplate(transactionManager).execute(status -> {
+            final List<Company> companies = companyRepository.findAllByExternalIdIn(Collections.singletonList(SHARED_COMPANY_EXTERNAL_ID));
+            assertThat(companies).hasSize(1);
+            assertThat(employeeRepository.countByCompanyId(companies.get(0).getId())).isEqualTo(FILES * EMPLOYEES_PER_FILE);
+            return null;
+        });
+    }
+
+    private static final BulkDirectoryLoaderService.ProgressListener NO_PROGRESS = new BulkDirectoryLoaderService.ProgressListener() {
+        @Override
+        public void onStart(long bytesTotal) {
+        }
+
+        @Override
+        public void onUnitCompleted(long rows, long bytes) {
+        }
+
+        @Override
+        public boolean isCancelRequested() {
+            return false;
+        }
+    };
+}
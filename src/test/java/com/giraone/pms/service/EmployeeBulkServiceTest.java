@@ -2,6 +2,7 @@ package com.giraone.pms.service;
 
 import com.giraone.pms.PmssqlApp;
 import com.giraone.pms.domain.User;
+import com.giraone.pms.domain.enumeration.BulkLoaderMode;
 import com.giraone.pms.domain.filter.PersonFilter;
 import com.giraone.pms.service.dto.CompanyDTO;
 import com.giraone.pms.service.dto.EmployeeBulkDTO;
@@ -18,6 +19,7 @@ import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 import java.util.stream.Collectors;
@@ -47,6 +49,9 @@ public class EmployeeBulkServiceTest {
     @Autowired
     private EmployeeBulkService employeeBulkService;
 
+    @Autowired
+    private InitialUserProvisioningService initialUserProvisioningService;
+
     @Before
     public void init() {
     }
@@ -70,9 +75,12 @@ public class EmployeeBulkServiceTest {
         assertTrue(company.isPresent());
         assertThat(company.get().getExternalId()).isEqualTo(TEST_COMPANY_EXTERNAL_ID);
 
-        // does the company has an initial user?
+        // does the company has an initial user? The test transaction is never committed, so provision synchronously.
+        assertThat(initialUserProvisioningService.findCompaniesWithoutInitialUser()).contains(company.get().getId());
+        assertThat(initialUserProvisioningService.provision(Collections.singletonList(company.get().getId()))).isEqualTo(1);
         Page<User> users = this.companyService.findAllUserInCompany(TEST_COMPANY_EXTERNAL_ID, PageRequest.of(0, 10));
         assertThat(users.getTotalElements()).isEqualTo(1);
+        assertThat(initialUserProvisioningService.findCompaniesWithoutInitialUser()).doesNotContain(company.get().getId());
 
         // can the employees be found by a filter query?
         PersonFilter personFilter = new PersonFilter(TEST_EMPLOYEE_SURNAME_PREFIX, false);
@@ -83,6 +91,30 @@ public class EmployeeBulkServiceTest {
         assertThat(result.get().getTotalElements()).isEqualTo(10);
     }
 
+    @Test
+    @Transactional
+    public void whenSavingEntitiesWithCopyLoader_checkResult() {
+
+        // arrange
+        int count = 10;
+        List<EmployeeBulkDTO> employees = getEmployeeSamples(count);
+
+        // act (on H2 the COPY loader falls back to JDBC batches)
+        int nrOfSavedEmployee = employeeBulkService.save(employees, BulkLoaderMode.COPY);
+
+        // assert
+        assertThat(nrOfSavedEmployee).isEqualTo(count);
+
+        // can the employees be found by a filter query, which needs the names?
+        PersonFilter personFilter = new PersonFilter(TEST_EMPLOYEE_SURNAME_PREFIX, false);
+        Pageable pageable = PageRequest.of(0, 10);
+        Optional<Page<EmployeeDTO>> result = employeeService.findAllByFilter(
+            TEST_COMPANY_EXTERNAL_ID, personFilter, pageable);
+        assertTrue(result.isPresent());
+        assertThat(result.get().getTotalElements()).isEqualTo(10);
+        result.get().getContent().forEach(employee -> assertThat(employee.getId()).isNotNull());
+    }
+
     //------------------------------------------------------------------------------------------------------------------
 
     private EmployeeBulkDTO getEmployeeSample(int i) {
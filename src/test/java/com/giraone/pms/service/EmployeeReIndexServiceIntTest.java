@@ -0,0 +1,162 @@
+package com.giraone.pms.service;
+
+import com.giraone.pms.PmssqlApp;
+import com.giraone.pms.config.ApplicationProperties;
+import com.giraone.pms.domain.Company;
+import com.giraone.pms.domain.Employee;
+import com.giraone.pms.domain.EmployeeName;
+import com.giraone.pms.repository.CompanyRepository;
+import com.giraone.pms.repository.EmployeeRepository;
+import com.giraone.pms.service.search.EmployeeNamesChangedEvent;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the shadow table rebuild of the {@link EmployeeReIndexService}. Not transactional, because the
+ * rebuild uses transactions of its own.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = PmssqlApp.class)
+@ActiveProfiles("test")
+public class EmployeeReIndexServiceIntTest {
+
+    @Autowired
+    private EmployeeReIndexService employeeReIndexService;
+
+    @Autowired
+    private EmployeeNameChangeLog employeeNameChangeLog;
+
+    @Autowired
+    private EmployeeRepository employeeRepository;
+
+    @Autowired
+    private CompanyRepository companyRepository;
+
+    @Autowired
+    private ApplicationProperties applicationProperties;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate transactionTemplate;
+    private int savedPageSize;
+    private String savedCheckpointFile;
+    private Company company;
+    private final List<Long> employeeIds = new ArrayList<>();
+
+    @Before
+    public void init() throws IOException {
+
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        final ApplicationProperties.Index index = applicationProperties.getIndex();
+        savedPageSize = index.getPageSize();
+        savedCheckpointFile = index.getCheckpointFile();
+        index.setPageSize(1);
+        index.setCheckpointFile(File.createTempFile("reindex", ".checkpoint").getAbsolutePath());
+
+        transactionTemplate.execute(status -> {
+            company = companyRepository.save(new Company().externalId("rebuild1").name("Rebuild"));
+            for (String surname : new String[]{"Schmitt", "Meier", "Mueller", "Schneider"}) {
+                employeeIds.add(employeeRepository.save(new Employee().surname(surname).givenName("Anna").company(company)).getId());
+            }
+            return null;
+        });
+    }
+
+    @After
+    public void cleanUp() {
+
+        applicationProperties.getIndex().setPageSize(savedPageSize);
+        applicationProperties.getIndex().setCheckpointFile(savedCheckpointFile);
+        transactionTemplate.execute(status -> {
+            employeeIds.stream().filter(employeeRepository::existsById).forEach(employeeRepository::deleteById);
+            companyRepository.delete(company);
+            return null;
+        });
+    }
+
+    @Test
+    public void rebuild_keepsChangesDuringTheRebuild() {
+
+        final AtomicLong pages = new AtomicLong();
+        final long rebuilt = employeeReIndexService.rebuild(false, 1, new EmployeeReIndexService.ProgressListener() {
+            @Override
+            public void onStart(long employeesTotal) {
+            }
+
+            @Override
+            public void onPageCompleted(long employees) {
+                // the first two employees are already in the shadow table
+                if (pages.incrementAndGet() == 2) {
+                    updateSurname(employeeIds.get(0), "Neumann");
+                    delete(employeeIds.get(1));
+                }
+            }
+
+            @Override
+            public boolean isCancelRequested() {
+                return false;
+            }
+        });
+
+        assertThat(rebuilt).isEqualTo(4L);
+        assertThat(employeeNameChangeLog.isActive()).isFalse();
+        transactionTemplate.execute(status -> {
+            final Employee updated = employeeRepository.findById(employeeIds.get(0)).get();
+            assertThat(toStrings(employeeRepository.findNamesByOwner(updated.getId())))
+                .contains("LS:neumann")
+                .isEqualTo(toStrings(employeeRepository.buildNames(updated)));
+            assertThat(employeeRepository.findNamesByOwner(employeeIds.get(1))).isEmpty();
+            for (Long id : employeeIds.subList(2, 4)) {
+                assertThat(toStrings(employeeRepository.findNamesByOwner(id)))
+                    .isEqualTo(toStrings(employeeRepository.buildNames(employeeRepository.findById(id).get())));
+            }
+            return null;
+        });
+    }
+
+    private void updateSurname(long id, String surname) {
+
+        transactionTemplate.execute(status -> {
+            final Employee employee = employeeRepository.findById(id).get();
+            employee.setSurname(surname);
+            return employeeRepository.save(employee);
+        });
+    }
+
+    // the same as EmployeeService.delete without the authorization check
+    private void delete(long id) {
+
+        transactionTemplate.execute(status -> {
+            employeeRepository.deleteById(id);
+            eventPublisher.publishEvent(EmployeeNamesChangedEvent.removed(company.getId(), id, null));
+            return null;
+        });
+    }
+
+    private static Set<String> toStrings(List<EmployeeName> names) {
+        return names.stream().map(name -> name.getId().getNameKey() + ":" + name.getId().getNameValue()).collect(Collectors.toSet());
+    }
+}
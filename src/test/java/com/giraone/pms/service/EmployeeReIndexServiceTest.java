@@ -0,0 +1,61 @@
+package com.giraone.pms.service;
+
+import com.giraone.pms.service.util.BulkCheckpointStore;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the partitioning of the {@link EmployeeReIndexService}.
+ */
+public class EmployeeReIndexServiceTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void partitions_alignedToPartitionSize() {
+
+        assertThat(units(EmployeeReIndexService.partitions(1L, 250L, 100L)))
+            .containsExactly("ids-0-100", "ids-100-200", "ids-200-250");
+        assertThat(units(EmployeeReIndexService.partitions(101L, 200L, 100L)))
+            .containsExactly("ids-100-200");
+        assertThat(units(EmployeeReIndexService.partitions(150L, 150L, 100L)))
+            .containsExactly("ids-100-150");
+    }
+
+    @Test
+    public void resume_withHigherMaxId_processesTheShortenedLastPartitionAgain() throws IOException {
+
+        // arrange - an interrupted run with max id 250 completed all of its partitions
+        final Path file = temporaryFolder.getRoot().toPath().resolve("reindex.checkpoint");
+        try (BulkCheckpointStore store = new BulkCheckpointStore(file, false)) {
+            for (String unit : units(EmployeeReIndexService.partitions(1L, 250L, 100L))) {
+                store.markCompleted(unit);
+            }
+        }
+
+        // act - the resumed run sees employees up to id 320
+        try (BulkCheckpointStore store = new BulkCheckpointStore(file, true)) {
+            final List<String> open = units(EmployeeReIndexService.partitions(1L, 320L, 100L)).stream()
+                .filter(unit -> !store.isCompleted(unit))
+                .collect(Collectors.toList());
+
+            // assert - (250, 300] is covered again
+            assertThat(open).containsExactly("ids-200-300", "ids-300-320");
+        }
+    }
+
+    private static List<String> units(List<long[]> partitions) {
+        return partitions.stream()
+            .map(partition -> EmployeeReIndexService.partitionUnit(partition[0], partition[1]))
+            .collect(Collectors.toList());
+    }
+}
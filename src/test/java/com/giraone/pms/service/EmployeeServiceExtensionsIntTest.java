@@ -2,7 +2,9 @@ package com.giraone.pms.service;
 
 import com.giraone.pms.PmssqlApp;
 import com.giraone.pms.domain.enumeration.GenderType;
+import com.giraone.pms.domain.filter.CursorSlice;
 import com.giraone.pms.domain.filter.PersonFilter;
+import com.giraone.pms.domain.filter.SearchCursor;
 import com.giraone.pms.service.dto.CompanyDTO;
 import com.giraone.pms.service.dto.EmployeeDTO;
 import org.junit.Test;
@@ -12,6 +14,8 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit4.SpringRunner;
@@ -19,8 +23,12 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDate;
 import java.time.Month;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.assertTrue;
@@ -124,6 +132,88 @@ public class EmployeeServiceExtensionsIntTest {
         assertThat(page.get().getTotalPages()).isEqualTo(2);
     }
 
+    @Test
+    public void findSliceByFilter_checkThatPagingWithoutCountWorks() {
+
+        // arrange
+        CompanyDTO company = saveCompanySample();
+        for (int i = 0; i < 20; i++) {
+            employeeService.save(getEmployeeSample(company));
+        }
+
+        // act
+        PersonFilter personFilter = new PersonFilter("");
+        Optional<Slice<EmployeeDTO>> firstSlice = employeeService.findSliceByFilter(
+            company.getExternalId(), personFilter, PageRequest.of(0, 10));
+        Optional<Slice<EmployeeDTO>> lastSlice = employeeService.findSliceByFilter(
+            company.getExternalId(), personFilter, PageRequest.of(1, 10));
+
+        // assert
+        assertTrue(firstSlice.isPresent());
+        assertThat(firstSlice.get().getContent().size()).isEqualTo(10);
+        assertThat(firstSlice.get().hasNext()).isTrue();
+        assertTrue(lastSlice.isPresent());
+        assertThat(lastSlice.get().getContent().size()).isEqualTo(10);
+        assertThat(lastSlice.get().hasNext()).isFalse();
+    }
+
+    @Test
+    public void findAllByFilter_checkThatRepeatedSearchSeesWrites() {
+
+        // arrange
+        CompanyDTO company = saveCompanySample();
+        for (int i = 0; i < 15; i++) {
+            employeeService.save(getEmployeeSample(company));
+        }
+        PersonFilter personFilter = new PersonFilter("schmitt");
+        Pageable pageable = PageRequest.of(1, 10, Sort.by("surname"));
+
+        // act - the second search is served from the cached ids of the result
+        Optional<Page<EmployeeDTO>> page1 = employeeService.findAllByFilter(company.getExternalId(), personFilter, pageable);
+        Optional<Page<EmployeeDTO>> page2 = employeeService.findAllByFilter(company.getExternalId(), personFilter, pageable);
+        employeeService.save(getEmployeeSample(company));
+        Optional<Page<EmployeeDTO>> page3 = employeeService.findAllByFilter(company.getExternalId(), personFilter, pageable);
+
+        // assert
+        assertTrue(page1.isPresent());
+        assertThat(page1.get().getTotalElements()).isEqualTo(15);
+        assertThat(page1.get().getContent().size()).isEqualTo(5);
+        assertTrue(page2.isPresent());
+        assertThat(page2.get().getContent()).isEqualTo(page1.get().getContent());
+        assertTrue(page3.isPresent());
+        assertThat(page3.get().getTotalElements()).isEqualTo(16);
+        assertThat(page3.get().getContent().size()).isEqualTo(6);
+    }
+
+    @Test
+    public void findAllByFilter_checkThatCursorPagingWorks() {
+
+        // arrange - equal surnames, so the id must be the tie breaker
+        CompanyDTO company = saveCompanySample();
+        for (int i = 0; i < 25; i++) {
+            employeeService.save(getEmployeeSample(company));
+        }
+
+        // act
+        PersonFilter personFilter = new PersonFilter("");
+        SearchCursor cursor = SearchCursor.first(Sort.by(SearchCursor.SORT_SURNAME));
+        List<Integer> sliceSizes = new ArrayList<>();
+        Set<Long> ids = new HashSet<>();
+        while (cursor != null) {
+            Optional<CursorSlice<EmployeeDTO>> slice = employeeService.findAllByFilter(
+                company.getExternalId(), personFilter, cursor, 10);
+            assertTrue(slice.isPresent());
+            sliceSizes.add(slice.get().getContent().size());
+            slice.get().getContent().forEach(employee -> ids.add(employee.getId()));
+            // the client gets only the token
+            cursor = slice.get().hasNext() ? SearchCursor.decode(slice.get().getNextCursor().encode()) : null;
+        }
+
+        // assert
+        assertThat(sliceSizes).containsExactly(10, 10, 5);
+        assertThat(ids.size()).isEqualTo(25);
+    }
+
     @Test
     public void whenSavingEntity_checkThatItIsFoundByDateOfBirth_WITH_COMPANY() {
         storeThenQueryThenCheckDate(true, new LocalDate[]{ LocalDate.of(1977, Month.DECEMBER, 1)},
@@ -0,0 +1,47 @@
+package com.giraone.pms.service.impl;
+
+import com.giraone.pms.domain.filter.EmployeeNameKeyValue;
+import org.junit.Test;
+
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class NameKeyValueServiceImplTest {
+
+    private NameKeyValueServiceImpl nameKeyValueService = new NameKeyValueServiceImpl(new NameNormalizeServiceImpl(), 100);
+
+    @Test
+    public void buildSurnameKeyValues() {
+
+        Set<EmployeeNameKeyValue> keyValues = nameKeyValueService.buildSurnameKeyValues("Schmidt-Wagner");
+
+        assertThat(keyValues).contains(
+            new EmployeeNameKeyValue("LS", "schmidt-wagner"),
+            new EmployeeNameKeyValue("NS", "smit"),
+            new EmployeeNameKeyValue("NS", "wagner"));
+        assertThat(keyValues).extracting(EmployeeNameKeyValue::getKey).containsOnly("LS", "NS", "PS");
+    }
+
+    @Test
+    public void buildGivenNameKeyValues() {
+
+        Set<EmployeeNameKeyValue> keyValues = nameKeyValueService.buildGivenNameKeyValues(" Jürgen ");
+
+        assertThat(keyValues).contains(new EmployeeNameKeyValue("LG", "juergen"));
+        assertThat(keyValues).extracting(EmployeeNameKeyValue::getKey).containsOnly("LG", "NG", "PG");
+        assertThat(nameKeyValueService.buildGivenNameKeyValues(null)).isEmpty();
+        assertThat(nameKeyValueService.buildGivenNameKeyValues("  ")).isEmpty();
+    }
+
+    @Test
+    public void repeatedNamesAreServedFromCache() {
+
+        Set<EmployeeNameKeyValue> first = nameKeyValueService.buildSurnameKeyValues("Müller");
+        Set<EmployeeNameKeyValue> second = nameKeyValueService.buildSurnameKeyValues("Müller");
+
+        assertThat(second).isSameAs(first);
+        assertThat(nameKeyValueService.stats().hitCount()).isEqualTo(1);
+        assertThat(nameKeyValueService.stats().missCount()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,174 @@
+package com.giraone.pms.service.search;
+
+import com.giraone.pms.config.ApplicationProperties;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CompanyCacheTest {
+
+    private static final long COMPANY_ID = 1L;
+    private static final long OTHER_COMPANY_ID = 2L;
+
+    private EmployeeCountService employeeCountService;
+    private PendingEmployeeChanges pendingEmployeeChanges;
+    private AtomicInteger loads;
+    private Runnable duringLoad;
+
+    @Before
+    public void init() {
+        employeeCountService = new EmployeeCountService(new ApplicationProperties());
+        pendingEmployeeChanges = new PendingEmployeeChanges();
+        loads = new AtomicInteger();
+        duringLoad = () -> {
+        };
+    }
+
+    @Test
+    public void get_cached_loadsOnce() {
+
+        final CompanyCache<List<Long>> cache = cache(false);
+        final List<Long> value = cache.get(COMPANY_ID);
+        assertThat(value).containsExactly(COMPANY_ID);
+        assertThat(cache.get(COMPANY_ID)).isSameAs(value);
+        assertThat(cache.get(OTHER_COMPANY_ID)).containsExactly(OTHER_COMPANY_ID);
+        assertThat(loads.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void get_loaderReturnsNull_notCached() {
+
+        final CompanyCache<List<Long>> cache = new CompanyCache<>("test", 1L, value -> 0L, false,
+            employeeCountService, pendingEmployeeChanges, companyId -> load(null), CompanyCacheTest::update);
+        assertThat(cache.get(COMPANY_ID)).isNull();
+        assertThat(cache.get(COMPANY_ID)).isNull();
+        assertThat(loads.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void onEmployeesChangedCommitted_namesChanged_updatesValue() {
+
+        final CompanyCache<List<Long>> cache = cache(true);
+        final List<Long> value = cache.get(COMPANY_ID);
+        cache.onEmployeesChangedCommitted(EmployeeNamesChangedEvent.created(COMPANY_ID, 7L, Collections.emptyList(), null));
+        assertThat(cache.get(COMPANY_ID)).isSameAs(value).containsExactly(COMPANY_ID, 7L);
+        assertThat(loads.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void onEmployeesChangedCommitted_valueGrowsBeyondTheBudget_dropsValue() {
+
+        // 100 kilobytes per id and a budget of one megabyte
+        final CompanyCache<List<Long>> cache = new CompanyCache<>("test", 1L, value -> value.size() * 100L * 1024L, true,
+            employeeCountService, pendingEmployeeChanges, this::load, CompanyCacheTest::update);
+        cache.get(COMPANY_ID);
+        for (long id = 10L; id < 30L; id++) {
+            cache.onEmployeesChangedCommitted(EmployeeNamesChangedEvent.created(COMPANY_ID, id, Collections.emptyList(), null));
+        }
+        assertThat(cache.get(COMPANY_ID)).containsExactly(COMPANY_ID);
+        assertThat(loads.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void onEmployeesChangedCommitted_updaterFails_dropsValue() {
+
+        final CompanyCache<List<Long>> cache = cache(true);
+        cache.get(COMPANY_ID);
+        cache.get(OTHER_COMPANY_ID);
+        // the names of the removed employee are not known
+        cache.onEmployeesChangedCommitted(EmployeeNamesChangedEvent.removed(COMPANY_ID, 7L, null));
+        cache.get(COMPANY_ID);
+        cache.get(OTHER_COMPANY_ID);
+        assertThat(loads.get()).isEqualTo(3);
+    }
+
+    @Test
+    public void onEmployeesChangedCommitted_companyChanged_dropsValue() {
+
+        final CompanyCache<List<Long>> cache = cache(true);
+        cache.get(COMPANY_ID);
+        cache.get(OTHER_COMPANY_ID);
+        cache.onEmployeesChangedCommitted(new EmployeesChangedEvent(COMPANY_ID, null));
+        cache.get(COMPANY_ID);
+        cache.get(OTHER_COMPANY_ID);
+        assertThat(loads.get()).isEqualTo(3);
+    }
+
+    @Test
+    public void onEmployeesChangedCommitted_allChanged_dropsAllValues() {
+
+        final CompanyCache<List<Long>> cache = cache(true);
+        cache.get(COMPANY_ID);
+        cache.get(OTHER_COMPANY_ID);
+        cache.onEmployeesChangedCommitted(EmployeesChangedEvent.changedAll());
+        cache.get(COMPANY_ID);
+        cache.get(OTHER_COMPANY_ID);
+        assertThat(loads.get()).isEqualTo(4);
+    }
+
+    @Test
+    public void get_changedDuringTheLoad_notKept() {
+
+        duringLoad = () -> employeeCountService.onEmployeesChanged(new EmployeesChangedEvent(COMPANY_ID, 1L));
+        final CompanyCache<List<Long>> cache = cache(false);
+        assertThat(cache.get(COMPANY_ID)).containsExactly(COMPANY_ID);
+        assertThat(cache.get(COMPANY_ID)).containsExactly(COMPANY_ID);
+        assertThat(loads.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void get_exactAndChangedDuringTheLoad_returnsNull() {
+
+        duringLoad = () -> employeeCountService.onEmployeesChanged(new EmployeesChangedEvent(COMPANY_ID, 1L));
+        final CompanyCache<List<Long>> cache = cache(true);
+        assertThat(cache.get(COMPANY_ID)).isNull();
+        assertThat(cache.get(COMPANY_ID)).isNull();
+        assertThat(loads.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void get_pendingChanges_notKept() {
+
+        final EmployeesChangedEvent event = new EmployeesChangedEvent(COMPANY_ID, 1L);
+        pendingEmployeeChanges.onEmployeesChanged(event);
+        final CompanyCache<List<Long>> inexact = cache(false);
+        final CompanyCache<List<Long>> exact = cache(true);
+        assertThat(inexact.get(COMPANY_ID)).containsExactly(COMPANY_ID);
+        assertThat(exact.get(COMPANY_ID)).isNull();
+
+        // kept after the completion of the transaction
+        pendingEmployeeChanges.onEmployeesChangedCompleted(event);
+        assertThat(exact.get(COMPANY_ID)).containsExactly(COMPANY_ID);
+        exact.get(COMPANY_ID);
+        assertThat(loads.get()).isEqualTo(3);
+    }
+
+    //------------------------------------------------------------------------------------------------------------------
+
+    private CompanyCache<List<Long>> cache(boolean exact) {
+        return new CompanyCache<>("test", 1L, value -> 100L, exact,
+            employeeCountService, pendingEmployeeChanges, this::load, CompanyCacheTest::update);
+    }
+
+    private List<Long> load(Long companyId) {
+
+        loads.incrementAndGet();
+        duringLoad.run();
+        return companyId != null ? new ArrayList<>(Collections.singletonList(companyId)) : null;
+    }
+
+    private static boolean update(List<Long> value, EmployeeNamesChangedEvent event) {
+
+        if (event.getRemovedNames() == null) {
+            return false;
+        }
+        value.add(event.getEmployeeId());
+        return true;
+    }
+}
@@ -0,0 +1,121 @@
+package com.giraone.pms.service.search;
+
+import com.giraone.pms.domain.filter.EmployeeNameKeyValue;
+import com.giraone.pms.domain.filter.PersonFilter;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CompanyNameIndexTest {
+
+    private static final LocalDate BIRTHDAY = LocalDate.of(1970, 3, 12);
+
+    private CompanyNameIndex index;
+
+    @Before
+    public void init() {
+
+        CompanyNameIndex.Builder builder = new CompanyNameIndex.Builder();
+        employee(builder, 1L, "schmitt", "smit", "thomas", "tomas", BIRTHDAY);
+        employee(builder, 2L, "schmidt", "smit", "anna", "ana", null);
+        employee(builder, 3L, "meier", "meier", "thomas", "tomas", LocalDate.of(1980, 1, 1));
+        employee(builder, 4L, "schulz", "sulz", "anna", "ana", BIRTHDAY);
+        index = builder.build();
+    }
+
+    @Test
+    public void findIds_prefix() {
+
+        assertThat(index.findIds(new PersonFilter("schm,"))).containsExactly(1L, 2L);
+        assertThat(index.findIds(new PersonFilter(",tho"))).containsExactly(1L, 3L);
+    }
+
+    @Test
+    public void findIds_surnameAndGivenName() {
+
+        assertThat(index.findIds(new PersonFilter("sch, anna"))).containsExactly(2L, 4L);
+        assertThat(index.findIds(new PersonFilter("meier, anna"))).isEmpty();
+    }
+
+    @Test
+    public void findIds_anyName() {
+
+        // without comma the names match surnames and given names
+        assertThat(index.findIds(new PersonFilter("anna"))).containsExactly(2L, 4L);
+    }
+
+    @Test
+    public void findIds_exactName() {
+
+        assertThat(index.findIds(new PersonFilter("\"schmitt\","))).containsExactly(1L);
+        assertThat(index.findIds(new PersonFilter("\"schmi\","))).isEmpty();
+    }
+
+    @Test
+    public void findIds_dateOfBirth() {
+
+        assertThat(index.findIds(new PersonFilter("12.03.1970"))).containsExactly(1L, 4L);
+        assertThat(index.findIds(new PersonFilter("sch, 12.03.1970"))).containsExactly(1L, 4L);
+        assertThat(index.findIds(new PersonFilter("meier 12.03.1970"))).isEmpty();
+    }
+
+    @Test
+    public void apply_createdUpdatedRemoved() {
+
+        index.apply(EmployeeNamesChangedEvent.created(1L, 5L,
+            Arrays.asList(new EmployeeNameKeyValue("LS", "schneider"), new EmployeeNameKeyValue("NS", "sneider")), BIRTHDAY));
+        assertThat(index.findIds(new PersonFilter("schn,"))).containsExactly(5L);
+        assertThat(index.findIds(new PersonFilter("12.03.1970"))).containsExactly(1L, 4L, 5L);
+
+        index.apply(EmployeeNamesChangedEvent.updated(1L, 2L,
+            Collections.singletonList(new EmployeeNameKeyValue("LS", "schmidt")),
+            Collections.singletonList(new EmployeeNameKeyValue("LS", "meyer")), BIRTHDAY));
+        assertThat(index.findIds(new PersonFilter("\"schmidt\","))).isEmpty();
+        assertThat(index.findIds(new PersonFilter("\"meyer\","))).containsExactly(2L);
+        assertThat(index.findIds(new PersonFilter("12.03.1970"))).containsExactly(1L, 2L, 4L, 5L);
+
+        // a deleted employee - the names are not known
+        index.apply(EmployeeNamesChangedEvent.removed(1L, 1L, null));
+        assertThat(index.findIds(new PersonFilter("schm,"))).containsExactly(2L);
+        assertThat(index.findIds(new PersonFilter("\"schmitt\","))).isEmpty();
+        assertThat(index.findIds(new PersonFilter("12.03.1970"))).containsExactly(2L, 4L, 5L);
+    }
+
+    @Test
+    public void apply_maintainsEstimatedBytes() {
+
+        final long built = index.getEstimatedBytes();
+        final List<EmployeeNameKeyValue> names = Arrays.asList(
+            new EmployeeNameKeyValue("LS", "schneider"), new EmployeeNameKeyValue("LG", "anna"));
+        index.apply(EmployeeNamesChangedEvent.created(1L, 5L, names, BIRTHDAY));
+        assertThat(index.getEstimatedBytes()).isGreaterThan(built);
+
+        index.apply(EmployeeNamesChangedEvent.removed(1L, 5L, names));
+        assertThat(index.getEstimatedBytes()).isEqualTo(built);
+    }
+
+    @Test
+    public void union_intersect() {
+
+        assertThat(CompanyNameIndex.union(Arrays.asList(new long[]{1L, 5L}, new long[]{2L, 5L, 7L}))).containsExactly(1L, 2L, 5L, 7L);
+        assertThat(CompanyNameIndex.intersect(new long[]{1L, 2L, 5L, 7L}, new long[]{2L, 3L, 7L})).containsExactly(2L, 7L);
+    }
+
+    //------------------------------------------------------------------------------------------------------------------
+
+    private static void employee(CompanyNameIndex.Builder builder, long id, String surname, String normalizedSurname,
+                                 String givenName, String normalizedGivenName, LocalDate dateOfBirth) {
+
+        builder.addEmployee(id, dateOfBirth)
+            .addName(id, "LS", surname)
+            .addName(id, "NS", normalizedSurname)
+            .addName(id, "LG", givenName)
+            .addName(id, "NG", normalizedGivenName);
+    }
+}
@@ -0,0 +1,94 @@
+package com.giraone.pms.service.search;
+
+import com.giraone.pms.config.ApplicationProperties;
+import com.giraone.pms.domain.filter.PersonFilter;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EmployeeCountServiceTest {
+
+    private static final long COMPANY_ID = 1L;
+    private static final long OTHER_COMPANY_ID = 2L;
+
+    private EmployeeCountService employeeCountService;
+    private AtomicInteger countQueries;
+
+    @Before
+    public void init() {
+        employeeCountService = new EmployeeCountService(new ApplicationProperties());
+        countQueries = new AtomicInteger();
+    }
+
+    @Test
+    public void getCount_sameFilter_countsOnce() {
+
+        assertThat(employeeCountService.getCount(COMPANY_ID, new PersonFilter("mueller"), () -> count(935L))).isEqualTo(935L);
+        assertThat(employeeCountService.getCount(COMPANY_ID, new PersonFilter("Mueller"), () -> count(935L))).isEqualTo(935L);
+        assertThat(countQueries.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void getCount_otherFilterOrCompany_countsAgain() {
+
+        employeeCountService.getCount(COMPANY_ID, new PersonFilter("mueller"), () -> count(935L));
+        employeeCountService.getCount(COMPANY_ID, new PersonFilter("meier"), () -> count(10L));
+        employeeCountService.getCount(OTHER_COMPANY_ID, new PersonFilter("mueller"), () -> count(5L));
+        assertThat(countQueries.get()).isEqualTo(3);
+    }
+
+    @Test
+    public void getCount_afterWriteOfCompany_countsAgain() {
+
+        employeeCountService.getCount(COMPANY_ID, new PersonFilter("mueller"), () -> count(935L));
+        employeeCountService.getCount(OTHER_COMPANY_ID, new PersonFilter("mueller"), () -> count(5L));
+
+        employeeCountService.onEmployeesChanged(new EmployeesChangedEvent(COMPANY_ID, 1L));
+
+        assertThat(employeeCountService.getCount(COMPANY_ID, new PersonFilter("mueller"), () -> count(936L))).isEqualTo(936L);
+        assertThat(employeeCountService.getCount(OTHER_COMPANY_ID, new PersonFilter("mueller"), () -> count(5L))).isEqualTo(5L);
+        assertThat(countQueries.get()).isEqualTo(3);
+    }
+
+    @Test
+    public void getCount_afterWriteOfAllCompanies_countsAgain() {
+
+        employeeCountService.getCount(COMPANY_ID, new PersonFilter("mueller"), () -> count(935L));
+
+        employeeCountService.onEmployeesChanged(EmployeesChangedEvent.changedAll());
+
+        employeeCountService.getCount(COMPANY_ID, new PersonFilter("mueller"), () -> count(935L));
+        assertThat(countQueries.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void getEstimatedCount_isMaintainedByDeltas() {
+
+        assertThat(employeeCountService.getEstimatedCount(COMPANY_ID, () -> count(100L))).isEqualTo(100L);
+
+        employeeCountService.onEmployeesChangedCommitted(new EmployeesChangedEvent(COMPANY_ID, 3L));
+        employeeCountService.onEmployeesChangedCommitted(new EmployeesChangedEvent(COMPANY_ID, -1L));
+
+        assertThat(employeeCountService.getEstimatedCount(COMPANY_ID, () -> count(0L))).isEqualTo(102L);
+        assertThat(countQueries.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void getEstimatedCount_unknownDelta_countsAgain() {
+
+        employeeCountService.getEstimatedCount(COMPANY_ID, () -> count(100L));
+
+        employeeCountService.onEmployeesChangedCommitted(new EmployeesChangedEvent(COMPANY_ID, null));
+
+        assertThat(employeeCountService.getEstimatedCount(COMPANY_ID, () -> count(120L))).isEqualTo(120L);
+        assertThat(countQueries.get()).isEqualTo(2);
+    }
+
+    private long count(long value) {
+        countQueries.incrementAndGet();
+        return value;
+    }
+}
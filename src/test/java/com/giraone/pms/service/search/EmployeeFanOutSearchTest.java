@@ -0,0 +1,146 @@
+package com.giraone.pms.service.search;
+
+import com.giraone.pms.config.ApplicationProperties;
+import com.giraone.pms.domain.filter.CursorSlice;
+import com.giraone.pms.domain.filter.FanOutCursor;
+import com.giraone.pms.domain.filter.FanOutSlice;
+import com.giraone.pms.domain.filter.PersonFilter;
+import com.giraone.pms.domain.filter.SearchCursor;
+import com.giraone.pms.service.EmployeeService;
+import com.giraone.pms.service.dto.EmployeeDTO;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.domain.Sort;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class EmployeeFanOutSearchTest {
+
+    private final Map<String, List<EmployeeDTO>> companies = new HashMap<>();
+    private EmployeeFanOutSearch employeeFanOutSearch;
+
+    @Before
+    public void init() {
+
+        companies.put("c1", Arrays.asList(employee(1, "Meyer"), employee(4, "Adam"), employee(5, "Zander"), employee(9, "Meyer")));
+        companies.put("c2", Arrays.asList(employee(2, "Berg"), employee(3, "Meyer")));
+        companies.put("c3", Arrays.asList(employee(6, "Adam"), employee(7, "Otto"), employee(8, "Berg")));
+
+        EmployeeService employeeService = mock(EmployeeService.class);
+        when(employeeService.findAllByFilter(anyString(), any(PersonFilter.class), any(SearchCursor.class), anyInt()))
+            .thenAnswer(invocation -> seek(invocation.getArgument(0), invocation.getArgument(2), invocation.getArgument(3)));
+
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        applicationProperties.getSearch().setFanOutThreads(2);
+        applicationProperties.getSearch().setFanOutMaxCompanies(3);
+        employeeFanOutSearch = new EmployeeFanOutSearch(employeeService, applicationProperties);
+    }
+
+    @After
+    public void shutdown() {
+        employeeFanOutSearch.shutdown();
+    }
+
+    @Test
+    public void findAllByFilter_sortById_returnsAllOnceInOrder() {
+
+        List<EmployeeDTO> all = readAll(FanOutCursor.first(Sort.by("id")), 3);
+
+        assertThat(all.stream().map(EmployeeDTO::getId).collect(Collectors.toList()))
+            .containsExactly(1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L);
+    }
+
+    @Test
+    public void findAllByFilter_sortBySurnameDescending_returnsAllOnceInOrder() {
+
+        List<EmployeeDTO> all = readAll(FanOutCursor.first(Sort.by(Sort.Direction.DESC, "surname")), 2);
+
+        assertThat(all.stream().map(EmployeeDTO::getId).collect(Collectors.toList()))
+            .containsExactly(5L, 7L, 9L, 3L, 1L, 8L, 2L, 6L, 4L);
+    }
+
+    @Test
+    public void findAllByFilter_lastSlice_hasNoNextCursor() {
+
+        FanOutSlice<EmployeeDTO> slice = employeeFanOutSearch.findAllByFilter(
+            Arrays.asList("c1", "c2", "c3"), new PersonFilter(null), FanOutCursor.first(Sort.by("id")), 20);
+
+        assertThat(slice.getContent()).hasSize(9);
+        assertThat(slice.hasNext()).isFalse();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void findAllByFilter_tooManyCompanies_fails() {
+
+        employeeFanOutSearch.findAllByFilter(Arrays.asList("c1", "c2", "c3", "c4"), new PersonFilter(null),
+            FanOutCursor.first(Sort.by("id")), 20);
+    }
+
+    //------------------------------------------------------------------------------------------------------------------
+
+    private List<EmployeeDTO> readAll(FanOutCursor first, int size) {
+
+        final List<EmployeeDTO> ret = new ArrayList<>();
+        FanOutCursor cursor = first;
+        for (int i = 0; i < 20 && cursor != null; i++) {
+            final FanOutSlice<EmployeeDTO> slice = employeeFanOutSearch.findAllByFilter(
+                Arrays.asList("c1", "c2", "c3"), new PersonFilter(null), cursor, size);
+            assertThat(slice.getContent().size()).isLessThanOrEqualTo(size);
+            ret.addAll(slice.getContent());
+            // the cursor passes the client as a token
+            cursor = slice.hasNext() ? FanOutCursor.decode(slice.getNextCursor().encode()) : null;
+        }
+        assertThat(cursor).isNull();
+        return ret;
+    }
+
+    /**
+     * Keyset pagination of one company, as it is done by the database.
+     */
+    private Optional<CursorSlice<EmployeeDTO>> seek(String company, SearchCursor cursor, int size) {
+
+        final boolean byId = SearchCursor.SORT_ID.equals(cursor.getSortProperty());
+        final List<EmployeeDTO> sorted = companies.get(company).stream()
+            .sorted((e1, e2) -> {
+                int ret = byId ? 0 : e1.getSurname().compareTo(e2.getSurname());
+                ret = ret != 0 ? ret : e1.getId().compareTo(e2.getId());
+                return cursor.isAscending() ? ret : -ret;
+            })
+            .filter(e -> cursor.isFirst() || isAfter(e, cursor, byId))
+            .collect(Collectors.toList());
+        final List<EmployeeDTO> content = sorted.subList(0, Math.min(size, sorted.size()));
+        final EmployeeDTO last = content.isEmpty() ? null : content.get(content.size() - 1);
+        final SearchCursor next = sorted.size() > size
+            ? cursor.next(byId ? last.getId().toString() : last.getSurname(), last.getId()) : null;
+        return Optional.of(new CursorSlice<>(content, size, next));
+    }
+
+    private static boolean isAfter(EmployeeDTO employee, SearchCursor cursor, boolean byId) {
+
+        int ret = byId ? 0 : employee.getSurname().compareTo(cursor.getLastSortValue());
+        ret = ret != 0 ? ret : employee.getId().compareTo(cursor.getLastId());
+        return cursor.isAscending() ? ret > 0 : ret < 0;
+    }
+
+    private static EmployeeDTO employee(long id, String surname) {
+
+        EmployeeDTO ret = new EmployeeDTO();
+        ret.setId(id);
+        ret.setSurname(surname);
+        return ret;
+    }
+}
@@ -0,0 +1,146 @@
+package com.giraone.pms.service.search;
+
+import com.giraone.pms.domain.filter.EmployeeNameFilter;
+import com.giraone.pms.domain.filter.SearchCursor;
+import org.junit.Test;
+import org.springframework.data.domain.Sort;
+
+import java.time.LocalDate;
+import java.time.Month;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EmployeeSearchShapeTest {
+
+    private static final LocalDate DATE_OF_BIRTH = LocalDate.of(1970, Month.MARCH, 12);
+
+    @Test
+    public void sameShapeForDifferentValues() {
+
+        SearchPlan plan1 = new SearchPlan(Collections.singletonList(like("LS", "meier")), null, false, 10.0);
+        SearchPlan plan2 = new SearchPlan(Collections.singletonList(like("LS", "schmitt")), null, false, 20.0);
+
+        EmployeeSearchShape shape1 = EmployeeSearchShape.fetch(plan1, Sort.by("surname"));
+        EmployeeSearchShape shape2 = EmployeeSearchShape.fetch(plan2, Sort.by("surname"));
+        assertThat(shape1).isEqualTo(shape2);
+        assertThat(shape1.hashCode()).isEqualTo(shape2.hashCode());
+        assertThat(shape1.toSql()).isEqualTo(shape2.toSql());
+    }
+
+    @Test
+    public void differentShapeForDifferentOperationsOrSort() {
+
+        SearchPlan likePlan = new SearchPlan(Collections.singletonList(like("LS", "meier")), null, false, 10.0);
+        SearchPlan equalsPlan = new SearchPlan(Collections.singletonList(
+            new EmployeeNameFilter(EmployeeNameFilter.CompareOperation.EQUALS, EmployeeNameFilter.CompareOperation.EQUALS,
+                "LS", "meier")), null, false, 10.0);
+
+        assertThat(EmployeeSearchShape.fetch(likePlan, Sort.unsorted()))
+            .isNotEqualTo(EmployeeSearchShape.fetch(equalsPlan, Sort.unsorted()));
+        assertThat(EmployeeSearchShape.fetch(likePlan, Sort.by("surname")))
+            .isNotEqualTo(EmployeeSearchShape.fetch(likePlan, Sort.by(Sort.Direction.DESC, "surname")));
+        assertThat(EmployeeSearchShape.fetch(likePlan, Sort.unsorted()))
+            .isNotEqualTo(EmployeeSearchShape.count(likePlan));
+    }
+
+    @Test
+    public void nameDrivenSql() {
+
+        SearchPlan plan = new SearchPlan(Arrays.asList(like("LG", "an"), like("LS", "mei")), DATE_OF_BIRTH, false, 10.0);
+        EmployeeSearchShape shape = EmployeeSearchShape.fetch(plan, Sort.by("givenName"));
+
+        assertThat(shape.toSql()).isEqualTo("SELECT e.* FROM employee e WHERE "
+            + "e.id IN (SELECT en0.owner_id FROM employee_name en0 WHERE en0.company_id = :companyId"
+            + " AND en0.name_key = :key0 AND en0.name_value LIKE :value0)"
+            + " AND EXISTS (SELECT 1 FROM employee_name en1 WHERE en1.owner_id = e.id AND en1.company_id = :companyId"
+            + " AND en1.name_key = :key1 AND en1.name_value LIKE :value1)"
+            + " AND e.date_of_birth = :dateOfBirth AND e.company_id = :companyId ORDER BY e.given_name ASC");
+
+        Map<String, Object> parameters = shape.parameters(plan, 7L, null);
+        assertThat(parameters).containsEntry("companyId", 7L);
+        assertThat(parameters).containsEntry("dateOfBirth", DATE_OF_BIRTH);
+        assertThat(parameters).containsEntry("key0", "LG");
+        assertThat(parameters).containsEntry("value0", "an%");
+        assertThat(parameters).containsEntry("key1", "LS");
+        assertThat(parameters).containsEntry("value1", "mei%");
+        assertThat(parameters).hasSize(6);
+    }
+
+    @Test
+    public void inSql() {
+
+        SearchPlan plan = new SearchPlan(Collections.singletonList(new EmployeeNameFilter(
+            EmployeeNameFilter.CompareOperation.LIKE, "N", Arrays.asList("maier", "meier"))), null, false, 10.0);
+        EmployeeSearchShape shape = EmployeeSearchShape.fetch(plan, Sort.unsorted());
+
+        assertThat(shape.toSql()).isEqualTo("SELECT e.* FROM employee e WHERE "
+            + "e.id IN (SELECT en0.owner_id FROM employee_name en0 WHERE en0.company_id = :companyId"
+            + " AND en0.name_key LIKE :key0 AND en0.name_value IN (:value0))"
+            + " AND e.company_id = :companyId");
+        assertThat(shape.parameters(plan, 7L, null)).containsEntry("value0", Arrays.asList("maier", "meier"));
+        assertThat(shape).isNotEqualTo(EmployeeSearchShape.fetch(
+            new SearchPlan(Collections.singletonList(like("N", "meier")), null, false, 10.0), Sort.unsorted()));
+    }
+
+    @Test
+    public void dateDrivenCountSql() {
+
+        SearchPlan plan = new SearchPlan(Collections.singletonList(like("LS", "mei")), DATE_OF_BIRTH, true, 10.0);
+
+        assertThat(EmployeeSearchShape.count(plan).toSql()).isEqualTo("SELECT COUNT(*) FROM employee e WHERE "
+            + "e.date_of_birth = :dateOfBirth"
+            + " AND EXISTS (SELECT 1 FROM employee_name en0 WHERE en0.owner_id = e.id AND en0.company_id = :companyId"
+            + " AND en0.name_key = :key0 AND en0.name_value LIKE :value0)"
+            + " AND e.company_id = :companyId");
+    }
+
+    @Test
+    public void seekSql() {
+
+        SearchCursor cursor = SearchCursor.first(Sort.by("surname")).next("meier", 42L);
+        EmployeeSearchShape shape = EmployeeSearchShape.seek(SearchPlan.UNRESTRICTED, cursor);
+
+        assertThat(shape.toSql()).isEqualTo("SELECT e.* FROM employee e WHERE e.company_id = :companyId"
+            + " AND (e.surname > :lastSortValue OR (e.surname = :lastSortValue AND e.id > :lastId))"
+            + " ORDER BY e.surname ASC, e.id ASC");
+        Map<String, Object> parameters = shape.parameters(SearchPlan.UNRESTRICTED, 7L, cursor);
+        assertThat(parameters).containsEntry("lastSortValue", "meier");
+        assertThat(parameters).containsEntry("lastId", 42L);
+
+        assertThat(EmployeeSearchShape.seek(SearchPlan.UNRESTRICTED, SearchCursor.first(Sort.unsorted())).toSql())
+            .isEqualTo("SELECT e.* FROM employee e WHERE e.company_id = :companyId ORDER BY e.id ASC");
+    }
+
+    @Test
+    public void seekAllCompaniesSql() {
+
+        SearchPlan plan = new SearchPlan(Arrays.asList(like("LS", "mei"), like("LG", "an")), null, false, 0.0);
+        SearchCursor cursor = SearchCursor.first(Sort.by("id")).next("42", 42L);
+        EmployeeSearchShape shape = EmployeeSearchShape.seekAllCompanies(plan, cursor);
+
+        assertThat(shape.toSql()).isEqualTo("SELECT e.* FROM employee e WHERE "
+            + "e.id IN (SELECT en0.owner_id FROM employee_name en0 WHERE en0.company_id IN (SELECT c.id FROM company c)"
+            + " AND en0.name_key = :key0 AND en0.name_value LIKE :value0)"
+            + " AND EXISTS (SELECT 1 FROM employee_name en1 WHERE en1.owner_id = e.id AND en1.company_id = e.company_id"
+            + " AND en1.name_key = :key1 AND en1.name_value LIKE :value1)"
+            + " AND e.id > :lastId ORDER BY e.id ASC");
+        assertThat(shape.parameters(plan, 7L, cursor)).doesNotContainKey("companyId").containsEntry("lastId", 42L);
+        assertThat(shape).isNotEqualTo(EmployeeSearchShape.seek(plan, cursor));
+
+        assertThat(EmployeeSearchShape.seekAllCompanies(SearchPlan.UNRESTRICTED, SearchCursor.first(Sort.unsorted())).toSql())
+            .isEqualTo("SELECT e.* FROM employee e ORDER BY e.id ASC");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownSortPropertyIsRejected() {
+        EmployeeSearchShape.fetch(SearchPlan.UNRESTRICTED, Sort.by("company"));
+    }
+
+    private static EmployeeNameFilter like(String key, String value) {
+        return new EmployeeNameFilter(EmployeeNameFilter.CompareOperation.EQUALS, EmployeeNameFilter.CompareOperation.LIKE,
+            key, value);
+    }
+}
@@ -0,0 +1,76 @@
+package com.giraone.pms.service.search;
+
+import com.giraone.pms.domain.filter.EmployeeNameFilter;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FuzzyNameDictionaryTest {
+
+    private FuzzyNameDictionary dictionary;
+
+    @Before
+    public void init() {
+
+        dictionary = new FuzzyNameDictionary();
+        dictionary.add("NS", "muler", 12L);
+        dictionary.add("NS", "mulerschmit", 1L);
+        dictionary.add("NS", "meier", 7L);
+        dictionary.add("NS", "smit", 20L);
+        dictionary.add("NS", "snaider", 4L);
+        dictionary.add("NG", "tomas", 5L);
+        dictionary.add("NG", "mula", 2L);
+    }
+
+    @Test
+    public void expand_prefixAndTypos() {
+
+        // prefix matches and one edit for a name of 4 characters
+        assertThat(dictionary.expand(weak("NS", "mule"), 10)).containsExactly("muler", "mulerschmit");
+        // a missing, a wrong and a swapped letter
+        assertThat(dictionary.expand(weak("NS", "mler"), 10)).containsExactly("muler");
+        assertThat(dictionary.expand(weak("NS", "meiar"), 10)).containsExactly("meier");
+        assertThat(dictionary.expand(weak("NS", "sniader"), 10)).containsExactly("snaider");
+        // two edits only for longer names
+        assertThat(dictionary.expand(weak("NS", "snieder"), 10)).containsExactly("snaider");
+        assertThat(dictionary.expand(weak("NS", "mira"), 10)).isEmpty();
+    }
+
+    @Test
+    public void expand_shortNamesOnlyByPrefix() {
+
+        assertThat(dictionary.expand(weak("NS", "sm"), 10)).containsExactly("smit");
+        assertThat(dictionary.expand(weak("NS", "sx"), 10)).isEmpty();
+    }
+
+    @Test
+    public void expand_keys() {
+
+        assertThat(dictionary.expand(weak("NG", "mul"), 10)).containsExactly("mula");
+        assertThat(dictionary.expand(new EmployeeNameFilter(EmployeeNameFilter.CompareOperation.LIKE,
+            EmployeeNameFilter.CompareOperation.LIKE, "N", "mul"), 10)).containsExactly("mula", "muler", "mulerschmit");
+    }
+
+    @Test
+    public void expand_tooManyNames() {
+
+        assertThat(dictionary.expand(weak("NS", "m"), 2)).isNull();
+        assertThat(dictionary.expand(weak("NS", "m"), 3)).containsExactly("meier", "muler", "mulerschmit");
+    }
+
+    @Test
+    public void add_removesNames() {
+
+        dictionary.add("NS", "meier", -7L);
+        assertThat(dictionary.expand(weak("NS", "meier"), 10)).isEmpty();
+        assertThat(dictionary.getNames()).isEqualTo(6);
+        dictionary.add("NS", "unknown", -1L);
+        assertThat(dictionary.getNames()).isEqualTo(6);
+    }
+
+    private static EmployeeNameFilter weak(String key, String value) {
+        return new EmployeeNameFilter(EmployeeNameFilter.CompareOperation.EQUALS, EmployeeNameFilter.CompareOperation.LIKE,
+            key, value);
+    }
+}
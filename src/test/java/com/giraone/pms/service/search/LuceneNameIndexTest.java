@@ -0,0 +1,127 @@
+package com.giraone.pms.service.search;
+
+import com.giraone.pms.domain.filter.EmployeeNameKeyValue;
+import com.giraone.pms.domain.filter.PersonFilter;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.store.RAMDirectory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.data.domain.Sort;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LuceneNameIndexTest {
+
+    private static final long COMPANY = 1L;
+    private static final LocalDate BIRTHDAY = LocalDate.of(1970, 3, 12);
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private LuceneNameIndex index;
+
+    @Before
+    public void init() throws IOException {
+
+        index = new LuceneNameIndex(new RAMDirectory());
+        employee(1L, COMPANY, "Schmitt", "smit", "thomas", "tomas", BIRTHDAY);
+        employee(2L, COMPANY, "Schmidt", "smit", "anna", "ana", null);
+        employee(3L, COMPANY, "Meier", "meier", "thomas", "tomas", LocalDate.of(1980, 1, 1));
+        employee(4L, COMPANY, "Schulz", "sulz", "anna", "ana", BIRTHDAY);
+        employee(5L, 2L, "Schmitt", "smit", "anna", "ana", BIRTHDAY);
+        index.refresh();
+    }
+
+    @After
+    public void close() throws IOException {
+        index.close();
+    }
+
+    @Test
+    public void search_prefixAndExact() throws IOException {
+
+        assertThat(ids("schm,")).containsExactly(1L, 2L);
+        assertThat(ids(",tho")).containsExactly(1L, 3L);
+        assertThat(ids("\"schmitt\",")).containsExactly(1L);
+        assertThat(ids("\"schmi\",")).isEmpty();
+    }
+
+    @Test
+    public void search_anyNameAndDateOfBirth() throws IOException {
+
+        // without comma the names match surnames and given names
+        assertThat(ids("anna")).containsExactly(2L, 4L);
+        assertThat(ids("sch, 12.03.1970")).containsExactly(1L, 4L);
+        assertThat(ids("meier 12.03.1970")).isEmpty();
+    }
+
+    @Test
+    public void search_sortAndPaging() throws IOException {
+
+        LuceneEmployeeIndex.Hits hits = index.search(COMPANY, new PersonFilter("sch,"), Sort.by(Sort.Direction.DESC, "id"), 0, 2, true);
+        assertThat(hits.getIds()).containsExactly(4L, 2L);
+        assertThat(hits.hasNext()).isTrue();
+        assertThat(hits.getTotal()).isEqualTo(3L);
+
+        hits = index.search(COMPANY, new PersonFilter("sch,"), Sort.by(Sort.Direction.DESC, "id"), 2, 2, false);
+        assertThat(hits.getIds()).containsExactly(1L);
+        assertThat(hits.hasNext()).isFalse();
+        assertThat(hits.getTotal()).isEqualTo(-1L);
+
+        // the surname is ordered by the collation of the database - only the database can answer it
+        assertThat(index.search(COMPANY, new PersonFilter("sch,"), Sort.by("surname"), 0, 2, false)).isNull();
+        assertThat(index.search(COMPANY, new PersonFilter("sch,"), Sort.by("city"), 0, 2, false)).isNull();
+    }
+
+    @Test
+    public void putAndDelete() throws IOException {
+
+        employee(2L, COMPANY, "Meyer", "meier", "anna", "ana", null);
+        index.delete(1L);
+        index.refresh();
+        assertThat(ids("schm,")).isEmpty();
+        assertThat(ids("\"meyer\",")).containsExactly(2L);
+
+        index.deleteCompany(COMPANY);
+        index.refresh();
+        assertThat(ids("anna")).isEmpty();
+        assertThat(index.search(2L, new PersonFilter("anna"), Sort.unsorted(), 0, 10, false).getIds()).containsExactly(5L);
+    }
+
+    @Test
+    public void isClean() throws IOException {
+
+        final Path path = temporaryFolder.newFolder().toPath();
+        LuceneNameIndex other = new LuceneNameIndex(new MMapDirectory(path));
+        assertThat(other.isClean()).isFalse();
+        other.close();
+
+        other = new LuceneNameIndex(new MMapDirectory(path));
+        assertThat(other.isClean()).isTrue();
+        other.close();
+    }
+
+    //------------------------------------------------------------------------------------------------------------------
+
+    private long[] ids(String filter) throws IOException {
+        return index.search(COMPANY, new PersonFilter(filter), Sort.unsorted(), 0, 100, false).getIds();
+    }
+
+    private void employee(long id, long companyId, String surname, String normalizedSurname,
+                          String givenName, String normalizedGivenName, LocalDate dateOfBirth) throws IOException {
+
+        index.put(id, companyId, dateOfBirth, Arrays.asList(
+            new EmployeeNameKeyValue("LS", surname.toLowerCase()),
+            new EmployeeNameKeyValue("NS", normalizedSurname),
+            new EmployeeNameKeyValue("LG", givenName),
+            new EmployeeNameKeyValue("NG", normalizedGivenName)));
+    }
+}
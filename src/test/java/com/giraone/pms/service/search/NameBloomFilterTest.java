@@ -0,0 +1,66 @@
+package com.giraone.pms.service.search;
+
+import com.giraone.pms.domain.filter.PersonFilter;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class NameBloomFilterTest {
+
+    private NameBloomFilter filter;
+
+    @Before
+    public void init() {
+
+        filter = new NameBloomFilter(100L);
+        filter.put("LS", "schmitt");
+        filter.put("LS", "meier");
+        filter.put("LG", "thomas");
+        filter.put("NS", "smit");
+    }
+
+    @Test
+    public void mightMatch_exactNames() {
+
+        assertThat(filter.mightMatch(new PersonFilter("\"schmitt\","))).isTrue();
+        assertThat(filter.mightMatch(new PersonFilter(",\"thomas\""))).isTrue();
+        assertThat(filter.mightMatch(new PersonFilter("\"schmitt\", \"thomas\""))).isTrue();
+        assertThat(filter.mightMatch(new PersonFilter("\"schmidt\","))).isFalse();
+        assertThat(filter.mightMatch(new PersonFilter("\"schmitt\", \"anna\""))).isFalse();
+        // the surname is not a given name
+        assertThat(filter.mightMatch(new PersonFilter(",\"schmitt\""))).isFalse();
+    }
+
+    @Test
+    public void mightMatch_exactNameWithoutComma() {
+
+        // surname or given name
+        assertThat(filter.mightMatch(new PersonFilter("\"thomas\""))).isTrue();
+        assertThat(filter.mightMatch(new PersonFilter("\"meier\""))).isTrue();
+        assertThat(filter.mightMatch(new PersonFilter("\"anna\" 12.03.1970"))).isFalse();
+    }
+
+    @Test
+    public void mightMatch_weakNamesAreNotDecided() {
+
+        assertThat(filter.mightMatch(new PersonFilter("xyz,"))).isTrue();
+        assertThat(filter.mightMatch(new PersonFilter("xyz"))).isTrue();
+        assertThat(filter.mightMatch(new PersonFilter("12.03.1970"))).isTrue();
+        // only the lowercase names are kept
+        filter.put("NS", "xyz");
+        assertThat(filter.mightMatch(new PersonFilter("\"xyz\","))).isFalse();
+    }
+
+    @Test
+    public void isOverfilled() {
+
+        final NameBloomFilter small = new NameBloomFilter(2L);
+        small.put("LS", "a");
+        small.put("LS", "b");
+        assertThat(small.isOverfilled()).isFalse();
+        small.put("LS", "c");
+        small.put("LS", "d");
+        assertThat(small.isOverfilled()).isTrue();
+    }
+}
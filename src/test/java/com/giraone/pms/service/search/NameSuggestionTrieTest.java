@@ -0,0 +1,63 @@
+package com.giraone.pms.service.search;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class NameSuggestionTrieTest {
+
+    private NameSuggestionTrie trie;
+
+    @Before
+    public void init() {
+
+        trie = new NameSuggestionTrie();
+        trie.add("mueller", 12L);
+        trie.add("muench", 3L);
+        trie.add("meyer", 7L);
+        trie.add("mayer", 7L);
+        trie.add("mueller-schmidt", 1L);
+        trie.add("schmidt", 20L);
+    }
+
+    @Test
+    public void suggest_mostFrequentFirst() {
+
+        assertThat(names(trie.suggest("m", 3))).containsExactly("mueller:12", "mayer:7", "meyer:7");
+        assertThat(names(trie.suggest("mue", 10))).containsExactly("mueller:12", "muench:3", "mueller-schmidt:1");
+        assertThat(names(trie.suggest("", 1))).containsExactly("schmidt:20");
+    }
+
+    @Test
+    public void suggest_unknownPrefix() {
+
+        assertThat(trie.suggest("x", 10)).isEmpty();
+        assertThat(trie.suggest("muellerx", 10)).isEmpty();
+    }
+
+    @Test
+    public void add_incrementAndRemove() {
+
+        trie.add("muench", 10L);
+        assertThat(names(trie.suggest("mue", 1))).containsExactly("muench:13");
+
+        trie.add("muench", -13L);
+        trie.add("mueller", -12L);
+        assertThat(names(trie.suggest("mue", 10))).containsExactly("mueller-schmidt:1");
+        assertThat(trie.getNames()).isEqualTo(4);
+
+        // removing an unknown name does not change anything
+        trie.add("unknown", -1L);
+        assertThat(trie.getNames()).isEqualTo(4);
+    }
+
+    //------------------------------------------------------------------------------------------------------------------
+
+    private static List<String> names(List<NameSuggestionTrie.Suggestion> suggestions) {
+        return suggestions.stream().map(s -> s.getName() + ":" + s.getCount()).collect(Collectors.toList());
+    }
+}
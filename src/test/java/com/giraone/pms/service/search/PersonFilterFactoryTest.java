@@ -0,0 +1,54 @@
+package com.giraone.pms.service.search;
+
+import com.giraone.pms.config.ApplicationProperties;
+import com.giraone.pms.domain.filter.PersonFilter;
+import com.giraone.pms.service.impl.NameNormalizeServiceImpl;
+import org.junit.Test;
+
+import java.time.DateTimeException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PersonFilterFactoryTest {
+
+    private final PersonFilterFactory personFilterFactory =
+        new PersonFilterFactory(new NameNormalizeServiceImpl(), new ApplicationProperties());
+
+    @Test
+    public void get_sameInput_returnsSameParsedFilter() {
+
+        PersonFilter personFilter = personFilterFactory.get("Müller, Hans 12.03.1970");
+
+        assertThat(personFilterFactory.get("Müller, Hans 12.03.1970")).isSameAs(personFilter);
+        assertThat(personFilter).isEqualTo(new PersonFilter("Müller, Hans 12.03.1970"));
+    }
+
+    @Test
+    public void get_phoneticFlag_isPartOfTheKey() {
+
+        PersonFilter simple = personFilterFactory.get("schmidt");
+        PersonFilter phonetic = personFilterFactory.get("schmidt", true);
+
+        assertThat(phonetic).isNotEqualTo(simple);
+        assertThat(phonetic).isEqualTo(new PersonFilter("schmidt", true));
+    }
+
+    @Test
+    public void get_null_returnsEmptyFilter() {
+
+        assertThat(personFilterFactory.get(null).hasNames()).isFalse();
+        assertThat(personFilterFactory.get(null).getDateOfBirth()).isNull();
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void get_filter_isImmutable() {
+
+        personFilterFactory.get("meier").getNames().clear();
+    }
+
+    @Test(expected = DateTimeException.class)
+    public void get_invalidDate_failsLikeWithoutCache() {
+
+        personFilterFactory.get("31.02.1970");
+    }
+}
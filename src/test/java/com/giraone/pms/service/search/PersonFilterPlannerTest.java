@@ -0,0 +1,92 @@
+package com.giraone.pms.service.search;
+
+import com.giraone.pms.domain.filter.EmployeeNameFilter;
+import com.giraone.pms.domain.filter.PersonFilter;
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.time.Month;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PersonFilterPlannerTest {
+
+    // 10000 employees, 1000 distinct dates of birth, "m" is a common, "an" is a rare prefix
+    private static final NameStatistics STATISTICS = new NameStatistics(10_000L, 1_000L, Arrays.asList(
+        new NameStatistics.Bucket("LS", "mu", 3000L, 100L),
+        new NameStatistics.Bucket("LS", "me", 2000L, 100L),
+        new NameStatistics.Bucket("LS", "sc", 1000L, 10L),
+        new NameStatistics.Bucket("LG", "an", 50L, 5L),
+        new NameStatistics.Bucket("LG", "th", 500L, 5L)
+    ));
+
+    @Test
+    public void estimateRows_shortPrefixCoversBuckets() {
+
+        EmployeeNameFilter filter = new EmployeeNameFilter(
+            EmployeeNameFilter.CompareOperation.EQUALS, EmployeeNameFilter.CompareOperation.LIKE, "LS", "m");
+        assertThat(STATISTICS.estimateRows(filter)).isEqualTo(5000.0);
+    }
+
+    @Test
+    public void estimateRows_keyPrefixCoversKeys() {
+
+        EmployeeNameFilter filter = new EmployeeNameFilter(
+            EmployeeNameFilter.CompareOperation.LIKE, EmployeeNameFilter.CompareOperation.LIKE, "L", "");
+        assertThat(STATISTICS.estimateRows(filter)).isEqualTo(6550.0);
+    }
+
+    @Test
+    public void estimateRows_exactValueUsesAverageFrequency() {
+
+        EmployeeNameFilter filter = new EmployeeNameFilter(
+            EmployeeNameFilter.CompareOperation.EQUALS, EmployeeNameFilter.CompareOperation.EQUALS, "LS", "schmitt");
+        assertThat(STATISTICS.estimateRows(filter)).isEqualTo(100.0);
+    }
+
+    @Test
+    public void plan_ordersNamesMostSelectiveFirst() {
+
+        // surname "meier": 2000 / 100 = 20 rows, given name "anna": 50 / 5 = 10 rows
+        SearchPlan plan = PersonFilterPlanner.plan(new PersonFilter("\"meier\", \"anna\""), STATISTICS);
+
+        assertThat(plan.isDateDriven()).isFalse();
+        assertThat(plan.getNames()).hasSize(2);
+        assertThat(plan.getNames().get(0).getKey()).isEqualTo("LG");
+        assertThat(plan.getNames().get(1).getKey()).isEqualTo("LS");
+        assertThat(plan.getEstimatedRows()).isEqualTo(10.0);
+    }
+
+    @Test
+    public void plan_selectiveDateOfBirthDrives() {
+
+        // surname "schmitt": 1000 / 10 = 100 rows, given name "thomas": 500 / 5 = 100 rows, date: 10 rows
+        SearchPlan plan = PersonFilterPlanner.plan(new PersonFilter("\"schmitt\", \"thomas\" 12.03.1970"), STATISTICS);
+
+        assertThat(plan.isDateDriven()).isTrue();
+        assertThat(plan.getDateOfBirth()).isEqualTo(LocalDate.of(1970, Month.MARCH, 12));
+        assertThat(plan.getNames()).hasSize(2);
+        assertThat(plan.getEstimatedRows()).isEqualTo(10.0);
+    }
+
+    @Test
+    public void plan_selectiveNameDrivesDespiteDateOfBirth() {
+
+        NameStatistics statistics = new NameStatistics(10_000L, 10L, Arrays.asList(
+            new NameStatistics.Bucket("LS", "sc", 1000L, 10L)));
+        SearchPlan plan = PersonFilterPlanner.plan(new PersonFilter("\"schmitt\", 12.03.1970"), statistics);
+
+        assertThat(plan.isDateDriven()).isFalse();
+        assertThat(plan.getDateOfBirth()).isEqualTo(LocalDate.of(1970, Month.MARCH, 12));
+        assertThat(plan.getEstimatedRows()).isEqualTo(100.0);
+    }
+
+    @Test
+    public void plan_withoutRestrictionIsUnrestricted() {
+
+        PersonFilterPlanner planner = new PersonFilterPlanner(null);
+        assertThat(planner.plan(1L, null)).isSameAs(SearchPlan.UNRESTRICTED);
+        assertThat(planner.plan(1L, new PersonFilter(","))).isSameAs(SearchPlan.UNRESTRICTED);
+    }
+}
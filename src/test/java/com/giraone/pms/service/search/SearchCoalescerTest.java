@@ -0,0 +1,145 @@
+package com.giraone.pms.service.search;
+
+import com.giraone.pms.config.ApplicationProperties;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class SearchCoalescerTest {
+
+    private static final int CALLERS = 5;
+
+    private ExecutorService executor;
+    private AtomicInteger executions;
+
+    @Before
+    public void init() {
+        executor = Executors.newFixedThreadPool(CALLERS);
+        executions = new AtomicInteger();
+    }
+
+    @After
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void execute_identicalConcurrentSearches_executeOnce() throws Exception {
+
+        SearchCoalescer searchCoalescer = new SearchCoalescer(new ApplicationProperties());
+        CountDownLatch release = new CountDownLatch(1);
+
+        // the first caller blocks until all others wait for it
+        Future<String> first = executor.submit(() -> searchCoalescer.execute(SearchCoalescer.key("c1", "mueller"), () -> {
+            executions.incrementAndGet();
+            await(release);
+            return "result";
+        }));
+        waitFor(() -> executions.get() == 1);
+        List<Future<String>> others = new ArrayList<>();
+        for (int i = 1; i < CALLERS; i++) {
+            others.add(executor.submit(() -> searchCoalescer.execute(SearchCoalescer.key("c1", "mueller"), () -> {
+                executions.incrementAndGet();
+                return "other";
+            })));
+        }
+        // give the other callers the time to join the running search
+        Thread.sleep(200L);
+        release.countDown();
+
+        assertThat(first.get(5, TimeUnit.SECONDS)).isEqualTo("result");
+        for (Future<String> other : others) {
+            assertThat(other.get(5, TimeUnit.SECONDS)).isEqualTo("result");
+        }
+        assertThat(executions.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void execute_afterCompletion_executesAgain() {
+
+        SearchCoalescer searchCoalescer = new SearchCoalescer(new ApplicationProperties());
+
+        assertThat(searchCoalescer.execute(SearchCoalescer.key("c1", "mueller"), () -> executions.incrementAndGet())).isEqualTo(1);
+        assertThat(searchCoalescer.execute(SearchCoalescer.key("c1", "mueller"), () -> executions.incrementAndGet())).isEqualTo(2);
+    }
+
+    @Test
+    public void execute_failingSearch_failsAllCallers() throws Exception {
+
+        SearchCoalescer searchCoalescer = new SearchCoalescer(new ApplicationProperties());
+        CountDownLatch release = new CountDownLatch(1);
+
+        Future<String> first = executor.submit(() -> searchCoalescer.execute(SearchCoalescer.key("c1"), () -> {
+            executions.incrementAndGet();
+            await(release);
+            throw new IllegalArgumentException("invalid");
+        }));
+        waitFor(() -> executions.get() == 1);
+        Future<String> second = executor.submit(() -> searchCoalescer.execute(SearchCoalescer.key("c1"), () -> "other"));
+        Thread.sleep(200L);
+        release.countDown();
+
+        assertFailsWithIllegalArgument(first);
+        assertFailsWithIllegalArgument(second);
+    }
+
+    @Test
+    public void execute_timeout_executesOwnSearch() throws Exception {
+
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        applicationProperties.getSearch().setCoalesceTimeoutMillis(50L);
+        SearchCoalescer searchCoalescer = new SearchCoalescer(applicationProperties);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Future<String> first = executor.submit(() -> searchCoalescer.execute(SearchCoalescer.key("c1"), () -> {
+            executions.incrementAndGet();
+            await(release);
+            return "slow";
+        }));
+        waitFor(() -> executions.get() == 1);
+
+        assertThat(searchCoalescer.execute(SearchCoalescer.key("c1"), () -> "own")).isEqualTo("own");
+        release.countDown();
+        assertThat(first.get(5, TimeUnit.SECONDS)).isEqualTo("slow");
+    }
+
+    //------------------------------------------------------------------------------------------------------------------
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        for (int i = 0; i < 500 && !condition.getAsBoolean(); i++) {
+            Thread.sleep(10L);
+        }
+        assertThat(condition.getAsBoolean()).isTrue();
+    }
+
+    private static void assertFailsWithIllegalArgument(Future<String> future) throws Exception {
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail("IllegalArgumentException expected");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause()).isInstanceOf(IllegalArgumentException.class);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.giraone.pms.service.search;
+
+import org.hibernate.Session;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class SearchSlotsTest {
+
+    private final SearchSlots searchSlots = new SearchSlots();
+
+    @Test
+    public void open_newerSearchOfSameOwner_cancelsRunningSearch() {
+
+        Session session1 = mock(Session.class);
+        Session session2 = mock(Session.class);
+
+        SearchSlot slot1 = searchSlots.open("user", session1);
+        SearchSlot slot2 = searchSlots.open("user", session2);
+
+        assertThat(slot1.isCancelled()).isTrue();
+        assertThat(slot2.isCancelled()).isFalse();
+        verify(session1).cancelQuery();
+        verify(session2, never()).cancelQuery();
+    }
+
+    @Test
+    public void open_searchOfOtherOwner_doesNotCancel() {
+
+        Session session1 = mock(Session.class);
+
+        SearchSlot slot1 = searchSlots.open("user1", session1);
+        searchSlots.open("user2", mock(Session.class));
+
+        assertThat(slot1.isCancelled()).isFalse();
+        verify(session1, never()).cancelQuery();
+    }
+
+    @Test
+    public void open_otherSearchSessionOfSameUser_doesNotCancel() {
+
+        Session session1 = mock(Session.class);
+
+        SearchSlot slot1 = searchSlots.open(SearchSlots.owner("user", request("tab-1")), session1);
+        SearchSlot slot2 = searchSlots.open(SearchSlots.owner("user", request("tab-2")), mock(Session.class));
+        searchSlots.open(SearchSlots.owner("user", request("tab-2")), mock(Session.class));
+
+        assertThat(slot1.isCancelled()).isFalse();
+        assertThat(slot2.isCancelled()).isTrue();
+        verify(session1, never()).cancelQuery();
+    }
+
+    @Test
+    public void owner_withoutSearchSession_isTheUser() {
+
+        assertThat(SearchSlots.owner("user", request(null))).isEqualTo("user");
+        assertThat(SearchSlots.owner("user", request(""))).isEqualTo("user");
+        assertThat(SearchSlots.owner("user", request("tab-1"))).isEqualTo("user/tab-1");
+        assertThat(SearchSlots.owner("user", request(String.join("", Collections.nCopies(100, "x")))))
+            .hasSize("user/".length() + 64);
+    }
+
+    @Test
+    public void open_afterClose_doesNotCancel() {
+
+        Session session1 = mock(Session.class);
+
+        SearchSlot slot1 = searchSlots.open("user", session1);
+        slot1.close();
+        searchSlots.open("user", mock(Session.class));
+
+        assertThat(slot1.isCancelled()).isFalse();
+        verify(session1, never()).cancelQuery();
+    }
+
+    @Test(expected = SearchCancelledException.class)
+    public void checkCancelled_supersededSearch_throws() {
+
+        SearchSlot slot1 = searchSlots.open("user", mock(Session.class));
+        searchSlots.open("user", mock(Session.class));
+        slot1.checkCancelled();
+    }
+
+    private static MockHttpServletRequest request(String searchSession) {
+
+        final MockHttpServletRequest ret = new MockHttpServletRequest();
+        if (searchSession != null) {
+            ret.addHeader(SearchSlots.SEARCH_SESSION_HEADER, searchSession);
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,54 @@
+package com.giraone.pms.service.util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BulkCheckpointStoreTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void resume_skipsCompletedUnits() throws IOException {
+
+        // arrange
+        Path file = temporaryFolder.getRoot().toPath().resolve("data.checkpoint");
+        try (BulkCheckpointStore store = new BulkCheckpointStore(file, true)) {
+            store.markCompleted("d-00000000/f-00000000.json");
+            store.markCompleted("d-00000000/f-00000001.json");
+        }
+
+        // act
+        try (BulkCheckpointStore store = new BulkCheckpointStore(file, true)) {
+
+            // assert
+            assertThat(store.size()).isEqualTo(2);
+            assertThat(store.isCompleted("d-00000000/f-00000001.json")).isTrue();
+            assertThat(store.isCompleted("d-00000000/f-00000002.json")).isFalse();
+        }
+    }
+
+    @Test
+    public void noResume_startsFromScratch() throws IOException {
+
+        // arrange
+        Path file = temporaryFolder.getRoot().toPath().resolve("data.checkpoint");
+        try (BulkCheckpointStore store = new BulkCheckpointStore(file, true)) {
+            store.markCompleted("chunk-00000000");
+        }
+
+        // act
+        try (BulkCheckpointStore store = new BulkCheckpointStore(file, false)) {
+
+            // assert
+            assertThat(store.size()).isEqualTo(0);
+            assertThat(store.isCompleted("chunk-00000000")).isFalse();
+        }
+    }
+}
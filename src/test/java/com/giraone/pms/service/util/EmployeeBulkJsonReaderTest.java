@@ -0,0 +1,92 @@
+package com.giraone.pms.service.util;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.giraone.pms.service.dto.EmployeeBulkDTO;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EmployeeBulkJsonReaderTest {
+
+    private final EmployeeBulkJsonReader reader = new EmployeeBulkJsonReader(new ObjectMapper());
+
+    @Test
+    public void read_splitsIntoChunks() throws IOException {
+
+        // arrange
+        List<Integer> chunkSizes = new ArrayList<>();
+        List<String> surnames = new ArrayList<>();
+
+        // act
+        long count = reader.read(stream(5), 2, chunk -> {
+            chunkSizes.add(chunk.size());
+            chunk.forEach(e -> surnames.add(e.getSurname()));
+        });
+
+        // assert
+        assertThat(count).isEqualTo(5);
+        assertThat(chunkSizes).containsExactly(2, 2, 1);
+        assertThat(surnames).containsExactly("S0", "S1", "S2", "S3", "S4");
+    }
+
+    @Test
+    public void read_emptyArray() throws IOException {
+
+        List<List<EmployeeBulkDTO>> chunks = new ArrayList<>();
+        long count = reader.read(stream(0), 10, chunks::add);
+
+        assertThat(count).isEqualTo(0);
+        assertThat(chunks).isEmpty();
+    }
+
+    @Test(expected = JsonParseException.class)
+    public void read_rejectsNonArray() throws IOException {
+
+        reader.read(new ByteArrayInputStream("{\"surname\":\"S\"}".getBytes(StandardCharsets.UTF_8)), 10, chunk -> {});
+    }
+
+    @Test
+    public void readNdjson_splitsIntoChunks() throws IOException {
+
+        // arrange
+        String ndjson = "{\"surname\":\"S0\",\"companyId\":\"c-1\"}\n"
+            + "\n"
+            + "{\"surname\":\"S1\",\"companyId\":\"c-1\"}\n"
+            + "{\"surname\":\"S2\",\"companyId\":\"c-2\"}\n";
+        List<Integer> chunkSizes = new ArrayList<>();
+        List<String> surnames = new ArrayList<>();
+
+        // act
+        long count = reader.readNdjson(new ByteArrayInputStream(ndjson.getBytes(StandardCharsets.UTF_8)), 2, chunk -> {
+            chunkSizes.add(chunk.size());
+            chunk.forEach(e -> surnames.add(e.getSurname()));
+        });
+
+        // assert
+        assertThat(count).isEqualTo(3);
+        assertThat(chunkSizes).containsExactly(2, 1);
+        assertThat(surnames).containsExactly("S0", "S1", "S2");
+    }
+
+    //------------------------------------------------------------------------------------------------------------------
+
+    private InputStream stream(int count) {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append(String.format("{\"surname\":\"S%d\",\"givenName\":\"G%d\",\"dateOfBirth\":\"19780913\",\"companyId\":\"c-1\"}", i, i));
+        }
+        json.append(']');
+        return new ByteArrayInputStream(json.toString().getBytes(StandardCharsets.UTF_8));
+    }
+}
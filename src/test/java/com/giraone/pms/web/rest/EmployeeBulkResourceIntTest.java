@@ -0,0 +1,263 @@
+package com.giraone.pms.web.rest;
+
+import com.giraone.pms.PmssqlApp;
+import com.giraone.pms.config.ApplicationProperties;
+import com.giraone.pms.domain.enumeration.BulkJobPhase;
+import com.giraone.pms.domain.enumeration.BulkLoaderMode;
+import com.giraone.pms.domain.enumeration.ReIndexMode;
+import com.giraone.pms.service.BulkDirectoryLoaderService;
+import com.giraone.pms.service.BulkJobService;
+import com.giraone.pms.service.EmployeeBulkService;
+import com.giraone.pms.service.EmployeeReIndexService;
+import com.giraone.pms.service.InitialUserProvisioningService;
+import com.giraone.pms.service.ReIndexRunningException;
+import com.giraone.pms.service.dto.BulkJobStatusDTO;
+import com.giraone.pms.web.rest.errors.ExceptionTranslator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongConsumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * Test class for the job endpoints of the EmployeeBulkResource REST controller. The jobs are executed by a
+ * {@link BulkJobService} with one worker and one queue slot, whose loads block until the test ends. Re-index jobs
+ * use the real {@link EmployeeReIndexService}.
+ *
+ * @see EmployeeBulkResource
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = PmssqlApp.class)
+@WithMockUser(username = "admin", roles = {"ADMIN"})
+public class EmployeeBulkResourceIntTest {
+
+    private static final byte[] UPLOAD = "[{\"surname\":\"Schmitt\",\"givenName\":\"Anna\",\"companyId\":\"c1\"}]"
+        .getBytes(StandardCharsets.UTF_8);
+
+    @Mock
+    private EmployeeBulkService employeeBulkServiceMock;
+
+    @Mock
+    private InitialUserProvisioningService initialUserProvisioningServiceMock;
+
+    @Mock
+    private BulkDirectoryLoaderService bulkDirectoryLoaderServiceMock;
+
+    @Autowired
+    private EmployeeReIndexService employeeReIndexService;
+
+    @Autowired
+    private EmployeeBulkService employeeBulkService;
+
+    @Autowired
+    private MappingJackson2HttpMessageConverter jacksonMessageConverter;
+
+    @Autowired
+    private ExceptionTranslator exceptionTranslator;
+
+    private BulkJobService bulkJobService;
+
+    private MockMvc restBulkMockMvc;
+
+    /** Counted down by a running load after its first chunk */
+    private CountDownLatch loading;
+
+    /** Blocks the running loads until the end of the test */
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @Before
+    public void setup() throws IOException {
+        MockitoAnnotations.initMocks(this);
+        loading = new CountDownLatch(1);
+        when(employeeBulkServiceMock.saveStream(any(InputStream.class), anyInt(), any(), any(LongConsumer.class)))
+            .thenAnswer(invocation -> {
+                final InputStream in = invocation.getArgument(0);
+                final LongConsumer progressListener = invocation.getArgument(3);
+                // consume a part of the upload, so the job has a byte based ETA
+                in.read(new byte[UPLOAD.length / 2]);
+                progressListener.accept(1L);
+                loading.countDown();
+                release.await(10, TimeUnit.SECONDS);
+                return 1L;
+            });
+        when(employeeBulkServiceMock.reIndex(anyBoolean()))
+            .thenAnswer(invocation -> employeeBulkService.reIndex(invocation.getArgument(0)));
+
+        final ApplicationProperties applicationProperties = new ApplicationProperties();
+        applicationProperties.getBulk().setJobWorkers(1);
+        applicationProperties.getBulk().setJobQueueCapacity(1);
+        applicationProperties.getBulk().setJobSpoolMegabytes(1L);
+        bulkJobService = new BulkJobService(employeeBulkServiceMock, bulkDirectoryLoaderServiceMock,
+            employeeReIndexService, applicationProperties);
+        final EmployeeBulkResource employeeBulkResource = new EmployeeBulkResource(employeeBulkServiceMock,
+            initialUserProvisioningServiceMock, bulkJobService);
+        this.restBulkMockMvc = MockMvcBuilders.standaloneSetup(employeeBulkResource)
+            .setControllerAdvice(exceptionTranslator)
+            .setMessageConverters(jacksonMessageConverter).build();
+    }
+
+    @After
+    public void cleanUp() {
+        release.countDown();
+        bulkJobService.shutdown();
+    }
+
+    @Test
+    public void submitJob_allSlotsTaken_tooManyRequestsWithRetryAfter() throws Exception {
+
+        submitJob();
+        submitJob();
+
+        restBulkMockMvc.perform(post("/bulk-api/jobs")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(UPLOAD))
+            .andExpect(status().isTooManyRequests())
+            .andExpect(header().string(HttpHeaders.RETRY_AFTER, "30"));
+    }
+
+    @Test
+    public void submit_allSlotsTaken_rejectedBeforeReadingTheUpload() throws Exception {
+
+        submitJob();
+        submitJob();
+        assertThat(bulkJobService.isSaturated()).isTrue();
+
+        final AtomicBoolean read = new AtomicBoolean();
+        final InputStream upload = new ByteArrayInputStream(UPLOAD) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                read.set(true);
+                return super.read(b, off, len);
+            }
+        };
+        assertThatThrownBy(() -> bulkJobService.submit(upload, 0, BulkLoaderMode.JPA))
+            .isInstanceOf(RejectedExecutionException.class);
+        assertThat(read.get()).isFalse();
+    }
+
+    @Test
+    public void submitJob_tooLarge_payloadTooLargeAndSlotReleased() throws Exception {
+
+        restBulkMockMvc.perform(post("/bulk-api/jobs")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(new byte[1024 * 1024 + 1]))
+            .andExpect(status().isPayloadTooLarge());
+
+        // both slots are still free
+        submitJob();
+        submitJob();
+        assertThat(bulkJobService.isSaturated()).isTrue();
+    }
+
+    @Test
+    public void cancelJob_queued_cancelledAndSlotReleased() throws Exception {
+
+        submitJob();
+        final BulkJobStatusDTO queued = submitJob();
+        assertThat(queued.getPhase()).isEqualTo(BulkJobPhase.QUEUED);
+
+        restBulkMockMvc.perform(delete("/bulk-api/jobs/{id}", queued.getId()))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.id").value(queued.getId()))
+            .andExpect(jsonPath("$.phase").value(BulkJobPhase.CANCELLED.toString()));
+
+        submitJob();
+    }
+
+    @Test
+    public void submitReIndexJob_overlapping_conflict() throws Exception {
+
+        // the worker is busy, so the first re-index stays queued
+        submitJob();
+        final MvcResult result = restBulkMockMvc.perform(post("/bulk-api/jobs/re-index")
+            .param("mode", ReIndexMode.SHADOW.toString()))
+            .andExpect(status().isAccepted())
+            .andReturn();
+        final BulkJobStatusDTO reIndex = jacksonMessageConverter.getObjectMapper()
+            .readValue(result.getResponse().getContentAsByteArray(), BulkJobStatusDTO.class);
+        try {
+            restBulkMockMvc.perform(post("/bulk-api/jobs/re-index")
+                .param("mode", ReIndexMode.SHADOW.toString()))
+                .andExpect(status().isConflict());
+            restBulkMockMvc.perform(post("/bulk-api/jobs/re-index")
+                .param("mode", ReIndexMode.IN_PLACE.toString()))
+                .andExpect(status().isConflict());
+            restBulkMockMvc.perform(get("/bulk-api/re-index"))
+                .andExpect(status().isConflict());
+            assertThatThrownBy(() -> employeeReIndexService.rebuild(false, 1, null))
+                .isInstanceOf(ReIndexRunningException.class);
+        } finally {
+            restBulkMockMvc.perform(delete("/bulk-api/jobs/{id}", reIndex.getId()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.phase").value(BulkJobPhase.CANCELLED.toString()));
+        }
+
+        // the cancelled job released its reservation
+        employeeReIndexService.reserve().close();
+    }
+
+    @Test
+    public void cancelJob_unknown_notFound() throws Exception {
+
+        restBulkMockMvc.perform(delete("/bulk-api/jobs/{id}", "unknown"))
+            .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void getJob_loading_hasProgressAndEta() throws Exception {
+
+        final BulkJobStatusDTO job = submitJob();
+        assertThat(loading.await(10, TimeUnit.SECONDS)).isTrue();
+
+        restBulkMockMvc.perform(get("/bulk-api/jobs/{id}", job.getId()))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.phase").value(BulkJobPhase.LOADING.toString()))
+            .andExpect(jsonPath("$.rowsSaved").value(1))
+            .andExpect(jsonPath("$.bytesTotal").value(UPLOAD.length))
+            .andExpect(jsonPath("$.bytesRead").value(UPLOAD.length / 2))
+            .andExpect(jsonPath("$.etaSeconds").isNumber());
+    }
+
+    private BulkJobStatusDTO submitJob() throws Exception {
+
+        final MvcResult result = restBulkMockMvc.perform(post("/bulk-api/jobs")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(UPLOAD))
+            .andExpect(status().isAccepted())
+            .andReturn();
+        final BulkJobStatusDTO ret = jacksonMessageConverter.getObjectMapper()
+            .readValue(result.getResponse().getContentAsByteArray(), BulkJobStatusDTO.class);
+        assertThat(result.getResponse().getHeader(HttpHeaders.LOCATION)).isEqualTo("/bulk-api/jobs/" + ret.getId());
+        return ret;
+    }
+}
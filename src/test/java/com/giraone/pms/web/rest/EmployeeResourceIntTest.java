@@ -3,13 +3,18 @@ package com.giraone.pms.web.rest;
 import com.giraone.pms.PmssqlApp;
 import com.giraone.pms.domain.Company;
 import com.giraone.pms.domain.Employee;
+import com.giraone.pms.domain.User;
 import com.giraone.pms.domain.enumeration.GenderType;
 import com.giraone.pms.repository.EmployeeRepository;
+import com.giraone.pms.repository.UserRepository;
 import com.giraone.pms.service.AuthorizationService;
 import com.giraone.pms.service.CompanyService;
 import com.giraone.pms.service.EmployeeService;
 import com.giraone.pms.service.dto.EmployeeDTO;
 import com.giraone.pms.service.mapper.EmployeeMapper;
+import com.giraone.pms.service.search.EmployeeFanOutSearch;
+import com.giraone.pms.service.search.PersonFilterFactory;
+import com.giraone.pms.service.search.SearchCoalescer;
 import com.giraone.pms.web.rest.errors.ExceptionTranslator;
 import org.junit.Before;
 import org.junit.Test;
@@ -74,6 +79,9 @@ public class EmployeeResourceIntTest {
     @Autowired
     private EmployeeMapper employeeMapper;
 
+    @Autowired
+    private UserRepository userRepository;
+
     @Autowired
     private EmployeeService employeeService;
 
@@ -95,6 +103,15 @@ public class EmployeeResourceIntTest {
     @Autowired
     private EntityManager em;
 
+    @Autowired
+    private SearchCoalescer searchCoalescer;
+
+    @Autowired
+    private EmployeeFanOutSearch employeeFanOutSearch;
+
+    @Autowired
+    private PersonFilterFactory personFilterFactory;
+
     @Autowired
     private Validator validator;
 
@@ -105,7 +122,8 @@ public class EmployeeResourceIntTest {
     @Before
     public void setup() {
         MockitoAnnotations.initMocks(this);
-        final EmployeeResource employeeResource = new EmployeeResource(employeeService, companyService, authorizationService);
+        final EmployeeResource employeeResource = new EmployeeResource(employeeService, companyService, authorizationService,
+            searchCoalescer, employeeFanOutSearch, personFilterFactory);
         this.restEmployeeMockMvc = MockMvcBuilders.standaloneSetup(employeeResource)
             .setCustomArgumentResolvers(pageableArgumentResolver)
             .setControllerAdvice(exceptionTranslator)
@@ -226,6 +244,50 @@ public class EmployeeResourceIntTest {
             .andExpect(jsonPath("$.[*].streetAddress").value(hasItem(DEFAULT_STREET_ADDRESS.toString())));
     }
 
+    @Test
+    @Transactional
+    public void getAllEmployeesOfAllCompaniesWithFilter() throws Exception {
+        // Initialize the database with employees of two companies
+        employeeRepository.saveAndFlush(employee);
+        Company otherCompany = CompanyResourceIntTest.createEntity(em).externalId(UPDATED_SURNAME);
+        em.persist(otherCompany);
+        Employee otherEmployee = new Employee()
+            .surname(UPDATED_SURNAME)
+            .givenName(UPDATED_GIVEN_NAME)
+            .dateOfBirth(DEFAULT_DATE_OF_BIRTH);
+        otherEmployee.setCompany(otherCompany);
+        employeeRepository.saveAndFlush(otherEmployee);
+
+        // An admin searches without companyExternalId in one statement
+        restEmployeeMockMvc.perform(get("/api/employees?filter=01.01.1970&sort=id,desc"))
+            .andExpect(status().isOk())
+            .andExpect(header().exists("X-Has-Next"))
+            .andExpect(jsonPath("$.[*].id").value(hasItem(employee.getId().intValue())))
+            .andExpect(jsonPath("$.[*].id").value(hasItem(otherEmployee.getId().intValue())));
+    }
+
+    @Test
+    @Transactional
+    @WithMockUser(username = "user", roles = {"USER"})
+    public void getAllEmployeesOfSeveralCompaniesWithPageWithoutCursor() throws Exception {
+        // Initialize the database with two companies of the user
+        User user = userRepository.findOneByLogin("user").get();
+        employee.getCompany().addUser(user);
+        Company otherCompany = CompanyResourceIntTest.createEntity(em).externalId(UPDATED_SURNAME).addUser(user);
+        em.persist(otherCompany);
+        employeeRepository.saveAndFlush(employee);
+
+        // There are no page numbers over several companies
+        restEmployeeMockMvc.perform(get("/api/employees?page=1"))
+            .andExpect(status().isBadRequest())
+            .andExpect(jsonPath("$.message").value("error.pagewithoutcursor"));
+
+        // The first page is the first slice
+        restEmployeeMockMvc.perform(get("/api/employees?page=0"))
+            .andExpect(status().isOk())
+            .andExpect(header().exists("X-Has-Next"));
+    }
+
     @Test
     @Transactional
     public void getEmployee() throws Exception {
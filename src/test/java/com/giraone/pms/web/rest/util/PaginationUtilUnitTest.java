@@ -1,9 +1,14 @@
 package com.giraone.pms.web.rest.util;
 
+import com.giraone.pms.domain.filter.CursorSlice;
+import com.giraone.pms.domain.filter.SearchCursor;
 import org.junit.Test;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
 import org.springframework.http.HttpHeaders;
 
 import java.util.ArrayList;
@@ -39,4 +44,43 @@ public class PaginationUtilUnitTest {
         assertTrue(Long.valueOf(xTotalCountHeaders.get(0)).equals(400L));
     }
 
+    @Test
+    public void generateSliceHttpHeadersTest() {
+        String baseUrl = "/api/_search/example";
+        Slice<String> slice = new SliceImpl<>(new ArrayList<>(), PageRequest.of(6, 50), true);
+        HttpHeaders headers = PaginationUtil.generateSliceHttpHeaders(slice, baseUrl);
+        List<String> strHeaders = headers.get(HttpHeaders.LINK);
+        assertNotNull(strHeaders);
+        assertTrue(strHeaders.size() == 1);
+        String expectedData = "</api/_search/example?page=7&size=50>; rel=\"next\","
+                + "</api/_search/example?page=5&size=50>; rel=\"prev\","
+                + "</api/_search/example?page=0&size=50>; rel=\"first\"";
+        assertEquals(expectedData, strHeaders.get(0));
+        assertEquals("true", headers.getFirst("X-Has-Next"));
+        assertNull(headers.get("X-Total-Count"));
+    }
+
+    @Test
+    public void generateCursorPaginationHttpHeadersTest() {
+        String baseUrl = "/api/employees";
+        SearchCursor nextCursor = SearchCursor.first(Sort.unsorted()).next("100", 100L);
+        CursorSlice<String> slice = new CursorSlice<>(new ArrayList<>(), 50, nextCursor);
+        HttpHeaders headers = PaginationUtil.generateCursorPaginationHttpHeaders(slice, baseUrl);
+        List<String> strHeaders = headers.get(HttpHeaders.LINK);
+        assertNotNull(strHeaders);
+        assertTrue(strHeaders.size() == 1);
+        assertEquals("</api/employees?cursor=" + nextCursor.encode() + "&size=50>; rel=\"next\"", strHeaders.get(0));
+        assertEquals(nextCursor.encode(), headers.getFirst("X-Next-Cursor"));
+        assertEquals("true", headers.getFirst("X-Has-Next"));
+        assertNull(headers.get("X-Total-Count"));
+    }
+
+    @Test
+    public void generateCursorPaginationHttpHeaders_lastSliceTest() {
+        CursorSlice<String> slice = new CursorSlice<>(new ArrayList<>(), 50, null);
+        HttpHeaders headers = PaginationUtil.generateCursorPaginationHttpHeaders(slice, "/api/employees");
+        assertNull(headers.get(HttpHeaders.LINK));
+        assertNull(headers.get("X-Next-Cursor"));
+        assertEquals("false", headers.getFirst("X-Has-Next"));
+    }
 }